@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
+import io.hyperfoil.api.statistics.CustomMetrics;
 import io.hyperfoil.util.Util;
 
 /**
@@ -48,10 +49,14 @@ public class Benchmark implements Serializable {
    private final long statisticsCollectionPeriod;
    private final List<RunHook> preHooks;
    private final List<RunHook> postHooks;
+   private final CustomMetrics customMetrics;
+   private final StatisticsConfig statistics;
+   private final ElasticConfig elastic;
 
    public Benchmark(String name, String originalSource, Map<String, byte[]> files, Agent[] agents, int threads, Ergonomics ergonomics,
                     Map<String, Http> http, Collection<Phase> phases,
-                    Map<String, Object> tags, long statisticsCollectionPeriod, List<RunHook> preHooks, List<RunHook> postHooks) {
+                    Map<String, Object> tags, long statisticsCollectionPeriod, List<RunHook> preHooks, List<RunHook> postHooks,
+                    CustomMetrics customMetrics, StatisticsConfig statistics, ElasticConfig elastic) {
       this.name = name;
       this.originalSource = originalSource;
       this.files = files;
@@ -65,6 +70,9 @@ public class Benchmark implements Serializable {
       this.statisticsCollectionPeriod = statisticsCollectionPeriod;
       this.preHooks = preHooks;
       this.postHooks = postHooks;
+      this.customMetrics = customMetrics;
+      this.statistics = statistics;
+      this.elastic = elastic;
       this.version = Util.randomUUID().toString();
    }
 
@@ -130,6 +138,18 @@ public class Benchmark implements Serializable {
       return ergonomics;
    }
 
+   public CustomMetrics customMetrics() {
+      return customMetrics;
+   }
+
+   public StatisticsConfig statistics() {
+      return statistics;
+   }
+
+   public ElasticConfig elastic() {
+      return elastic;
+   }
+
    @Override
    public String toString() {
       return "Benchmark{name='" + name + '\'' +
@@ -29,6 +29,7 @@ import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import io.hyperfoil.api.statistics.CustomMetrics;
 import io.hyperfoil.impl.FutureSupplier;
 
 /**
@@ -48,6 +49,9 @@ public class BenchmarkBuilder {
    private long statisticsCollectionPeriod = 1000;
    private List<RunHook> preHooks = new ArrayList<>();
    private List<RunHook> postHooks = new ArrayList<>();
+   private final CustomMetrics customMetrics = new CustomMetrics();
+   private final StatisticsConfigBuilder statistics = new StatisticsConfigBuilder(this);
+   private final ElasticConfigBuilder elastic = new ElasticConfigBuilder(this);
 
    public BenchmarkBuilder(String originalSource, BenchmarkData data) {
       this.originalSource = originalSource;
@@ -176,7 +180,7 @@ public class BenchmarkBuilder {
       Map<String, byte[]> files = data.files();
 
       Benchmark benchmark = new Benchmark(name, originalSource, files, agents.toArray(new Agent[0]), threads, ergonomics.build(),
-            httpMap, phases, tags, statisticsCollectionPeriod, preHooks, postHooks);
+            httpMap, phases, tags, statisticsCollectionPeriod, preHooks, postHooks, customMetrics, statistics.build(), elastic.build());
       bs.set(benchmark);
       return benchmark;
    }
@@ -199,6 +203,24 @@ public class BenchmarkBuilder {
       phaseBuilders.put(name, phaseBuilder);
    }
 
+   /**
+    * Histogram range and precision, both global and per metric.
+    *
+    * @return Builder.
+    */
+   public StatisticsConfigBuilder statistics() {
+      return statistics;
+   }
+
+   /**
+    * Deploying additional agents when the declared ones are saturated.
+    *
+    * @return Builder.
+    */
+   public ElasticConfigBuilder elastic() {
+      return elastic;
+   }
+
    public BenchmarkBuilder statisticsCollectionPeriod(long statisticsCollectionPeriod) {
       this.statisticsCollectionPeriod = statisticsCollectionPeriod;
       return this;
@@ -226,4 +248,14 @@ public class BenchmarkBuilder {
    public BenchmarkData data() {
       return data;
    }
+
+   /**
+    * Custom metrics should be registered from the builders' <code>build()</code> methods; the handles
+    * are then stored in the built handlers.
+    *
+    * @return Registry of custom metrics.
+    */
+   public CustomMetrics customMetrics() {
+      return customMetrics;
+   }
 }
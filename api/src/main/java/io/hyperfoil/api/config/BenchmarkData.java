@@ -19,5 +19,11 @@ public interface BenchmarkData {
 
    InputStream readFile(String file);
 
+   /**
+    * Files the benchmark refers to; these are stored along with the benchmark source. Implementations
+    * that keep the files on disk should load the content lazily, as these can be big.
+    *
+    * @return Map of file names to contents.
+    */
    Map<String, byte[]> files();
 }
@@ -0,0 +1,77 @@
+package io.hyperfoil.api.config;
+
+import java.io.Serializable;
+
+/**
+ * Settings of the elastic mode: when agents are saturated the controller deploys additional agents during the run
+ * and re-partitions the arrival rate of open-model phases among all agents.
+ */
+public class ElasticConfig implements Serializable {
+   public static final ElasticConfig DISABLED = new ElasticConfig(0, 20, 0.9, 3, 10_000, 5_000);
+
+   private final int maxAgents;
+   private final long maxSchedulingLag;
+   private final double maxBusyRatio;
+   private final int saturatedSamples;
+   private final long cooldown;
+   private final long minRemainingDuration;
+
+   public ElasticConfig(int maxAgents, long maxSchedulingLag, double maxBusyRatio, int saturatedSamples, long cooldown, long minRemainingDuration) {
+      this.maxAgents = maxAgents;
+      this.maxSchedulingLag = maxSchedulingLag;
+      this.maxBusyRatio = maxBusyRatio;
+      this.saturatedSamples = saturatedSamples;
+      this.cooldown = cooldown;
+      this.minRemainingDuration = minRemainingDuration;
+   }
+
+   /**
+    * @param declaredAgents Number of agents declared in the benchmark.
+    * @return True if the controller can add any agents.
+    */
+   public boolean isEnabled(int declaredAgents) {
+      return declaredAgents > 0 && maxAgents > declaredAgents;
+   }
+
+   /**
+    * @return Maximum number of agents including those declared in the benchmark.
+    */
+   public int maxAgents() {
+      return maxAgents;
+   }
+
+   /**
+    * @return Scheduling lag in milliseconds above which the agent is considered saturated.
+    */
+   public long maxSchedulingLag() {
+      return maxSchedulingLag;
+   }
+
+   /**
+    * @return Ratio of CPU time used by event loops above which the agent is considered saturated; negative value disables this check.
+    */
+   public double maxBusyRatio() {
+      return maxBusyRatio;
+   }
+
+   /**
+    * @return Number of consecutive statistics samples that must report saturation to add an agent.
+    */
+   public int saturatedSamples() {
+      return saturatedSamples;
+   }
+
+   /**
+    * @return Minimum time in milliseconds between adding two agents.
+    */
+   public long cooldown() {
+      return cooldown;
+   }
+
+   /**
+    * @return Agents are not added when running open-model phases would finish in less than this (milliseconds).
+    */
+   public long minRemainingDuration() {
+      return minRemainingDuration;
+   }
+}
@@ -0,0 +1,104 @@
+package io.hyperfoil.api.config;
+
+import io.hyperfoil.util.Util;
+
+public class ElasticConfigBuilder {
+   private final BenchmarkBuilder parent;
+   private int maxAgents = ElasticConfig.DISABLED.maxAgents();
+   private long maxSchedulingLag = ElasticConfig.DISABLED.maxSchedulingLag();
+   private double maxBusyRatio = ElasticConfig.DISABLED.maxBusyRatio();
+   private int saturatedSamples = ElasticConfig.DISABLED.saturatedSamples();
+   private long cooldown = ElasticConfig.DISABLED.cooldown();
+   private long minRemainingDuration = ElasticConfig.DISABLED.minRemainingDuration();
+
+   ElasticConfigBuilder(BenchmarkBuilder parent) {
+      this.parent = parent;
+   }
+
+   /**
+    * Maximum number of agents, including those declared in the benchmark. Additional agents use the settings
+    * of the declared agents (in round-robin fashion) and are started through the configured deployer.
+    *
+    * @param maxAgents Number of agents.
+    * @return Self.
+    */
+   public ElasticConfigBuilder maxAgents(int maxAgents) {
+      this.maxAgents = maxAgents;
+      return this;
+   }
+
+   /**
+    * Agent is considered saturated when the event loops or new users in open-model phases are delayed more than this.
+    *
+    * @param maxSchedulingLag Maximum lag, e.g. <code>20 ms</code>.
+    * @return Self.
+    */
+   public ElasticConfigBuilder maxSchedulingLag(String maxSchedulingLag) {
+      return maxSchedulingLag(Util.parseToMillis(maxSchedulingLag));
+   }
+
+   public ElasticConfigBuilder maxSchedulingLag(long maxSchedulingLag) {
+      this.maxSchedulingLag = maxSchedulingLag;
+      return this;
+   }
+
+   /**
+    * Agent is considered saturated when its event loops use more CPU time than this ratio of wall-clock time.
+    *
+    * @param maxBusyRatio Ratio between 0 and 1; negative value disables this check. Default is <code>0.9</code>.
+    * @return Self.
+    */
+   public ElasticConfigBuilder maxBusyRatio(double maxBusyRatio) {
+      this.maxBusyRatio = maxBusyRatio;
+      return this;
+   }
+
+   /**
+    * @param saturatedSamples Number of consecutive statistics samples reporting saturation before an agent is added.
+    * @return Self.
+    */
+   public ElasticConfigBuilder saturatedSamples(int saturatedSamples) {
+      this.saturatedSamples = saturatedSamples;
+      return this;
+   }
+
+   /**
+    * @param cooldown Minimum delay between adding two agents, e.g. <code>10 s</code>.
+    * @return Self.
+    */
+   public ElasticConfigBuilder cooldown(String cooldown) {
+      return cooldown(Util.parseToMillis(cooldown));
+   }
+
+   public ElasticConfigBuilder cooldown(long cooldown) {
+      this.cooldown = cooldown;
+      return this;
+   }
+
+   /**
+    * @param minRemainingDuration Agents are not added when the running phases are about to finish, e.g. <code>5 s</code>.
+    * @return Self.
+    */
+   public ElasticConfigBuilder minRemainingDuration(String minRemainingDuration) {
+      return minRemainingDuration(Util.parseToMillis(minRemainingDuration));
+   }
+
+   public ElasticConfigBuilder minRemainingDuration(long minRemainingDuration) {
+      this.minRemainingDuration = minRemainingDuration;
+      return this;
+   }
+
+   public BenchmarkBuilder endElastic() {
+      return parent;
+   }
+
+   public ElasticConfig build() {
+      if (maxAgents > 0 && parent.numAgents() == 0) {
+         throw new BenchmarkDefinitionException("Elastic mode requires agents declared in the benchmark.");
+      }
+      if (saturatedSamples < 1) {
+         throw new BenchmarkDefinitionException("Number of saturated samples must be positive, got " + saturatedSamples);
+      }
+      return new ElasticConfig(maxAgents, maxSchedulingLag, maxBusyRatio, saturatedSamples, cooldown, minRemainingDuration);
+   }
+}
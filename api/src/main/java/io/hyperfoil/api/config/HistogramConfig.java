@@ -0,0 +1,59 @@
+package io.hyperfoil.api.config;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Range and precision of response time histograms.
+ */
+public class HistogramConfig implements Serializable {
+   public static final HistogramConfig DEFAULT = new HistogramConfig(TimeUnit.MINUTES.toNanos(1), 2, false);
+
+   private final long highestTrackableValue;
+   private final int significantDigits;
+   private final boolean autoResize;
+
+   public HistogramConfig(long highestTrackableValue, int significantDigits, boolean autoResize) {
+      this.highestTrackableValue = highestTrackableValue;
+      this.significantDigits = significantDigits;
+      this.autoResize = autoResize;
+   }
+
+   /**
+    * @return Highest value (in nanoseconds) that can be recorded; higher values are clamped unless auto-resizing.
+    */
+   public long highestTrackableValue() {
+      return highestTrackableValue;
+   }
+
+   public int significantDigits() {
+      return significantDigits;
+   }
+
+   public boolean autoResize() {
+      return autoResize;
+   }
+
+   public Histogram newHistogram() {
+      Histogram histogram = new Histogram(highestTrackableValue, significantDigits);
+      histogram.setAutoResize(autoResize);
+      return histogram;
+   }
+
+   /**
+    * Note that auto-resizing histograms can grow beyond this estimate.
+    *
+    * @return Memory used by single histogram, in bytes.
+    */
+   public int estimatedFootprint() {
+      return newHistogram().getEstimatedFootprintInBytes();
+   }
+
+   @Override
+   public String toString() {
+      return "range " + highestTrackableValue + " ns, " + significantDigits + " significant digits" +
+            (autoResize ? ", auto-resize" : "");
+   }
+}
@@ -0,0 +1,69 @@
+package io.hyperfoil.api.config;
+
+import io.hyperfoil.util.Util;
+
+public class HistogramConfigBuilder {
+   private final StatisticsConfigBuilder parent;
+   private Long highestTrackableValue;
+   private Integer significantDigits;
+   private Boolean autoResize;
+
+   HistogramConfigBuilder(StatisticsConfigBuilder parent) {
+      this.parent = parent;
+   }
+
+   /**
+    * Highest response time that can be recorded in the histogram; slower responses are clamped to this value.
+    * Default is <code>1m</code>.
+    *
+    * @param range Duration, e.g. <code>10m</code>.
+    * @return Self.
+    */
+   public HistogramConfigBuilder range(String range) {
+      return highestTrackableValue(Util.parseToNanos(range));
+   }
+
+   public HistogramConfigBuilder highestTrackableValue(long highestTrackableValue) {
+      if (highestTrackableValue < 2) {
+         throw new BenchmarkDefinitionException("Histogram range is too low: " + highestTrackableValue + " ns");
+      }
+      this.highestTrackableValue = highestTrackableValue;
+      return this;
+   }
+
+   /**
+    * Number of significant decimal digits kept in the histogram (0 - 5). Default is <code>2</code>.
+    *
+    * @param significantDigits Number of digits.
+    * @return Self.
+    */
+   public HistogramConfigBuilder significantDigits(int significantDigits) {
+      if (significantDigits < 0 || significantDigits > 5) {
+         throw new BenchmarkDefinitionException("Number of significant digits must be between 0 and 5, got " + significantDigits);
+      }
+      this.significantDigits = significantDigits;
+      return this;
+   }
+
+   /**
+    * Grow the histogram instead of clamping values exceeding the range. Default is <code>false</code>.
+    *
+    * @param autoResize Auto-resize?
+    * @return Self.
+    */
+   public HistogramConfigBuilder autoResize(boolean autoResize) {
+      this.autoResize = autoResize;
+      return this;
+   }
+
+   public StatisticsConfigBuilder end() {
+      return parent;
+   }
+
+   HistogramConfig build(HistogramConfig defaults) {
+      return new HistogramConfig(
+            highestTrackableValue == null ? defaults.highestTrackableValue() : highestTrackableValue,
+            significantDigits == null ? defaults.significantDigits() : significantDigits,
+            autoResize == null ? defaults.autoResize() : autoResize);
+   }
+}
@@ -31,13 +31,16 @@ public class SLA implements Serializable {
    private final long meanResponseTime;
    private final double blockedRatio;
    private final Collection<PercentileLimit> limits;
+   private final boolean abortOnFailure;
 
-   public SLA(long window, double errorRatio, long meanResponseTime, double blockedRatio, Collection<PercentileLimit> limits) {
+   public SLA(long window, double errorRatio, long meanResponseTime, double blockedRatio, Collection<PercentileLimit> limits,
+              boolean abortOnFailure) {
       this.window = window;
       this.meanResponseTime = meanResponseTime;
       this.errorRatio = errorRatio;
       this.blockedRatio = blockedRatio;
       this.limits = limits;
+      this.abortOnFailure = abortOnFailure;
    }
 
    public long window() {
@@ -60,6 +63,13 @@ public class SLA implements Serializable {
       return Collections.unmodifiableCollection(limits);
    }
 
+   /**
+    * @return True if the phase should be terminated as soon as this (windowed) SLA fails.
+    */
+   public boolean abortOnFailure() {
+      return abortOnFailure;
+   }
+
    public SLA.Failure validate(String phase, String metric, StatisticsSnapshot statistics) {
       double actualErrorRatio = (double) statistics.errors() / statistics.requestCount;
       if (actualErrorRatio >= errorRatio) {
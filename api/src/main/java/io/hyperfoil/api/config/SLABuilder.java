@@ -16,6 +16,7 @@ public class SLABuilder<P> implements Rewritable<SLABuilder<P>> {
    private long meanResponseTime = Long.MAX_VALUE;
    private final Collection<SLA.PercentileLimit> limits = new ArrayList<>();
    private double blockedRatio = 0; // do not allow blocking
+   private boolean abortOnFailure;
    private SLA sla;
 
    public SLABuilder(P parent) {
@@ -29,7 +30,7 @@ public class SLABuilder<P> implements Rewritable<SLABuilder<P>> {
       if (sla != null) {
          return sla;
       }
-      return sla = new SLA(window, errorRatio, meanResponseTime, blockedRatio, limits);
+      return sla = new SLA(window, errorRatio, meanResponseTime, blockedRatio, limits, abortOnFailure);
    }
 
    public P endSLA() {
@@ -89,6 +90,19 @@ public class SLABuilder<P> implements Rewritable<SLABuilder<P>> {
       return this;
    }
 
+   /**
+    * Terminate the phase as soon as the SLA fails rather than when the phase completes. Applies only to SLAs
+    * with a window; agents check the SLA on their share of the load, too, and abort without waiting
+    * for the controller to merge statistics from all agents.
+    *
+    * @param abortOnFailure Abort the phase on failure.
+    * @return Self.
+    */
+   public SLABuilder<P> abortOnFailure(boolean abortOnFailure) {
+      this.abortOnFailure = abortOnFailure;
+      return this;
+   }
+
    /**
     * Percentile limits.
     *
@@ -104,6 +118,7 @@ public class SLABuilder<P> implements Rewritable<SLABuilder<P>> {
       errorRatio = other.errorRatio;
       meanResponseTime = other.meanResponseTime;
       blockedRatio = other.blockedRatio;
+      abortOnFailure = other.abortOnFailure;
       limits.clear();
       limits.addAll(limits);
    }
@@ -0,0 +1,68 @@
+package io.hyperfoil.api.config;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+public class StatisticsConfig implements Serializable {
+   public static final long COARSE_PERIOD = 1000;
+   public static final long MIN_SAMPLING_PERIOD = 100;
+   public static final long DEFAULT_FINE_RETENTION = 60_000;
+   public static final StatisticsConfig DEFAULT = new StatisticsConfig(HistogramConfig.DEFAULT, Collections.emptyMap(), -1,
+         COARSE_PERIOD, DEFAULT_FINE_RETENTION);
+
+   private final HistogramConfig histogram;
+   private final Map<String, HistogramConfig> metricHistograms;
+   private final long maxSchedulingLag;
+   private final long samplingPeriod;
+   private final long fineRetention;
+
+   public StatisticsConfig(HistogramConfig histogram, Map<String, HistogramConfig> metricHistograms, long maxSchedulingLag,
+                           long samplingPeriod, long fineRetention) {
+      this.histogram = histogram;
+      this.metricHistograms = metricHistograms;
+      this.maxSchedulingLag = maxSchedulingLag;
+      this.samplingPeriod = samplingPeriod;
+      this.fineRetention = fineRetention;
+   }
+
+   public HistogramConfig histogram() {
+      return histogram;
+   }
+
+   public HistogramConfig histogram(String metric) {
+      return metricHistograms.getOrDefault(metric, histogram);
+   }
+
+   public Map<String, HistogramConfig> metricHistograms() {
+      return metricHistograms;
+   }
+
+   /**
+    * @return Maximum delay of scheduled tasks on agents in milliseconds, or negative value if not checked.
+    */
+   public long maxSchedulingLag() {
+      return maxSchedulingLag;
+   }
+
+   /**
+    * @return Duration of one statistics sample (the resolution of series) in milliseconds; divides {@link #COARSE_PERIOD}.
+    */
+   public long samplingPeriod() {
+      return samplingPeriod;
+   }
+
+   /**
+    * @return Number of samples merged into one coarse (one second) sample.
+    */
+   public int samplesPerCoarsePeriod() {
+      return (int) (COARSE_PERIOD / samplingPeriod);
+   }
+
+   /**
+    * @return How long (in milliseconds) are the sub-second samples retained before these are merged into one-second samples.
+    */
+   public long fineRetention() {
+      return fineRetention;
+   }
+}
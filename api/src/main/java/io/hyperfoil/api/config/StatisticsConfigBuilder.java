@@ -0,0 +1,106 @@
+package io.hyperfoil.api.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.hyperfoil.util.Util;
+
+public class StatisticsConfigBuilder {
+   private final BenchmarkBuilder parent;
+   private final HistogramConfigBuilder histogram = new HistogramConfigBuilder(this);
+   private final Map<String, HistogramConfigBuilder> metrics = new HashMap<>();
+   private long maxSchedulingLag = -1;
+   private long samplingPeriod = StatisticsConfig.COARSE_PERIOD;
+   private long fineRetention = StatisticsConfig.DEFAULT_FINE_RETENTION;
+
+   StatisticsConfigBuilder(BenchmarkBuilder parent) {
+      this.parent = parent;
+   }
+
+   /**
+    * Histogram settings used for all metrics unless overridden.
+    *
+    * @return Builder.
+    */
+   public HistogramConfigBuilder histogram() {
+      return histogram;
+   }
+
+   /**
+    * Override histogram settings for a metric. Settings not set here are inherited from {@link #histogram()}.
+    *
+    * @param metric Metric name.
+    * @return Builder.
+    */
+   public HistogramConfigBuilder metric(String metric) {
+      return metrics.computeIfAbsent(metric, m -> new HistogramConfigBuilder(this));
+   }
+
+   /**
+    * When the event loops on an agent run scheduled tasks (e.g. new user arrivals) later than this, the agent
+    * is considered saturated and the results measure the load generator rather than the tested system.
+    * This is reported as a failure of running phases, similar to failed SLA.
+    *
+    * @param maxSchedulingLag Maximum lag, e.g. <code>50 ms</code>.
+    * @return Self.
+    */
+   public StatisticsConfigBuilder maxSchedulingLag(String maxSchedulingLag) {
+      return maxSchedulingLag(Util.parseToMillis(maxSchedulingLag));
+   }
+
+   public StatisticsConfigBuilder maxSchedulingLag(long maxSchedulingLag) {
+      this.maxSchedulingLag = maxSchedulingLag;
+      return this;
+   }
+
+   /**
+    * Duration of one statistics sample; this is the resolution of the series. Periods shorter than one second
+    * must divide the second evenly (e.g. <code>100 ms</code>, <code>250 ms</code>, <code>500 ms</code>).
+    *
+    * @param samplingPeriod Period, e.g. <code>100 ms</code>. Default is <code>1 s</code>.
+    * @return Self.
+   */
+   public StatisticsConfigBuilder samplingPeriod(String samplingPeriod) {
+      return samplingPeriod(Util.parseToMillis(samplingPeriod));
+   }
+
+   public StatisticsConfigBuilder samplingPeriod(long samplingPeriod) {
+      this.samplingPeriod = samplingPeriod;
+      return this;
+   }
+
+   /**
+    * With sub-second sampling period the fine samples are kept only for this duration; older samples are merged
+    * into one-second samples to keep memory usage bounded during long runs.
+    *
+    * @param fineRetention Duration, e.g. <code>5 m</code>. Default is <code>1 m</code>.
+    * @return Self.
+    */
+   public StatisticsConfigBuilder fineRetention(String fineRetention) {
+      return fineRetention(Util.parseToMillis(fineRetention));
+   }
+
+   public StatisticsConfigBuilder fineRetention(long fineRetention) {
+      this.fineRetention = fineRetention;
+      return this;
+   }
+
+   public BenchmarkBuilder endStatistics() {
+      return parent;
+   }
+
+   public StatisticsConfig build() {
+      HistogramConfig defaultHistogram = histogram.build(HistogramConfig.DEFAULT);
+      Map<String, HistogramConfig> metricHistograms = new HashMap<>();
+      metrics.forEach((metric, builder) -> metricHistograms.put(metric, builder.build(defaultHistogram)));
+      if (samplingPeriod < StatisticsConfig.MIN_SAMPLING_PERIOD || samplingPeriod > StatisticsConfig.COARSE_PERIOD
+            || StatisticsConfig.COARSE_PERIOD % samplingPeriod != 0) {
+         throw new BenchmarkDefinitionException("Sampling period must be between " + StatisticsConfig.MIN_SAMPLING_PERIOD +
+               " and " + StatisticsConfig.COARSE_PERIOD + " ms and divide one second evenly, got " + samplingPeriod + " ms");
+      }
+      if (fineRetention < StatisticsConfig.COARSE_PERIOD) {
+         throw new BenchmarkDefinitionException("Fine samples retention must be at least one second, got " + fineRetention + " ms");
+      }
+      return new StatisticsConfig(defaultHistogram, metricHistograms, maxSchedulingLag, samplingPeriod, fineRetention);
+   }
+}
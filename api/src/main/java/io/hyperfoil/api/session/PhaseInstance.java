@@ -17,6 +17,24 @@ public interface PhaseInstance {
 
    void start(EventExecutorGroup executorGroup);
 
+   /**
+    * Starts the phase as if it was started at given time; this is used when the agent joins a phase
+    * that is already running on other agents. Open-model phases continue with the arrival rate
+    * at that point of the phase rather than catching up with users that would have been started so far.
+    *
+    * @param executorGroup Executors.
+    * @param startTime Timestamp when the phase was started (on other agents).
+    */
+   void start(EventExecutorGroup executorGroup, long startTime);
+
+   /**
+    * Scales the arrival rate of open-model phases, e.g. when the load is re-partitioned among more agents.
+    * Other phases ignore this.
+    *
+    * @param rateFactor Multiplier of the rate in phase definition.
+    */
+   void setRateFactor(double rateFactor);
+
    void finish();
 
    void tryTerminate();
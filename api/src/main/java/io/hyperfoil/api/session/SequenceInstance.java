@@ -66,6 +66,20 @@ public class SequenceInstance {
       return name;
    }
 
+   /**
+    * @return Index of the step that is being executed (or the step count if the sequence is completed).
+    */
+   public int currentStep() {
+      return currentStep;
+   }
+
+   /**
+    * @return True if the sequence waits for a free connection.
+    */
+   public boolean isBlocked() {
+      return blockedTimestamp != Long.MIN_VALUE;
+   }
+
    public void setBlockedTimestamp() {
       blockedTimestamp = System.nanoTime();
    }
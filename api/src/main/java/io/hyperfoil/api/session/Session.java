@@ -1,5 +1,7 @@
 package io.hyperfoil.api.session;
 
+import java.util.function.Consumer;
+
 import io.hyperfoil.api.config.Scenario;
 import io.hyperfoil.api.connection.HttpDestinationTable;
 import io.hyperfoil.api.connection.HttpRequest;
@@ -55,6 +57,14 @@ public interface Session {
 
    SequenceInstance currentSequence();
 
+   /**
+    * Invokes the consumer with each sequence the session is running. When this is not called from the session's
+    * executor the result is only an estimate.
+    *
+    * @param consumer Sequence consumer.
+    */
+   void visitRunningSequences(Consumer<SequenceInstance> consumer);
+
    void attach(EventExecutor executor, SharedData sharedData, HttpDestinationTable httpDestinations, SessionStatistics statistics);
 
    void start(PhaseInstance phase);
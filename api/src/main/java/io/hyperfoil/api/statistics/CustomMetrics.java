@@ -0,0 +1,67 @@
+package io.hyperfoil.api.statistics;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.hyperfoil.api.config.BenchmarkDefinitionException;
+
+/**
+ * Custom metrics registered while the benchmark is being built. Each metric receives an integer handle
+ * that is used to record into the primitive slots in {@link StatisticsSnapshot}; the handles are part
+ * of the (serialized) benchmark and therefore are the same on controller and all agents.
+ */
+public class CustomMetrics implements Serializable {
+   private final List<String> names = new ArrayList<>();
+   private final List<Kind> kinds = new ArrayList<>();
+
+   /**
+    * Registers a new custom metric or returns handle to already registered metric with the same name.
+    *
+    * @param name Name of the metric, as presented in the custom stats.
+    * @param kind Type of the metric.
+    * @return Handle used to record the values.
+    */
+   public synchronized int register(String name, Kind kind) {
+      if (name == null || name.isEmpty()) {
+         throw new BenchmarkDefinitionException("Custom metric must have a name.");
+      }
+      int index = names.indexOf(name);
+      if (index >= 0) {
+         if (kinds.get(index) != kind) {
+            throw new BenchmarkDefinitionException("Custom metric '" + name + "' is already registered as " + kinds.get(index) + ", cannot use it as " + kind);
+         }
+         return index;
+      }
+      names.add(name);
+      kinds.add(kind);
+      return names.size() - 1;
+   }
+
+   public synchronized int size() {
+      return names.size();
+   }
+
+   public synchronized String name(int handle) {
+      return names.get(handle);
+   }
+
+   public synchronized Kind kind(int handle) {
+      return kinds.get(handle);
+   }
+
+   public enum Kind {
+      /**
+       * Number of occurrences.
+       */
+      COUNTER,
+      /**
+       * Sum of recorded values.
+       */
+      SUM,
+      /**
+       * Distribution of recorded values.
+       */
+      HISTOGRAM
+   }
+}
@@ -7,6 +7,7 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 
 import io.hyperfoil.api.config.Phase;
+import io.hyperfoil.api.config.StatisticsConfig;
 import io.hyperfoil.api.session.Session;
 
 /**
@@ -30,7 +31,7 @@ public class SessionStatistics {
          if (stepIds[i] == stepId && phases[i] == phase) {
             Statistics s = maps[i].get(name);
             if (s == null) {
-               s = new Statistics(startTime);
+               s = newStatistics(phase, name, startTime);
                maps[i].put(name, s);
             }
             return s;
@@ -44,7 +45,7 @@ public class SessionStatistics {
 
       phases[size] = phase;
       stepIds[size] = stepId;
-      Statistics s = new Statistics(startTime);
+      Statistics s = newStatistics(phase, name, startTime);
       HashMap<String, Statistics> map = new HashMap<>();
       map.put(name, s);
       maps[size] = map;
@@ -52,6 +53,11 @@ public class SessionStatistics {
       return s;
    }
 
+   private static Statistics newStatistics(Phase phase, String name, long startTime) {
+      StatisticsConfig config = phase.benchmark().statistics();
+      return new Statistics(startTime, config.histogram(name), config.samplingPeriod());
+   }
+
    public int size() {
       return size;
    }
@@ -9,6 +9,7 @@ import java.util.function.Supplier;
 import org.HdrHistogram.SingleWriterRecorder;
 import org.HdrHistogram.WriterReaderPhaser;
 
+import io.hyperfoil.api.config.HistogramConfig;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 
@@ -18,7 +19,9 @@ import io.vertx.core.logging.LoggerFactory;
  */
 public class Statistics {
    private static final Logger log = LoggerFactory.getLogger(Statistics.class);
-   private static final long SAMPLING_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(1);
+   private static final long DEFAULT_SAMPLING_PERIOD = TimeUnit.SECONDS.toMillis(1);
+   // Keep space for samples this far ahead of the last recorded one
+   private static final long LOOKAHEAD_MILLIS = TimeUnit.SECONDS.toMillis(4);
 
    private static final AtomicIntegerFieldUpdater<Statistics> LU1 =
          AtomicIntegerFieldUpdater.newUpdater(Statistics.class, "lowestActive1");
@@ -26,10 +29,13 @@ public class Statistics {
          AtomicIntegerFieldUpdater.newUpdater(Statistics.class, "lowestActive2");
 
    private final WriterReaderPhaser recordingPhaser = new WriterReaderPhaser();
+   private final HistogramConfig histogramConfig;
    private final long highestTrackableValue;
-   // We'll start making space 4 samples (seconds) ahead; in case the readers fall behind the schedule
+   private final long samplingPeriod;
+   private final int lookahead;
+   // We'll start making space 4 seconds ahead; in case the readers fall behind the schedule
    // this will help to keep the active array always big enough.
-   private int numSamples = 4;
+   private int numSamples;
 
    @SuppressWarnings("unused")
    private volatile int lowestActive1;
@@ -43,26 +49,47 @@ public class Statistics {
    private long startTimestamp;
    private long endTimestamp = Long.MAX_VALUE;
    private int lastLowestIndex;
+   // Sequence ID of the sample at index 0
+   private int sequenceOffset;
 
    public Statistics(long startTimestamp) {
-      this.startTimestamp = startTimestamp;
-      active = new AtomicReferenceArray<>(16);
-      inactive = new AtomicReferenceArray<>(16);
-      StatisticsSnapshot first = new StatisticsSnapshot();
-      first.sequenceId = 0;
+      this(startTimestamp, HistogramConfig.DEFAULT);
+   }
+
+   public Statistics(long startTimestamp, HistogramConfig histogramConfig) {
+      this(startTimestamp, histogramConfig, DEFAULT_SAMPLING_PERIOD);
+   }
+
+   /**
+    * @param startTimestamp Start of the first sample.
+    * @param histogramConfig Settings of the response time histograms.
+    * @param samplingPeriod Duration of one sample in milliseconds.
+    */
+   public Statistics(long startTimestamp, HistogramConfig histogramConfig, long samplingPeriod) {
+      this.histogramConfig = histogramConfig;
+      this.samplingPeriod = samplingPeriod;
+      alignStart(startTimestamp);
+      this.lookahead = (int) Math.max(1, LOOKAHEAD_MILLIS / samplingPeriod);
+      this.numSamples = lookahead;
+      int capacity = 4 * lookahead <= 16 ? 16 : Integer.highestOneBit(4 * lookahead - 1) << 1;
+      active = new AtomicReferenceArray<>(capacity);
+      inactive = new AtomicReferenceArray<>(capacity);
+      StatisticsSnapshot first = new StatisticsSnapshot(histogramConfig);
+      first.sequenceId = sequenceOffset;
       active.set(0, first);
-      highestTrackableValue = first.histogram.getHighestTrackableValue();
+      highestTrackableValue = histogramConfig.autoResize() ? Long.MAX_VALUE : first.histogram.getHighestTrackableValue();
    }
 
    public void recordResponse(long startTimestamp, long sendTime, long responseTime) {
-      if (responseTime > highestTrackableValue) {
-         // we don't use auto-resize histograms
-         log.warn("Response time {} exceeded maximum trackable response time {}", responseTime, highestTrackableValue);
-         responseTime = highestTrackableValue;
-      }
       long criticalValueAtEnter = recordingPhaser.writerCriticalSectionEnter();
       try {
          StatisticsSnapshot active = active(startTimestamp);
+         if (responseTime > highestTrackableValue) {
+            // Logging here would only make things worse when the system under test is slow;
+            // the overflows are reported when the statistics are collected.
+            responseTime = highestTrackableValue;
+            active.histogramOverflows++;
+         }
          active.histogram.recordValue(responseTime);
          active.totalSendTime += sendTime;
          active.responseCount++;
@@ -146,6 +173,45 @@ public class Statistics {
       }
    }
 
+   /**
+    * Adds value to the counter or sum registered in {@link CustomMetrics}.
+    *
+    * @param timestamp Timestamp used to select the sample.
+    * @param handle Handle of the custom metric.
+    * @param value Increment.
+    */
+   public void addCustom(long timestamp, int handle, long value) {
+      long criticalValueAtEnter = recordingPhaser.writerCriticalSectionEnter();
+      try {
+         StatisticsSnapshot active = active(timestamp);
+         active.addCustom(handle, value);
+      } finally {
+         recordingPhaser.writerCriticalSectionExit(criticalValueAtEnter);
+      }
+   }
+
+   /**
+    * Records non-negative value into histogram registered in {@link CustomMetrics}.
+    *
+    * @param timestamp Timestamp used to select the sample.
+    * @param handle Handle of the custom metric.
+    * @param value Recorded value.
+    */
+   public void recordCustom(long timestamp, int handle, long value) {
+      long criticalValueAtEnter = recordingPhaser.writerCriticalSectionEnter();
+      try {
+         StatisticsSnapshot active = active(timestamp);
+         active.recordCustom(handle, value);
+      } finally {
+         recordingPhaser.writerCriticalSectionExit(criticalValueAtEnter);
+      }
+   }
+
+   /**
+    * Custom values keyed by arbitrary objects; this should be used only when the set of keys is not known
+    * when the benchmark is built. Otherwise register the metric in {@link CustomMetrics} and use
+    * {@link #addCustom(long, int, long)} or {@link #recordCustom(long, int, long)}.
+    */
    @SuppressWarnings("unchecked")
    public <T extends CustomValue> T getCustom(long timestamp, Object key, Supplier<T> identitySupplier) {
       long criticalValueAtEnter = recordingPhaser.writerCriticalSectionEnter();
@@ -186,8 +252,10 @@ public class Statistics {
       try {
          recordingPhaser.readerLock();
 
-         if (++numSamples >= inactive.length()) {
-            AtomicReferenceArray<StatisticsSnapshot> temp = new AtomicReferenceArray<>(inactive.length() * 2);
+         // With sub-second sampling period more than one sample passes between two visits
+         numSamples = Math.max(numSamples + 1, highestActive + lookahead);
+         if (numSamples >= inactive.length()) {
+            AtomicReferenceArray<StatisticsSnapshot> temp = new AtomicReferenceArray<>(Integer.highestOneBit(numSamples) << 1);
             for (int i = lastLowestIndex; i < inactive.length(); ++i) {
                temp.set(i, inactive.get(i));
             }
@@ -237,8 +305,8 @@ public class Statistics {
          } else if (snapshot.isEmpty()) {
             array.set(i, null);
          } else {
-            snapshot.histogram.setStartTimeStamp(startTimestamp + i * SAMPLING_PERIOD_MILLIS);
-            snapshot.histogram.setEndTimeStamp(Math.min(endTimestamp, startTimestamp + (i + 1) * SAMPLING_PERIOD_MILLIS));
+            snapshot.histogram.setStartTimeStamp(startTimestamp + i * samplingPeriod);
+            snapshot.histogram.setEndTimeStamp(Math.min(endTimestamp, startTimestamp + (i + 1) * samplingPeriod));
             consumer.accept(snapshot);
             snapshot.reset();
          }
@@ -248,13 +316,37 @@ public class Statistics {
    public void start(long now) {
       recordingPhaser.readerLock();
       try {
-         startTimestamp = now;
+         alignStart(now);
          endTimestamp = Long.MAX_VALUE;
+         // Snapshots are reused after the arrays are swapped; both arrays must follow the new offset
+         realignSequenceIds(active);
+         realignSequenceIds(inactive);
       } finally {
          recordingPhaser.readerUnlock();
       }
    }
 
+   private void realignSequenceIds(AtomicReferenceArray<StatisticsSnapshot> array) {
+      for (int i = 0; i < array.length(); ++i) {
+         StatisticsSnapshot snapshot = array.get(i);
+         if (snapshot != null) {
+            snapshot.sequenceId = sequenceOffset + i;
+         }
+      }
+   }
+
+   /**
+    * When the statistics start in the middle of a phase (e.g. the agent joined a running phase, or the metric
+    * is recorded for the first time) we skip the samples that have already passed. This keeps the indices
+    * into the arrays low while the sequence IDs stay aligned with other agents. One passed sample is kept
+    * for records with slightly older timestamps.
+    */
+   private void alignStart(long startTimestamp) {
+      long elapsed = System.currentTimeMillis() - startTimestamp;
+      sequenceOffset = elapsed < 2 * samplingPeriod ? 0 : (int) (elapsed / samplingPeriod) - 1;
+      this.startTimestamp = startTimestamp + sequenceOffset * samplingPeriod;
+   }
+
    public void end(long now) {
       recordingPhaser.readerLock();
       try {
@@ -265,7 +357,7 @@ public class Statistics {
    }
 
    private StatisticsSnapshot active(long timestamp) {
-      int index = (int) ((timestamp - startTimestamp) / SAMPLING_PERIOD_MILLIS);
+      int index = (int) ((timestamp - startTimestamp) / samplingPeriod);
       AtomicReferenceArray<StatisticsSnapshot> active = this.active;
       if (index >= active.length()) {
          index = active.length() - 1;
@@ -275,8 +367,8 @@ public class Statistics {
       }
       StatisticsSnapshot snapshot = active.get(index);
       if (snapshot == null) {
-         snapshot = new StatisticsSnapshot();
-         snapshot.sequenceId = index;
+         snapshot = new StatisticsSnapshot(histogramConfig);
+         snapshot.sequenceId = sequenceOffset + index;
          active.set(index, snapshot);
       }
       lowestActiveUpdater.accumulateAndGet(this, index, Math::min);
@@ -1,20 +1,26 @@
 package io.hyperfoil.api.statistics;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.DoubleStream;
 
 import org.HdrHistogram.Histogram;
 
+import io.hyperfoil.api.config.HistogramConfig;
+
 /**
  * Non-thread safe mutable set of values.
  */
 public class StatisticsSnapshot implements Serializable {
+   private static final long[] NO_VALUES = new long[0];
+   private static final Histogram[] NO_HISTOGRAMS = new Histogram[0];
+
    public int sequenceId = -1;
-   public final Histogram histogram = new Histogram(TimeUnit.MINUTES.toNanos(1), 2);
+   // Not final: when merging snapshots with different histogram settings we might need to replace this
+   public Histogram histogram;
    public long totalSendTime;
    public int connectFailureCount;
    public int requestCount;
@@ -30,7 +36,21 @@ public class StatisticsSnapshot implements Serializable {
    public int timeouts;
    public int blockedCount;
    public long blockedTime;
+   // Number of responses with response time exceeding histogram range (recorded as the highest trackable value)
+   public int histogramOverflows;
    public final Map<Object, CustomValue> custom = new HashMap<>();
+   // Counters and sums registered in CustomMetrics, indexed by the handle
+   public long[] customValues = NO_VALUES;
+   // Histograms registered in CustomMetrics, indexed by the handle; null for other kinds
+   public Histogram[] customHistograms = NO_HISTOGRAMS;
+
+   public StatisticsSnapshot() {
+      this(HistogramConfig.DEFAULT);
+   }
+
+   public StatisticsSnapshot(HistogramConfig histogramConfig) {
+      histogram = histogramConfig.newHistogram();
+   }
 
    public int[] statuses() {
       return new int[]{ status_2xx, status_3xx, status_4xx, status_5xx, status_other };
@@ -40,7 +60,50 @@ public class StatisticsSnapshot implements Serializable {
       return connectFailureCount + requestCount + responseCount +
             status_2xx + status_3xx + status_4xx + status_5xx + status_other +
             invalid + cacheHits + resetCount + timeouts + blockedCount == 0 &&
-            custom.values().stream().allMatch(CustomValue::isNull);
+            custom.values().stream().allMatch(CustomValue::isNull) &&
+            customSlotsEmpty();
+   }
+
+   private boolean customSlotsEmpty() {
+      for (long value : customValues) {
+         if (value != 0) {
+            return false;
+         }
+      }
+      for (Histogram h : customHistograms) {
+         if (h != null && h.getTotalCount() != 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   public void addCustom(int handle, long value) {
+      if (handle >= customValues.length) {
+         customValues = Arrays.copyOf(customValues, handle + 1);
+      }
+      customValues[handle] += value;
+   }
+
+   public void recordCustom(int handle, long value) {
+      customHistogram(handle).recordValue(value);
+   }
+
+   public long customValue(int handle) {
+      return handle < customValues.length ? customValues[handle] : 0;
+   }
+
+   public Histogram customHistogram(int handle) {
+      if (handle >= customHistograms.length) {
+         customHistograms = Arrays.copyOf(customHistograms, handle + 1);
+      }
+      Histogram h = customHistograms[handle];
+      if (h == null) {
+         // We don't know the range upfront
+         h = new Histogram(2);
+         customHistograms[handle] = h;
+      }
+      return h;
    }
 
    public void reset() {
@@ -60,11 +123,18 @@ public class StatisticsSnapshot implements Serializable {
       timeouts = 0;
       blockedCount = 0;
       blockedTime = 0;
+      histogramOverflows = 0;
       for (CustomValue value : custom.values()) {
          if (value != null) {
             value.reset();
          }
       }
+      Arrays.fill(customValues, 0);
+      for (Histogram h : customHistograms) {
+         if (h != null) {
+            h.reset();
+         }
+      }
    }
 
    public StatisticsSnapshot clone() {
@@ -75,6 +145,7 @@ public class StatisticsSnapshot implements Serializable {
 
    public void copyInto(StatisticsSnapshot target) {
       copySequenceId(target);
+      ensureHistogramCompatible(target);
       histogram.copyInto(target.histogram);
       target.totalSendTime = totalSendTime;
       target.connectFailureCount = connectFailureCount;
@@ -91,6 +162,7 @@ public class StatisticsSnapshot implements Serializable {
       target.timeouts = timeouts;
       target.blockedCount = blockedCount;
       target.blockedTime = blockedTime;
+      target.histogramOverflows = histogramOverflows;
       for (Object key : custom.keySet()) {
          CustomValue a = custom.get(key);
          // We must make sure that the key is serializable
@@ -107,9 +179,23 @@ public class StatisticsSnapshot implements Serializable {
             b.add(a);
          }
       }
+      if (target.customValues.length < customValues.length) {
+         target.customValues = new long[customValues.length];
+      }
+      System.arraycopy(customValues, 0, target.customValues, 0, customValues.length);
+      Arrays.fill(target.customValues, customValues.length, target.customValues.length, 0);
+      for (int i = 0; i < Math.max(customHistograms.length, target.customHistograms.length); ++i) {
+         Histogram a = i < customHistograms.length ? customHistograms[i] : null;
+         if (a != null) {
+            a.copyInto(target.customHistogram(i));
+         } else if (i < target.customHistograms.length && target.customHistograms[i] != null) {
+            target.customHistograms[i].reset();
+         }
+      }
    }
 
    public void addInto(StatisticsSnapshot target) {
+      ensureHistogramCompatible(target);
       target.histogram.add(histogram);
       target.totalSendTime += totalSendTime;
       target.connectFailureCount += connectFailureCount;
@@ -126,6 +212,7 @@ public class StatisticsSnapshot implements Serializable {
       target.timeouts += timeouts;
       target.blockedCount += blockedCount;
       target.blockedTime += blockedTime;
+      target.histogramOverflows += histogramOverflows;
       for (Object key : custom.keySet()) {
          CustomValue a = custom.get(key);
          // We must make sure that the key is serializable
@@ -139,6 +226,33 @@ public class StatisticsSnapshot implements Serializable {
             b.add(a);
          }
       }
+      for (int i = customValues.length - 1; i >= 0; --i) {
+         target.addCustom(i, customValues[i]);
+      }
+      for (int i = 0; i < customHistograms.length; ++i) {
+         if (customHistograms[i] != null) {
+            target.customHistogram(i).add(customHistograms[i]);
+         }
+      }
+   }
+
+   /**
+    * Target snapshots are usually created with default settings; if this snapshot uses higher precision or contains
+    * values out of target's range we need to replace target's histogram with one that can hold both.
+    */
+   private void ensureHistogramCompatible(StatisticsSnapshot target) {
+      Histogram t = target.histogram;
+      if (t.getNumberOfSignificantValueDigits() < histogram.getNumberOfSignificantValueDigits() ||
+            !t.isAutoResize() && t.getHighestTrackableValue() < histogram.getMaxValue()) {
+         Histogram replacement = new Histogram(
+               Math.max(t.getHighestTrackableValue(), histogram.getHighestTrackableValue()),
+               Math.max(t.getNumberOfSignificantValueDigits(), histogram.getNumberOfSignificantValueDigits()));
+         replacement.setAutoResize(t.isAutoResize() || histogram.isAutoResize());
+         replacement.add(t);
+         replacement.setStartTimeStamp(t.getStartTimeStamp());
+         replacement.setEndTimeStamp(t.getEndTimeStamp());
+         target.histogram = replacement;
+      }
    }
 
    private void copySequenceId(StatisticsSnapshot target) {
@@ -167,6 +281,7 @@ public class StatisticsSnapshot implements Serializable {
       target.timeouts -= timeouts;
       target.blockedCount -= blockedCount;
       target.blockedTime -= blockedTime;
+      target.histogramOverflows -= histogramOverflows;
       for (Object key : custom.keySet()) {
          CustomValue a = custom.get(key);
          // We must make sure that the key is serializable
@@ -183,6 +298,14 @@ public class StatisticsSnapshot implements Serializable {
             b.substract(a);
          }
       }
+      for (int i = customValues.length - 1; i >= 0; --i) {
+         target.addCustom(i, -customValues[i]);
+      }
+      for (int i = 0; i < customHistograms.length; ++i) {
+         if (customHistograms[i] != null) {
+            target.customHistogram(i).subtract(customHistograms[i]);
+         }
+      }
    }
 
    public StatisticsSummary summary(double[] percentiles) {
@@ -222,7 +345,9 @@ public class StatisticsSnapshot implements Serializable {
             ", timeouts=" + timeouts +
             ", blockedCount=" + blockedCount +
             ", blockedTime=" + blockedTime +
+            ", histogramOverflows=" + histogramOverflows +
             ", custom=" + custom +
+            ", customValues=" + Arrays.toString(customValues) +
             '}';
    }
 }
@@ -3,17 +3,28 @@ package io.hyperfoil.internal;
 import java.util.function.Function;
 
 public interface Properties {
+   String AGENT_CACHE_DIR = "io.hyperfoil.agent.cache.dir";
    String AGENT_DEBUG_PORT = "io.hyperfoil.agent.debug.port";
    String AGENT_DEBUG_SUSPEND = "io.hyperfoil.agent.debug.suspend";
+   String AGENT_METRICS_PORT = "io.hyperfoil.agent.metrics.port";
    String AGENT_NAME = "io.hyperfoil.agent.name";
    String BENCHMARK_DIR = "io.hyperfoil.benchmarkdir";
+   String CONTROLLER_AGENT_HEALTH_CHECK_PERIOD = "io.hyperfoil.controller.agent.health.check.period";
+   String CONTROLLER_AGENT_IDLE_TIMEOUT = "io.hyperfoil.controller.agent.idle.timeout";
+   String CONTROLLER_AGENT_POOL = "io.hyperfoil.controller.agent.pool";
+   String CONTROLLER_CHANNEL_PORT = "io.hyperfoil.controller.channel.port";
+   String CONTROLLER_CHANNEL_SECRET = "io.hyperfoil.controller.channel.secret";
+   String CONTROLLER_CHANNEL_SECRET_FILE = "io.hyperfoil.controller.channel.secret.file";
    String CONTROLLER_CLUSTER_IP = "io.hyperfoil.controller.cluster.ip";
    String CONTROLLER_CLUSTER_PORT = "io.hyperfoil.controller.cluster.port";
    String CONTROLLER_EXTERNAL_URI = "io.hyperfoil.controller.external.uri";
    String CONTROLLER_HOST = "io.hyperfoil.controller.host";
    String CONTROLLER_LOG = "io.hyperfoil.controller.log.file";
    String CONTROLLER_LOG_LEVEL = "io.hyperfoil.controller.log.level";
+   String CONTROLLER_PHASE_START_DELAY = "io.hyperfoil.controller.phase.start.delay";
    String CONTROLLER_PORT = "io.hyperfoil.controller.port";
+   String CONTROLLER_STATISTICS_SPILL = "io.hyperfoil.controller.statistics.spill";
+   String CONTROLLER_STATISTICS_THREADS = "io.hyperfoil.controller.statistics.threads";
    String DEPLOYER = "io.hyperfoil.deployer";
    String DEPLOY_TIMEOUT = "io.hyperfoil.deploy.timeout";
    String LOG4J2_CONFIGURATION_FILE = "log4j.configurationFile";
@@ -34,15 +45,26 @@ public interface Properties {
       return get(property, Integer::valueOf, def);
    }
 
+   static boolean getBoolean(String property, boolean def) {
+      return get(property, Boolean::valueOf, def);
+   }
+
    static <T> T get(String property, Function<String, T> f, T def) {
       String value = System.getProperty(property);
       if (value != null) {
          return f.apply(value);
       }
-      value = System.getenv(property.replaceAll("\\.", "_").toUpperCase());
+      value = System.getenv(env(property));
       if (value != null) {
          return f.apply(value);
       }
       return def;
    }
+
+   /**
+    * @return Name of the environment variable that can be used instead of the system property.
+    */
+   static String env(String property) {
+      return property.replaceAll("\\.", "_").toUpperCase();
+   }
 }
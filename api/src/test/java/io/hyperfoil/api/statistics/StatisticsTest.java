@@ -0,0 +1,35 @@
+package io.hyperfoil.api.statistics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StatisticsTest {
+   @Test
+   public void restartRealignsReusedSnapshots() {
+      long now = System.currentTimeMillis();
+      Statistics statistics = new Statistics(now);
+      statistics.incrementRequests(now);
+      statistics.incrementRequests(now + 1000);
+      statistics.end(now + 2000);
+      List<Integer> sequenceIds = new ArrayList<>();
+      statistics.visitSnapshots(snapshot -> sequenceIds.add(snapshot.sequenceId));
+      assertEquals(2, sequenceIds.size());
+      assertEquals(0, (int) sequenceIds.get(0));
+      assertEquals(1, (int) sequenceIds.get(1));
+
+      // Start in the middle of another phase, e.g. an agent that joins it late; 5 samples have passed
+      statistics.start(now - 5500);
+      sequenceIds.clear();
+      // Swap the arrays so that the snapshots published above are recorded into again
+      statistics.visitSnapshots(snapshot -> sequenceIds.add(snapshot.sequenceId));
+      statistics.incrementRequests(now);
+      statistics.end(now + 1000);
+      statistics.visitSnapshots(snapshot -> sequenceIds.add(snapshot.sequenceId));
+      assertEquals(1, sequenceIds.size());
+      assertEquals(5, (int) sequenceIds.get(0));
+   }
+}
@@ -29,6 +29,7 @@ import io.hyperfoil.cli.commands.Help;
 import io.hyperfoil.cli.commands.Info;
 import io.hyperfoil.cli.commands.Kill;
 import io.hyperfoil.cli.commands.Oc;
+import io.hyperfoil.cli.commands.Profiles;
 import io.hyperfoil.cli.commands.Log;
 import io.hyperfoil.cli.commands.Run;
 import io.hyperfoil.cli.commands.RunLocal;
@@ -46,6 +47,9 @@ import io.hyperfoil.cli.context.HyperfoilCommandInvocationProvider;
 import io.hyperfoil.cli.context.HyperfoilCompleterData;
 
 import org.aesh.AeshConsoleRunner;
+import org.aesh.command.AeshCommandRuntimeBuilder;
+import org.aesh.command.CommandResult;
+import org.aesh.command.CommandRuntime;
 import org.aesh.command.activator.CommandActivator;
 import org.aesh.command.activator.OptionActivator;
 import org.aesh.command.completer.CompleterInvocation;
@@ -108,6 +112,7 @@ public class HyperfoilCli {
                               .command(Kill.class)
                               .command(Log.class)
                               .command(Oc.class)
+                              .command(Profiles.class)
                               .command(RunLocal.class)
                               .command(Run.class)
                               .command(Runs.class)
@@ -125,6 +130,11 @@ public class HyperfoilCli {
                   .build();
       context.commandRegistry(settings.commandRegistry());
 
+      if (args.length > 0) {
+         // Batch mode for CI pipelines: each argument is a single command, e.g. "connect host" "compare -b 0001 0002"
+         System.exit(executeBatch(settings, context, args));
+      }
+
       AeshConsoleRunner runner = AeshConsoleRunner.builder().settings(settings);
       String cliPrompt = System.getenv(CLI_PROMPT);
       if (cliPrompt == null) {
@@ -136,5 +146,31 @@ public class HyperfoilCli {
 
       runner.start();
    }
+
+   private static int executeBatch(Settings<HyperfoilCommandInvocation, ConverterInvocation, CompleterInvocation, ValidatorInvocation,
+         OptionActivator, CommandActivator> settings, HyperfoilCliContext context, String[] commands) {
+      AeshCommandRuntimeBuilder<HyperfoilCommandInvocation> builder = AeshCommandRuntimeBuilder.builder();
+      builder.commandRegistry(settings.commandRegistry());
+      builder.commandInvocationProvider(new HyperfoilCommandInvocationProvider(context));
+      CommandRuntime<HyperfoilCommandInvocation> runtime = builder.build();
+      try {
+         for (String command : commands) {
+            CommandResult result = runtime.executeCommand(command);
+            if (result.getResultValue() != 0) {
+               // Failure is -1 in Aesh; positive values (e.g. detected regression) are passed through
+               return result.getResultValue() > 0 ? result.getResultValue() : 1;
+            }
+         }
+         return 0;
+      } catch (Exception e) {
+         System.err.println("Failed to execute command: " + e.getMessage());
+         if (Boolean.getBoolean("io.hyperfoil.stacktrace")) {
+            e.printStackTrace();
+         }
+         return 1;
+      } finally {
+         context.stop();
+      }
+   }
 }
 
@@ -1,7 +1,13 @@
 package io.hyperfoil.cli.commands;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.ToIntFunction;
 import java.util.function.ToLongFunction;
@@ -11,17 +17,31 @@ import org.aesh.command.CommandException;
 import org.aesh.command.CommandResult;
 import org.aesh.command.option.Arguments;
 import org.aesh.command.option.Option;
+import org.aesh.command.option.OptionList;
 import org.aesh.terminal.utils.ANSI;
+import org.HdrHistogram.Histogram;
 
 import io.hyperfoil.api.statistics.StatisticsSummary;
 import io.hyperfoil.cli.Table;
 import io.hyperfoil.cli.context.HyperfoilCommandInvocation;
+import io.hyperfoil.client.RestClientException;
 import io.hyperfoil.controller.Client;
 import io.hyperfoil.controller.model.RequestStatisticsResponse;
 import io.hyperfoil.controller.model.RequestStats;
+import io.hyperfoil.core.impl.statistics.HistogramLog;
+import io.hyperfoil.core.impl.statistics.RegressionDetector;
+import io.hyperfoil.core.util.Util;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 
-@CommandDefinition(name = "compare", description = "Compare results from two runs")
+@CommandDefinition(name = "compare", description = "Compare results from two runs or detect regressions against baseline runs")
 public class Compare extends ServerCommand {
+   /**
+    * Result of the command when a regression is detected; in batch mode this is the exit code.
+    */
+   public static final int REGRESSION = 2;
+   private static final String HISTOGRAM_LOG = "application/x-hdrhistogram-log";
+
    private final Table<Comparison> TABLE = new Table<Comparison>()
          .column("PHASE", c -> c.phase)
          .column("METRIC", c -> c.metric)
@@ -39,6 +59,24 @@ public class Compare extends ServerCommand {
    @Option(name = "threshold", shortName = '\t', description = "Difference threshold for coloring.", defaultValue = "0.05")
    private double threshold;
 
+   @OptionList(shortName = 'b', name = "baseline", description = "Baseline runs; the run given as argument is tested for regressions against these.", completer = RunCompleter.class)
+   private List<String> baseline;
+
+   @Option(name = "regression-threshold", description = "Relative change of a percentile considered as regression.", defaultValue = "0.03")
+   private double regressionThreshold;
+
+   @Option(name = "confidence", description = "Confidence level of the statistical tests.", defaultValue = "0.95")
+   private double confidence;
+
+   @Option(name = "resamples", description = "Number of bootstrap resamples.", defaultValue = "500")
+   private int resamples;
+
+   @OptionList(name = "percentiles", description = "Percentiles tested for regressions.", defaultValue = "99")
+   private List<Double> percentiles;
+
+   @Option(shortName = 'o', name = "output", description = "Write the verdict as JSON into this file.")
+   private String output;
+
    private String compare(Comparison c, ToIntFunction<StatisticsSummary> f) {
       if (c.first == null || c.second == null) {
          return "N/A";
@@ -89,6 +127,9 @@ public class Compare extends ServerCommand {
    @Override
    public CommandResult execute(HyperfoilCommandInvocation invocation) throws CommandException, InterruptedException {
       ensureConnection(invocation);
+      if (baseline != null && !baseline.isEmpty()) {
+         return detectRegressions(invocation);
+      }
       if (runIds.size() < 2) {
          invocation.println("Two run IDs required for comparison.");
          return CommandResult.FAILURE;
@@ -119,6 +160,110 @@ public class Compare extends ServerCommand {
       return CommandResult.SUCCESS;
    }
 
+   private CommandResult detectRegressions(HyperfoilCommandInvocation invocation) throws CommandException {
+      if (runIds.size() != 1) {
+         throw new CommandException("Regression detection requires exactly one candidate run, got " + runIds);
+      }
+      RegressionDetector detector;
+      try {
+         detector = new RegressionDetector(regressionThreshold, confidence, resamples,
+               percentiles.stream().mapToDouble(Double::doubleValue).toArray());
+      } catch (IllegalArgumentException e) {
+         throw new CommandException(e.getMessage());
+      }
+      List<Map<String, List<Histogram>>> baselineIntervals = new ArrayList<>();
+      for (String runId : baseline) {
+         baselineIntervals.add(intervals(ensureComplete(invocation, runId)));
+      }
+      Client.RunRef candidate = ensureComplete(invocation, runIds.get(0));
+      invocation.println("Testing run " + candidate.id() + " against baseline " + String.join(", ", baseline));
+      List<RegressionDetector.Result> results = detector.compare(baselineIntervals, intervals(candidate));
+
+      invocation.print(new Table<RegressionDetector.Result>()
+            .column("METRIC", r -> r.metric)
+            .column("PERCENTILE", r -> String.valueOf(r.percentile), Table.Align.RIGHT)
+            .column("BASELINE", r -> r.baseline < 0 ? "N/A" : Util.prettyPrintNanos(r.baseline), Table.Align.RIGHT)
+            .column("CANDIDATE", r -> r.candidate < 0 ? "N/A" : Util.prettyPrintNanos(r.candidate), Table.Align.RIGHT)
+            .column("CHANGE", r -> percent(r.change), Table.Align.RIGHT)
+            .column("CONFIDENCE INTERVAL", r -> Double.isNaN(r.changeLow) ? "N/A" : percent(r.changeLow) + " .. " + percent(r.changeHigh), Table.Align.RIGHT)
+            .column("P-VALUE", r -> Double.isNaN(r.pValue) ? "N/A" : String.format("%.4f", r.pValue), Table.Align.RIGHT)
+            .column("VERDICT", Compare::verdict)
+            .print(results.stream()));
+
+      boolean regression = results.stream().anyMatch(r -> r.verdict == RegressionDetector.Verdict.REGRESSION);
+      if (output != null) {
+         JsonArray metrics = new JsonArray();
+         for (RegressionDetector.Result r : results) {
+            JsonObject json = new JsonObject()
+                  .put("metric", r.metric)
+                  .put("percentile", r.percentile)
+                  .put("verdict", r.verdict.name());
+            if (r.baseline >= 0) {
+               json.put("baseline", r.baseline).put("candidate", r.candidate);
+            }
+            putFinite(json, "change", r.change);
+            putFinite(json, "changeLow", r.changeLow);
+            putFinite(json, "changeHigh", r.changeHigh);
+            putFinite(json, "pValue", r.pValue);
+            metrics.add(json);
+         }
+         JsonObject verdict = new JsonObject()
+               .put("verdict", regression ? RegressionDetector.Verdict.REGRESSION.name() : "PASS")
+               .put("candidate", candidate.id())
+               .put("baseline", new JsonArray(baseline))
+               .put("threshold", regressionThreshold)
+               .put("confidence", confidence)
+               .put("metrics", metrics);
+         try {
+            Files.write(new File(output).toPath(), verdict.encodePrettily().getBytes(StandardCharsets.UTF_8));
+         } catch (IOException e) {
+            throw new CommandException("Cannot write verdict to " + output, e);
+         }
+      }
+      if (regression) {
+         invocation.println("Run " + candidate.id() + " regressed.");
+         return CommandResult.valueOf(REGRESSION);
+      }
+      return CommandResult.SUCCESS;
+   }
+
+   private static String percent(double value) {
+      return Double.isNaN(value) ? "N/A" : String.format("%+.2f%%", value * 100);
+   }
+
+   private static String verdict(RegressionDetector.Result r) {
+      switch (r.verdict) {
+         case REGRESSION:
+            return ANSI.RED_TEXT + r.verdict + ANSI.RESET;
+         case IMPROVEMENT:
+            return ANSI.GREEN_TEXT + r.verdict + ANSI.RESET;
+         default:
+            return r.verdict.toString();
+      }
+   }
+
+   private static void putFinite(JsonObject json, String name, double value) {
+      if (Double.isFinite(value)) {
+         json.put(name, value);
+      }
+   }
+
+   private Map<String, List<Histogram>> intervals(Client.RunRef run) throws CommandException {
+      Path file = null;
+      try {
+         file = Files.createTempFile("hyperfoil-" + run.id() + "-", ".hlog");
+         run.statsAll(HISTOGRAM_LOG, file.toString());
+         return HistogramLog.read(file);
+      } catch (IOException | RestClientException e) {
+         // Runs recorded by older versions don't have the histogram log
+         throw new CommandException("Cannot read histograms of run " + run.id(), e);
+      } finally {
+         if (file != null) {
+            file.toFile().delete();
+         }
+      }
+   }
+
    private Client.RunRef ensureComplete(HyperfoilCommandInvocation invocation, String runId) throws CommandException {
       Client.RunRef firstRun = invocation.context().client().run(runId);
       if (firstRun.get().terminated == null) {
@@ -16,7 +16,7 @@ import io.hyperfoil.controller.Client;
 
 @CommandDefinition(name = "export", description = "Export run statistics.")
 public class Export extends BaseRunIdCommand {
-   @Option(shortName = 'f', description = "Format in which should the statistics exported. Options are JSON (default) and CSV.", defaultValue = "JSON", completer = FormatCompleter.class)
+   @Option(shortName = 'f', description = "Format in which should the statistics exported. Options are JSON (default), CSV and HLOG (HdrHistogram interval log).", defaultValue = "JSON", completer = FormatCompleter.class)
    public String format;
 
    @Option(shortName = 'd', description = "Target file/directory for the output", required = true, askIfNotSet = true)
@@ -40,8 +40,12 @@ public class Export extends BaseRunIdCommand {
             acceptFormat = "application/zip";
             defaultFilename = runRef.id() + ".zip";
             break;
+         case "HLOG":
+            acceptFormat = "application/x-hdrhistogram-log";
+            defaultFilename = runRef.id() + ".hlog";
+            break;
          default:
-            throw new CommandException("Unknown format '" + format + "', please use JSON or CSV");
+            throw new CommandException("Unknown format '" + format + "', please use JSON, CSV or HLOG");
       }
       String destinationFile = destination.toString();
       if (destination.isDirectory()) {
@@ -65,7 +69,7 @@ public class Export extends BaseRunIdCommand {
    public static class FormatCompleter implements OptionCompleter<CompleterInvocation> {
       @Override
       public void complete(CompleterInvocation completerInvocation) {
-         Stream<String> formats = Stream.of("JSON", "CSV");
+         Stream<String> formats = Stream.of("JSON", "CSV", "HLOG");
          String prefix = completerInvocation.getGivenCompleteValue();
          if (prefix != null) {
             formats = formats.filter(b -> b.startsWith(prefix));
@@ -0,0 +1,61 @@
+package io.hyperfoil.cli.commands;
+
+import java.io.File;
+import java.util.Collection;
+
+import org.aesh.command.CommandDefinition;
+import org.aesh.command.CommandException;
+import org.aesh.command.CommandResult;
+import org.aesh.command.option.Option;
+import org.aesh.io.Resource;
+
+import io.hyperfoil.cli.context.HyperfoilCommandInvocation;
+import io.hyperfoil.client.RestClientException;
+import io.hyperfoil.controller.Client;
+import io.hyperfoil.core.util.Util;
+
+@CommandDefinition(name = "profiles", description = "List or download JDK Flight Recorder files recorded in the run.")
+public class Profiles extends BaseRunIdCommand {
+   @Option(shortName = 'd', description = "Download the recordings into this directory.")
+   public Resource destination;
+
+   @Option(shortName = 'n', description = "Download only the recording with given name.")
+   public String name;
+
+   @Override
+   public CommandResult execute(HyperfoilCommandInvocation invocation) throws CommandException, InterruptedException {
+      Client.RunRef runRef = getRunRef(invocation);
+      Collection<String> profiles;
+      try {
+         profiles = runRef.profiles();
+      } catch (RestClientException e) {
+         invocation.println("ERROR: " + Util.explainCauses(e));
+         throw new CommandException("Cannot list profiles of run " + runRef.id(), e);
+      }
+      if (profiles.isEmpty()) {
+         invocation.println("Run " + runRef.id() + " has no profiles; use 'run --profile <phase>' to record some.");
+         return CommandResult.SUCCESS;
+      }
+      if (destination == null) {
+         profiles.forEach(invocation::println);
+         return CommandResult.SUCCESS;
+      }
+      if (!destination.isDirectory()) {
+         throw new CommandException(destination + " is not a directory.");
+      }
+      for (String profile : profiles) {
+         if (name != null && !name.equals(profile)) {
+            continue;
+         }
+         String destinationFile = destination + File.separator + profile;
+         try {
+            runRef.downloadProfile(profile, destinationFile);
+            invocation.println("Downloaded " + destinationFile);
+         } catch (RestClientException e) {
+            invocation.println("ERROR: " + Util.explainCauses(e));
+            throw new CommandException("Cannot download profile " + profile, e);
+         }
+      }
+      return CommandResult.SUCCESS;
+   }
+}
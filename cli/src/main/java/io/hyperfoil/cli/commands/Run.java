@@ -1,9 +1,12 @@
 package io.hyperfoil.cli.commands;
 
+import java.util.List;
+
 import org.aesh.command.CommandDefinition;
 import org.aesh.command.CommandException;
 import org.aesh.command.CommandResult;
 import org.aesh.command.option.Option;
+import org.aesh.command.option.OptionList;
 
 import io.hyperfoil.cli.context.HyperfoilCommandInvocation;
 import io.hyperfoil.controller.Client;
@@ -15,11 +18,14 @@ public class Run extends BenchmarkCommand {
    @Option(shortName = 'd', description = "Run description")
    String description;
 
+   @OptionList(shortName = 'p', name = "profile", description = "Phases that should be recorded by JDK Flight Recorder")
+   List<String> profile;
+
    @Override
    public CommandResult execute(HyperfoilCommandInvocation invocation) throws CommandException {
       Client.BenchmarkRef benchmarkRef = ensureBenchmark(invocation);
       try {
-         invocation.context().setServerRun(benchmarkRef.start(description));
+         invocation.context().setServerRun(benchmarkRef.start(description, profile));
          invocation.println("Started run " + invocation.context().serverRun().id());
       } catch (RestClientException e) {
          invocation.println("ERROR: " + Util.explainCauses(e));
@@ -83,40 +83,63 @@ public class Stats extends BaseRunIdCommand {
    private void showStats(HyperfoilCommandInvocation invocation, Client.RunRef runRef) throws CommandException {
       boolean terminated = false;
       int prevLines = -2;
-      for (; ; ) {
-         RequestStatisticsResponse stats;
-         try {
-            stats = total || terminated ? runRef.statsTotal() : runRef.statsRecent();
-         } catch (RestClientException e) {
-            if (e.getCause() instanceof InterruptedException) {
+      // Recent stats are pushed by the controller, totals are still polled
+      Client.StatsStream stream = null;
+      try {
+         for (; ; ) {
+            RequestStatisticsResponse stats;
+            try {
+               if (total || terminated) {
+                  stats = runRef.statsTotal();
+               } else {
+                  if (stream == null) {
+                     stream = runRef.statsStream();
+                  }
+                  stats = stream.next();
+               }
+            } catch (InterruptedException e) {
                clearLines(invocation, 1);
                invocation.println("");
                return;
+            } catch (RestClientException e) {
+               if (e.getCause() instanceof InterruptedException) {
+                  clearLines(invocation, 1);
+                  invocation.println("");
+                  return;
+               }
+               invocation.println("ERROR: " + Util.explainCauses(e));
+               throw new CommandException("Cannot fetch stats for run " + runRef.id(), e);
             }
-            invocation.println("ERROR: " + Util.explainCauses(e));
-            throw new CommandException("Cannot fetch stats for run " + runRef.id(), e);
-         }
-         if ("TERMINATED".equals(stats.status)) {
-            // There are no (recent) stats, the run has probably terminated
-            stats = runRef.statsTotal();
-            terminated = true;
-         }
-         clearLines(invocation, prevLines + 2);
-         if (total || terminated) {
-            invocation.println("Total stats from run " + runRef.id());
-         } else {
-            invocation.println("Recent stats from run " + runRef.id());
-         }
-         invocation.println(REQUEST_STATS_TABLE.print(stats.statistics.stream()));
-         prevLines = stats.statistics.size() + 2;
-         for (RequestStats rs : stats.statistics) {
-            for (String msg : rs.failedSLAs) {
-               invocation.println(String.format("%s/%s: %s", rs.phase, rs.metric == null ? "*" : rs.metric, msg));
-               prevLines++;
+            if (stats == null || "TERMINATED".equals(stats.status)) {
+               // There are no (recent) stats, the run has probably terminated
+               stats = runRef.statsTotal();
+               terminated = true;
+            }
+            clearLines(invocation, prevLines + 2);
+            if (total || terminated) {
+               invocation.println("Total stats from run " + runRef.id());
+            } else {
+               invocation.println("Recent stats from run " + runRef.id());
+            }
+            invocation.println(REQUEST_STATS_TABLE.print(stats.statistics.stream()));
+            prevLines = stats.statistics.size() + 2;
+            for (RequestStats rs : stats.statistics) {
+               for (String msg : rs.failedSLAs) {
+                  invocation.println(String.format("%s/%s: %s", rs.phase, rs.metric == null ? "*" : rs.metric, msg));
+                  prevLines++;
+               }
+            }
+            if (terminated) {
+               return;
+            } else if (stream != null) {
+               invocation.println("Press Ctrl+C to stop watching...");
+            } else if (interruptibleDelay(invocation)) {
+               return;
             }
          }
-         if (terminated || interruptibleDelay(invocation)) {
-            return;
+      } finally {
+         if (stream != null) {
+            stream.close();
          }
       }
    }
@@ -1,6 +1,7 @@
 package io.hyperfoil.cli.commands;
 
 import java.io.IOException;
+import java.util.Map;
 
 import org.aesh.command.CommandDefinition;
 import org.aesh.command.CommandException;
@@ -10,6 +11,8 @@ import org.aesh.io.Resource;
 
 import io.hyperfoil.api.config.Benchmark;
 import io.hyperfoil.api.config.BenchmarkDefinitionException;
+import io.hyperfoil.api.config.HistogramConfig;
+import io.hyperfoil.api.config.StatisticsConfig;
 import io.hyperfoil.cli.Util;
 import io.hyperfoil.cli.context.HyperfoilCliContext;
 import io.hyperfoil.cli.context.HyperfoilCommandInvocation;
@@ -18,6 +21,8 @@ import io.hyperfoil.core.impl.LocalBenchmarkData;
 import io.hyperfoil.core.parser.BenchmarkParser;
 import io.hyperfoil.core.parser.ParserException;
 
+import static io.hyperfoil.core.util.Util.prettyPrintData;
+
 @CommandDefinition(name = "upload", description = "Uploads benchmark definition to Hyperfoil Controller server")
 public class Upload extends ServerCommand {
 
@@ -39,6 +44,7 @@ public class Upload extends ServerCommand {
          throw new CommandException("Failed to load the benchmark.", e);
       }
       invocation.println("Loaded benchmark " + benchmark.name() + ", uploading...");
+      printHistogramFootprint(invocation, benchmark.statistics());
       try {
          ctx.setServerBenchmark(ctx.client().register(benchmark, null));
          invocation.println("... done.");
@@ -49,4 +55,17 @@ public class Upload extends ServerCommand {
       }
    }
 
+   private void printHistogramFootprint(HyperfoilCommandInvocation invocation, StatisticsConfig statistics) {
+      // Each metric keeps several histograms per agent thread (for samples that are not completed yet)
+      // and the controller keeps one per metric and agent plus the totals.
+      HistogramConfig histogram = statistics.histogram();
+      invocation.println("Estimated memory per histogram: " + footprint(histogram) + " (" + histogram + ")");
+      for (Map.Entry<String, HistogramConfig> entry : statistics.metricHistograms().entrySet()) {
+         invocation.println("  metric " + entry.getKey() + ": " + footprint(entry.getValue()) + " (" + entry.getValue() + ")");
+      }
+   }
+
+   private static String footprint(HistogramConfig histogram) {
+      return prettyPrintData(histogram.estimatedFootprint()).trim();
+   }
 }
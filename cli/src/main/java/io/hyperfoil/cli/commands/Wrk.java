@@ -277,7 +277,7 @@ public class Wrk {
                         })
                         .timeout(timeout)
                         .handler()
-                           .rawBytes(new ResponseSizeRecorder("bytes"))
+                           .rawBytes(new ResponseSizeRecorder.Builder().customMetric("bytes"))
                         .endHandler()
                      .endStep()
                   .endSequence()
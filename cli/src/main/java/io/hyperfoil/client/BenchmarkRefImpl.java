@@ -6,6 +6,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 
@@ -16,6 +18,7 @@ import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.net.impl.SocketAddressImpl;
+import io.vertx.ext.web.client.HttpRequest;
 import io.vertx.ext.web.client.HttpResponse;
 
 class BenchmarkRefImpl implements Client.BenchmarkRef {
@@ -49,16 +52,21 @@ class BenchmarkRefImpl implements Client.BenchmarkRef {
 
    @Override
    public Client.RunRef start(String description) {
+      return start(description, Collections.emptyList());
+   }
+
+   @Override
+   public Client.RunRef start(String description, Collection<String> profiledPhases) {
       CompletableFuture<Client.RunRef> future = new CompletableFuture<>();
       client.vertx.runOnContext(ctx -> {
-         String query = "/benchmark/" + encode(name) + "/start";
+         HttpRequest<Buffer> request = client.client.request(HttpMethod.GET, "/benchmark/" + encode(name) + "/start");
          if (description != null) {
-            try {
-               query += "?desc=" + URLEncoder.encode(description, StandardCharsets.UTF_8.name());
-            } catch (UnsupportedEncodingException e) {
-            }
+            request.addQueryParam("desc", description);
+         }
+         if (profiledPhases != null && !profiledPhases.isEmpty()) {
+            request.addQueryParam("profile", String.join(",", profiledPhases));
          }
-         client.client.request(HttpMethod.GET, query).send(rsp -> {
+         request.send(rsp -> {
             if (rsp.succeeded()) {
                HttpResponse<Buffer> response = rsp.result();
                String location = response.getHeader(HttpHeaders.LOCATION.toString());
@@ -19,6 +19,7 @@ import java.util.function.Function;
 import io.hyperfoil.api.config.Benchmark;
 import io.hyperfoil.controller.Client;
 import io.hyperfoil.controller.model.Version;
+import io.hyperfoil.core.impl.DataFileMap;
 import io.hyperfoil.util.Util;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
@@ -31,6 +32,7 @@ import io.vertx.ext.web.client.HttpRequest;
 import io.vertx.ext.web.client.HttpResponse;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.ext.web.multipart.MultipartForm;
 
 public class RestClient implements Client, Closeable {
    final Vertx vertx = Vertx.vertx();
@@ -64,6 +66,9 @@ public class RestClient implements Client, Closeable {
 
    @Override
    public BenchmarkRef register(Benchmark benchmark, String prevVersion) {
+      if (benchmark.source() != null && benchmark.files() instanceof DataFileMap && !benchmark.files().isEmpty()) {
+         return registerMultipart(benchmark, (DataFileMap) benchmark.files(), prevVersion);
+      }
       byte[] bytes;
       try {
          bytes = Util.serialize(benchmark);
@@ -79,15 +84,34 @@ public class RestClient implements Client, Closeable {
                request.putHeader(HttpHeaders.CONTENT_TYPE.toString(), "application/java-serialized-object")
                      .sendBuffer(Buffer.buffer(bytes), handler);
             }, 0,
-            response -> {
-               if (response.statusCode() == 204) {
-                  return new BenchmarkRefImpl(this, benchmark.name());
-               } else if (response.statusCode() == 409) {
-                  throw new EditConflictException();
-               } else {
-                  throw unexpected(response);
+            response -> registered(benchmark, response));
+   }
+
+   private BenchmarkRef registerMultipart(Benchmark benchmark, DataFileMap files, String prevVersion) {
+      // Data files are streamed from disk rather than serialized into the request in memory
+      MultipartForm form = MultipartForm.create().attribute("benchmark", benchmark.source());
+      for (String file : files.keySet()) {
+         form.binaryFileUpload("file", file, files.path(file).toString(), "application/octet-stream");
+      }
+      return sync(
+            handler -> {
+               HttpRequest<Buffer> request = client.request(HttpMethod.POST, "/benchmark");
+               if (prevVersion != null) {
+                  request.putHeader(HttpHeaders.IF_MATCH.toString(), prevVersion);
                }
-            });
+               request.sendMultipartForm(form, handler);
+            }, 0,
+            response -> registered(benchmark, response));
+   }
+
+   private BenchmarkRef registered(Benchmark benchmark, HttpResponse<Buffer> response) {
+      if (response.statusCode() == 204) {
+         return new BenchmarkRefImpl(this, benchmark.name());
+      } else if (response.statusCode() == 409) {
+         throw new EditConflictException();
+      } else {
+         throw unexpected(response);
+      }
    }
 
    @Override
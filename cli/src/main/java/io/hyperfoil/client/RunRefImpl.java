@@ -120,6 +120,11 @@ public class RunRefImpl implements Client.RunRef {
             response -> Json.decodeValue(response.body(), RequestStatisticsResponse.class));
    }
 
+   @Override
+   public Client.StatsStream statsStream() {
+      return new StatsStreamImpl(client, "/run/" + id + "/stats/stream");
+   }
+
    @Override
    public void statsAll(String format, String destinationFile) {
       CompletableFuture<String> future = new CompletableFuture<>();
@@ -167,4 +172,25 @@ public class RunRefImpl implements Client.RunRef {
             handler -> client.client.request(HttpMethod.GET, "/run/" + id + "/stats/custom").send(handler), 200,
             response -> Json.decodeValue(response.body(), new TypeReference<Collection<CustomStats>>() {}));
    }
+
+   @Override
+   public Collection<String> profiles() {
+      return client.sync(
+            handler -> client.client.request(HttpMethod.GET, "/run/" + id + "/profiles").send(handler), 200,
+            response -> Json.decodeValue(response.body(), new TypeReference<Collection<String>>() {}));
+   }
+
+   @Override
+   public void downloadProfile(String profile, String destinationFile) {
+      client.sync(
+            handler -> client.client.request(HttpMethod.GET, "/run/" + id + "/profiles/" + profile).send(handler), 200,
+            response -> {
+               try {
+                  Files.write(Paths.get(destinationFile), response.body().getBytes());
+                  return null;
+               } catch (IOException e) {
+                  throw new RestClientException(e);
+               }
+            });
+   }
 }
@@ -0,0 +1,127 @@
+package io.hyperfoil.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import io.hyperfoil.controller.Client;
+import io.hyperfoil.controller.model.RequestStatisticsResponse;
+import io.hyperfoil.controller.model.RequestStats;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.Json;
+import io.vertx.core.parsetools.RecordParser;
+
+/**
+ * Consumes server-sent events with statistics. WebClient buffers whole response so we need to use plain HTTP client.
+ * The controller sends all statistics in the 'stats' event and then only the changed entries in 'stats-delta' events;
+ * these are merged into the current state here.
+ */
+class StatsStreamImpl implements Client.StatsStream {
+   private static final Object END = new Object();
+
+   private final HttpClient httpClient;
+   private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+   private final StringBuilder data = new StringBuilder();
+   // Accessed only from the event loop
+   private final Map<String, RequestStats> current = new LinkedHashMap<>();
+   private String event;
+   private boolean ended;
+
+   StatsStreamImpl(RestClient client, String uri) {
+      httpClient = client.vertx.createHttpClient(new HttpClientOptions(client.options));
+      client.vertx.runOnContext(nil -> {
+         HttpClientRequest request = httpClient.get(uri);
+         request.putHeader(HttpHeaders.ACCEPT, "text/event-stream");
+         request.handler(response -> {
+            if (response.statusCode() != 200) {
+               response.bodyHandler(body -> queue.add(new RestClientException("Server responded with unexpected code: "
+                     + response.statusCode() + ", " + response.statusMessage() + (body.length() > 0 ? ":\n" + body : ""))));
+               return;
+            }
+            response.handler(RecordParser.newDelimited("\n", this::handleLine));
+            response.exceptionHandler(t -> queue.add(new RestClientException(t)));
+            response.endHandler(nil2 -> queue.add(END));
+         });
+         request.exceptionHandler(t -> queue.add(new RestClientException(t)));
+         request.end();
+      });
+   }
+
+   private void handleLine(Buffer buffer) {
+      String line = buffer.toString(StandardCharsets.UTF_8);
+      if (line.endsWith("\r")) {
+         line = line.substring(0, line.length() - 1);
+      }
+      if (line.isEmpty()) {
+         dispatch();
+      } else if (line.startsWith("event:")) {
+         event = line.substring(6).trim();
+      } else if (line.startsWith("data:")) {
+         if (data.length() > 0) {
+            data.append('\n');
+         }
+         data.append(line.substring(5).trim());
+      }
+      // comments and other fields are ignored
+   }
+
+   private void dispatch() {
+      if ("stats".equals(event) || "stats-delta".equals(event)) {
+         try {
+            RequestStatisticsResponse response = Json.decodeValue(data.toString(), RequestStatisticsResponse.class);
+            if ("stats".equals(event)) {
+               current.clear();
+            }
+            for (RequestStats stats : response.statistics) {
+               String key = stats.phase + "/" + stats.stepId + "/" + stats.metric;
+               if (stats.summary == null) {
+                  current.remove(key);
+               } else {
+                  current.put(key, stats);
+               }
+            }
+            queue.add(new RequestStatisticsResponse(response.status, new ArrayList<>(current.values())));
+         } catch (RuntimeException e) {
+            queue.add(new RestClientException("Cannot decode statistics", e));
+         }
+      } else if ("end".equals(event)) {
+         queue.add(END);
+      }
+      event = null;
+      data.setLength(0);
+   }
+
+   @Override
+   public RequestStatisticsResponse next() throws InterruptedException {
+      if (ended) {
+         return null;
+      }
+      Object item = queue.take();
+      Object newer;
+      // We're interested only in the latest state
+      while (item instanceof RequestStatisticsResponse && (newer = queue.poll()) != null) {
+         item = newer;
+      }
+      if (item == END) {
+         ended = true;
+         return null;
+      } else if (item instanceof RestClientException) {
+         ended = true;
+         throw (RestClientException) item;
+      }
+      return (RequestStatisticsResponse) item;
+   }
+
+   @Override
+   public void close() {
+      ended = true;
+      httpClient.close();
+   }
+}
@@ -7,12 +7,16 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 import org.infinispan.commons.util.FileLookupFactory;
@@ -22,6 +26,7 @@ import org.infinispan.manager.DefaultCacheManager;
 import org.infinispan.remoting.transport.jgroups.JGroupsTransport;
 
 import io.hyperfoil.api.Version;
+import io.hyperfoil.clustering.AgentChannelClient;
 import io.hyperfoil.clustering.ControllerVerticle;
 import io.hyperfoil.clustering.AgentVerticle;
 import io.hyperfoil.clustering.Codecs;
@@ -32,6 +37,7 @@ import io.vertx.core.Handler;
 import io.vertx.core.Verticle;
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.cluster.infinispan.InfinispanClusterManager;
@@ -102,6 +108,72 @@ class Hyperfoil {
       ensureNettyResourceLeakDetection();
    }
 
+   static void nonClusteredVertx(Handler<Vertx> startedHandler) {
+      logVersion();
+      Thread.setDefaultUncaughtExceptionHandler(Hyperfoil::defaultUncaughtExceptionHandler);
+      log.info("Starting non-clustered Vert.x...");
+      Vertx vertx = Vertx.vertx();
+      ensureNettyResourceLeakDetection();
+      Codecs.register(vertx);
+      startedHandler.handle(vertx);
+   }
+
+   /**
+    * Agent connects to the controller through the agent channel rather than joining the cluster.
+    */
+   static void channelAgent(Vertx vertx) {
+      String host = System.getProperty(Properties.CONTROLLER_CLUSTER_IP);
+      if (host == null) {
+         log.error("Controller address is not set; use -D" + Properties.CONTROLLER_CLUSTER_IP + "=x.x.x.x");
+         System.exit(1);
+      }
+      int port = Properties.getInt(Properties.CONTROLLER_CHANNEL_PORT, -1);
+      String secret = channelSecret();
+      if (secret == null) {
+         log.error("Agent channel secret is not set; set environment variable " + Properties.env(Properties.CONTROLLER_CHANNEL_SECRET)
+               + " or point -D" + Properties.CONTROLLER_CHANNEL_SECRET_FILE + " to a file containing the secret.");
+         System.exit(1);
+      }
+      String nodeId = UUID.randomUUID().toString();
+      AgentChannelClient client = new AgentChannelClient(vertx, host, port, nodeId, secret);
+      log.info("Connecting to controller {}:{} as node {}", host, port, nodeId);
+      vertx.runOnContext(nil -> client.start(result -> {
+         if (result.failed()) {
+            System.exit(1);
+         }
+         JsonObject config = new JsonObject().put("nodeId", nodeId).put("remote", true);
+         vertx.deployVerticle(AgentVerticle.class, new DeploymentOptions().setConfig(config), event -> {
+            if (event.succeeded()) {
+               log.info("AgentVerticle deployed.");
+               client.register(event.result());
+            } else {
+               log.error("Failed to deploy AgentVerticle.", event.cause());
+               System.exit(1);
+            }
+         });
+      }));
+   }
+
+   /**
+    * The secret is not passed on command line as that would expose it to anyone listing processes on the machine.
+    */
+   private static String channelSecret() {
+      String secret = Properties.get(Properties.CONTROLLER_CHANNEL_SECRET, null);
+      if (secret != null) {
+         return secret;
+      }
+      String secretFile = Properties.get(Properties.CONTROLLER_CHANNEL_SECRET_FILE, null);
+      if (secretFile == null) {
+         return null;
+      }
+      try {
+         return new String(Files.readAllBytes(Paths.get(secretFile)), StandardCharsets.UTF_8).trim();
+      } catch (IOException e) {
+         log.error("Cannot read agent channel secret from {}", e, secretFile);
+         return null;
+      }
+   }
+
    private static InetAddress getAddressWithBestMatch(InetAddress controllerAddress) {
       InetAddress address = null;
       try {
@@ -182,27 +254,34 @@ class Hyperfoil {
       ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.SIMPLE);
    }
 
+   private static boolean useAgentChannel() {
+      return Properties.get(Properties.CONTROLLER_CHANNEL_PORT, null) != null;
+   }
+
    public static class Agent extends Hyperfoil {
       public static void main(String[] args) {
-         clusteredVertx(false, vertx -> deploy(vertx, AgentVerticle.class));
+         if (useAgentChannel()) {
+            nonClusteredVertx(Hyperfoil::channelAgent);
+         } else {
+            clusteredVertx(false, vertx -> deploy(vertx, AgentVerticle.class));
+         }
       }
    }
 
    public static class Controller extends Hyperfoil {
       public static void main(String[] args) {
-         clusteredVertx(true, vertx -> deploy(vertx, ControllerVerticle.class));
+         if (useAgentChannel()) {
+            // Agents connect to the controller directly, we don't need the cluster
+            nonClusteredVertx(vertx -> deploy(vertx, ControllerVerticle.class));
+         } else {
+            clusteredVertx(true, vertx -> deploy(vertx, ControllerVerticle.class));
+         }
       }
    }
 
    public static class Standalone extends Hyperfoil {
       public static void main(String[] args) {
-         logVersion();
-         Thread.setDefaultUncaughtExceptionHandler(Hyperfoil::defaultUncaughtExceptionHandler);
-         log.info("Starting non-clustered Vert.x...");
-         Vertx vertx = Vertx.vertx();
-         ensureNettyResourceLeakDetection();
-         Codecs.register(vertx);
-         deploy(vertx, ControllerVerticle.class);
+         nonClusteredVertx(vertx -> deploy(vertx, ControllerVerticle.class));
       }
    }
 
@@ -0,0 +1,151 @@
+package io.hyperfoil.clustering;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
+import io.vertx.core.net.NetSocket;
+
+/**
+ * Agent side of the agent channel (see {@link AgentChannelServer}). Messages the agent sends to controller
+ * feeds are forwarded to the controller; messages for {@link #register(String) registered addresses}
+ * and {@link Feeds#CONTROL} are delivered on the local event bus; the controller cannot reach other addresses.
+ * <p>
+ * After the connection breaks the client keeps reconnecting; if this does not succeed within
+ * {@link AgentChannelServer#RECONNECT_TIMEOUT} the controller is considered gone and Vert.x is closed.
+ */
+public class AgentChannelClient extends ChannelSession {
+   private static final Logger log = LoggerFactory.getLogger(AgentChannelClient.class);
+   private static final long RECONNECT_DELAY = 1000;
+
+   private final String host;
+   private final int port;
+   private final String nodeId;
+   private final String secret;
+   private final Set<String> addresses = new LinkedHashSet<>();
+   private final NetClient client;
+   private long disconnectedSince = -1;
+   private long pingTimerId = -1;
+   private boolean closed;
+
+   public AgentChannelClient(Vertx vertx, String host, int port, String nodeId, String secret) {
+      super(vertx);
+      this.host = host;
+      this.port = port;
+      this.nodeId = nodeId;
+      this.secret = secret;
+      this.client = vertx.createNetClient(new NetClientOptions().setTcpNoDelay(true)
+            .setIdleTimeout(IDLE_TIMEOUT_SECONDS).setConnectTimeout(PING_INTERVAL));
+   }
+
+   /**
+    * Connects to the controller; must be called from an event loop (e.g. in {@link Vertx#runOnContext(Handler)}).
+    * The handler fails only if the connection cannot be established within the reconnect timeout.
+    */
+   public void start(Handler<AsyncResult<Void>> handler) {
+      for (String address : AgentChannelServer.CONTROLLER_ADDRESSES) {
+         eb.consumer(address, message -> forward(address, message));
+      }
+      pingTimerId = vertx.setPeriodic(PING_INTERVAL, id -> {
+         if (isAttached()) {
+            write(ChannelFrame.ping());
+         }
+      });
+      disconnectedSince = System.currentTimeMillis();
+      connect(handler);
+   }
+
+   /**
+    * Messages sent on the controller to this address will be delivered to this agent.
+    */
+   public void register(String address) {
+      if (addresses.add(address)) {
+         write(ChannelFrame.register(address));
+      }
+   }
+
+   public void close() {
+      closed = true;
+      vertx.cancelTimer(pingTimerId);
+      if (socket != null) {
+         socket.close();
+      }
+      client.close();
+   }
+
+   private void connect(Handler<AsyncResult<Void>> handler) {
+      client.connect(port, host, result -> {
+         if (closed) {
+            if (result.succeeded()) {
+               result.result().close();
+            }
+            return;
+         }
+         if (result.succeeded()) {
+            onConnected(result.result());
+            if (handler != null) {
+               handler.handle(Future.succeededFuture());
+            }
+         } else if (System.currentTimeMillis() - disconnectedSince >= AgentChannelServer.RECONNECT_TIMEOUT) {
+            log.error("Cannot connect to controller {}:{}", result.cause(), host, port);
+            if (handler != null) {
+               handler.handle(Future.failedFuture(result.cause()));
+            } else {
+               vertx.close();
+            }
+         } else {
+            log.debug("Cannot connect to controller {}:{}, retrying", result.cause(), host, port);
+            vertx.setTimer(RECONNECT_DELAY, id -> connect(handler));
+         }
+      });
+   }
+
+   private void onConnected(NetSocket socket) {
+      log.info("Connected to controller {}:{}", host, port);
+      disconnectedSince = -1;
+      readFrames(socket, type -> type != ChannelFrame.HELLO && type != ChannelFrame.REGISTER, this::handleFrame);
+      socket.closeHandler(nil -> {
+         if (this.socket != socket) {
+            return;
+         }
+         detach();
+         if (!closed) {
+            log.warn("Lost connection to controller {}:{}, reconnecting", host, port);
+            disconnectedSince = System.currentTimeMillis();
+            connect(null);
+         }
+      });
+      // The session must be identified before any other frames are flushed
+      socket.write(ChannelFrame.hello(nodeId, secret));
+      for (String address : addresses) {
+         socket.write(ChannelFrame.register(address));
+      }
+      attach(socket);
+   }
+
+   @Override
+   protected boolean acceptsMessage(String address, Object body) {
+      return addresses.contains(address) || Feeds.CONTROL.equals(address);
+   }
+
+   @Override
+   protected void overflow() {
+      log.error("Controller {}:{} is unreachable for too long", host, port);
+      close();
+      vertx.close();
+   }
+
+   @Override
+   protected void handleControlFrame(ChannelFrame frame) {
+      if (frame.type != ChannelFrame.PING) {
+         log.error("Unexpected frame {} from controller", frame.type);
+      }
+   }
+}
@@ -0,0 +1,222 @@
+package io.hyperfoil.clustering;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import io.hyperfoil.clustering.messages.AgentHello;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetServerOptions;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.spi.cluster.NodeListener;
+
+/**
+ * Controller side of the agent channel: agents dial the controller over a single TCP connection instead of
+ * joining a Vert.x cluster. Messages sent on the controller to an address registered by an agent
+ * (its deployment ID), and messages published to {@link Feeds#CONTROL}, are forwarded to the agents;
+ * messages from agents are delivered on the controller's event bus.
+ * <p>
+ * Agents must present the shared secret in {@link ChannelFrame#HELLO}. Afterwards they can send messages
+ * only to the {@link #CONTROLLER_ADDRESSES controller feeds} and register addresses that no other agent
+ * node has registered; {@link AgentHello} is accepted only for the deployment registered by the same node.
+ * <p>
+ * When the agent does not reconnect within {@link #RECONNECT_TIMEOUT} the node listener is notified
+ * the same way as when a node leaves the cluster.
+ */
+class AgentChannelServer {
+   private static final Logger log = LoggerFactory.getLogger(AgentChannelServer.class);
+   static final long RECONNECT_TIMEOUT = 30_000;
+   // Feeds handled by the controller
+   static final Set<String> CONTROLLER_ADDRESSES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+         Feeds.DISCOVERY, Feeds.RESPONSE, Feeds.STATS, Feeds.PROFILE, Feeds.BLOB, Feeds.CLOCK)));
+
+   private final Vertx vertx;
+   private final NodeListener nodeListener;
+   private final byte[] secret;
+   // By node ID
+   private final Map<String, AgentSession> sessions = new HashMap<>();
+   // Registered address -> session of the agent node that registered it
+   private final Map<String, AgentSession> owners = new HashMap<>();
+   private NetServer server;
+   private MessageConsumer<Object> controlConsumer;
+
+   AgentChannelServer(Vertx vertx, NodeListener nodeListener, String secret) {
+      this.vertx = vertx;
+      this.nodeListener = nodeListener;
+      this.secret = secret.getBytes(StandardCharsets.UTF_8);
+   }
+
+   void start(String host, int port, Handler<AsyncResult<Integer>> handler) {
+      controlConsumer = vertx.eventBus().consumer(Feeds.CONTROL, message -> {
+         Buffer frame = ChannelFrame.publish(Feeds.CONTROL, message.body());
+         for (AgentSession session : sessions.values()) {
+            session.write(frame.copy());
+         }
+      });
+      NetServerOptions options = new NetServerOptions().setTcpNoDelay(true).setIdleTimeout(ChannelSession.IDLE_TIMEOUT_SECONDS);
+      server = vertx.createNetServer(options).connectHandler(this::handleConnection).listen(port, host, result -> {
+         if (result.succeeded()) {
+            log.info("Agent channel listens on {}:{}", host, result.result().actualPort());
+            handler.handle(Future.succeededFuture(result.result().actualPort()));
+         } else {
+            handler.handle(Future.failedFuture(result.cause()));
+         }
+      });
+   }
+
+   void stop() {
+      if (controlConsumer != null) {
+         controlConsumer.unregister();
+      }
+      for (AgentSession session : new ArrayList<>(sessions.values())) {
+         session.close();
+      }
+      if (server != null) {
+         server.close();
+      }
+   }
+
+   private void handleConnection(NetSocket socket) {
+      AgentSession[] session = new AgentSession[1];
+      // Nothing but HELLO is decoded before the agent is authenticated
+      ChannelSession.readFrames(socket, type -> session[0] != null ? type != ChannelFrame.HELLO : type == ChannelFrame.HELLO, frame -> {
+         if (session[0] != null) {
+            session[0].handleFrame(frame);
+         } else if (frame.string != null && isValidSecret((String) frame.body)) {
+            session[0] = sessions.computeIfAbsent(frame.string, AgentSession::new);
+            session[0].connect(socket);
+         } else {
+            log.error("Connection from {} did not present valid secret", socket.remoteAddress());
+            socket.close();
+         }
+      });
+      socket.closeHandler(nil -> {
+         if (session[0] != null) {
+            session[0].disconnected(socket);
+         }
+      });
+   }
+
+   private boolean isValidSecret(String presented) {
+      // Constant-time comparison
+      return presented != null && MessageDigest.isEqual(secret, presented.getBytes(StandardCharsets.UTF_8));
+   }
+
+   private class AgentSession extends ChannelSession {
+      private final String nodeId;
+      // Agents register their addresses again after reconnect
+      private final Map<String, MessageConsumer<Object>> consumers = new HashMap<>();
+      private long reconnectTimerId = -1;
+
+      AgentSession(String nodeId) {
+         super(AgentChannelServer.this.vertx);
+         this.nodeId = nodeId;
+      }
+
+      void connect(NetSocket socket) {
+         if (reconnectTimerId >= 0) {
+            vertx.cancelTimer(reconnectTimerId);
+            reconnectTimerId = -1;
+            log.info("Agent node {} reconnected from {}", nodeId, socket.remoteAddress());
+         } else {
+            log.info("Agent node {} connected from {}", nodeId, socket.remoteAddress());
+         }
+         if (this.socket != null) {
+            // The previous connection is broken but we haven't noticed yet
+            NetSocket previous = this.socket;
+            detach();
+            previous.close();
+         }
+         attach(socket);
+      }
+
+      void disconnected(NetSocket socket) {
+         if (this.socket != socket) {
+            return;
+         }
+         log.warn("Lost connection to agent node {}", nodeId);
+         detach();
+         reconnectTimerId = vertx.setTimer(RECONNECT_TIMEOUT, id -> {
+            log.error("Agent node {} did not reconnect within {} ms", nodeId, RECONNECT_TIMEOUT);
+            close();
+            nodeListener.nodeLeft(nodeId);
+         });
+      }
+
+      void close() {
+         sessions.remove(nodeId, this);
+         for (String address : consumers.keySet()) {
+            owners.remove(address, this);
+         }
+         consumers.values().forEach(MessageConsumer::unregister);
+         consumers.clear();
+         if (reconnectTimerId >= 0) {
+            vertx.cancelTimer(reconnectTimerId);
+            reconnectTimerId = -1;
+         }
+         if (socket != null) {
+            NetSocket current = socket;
+            detach();
+            current.close();
+         }
+      }
+
+      @Override
+      protected boolean acceptsMessage(String address, Object body) {
+         if (!CONTROLLER_ADDRESSES.contains(address)) {
+            return false;
+         } else if (body instanceof AgentHello) {
+            // The agent cannot announce itself as another agent
+            AgentHello hello = (AgentHello) body;
+            return nodeId.equals(hello.nodeId()) && consumers.containsKey(hello.deploymentId());
+         }
+         return true;
+      }
+
+      @Override
+      protected void overflow() {
+         log.error("Agent node {} is disconnected for too long", nodeId);
+         close();
+         nodeListener.nodeLeft(nodeId);
+      }
+
+      @Override
+      protected void handleControlFrame(ChannelFrame frame) {
+         switch (frame.type) {
+            case ChannelFrame.REGISTER:
+               String address = frame.string;
+               if (CONTROLLER_ADDRESSES.contains(address) || Feeds.CONTROL.equals(address)) {
+                  log.error("Agent node {} tried to register controller address {}", nodeId, address);
+                  break;
+               }
+               AgentSession owner = owners.putIfAbsent(address, this);
+               if (owner != null && owner != this) {
+                  log.error("Agent node {} tried to register address {} owned by node {}", nodeId, address, owner.nodeId);
+                  break;
+               }
+               log.debug("Agent node {} registered address {}", nodeId, address);
+               consumers.computeIfAbsent(address, a -> eb.consumer(a, message -> forward(a, message)));
+               break;
+            case ChannelFrame.PING:
+               write(ChannelFrame.ping());
+               break;
+            default:
+               log.error("Unexpected frame {} from agent node {}", frame.type, nodeId);
+         }
+      }
+   }
+}
@@ -2,6 +2,7 @@ package io.hyperfoil.clustering;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import io.hyperfoil.api.deployment.DeployedAgent;
 import io.hyperfoil.api.session.PhaseInstance;
@@ -14,6 +15,15 @@ class AgentInfo {
    Status status = Status.STARTING;
    Map<String, PhaseInstance.Status> phases = new HashMap<>();
    DeployedAgent deployedAgent;
+   // Agent added during the run; it executes only the phases it was asked to join
+   boolean elastic;
+   Set<String> assignedPhases;
+   boolean joining;
+   // Phases started while the elastic agent was joining, with their start times
+   Map<String, Long> pendingPhases;
+   long deployTimerId = -1;
+   // Number of consecutive statistics samples reporting saturation
+   int saturatedSamples;
 
    public AgentInfo(String name, int id) {
       this.name = name;
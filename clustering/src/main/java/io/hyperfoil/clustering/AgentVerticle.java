@@ -1,15 +1,36 @@
 package io.hyperfoil.clustering;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import io.hyperfoil.api.config.Benchmark;
 import io.hyperfoil.api.session.PhaseInstance;
+import io.hyperfoil.api.session.Session;
 import io.hyperfoil.clustering.messages.AgentControlMessage;
 import io.hyperfoil.clustering.messages.AgentHello;
+import io.hyperfoil.clustering.messages.AgentMetricsMessage;
+import io.hyperfoil.clustering.messages.BenchmarkReference;
+import io.hyperfoil.clustering.messages.ElasticScale;
+import io.hyperfoil.clustering.messages.ProfileChunkMessage;
+import io.hyperfoil.clustering.messages.SessionListing;
+import io.hyperfoil.clustering.messages.SessionQuery;
+import io.hyperfoil.clustering.messages.SessionSummary;
 import io.hyperfoil.core.util.CountDown;
+import io.hyperfoil.core.util.FlightRecorder;
+import io.hyperfoil.core.api.SimulationRunner;
 import io.hyperfoil.core.impl.SimulationRunnerImpl;
+import io.hyperfoil.core.util.OpenMetrics;
 import io.hyperfoil.clustering.messages.PhaseChangeMessage;
 import io.hyperfoil.clustering.messages.PhaseControlMessage;
 import io.hyperfoil.internal.Properties;
@@ -18,22 +39,32 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Context;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.eventbus.ReplyException;
 import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServer;
 import io.vertx.core.impl.VertxInternal;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 
 public class AgentVerticle extends AbstractVerticle {
    private static Logger log = LoggerFactory.getLogger(AgentVerticle.class);
+   private static final int PROFILE_CHUNK_SIZE = 1024 * 1024;
+   // Number of sessions listed or summarized while holding the lock on sessions
+   private static final int SESSIONS_CHUNK = 1000;
 
    private String name;
    private String deploymentId;
    private String nodeId = "in-vm";
    private String runId;
+   // Agent runs in another process than controller (either clustered or connected through agent channel)
+   private boolean remote;
    private EventBus eb;
 
    private SimulationRunnerImpl runner;
@@ -42,6 +73,20 @@ public class AgentVerticle extends AbstractVerticle {
    private RequestStatsSender requestStatsSender;
    private CountDown statisticsCountDown;
    private SessionStatsSender sessionStatsSender;
+   private HttpServer metricsServer;
+   private final Set<String> recordedPhases = new HashSet<>();
+   // When the agent waits in the pool for another run it terminates if the controller stops checking its health
+   private long watchdogTimerId = -1;
+   private long lastHealthCheck;
+   private BenchmarkCache benchmarkCache;
+   // Controller time minus local time
+   private long clockOffset;
+   // Phases scheduled to start at a time agreed with other agents
+   private final Map<String, PhaseControlMessage> pendingStarts = new HashMap<>();
+   // Agent added to a running benchmark executes only the phases it joined; null for declared agents
+   private Set<String> elasticPhases;
+   // Requests for session summary (by includeInactive) waiting for the summary being computed
+   private final Map<Boolean, List<Message<Object>>> pendingSummaries = new HashMap<>();
 
    @Override
    public void start() {
@@ -66,6 +111,13 @@ public class AgentVerticle extends AbstractVerticle {
          }
       }
       eb = vertx.eventBus();
+      benchmarkCache = new BenchmarkCache(vertx, Paths.get(Properties.get(Properties.AGENT_CACHE_DIR,
+            Paths.get(System.getProperty("java.io.tmpdir"), "hyperfoil-agent-cache").toString())));
+
+      int metricsPort = Properties.getInt(Properties.AGENT_METRICS_PORT, -1);
+      if (metricsPort >= 0) {
+         startMetricsServer(metricsPort);
+      }
 
       eb.consumer(deploymentId, message -> {
          try {
@@ -81,10 +133,13 @@ public class AgentVerticle extends AbstractVerticle {
          }
       });
 
+      remote = vertx.isClustered() || context.config().getBoolean("remote", false);
       if (vertx.isClustered()) {
          if (vertx instanceof VertxInternal) {
             nodeId = ((VertxInternal) vertx).getClusterManager().getNodeID();
          }
+      } else {
+         nodeId = context.config().getString("nodeId", nodeId);
       }
       vertx.setPeriodic(1000, timerId -> {
          eb.send(Feeds.DISCOVERY, new AgentHello(name, nodeId, deploymentId, runId), reply -> {
@@ -110,112 +165,479 @@ public class AgentVerticle extends AbstractVerticle {
       switch (controlMessage.command()) {
          case INITIALIZE:
             log.info("Initializing agent");
-            try {
-               initBenchmark(controlMessage.benchmark(), controlMessage.agentId(), result -> {
-                  if (result.succeeded()) {
-                     message.reply("OK");
-                  } else {
-                     log.error("Replying with error result", result.cause());
-                     message.fail(1, result.cause().getMessage());
-                  }
-               });
-            } catch (Throwable e) {
-               log.error("Failed to initialize agent", e);
-               message.fail(1, e.getMessage());
+            if (controlMessage.runId() != null) {
+               runId = controlMessage.runId();
+            }
+            if (watchdogTimerId >= 0) {
+               vertx.cancelTimer(watchdogTimerId);
+               watchdogTimerId = -1;
+            }
+            BenchmarkReference reference = controlMessage.benchmarkReference();
+            if (reference == null) {
+               initialize(message, controlMessage.benchmark(), controlMessage.agentId(), null);
+            } else {
+               loadAndInitialize(message, reference, controlMessage.agentId(), null);
             }
             break;
-         case STOP:
-            // collect stats one last time before acknowledging termination
-            log.info("Received agent reset");
-            if (statsTimerId >= 0) {
-               vertx.cancelTimer(statsTimerId);
+         case JOIN:
+            ElasticScale join = controlMessage.elasticScale();
+            if (join.benchmarkReference() == null) {
+               if (runner == null || elasticPhases == null) {
+                  message.fail(1, "Agent is not running an elastic simulation");
+                  return;
+               }
+               log.info("Joining phases {}", join.phases().keySet());
+               applyScale(join, true);
+               message.reply("OK");
+            } else {
+               log.info("Joining running benchmark, phases {}", join.phases().keySet());
+               if (controlMessage.runId() != null) {
+                  runId = controlMessage.runId();
+               }
+               loadAndInitialize(message, join.benchmarkReference(), controlMessage.agentId(), join);
+            }
+            break;
+         case SCALE:
+            if (runner != null) {
+               ElasticScale scale = controlMessage.elasticScale();
+               log.info("Scaling rate of phases {} by {}", scale.phases().keySet(), scale.rateFactor());
+               applyScale(scale, false);
             }
-            CountDown completion = new CountDown(result -> {
+            message.reply("OK");
+            break;
+         case STOP:
+            log.info("Received agent stop");
+            stopRun(result -> {
                message.reply(result.succeeded() ? "OK" : result.cause());
-               if (vertx.isClustered()) {
+               if (remote) {
                   // Give the message some time to be sent
                   vertx.setTimer(1000, id -> vertx.close());
                } else {
                   vertx.undeploy(deploymentID());
                }
-            }, 1);
-            if (runner != null) {
-               runner.visitStatistics(requestStatsSender);
-               requestStatsSender.send(true, completion);
-               runner.shutdown();
-            }
-            if (controlFeedConsumer != null) {
-               controlFeedConsumer.unregister();
-            }
-            controlFeedConsumer = null;
-            runner = null;
-            requestStatsSender = null;
-            if (statisticsCountDown != null) {
-               statisticsCountDown.setHandler(result -> completion.countDown());
-               statisticsCountDown.countDown();
-            } else {
-               completion.countDown();
-            }
+            });
+            break;
+         case RESET:
+            log.info("Received agent reset, waiting for another run");
+            long healthCheckPeriod = controlMessage.healthCheckPeriod();
+            stopRun(result -> {
+               statisticsCountDown = null;
+               message.reply(result.succeeded() ? "OK" : result.cause());
+               startWatchdog(healthCheckPeriod);
+            });
+            break;
+         case PING:
+            lastHealthCheck = System.currentTimeMillis();
+            message.reply(runner == null ? "IDLE" : "RUNNING");
             break;
          case LIST_SESSIONS:
             log.debug("Listing sessions...");
-            ArrayList<String> sessions = new ArrayList<>();
+            // With many sessions this would block the event loop
+            SimulationRunner listedRunner = runner;
+            SessionQuery query = controlMessage.sessionQuery();
+            vertx.executeBlocking(future -> future.complete(listSessions(listedRunner, query)), false,
+                  result -> replyBlocking(message, result, "list sessions"));
+            break;
+         case SUMMARIZE_SESSIONS:
             boolean includeInactive = controlMessage.includeInactive();
-            runner.visitSessions(s -> {
-               if (s.isActive() || includeInactive) {
-                  sessions.add(s.toString());
+            List<Message<Object>> waiting = pendingSummaries.get(includeInactive);
+            if (waiting != null) {
+               // Share the result of the summary that is being computed
+               waiting.add(message);
+               break;
+            }
+            log.debug("Summarizing sessions...");
+            waiting = new ArrayList<>();
+            waiting.add(message);
+            pendingSummaries.put(includeInactive, waiting);
+            SimulationRunner summarizedRunner = runner;
+            vertx.executeBlocking(future -> future.complete(summarizeSessions(summarizedRunner, includeInactive)), false, result -> {
+               for (Message<Object> m : pendingSummaries.remove(includeInactive)) {
+                  replyBlocking(m, result, "summarize sessions");
                }
             });
-            message.reply(sessions);
             break;
          case LIST_CONNECTIONS:
             log.debug("Listing connections...");
-            message.reply(runner.listConnections());
+            SimulationRunnerImpl connectionsRunner = runner;
+            vertx.executeBlocking(future -> future.complete(connectionsRunner.listConnections()), false,
+                  result -> replyBlocking(message, result, "list connections"));
             break;
       }
    }
 
+   private void replyBlocking(Message<Object> message, AsyncResult<Object> result, String operation) {
+      if (result.succeeded()) {
+         message.reply(result.result());
+      } else {
+         log.error("Failed to {}", result.cause(), operation);
+         message.fail(1, "Failed to " + operation + ": " + result.cause());
+      }
+   }
+
+   /**
+    * Lists sessions starting at {@link SessionQuery#offset}; the scan stops when the page is full.
+    */
+   static SessionListing listSessions(SimulationRunner runner, SessionQuery query) {
+      ArrayList<String> sessions = new ArrayList<>();
+      int[] next = { -1 };
+      int[] index = { query.offset };
+      Consumer<Session> consumer = s -> {
+         int i = index[0]++;
+         if (next[0] >= 0 || (query.sample > 1 && i % query.sample != 0)) {
+            return;
+         }
+         if (sessions.size() >= query.limit) {
+            next[0] = i;
+         } else if (s.isActive() || query.includeInactive) {
+            sessions.add(s.toString());
+         }
+      };
+      int from = query.offset;
+      while (from >= 0 && next[0] < 0) {
+         from = runner.visitSessions(from, SESSIONS_CHUNK, consumer);
+      }
+      return new SessionListing(sessions, next[0]);
+   }
+
+   /**
+    * Counts sessions chunk by chunk so that the runner can add sessions in the meantime.
+    */
+   static SessionSummary summarizeSessions(SimulationRunner runner, boolean includeInactive) {
+      SessionSummary.Builder builder = new SessionSummary.Builder();
+      Consumer<Session> consumer = s -> {
+         if (s.isActive() || includeInactive) {
+            builder.add(s);
+         }
+      };
+      int from = 0;
+      while (from >= 0) {
+         from = runner.visitSessions(from, SESSIONS_CHUNK, consumer);
+      }
+      return builder.build();
+   }
+
+   private void loadAndInitialize(Message<Object> message, BenchmarkReference reference, int agentId, ElasticScale join) {
+      benchmarkCache.load(reference, result -> {
+         if (result.succeeded()) {
+            initialize(message, result.result(), agentId, join);
+         } else {
+            log.error("Failed to load benchmark {}", result.cause(), reference);
+            message.fail(1, "Failed to load benchmark: " + result.cause().getMessage());
+         }
+      });
+   }
+
+   private void initialize(Message<Object> message, Benchmark benchmark, int agentId, ElasticScale join) {
+      // The clock might drift while the agent waits in the pool, therefore we estimate the offset for each run
+      estimateClockOffset(offset -> {
+         clockOffset = offset;
+         try {
+            initBenchmark(benchmark, agentId, join != null, result -> {
+               if (result.succeeded()) {
+                  if (join != null) {
+                     // The runner completes initialization on another thread
+                     context.runOnContext(nil -> {
+                        if (runner != null) {
+                           applyScale(join, true);
+                        }
+                        message.reply("OK");
+                     });
+                     return;
+                  }
+                  message.reply("OK");
+               } else {
+                  log.error("Replying with error result", result.cause());
+                  message.fail(1, result.cause().getMessage());
+               }
+            });
+         } catch (Throwable e) {
+            log.error("Failed to initialize agent", e);
+            message.fail(1, e.getMessage());
+         }
+      });
+   }
+
+   /**
+    * Changes the arrival rate after the set of agents changed; when the agent is joining it also starts
+    * the listed phases, continuing their schedule from the moment these were started on other agents.
+    */
+   private void applyScale(ElasticScale scale, boolean join) {
+      runner.setRateFactor(scale.rateFactor(), scale.phases().keySet());
+      if (!join) {
+         return;
+      }
+      for (Map.Entry<String, Long> entry : scale.phases().entrySet()) {
+         String phase = entry.getKey();
+         if (!elasticPhases.add(phase)) {
+            continue;
+         }
+         long delay = entry.getValue() - clockOffset - System.currentTimeMillis();
+         if (delay > 0) {
+            // The phase has just been started and other agents wait for the agreed time, too
+            pendingStarts.put(phase, new PhaseControlMessage(PhaseControlMessage.Command.RUN, phase, false, entry.getValue()));
+            vertx.setTimer(delay, timerId -> startPending(phase));
+         } else {
+            runner.joinPhase(phase, entry.getValue() - clockOffset);
+         }
+      }
+   }
+
+   private void estimateClockOffset(Handler<Long> handler) {
+      if (!remote) {
+         // In-vm agent shares the clock with the controller
+         handler.handle(0L);
+         return;
+      }
+      ClockSync.estimate(eb, deploymentId, result -> {
+         if (result.succeeded()) {
+            handler.handle(result.result());
+         } else {
+            log.warn("{} failed to estimate clock offset, assuming synchronized clocks", result.cause(), deploymentId);
+            handler.handle(0L);
+         }
+      });
+   }
+
+   /**
+    * Collects statistics one last time and releases the simulation; the handler is invoked after
+    * the statistics (and recordings) are transferred to the controller.
+    */
+   private void stopRun(Handler<AsyncResult<Void>> handler) {
+      if (statsTimerId >= 0) {
+         vertx.cancelTimer(statsTimerId);
+         statsTimerId = -1;
+      }
+      CountDown completion = new CountDown(handler, 1);
+      if (runner != null) {
+         runner.visitStatistics(requestStatsSender);
+         requestStatsSender.send(true, completion);
+         runner.shutdown();
+      }
+      if (controlFeedConsumer != null) {
+         controlFeedConsumer.unregister();
+      }
+      controlFeedConsumer = null;
+      pendingStarts.clear();
+      elasticPhases = null;
+      runner = null;
+      requestStatsSender = null;
+      // Phases might not terminate when the run is killed
+      for (String phase : new ArrayList<>(recordedPhases)) {
+         stopProfiling(phase);
+      }
+      if (statisticsCountDown != null) {
+         statisticsCountDown.setHandler(result -> completion.countDown());
+         statisticsCountDown.countDown();
+      } else {
+         completion.countDown();
+      }
+   }
+
+   private void startWatchdog(long healthCheckPeriod) {
+      lastHealthCheck = System.currentTimeMillis();
+      watchdogTimerId = vertx.setPeriodic(healthCheckPeriod, timerId -> {
+         long sinceLastCheck = System.currentTimeMillis() - lastHealthCheck;
+         if (sinceLastCheck > 3 * healthCheckPeriod) {
+            log.warn("{} was not checked by the controller for {} ms, terminating", deploymentId, sinceLastCheck);
+            vertx.cancelTimer(timerId);
+            vertx.close();
+         }
+      });
+   }
+
    private MessageConsumer<Object> listenOnControl() {
       return eb.consumer(Feeds.CONTROL, message -> {
          PhaseControlMessage controlMessage = (PhaseControlMessage) message.body();
+         if (elasticPhases != null && (controlMessage.command() == PhaseControlMessage.Command.RUN
+               || !elasticPhases.contains(controlMessage.phase()))) {
+            // Elastic agent starts phases only when asked to join them
+            return;
+         }
          switch (controlMessage.command()) {
             case RUN:
-               runner.startPhase(controlMessage.phase());
+               if (controlMessage.profile()) {
+                  startProfiling(controlMessage.phase());
+               }
+               long delay = controlMessage.startTime() == Long.MIN_VALUE ? 0 :
+                     controlMessage.startTime() - clockOffset - System.currentTimeMillis();
+               if (delay > 0) {
+                  pendingStarts.put(controlMessage.phase(), controlMessage);
+                  vertx.setTimer(delay, timerId -> startPending(controlMessage.phase()));
+               } else {
+                  startPhase(controlMessage);
+               }
                break;
             case FINISH:
+               startPending(controlMessage.phase());
                runner.finishPhase(controlMessage.phase());
                break;
             case TRY_TERMINATE:
+               startPending(controlMessage.phase());
                runner.tryTerminatePhase(controlMessage.phase());
                break;
             case TERMINATE:
+               startPending(controlMessage.phase());
                runner.terminatePhase(controlMessage.phase());
                break;
          }
       });
    }
 
+   private void startPending(String phase) {
+      // Other commands for the phase must not overtake its start
+      PhaseControlMessage pending = pendingStarts.remove(phase);
+      if (pending != null) {
+         startPhase(pending);
+      }
+   }
+
+   private void startPhase(PhaseControlMessage controlMessage) {
+      if (controlMessage.startTime() == Long.MIN_VALUE) {
+         runner.startPhase(controlMessage.phase());
+      } else {
+         runner.startPhase(controlMessage.phase(), controlMessage.startTime() - clockOffset);
+      }
+   }
+
+   private String recordingName(String phase) {
+      return "hyperfoil-" + name + "-" + runId + "-" + phase;
+   }
+
+   private void startProfiling(String phase) {
+      recordedPhases.add(phase);
+      // Starting the recording takes a while; we don't want to delay the phase. The blocking tasks are ordered
+      // so that stopping a short phase can't overtake the start and leave the recording running.
+      vertx.executeBlocking(future -> {
+         if (FlightRecorder.start(recordingName(phase))) {
+            future.complete();
+         } else {
+            future.fail("Cannot start recording");
+         }
+      }, true, result -> {
+         if (result.failed()) {
+            log.error("{} failed to start profiling phase {}", deploymentId, phase);
+            recordedPhases.remove(phase);
+         }
+      });
+   }
+
+   /**
+    * Stops the recording and sends it to the controller. The statistics countdown is held until the file
+    * is transferred so that the agent does not confirm termination too early.
+    */
+   private void stopProfiling(String phase) {
+      if (!recordedPhases.remove(phase) || statisticsCountDown == null) {
+         return;
+      }
+      CountDown countDown = statisticsCountDown;
+      countDown.increment();
+      vertx.<Path>executeBlocking(future -> {
+         try {
+            Path file = Files.createTempFile("hyperfoil-" + runId + "-", ".jfr");
+            if (FlightRecorder.stop(recordingName(phase), file)) {
+               future.complete(file);
+            } else {
+               Files.deleteIfExists(file);
+               future.fail("Cannot stop recording");
+            }
+         } catch (IOException e) {
+            future.fail(e);
+         }
+      }, true, result -> {
+         if (result.failed()) {
+            log.error("{} failed to record phase {}", result.cause(), deploymentId, phase);
+            countDown.countDown();
+            return;
+         }
+         Path file = result.result();
+         vertx.fileSystem().open(file.toString(), new OpenOptions().setRead(true).setWrite(false), open -> {
+            if (open.failed()) {
+               log.error("{} cannot read recording {}", open.cause(), deploymentId, file);
+               deleteRecording(file, countDown);
+            } else {
+               sendProfileChunk(phase, open.result(), file, 0, countDown);
+            }
+         });
+      });
+   }
+
+   private void sendProfileChunk(String phase, AsyncFile asyncFile, Path file, long position, CountDown countDown) {
+      asyncFile.read(Buffer.buffer(PROFILE_CHUNK_SIZE), 0, position, PROFILE_CHUNK_SIZE, read -> {
+         if (read.failed()) {
+            log.error("{} cannot read recording {}", read.cause(), deploymentId, file);
+            asyncFile.close();
+            deleteRecording(file, countDown);
+            return;
+         }
+         Buffer buffer = read.result();
+         boolean last = buffer.length() < PROFILE_CHUNK_SIZE;
+         ProfileChunkMessage chunk = new ProfileChunkMessage(runId, name, phase, position, buffer.getBytes(), last);
+         eb.send(Feeds.PROFILE, chunk, reply -> {
+            if (reply.failed()) {
+               log.error("{} failed to send recording of phase {}", reply.cause(), deploymentId, phase);
+            } else if (!last) {
+               sendProfileChunk(phase, asyncFile, file, position + buffer.length(), countDown);
+               return;
+            }
+            asyncFile.close();
+            deleteRecording(file, countDown);
+         });
+      });
+   }
+
+   private void deleteRecording(Path file, CountDown countDown) {
+      vertx.fileSystem().delete(file.toString(), result -> {
+         if (result.failed()) {
+            log.warn("{} cannot delete {}", result.cause(), deploymentId, file);
+            file.toFile().deleteOnExit();
+         }
+         countDown.countDown();
+      });
+   }
+
+   private void startMetricsServer(int port) {
+      metricsServer = vertx.createHttpServer().requestHandler(request -> {
+         StringBuilder sb = new StringBuilder();
+         if (runner != null) {
+            runner.writeOpenMetrics(sb);
+         }
+         sb.append(OpenMetrics.EOF);
+         request.response().putHeader(HttpHeaders.CONTENT_TYPE, OpenMetrics.CONTENT_TYPE).end(sb.toString());
+      }).listen(port, result -> {
+         if (result.succeeded()) {
+            log.info("{} exposes metrics on port {}", deploymentId, result.result().actualPort());
+         } else {
+            log.error("{} cannot expose metrics on port {}", result.cause(), deploymentId, port);
+         }
+      });
+   }
+
    @Override
    public void stop() {
       if (runner != null) {
          runner.shutdown();
       }
+      if (metricsServer != null) {
+         metricsServer.close();
+      }
    }
 
-   private void initBenchmark(Benchmark benchmark, int agentId, Handler<AsyncResult<Void>> handler) {
+   private void initBenchmark(Benchmark benchmark, int agentId, boolean elastic, Handler<AsyncResult<Void>> handler) {
       if (runner != null) {
          log.error("Another simulation is running!");
          handler.handle(Future.failedFuture("Another simulation is running"));
          return;
       }
+      elasticPhases = elastic ? new HashSet<>() : null;
 
       Context context = vertx.getOrCreateContext();
 
       runner = new SimulationRunnerImpl(benchmark, agentId);
       controlFeedConsumer = listenOnControl();
-      requestStatsSender = new RequestStatsSender(benchmark, eb, deploymentId, runId);
+      requestStatsSender = new RequestStatsSender(benchmark, eb, deploymentId, runId, clockOffset);
       statisticsCountDown = new CountDown(1);
-      sessionStatsSender = new SessionStatsSender(eb, deploymentId, runId);
+      sessionStatsSender = new SessionStatsSender(eb, deploymentId, runId, clockOffset);
 
       runner.setPhaseChangeHandler((phase, status, sessionLimitExceeded, error) -> {
          log.debug("{} changed phase {} to {}", deploymentId, phase, status);
@@ -224,6 +646,7 @@ public class AgentVerticle extends AbstractVerticle {
             context.runOnContext(nil -> {
                runner.visitStatistics(phase, requestStatsSender);
                requestStatsSender.send(true, statisticsCountDown);
+               stopProfiling(phase.name());
             });
          }
       });
@@ -238,6 +661,7 @@ public class AgentVerticle extends AbstractVerticle {
                   requestStatsSender.send(false, statisticsCountDown);
                   runner.visitSessionPoolStats(sessionStatsSender);
                   sessionStatsSender.send();
+                  eb.send(Feeds.STATS, new AgentMetricsMessage(deploymentId, runId, runner.agentMetrics()));
                });
             });
          } else {
@@ -0,0 +1,104 @@
+package io.hyperfoil.clustering;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import io.hyperfoil.api.config.Benchmark;
+import io.hyperfoil.clustering.messages.BenchmarkReference;
+import io.hyperfoil.clustering.messages.BlobChunkRequest;
+import io.hyperfoil.clustering.util.DefinitionOutputStream;
+import io.vertx.core.eventbus.Message;
+
+/**
+ * Benchmark definitions distributed to agents as content-addressed blobs. The definition is serialized without
+ * {@link Benchmark#files() data files} (these are parsed into the steps when the benchmark is built, agents
+ * never read them) and compressed; agents fetch the blob in chunks only when it is not in their cache.
+ * <p>
+ * The registry is used only from the controller event loop.
+ */
+class BenchmarkBlobs {
+   // Limits the size of a single event bus message
+   private static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+
+   private final Map<String, Blob> blobs = new HashMap<>();
+
+   static Blob create(Benchmark benchmark) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream output = new DefinitionOutputStream(new GZIPOutputStream(bytes), benchmark)) {
+         output.writeObject(benchmark);
+      }
+      byte[] data = bytes.toByteArray();
+      return new Blob(new BenchmarkReference(benchmark.name(), hash(data), data.length), data);
+   }
+
+   static Benchmark decode(byte[] data) throws IOException, ClassNotFoundException {
+      try (ObjectInputStream input = new ObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(data)))) {
+         return (Benchmark) input.readObject();
+      }
+   }
+
+   static String hash(byte[] data) {
+      try {
+         byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+         StringBuilder sb = new StringBuilder(digest.length * 2);
+         for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+         }
+         return sb.toString();
+      } catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /**
+    * Registers the blob (or increments references to a blob with the same content).
+    *
+    * @param blob New blob.
+    * @return Registered blob, to be {@link #release(Blob) released} when the run ends.
+    */
+   Blob acquire(Blob blob) {
+      Blob registered = blobs.computeIfAbsent(blob.reference.hash(), h -> blob);
+      registered.references++;
+      return registered;
+   }
+
+   void release(Blob blob) {
+      if (--blob.references <= 0) {
+         blobs.remove(blob.reference.hash(), blob);
+      }
+   }
+
+   void handleChunkRequest(Message<Object> message) {
+      BlobChunkRequest request = (BlobChunkRequest) message.body();
+      Blob blob = blobs.get(request.hash);
+      if (blob == null) {
+         message.fail(1, "Unknown blob " + request.hash);
+      } else if (request.offset < 0 || request.length < 0 || request.length > MAX_CHUNK_SIZE || request.offset + request.length > blob.data.length) {
+         message.fail(1, "Invalid range " + request.offset + " + " + request.length + " of blob " + blob.reference);
+      } else {
+         int offset = (int) request.offset;
+         message.reply(Arrays.copyOfRange(blob.data, offset, offset + request.length));
+      }
+   }
+
+   static final class Blob {
+      final BenchmarkReference reference;
+      final byte[] data;
+      private int references;
+
+      private Blob(BenchmarkReference reference, byte[] data) {
+         this.reference = reference;
+         this.data = data;
+      }
+   }
+}
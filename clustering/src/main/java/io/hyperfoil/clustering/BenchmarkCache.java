@@ -0,0 +1,186 @@
+package io.hyperfoil.clustering;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import io.hyperfoil.api.config.Benchmark;
+import io.hyperfoil.clustering.messages.BenchmarkReference;
+import io.hyperfoil.clustering.messages.BlobChunkRequest;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Agent-side cache of benchmark blobs (see {@link BenchmarkBlobs}). Blobs are stored in a directory named by their
+ * content hash, therefore it can be shared by several agents on the same host and it survives agent restarts.
+ * Missing blobs are fetched from the controller in chunks, with several requests in flight.
+ */
+class BenchmarkCache {
+   private static final Logger log = LoggerFactory.getLogger(BenchmarkCache.class);
+   private static final int CHUNK_SIZE = 1024 * 1024;
+   private static final int PARALLEL_REQUESTS = 4;
+   private static final int MAX_CACHED_BLOBS = 16;
+   private static final String SUFFIX = ".benchmark.gz";
+
+   private final Vertx vertx;
+   private final Path dir;
+   private final int chunkSize;
+   private final int maxCachedBlobs;
+
+   BenchmarkCache(Vertx vertx, Path dir) {
+      this(vertx, dir, CHUNK_SIZE, MAX_CACHED_BLOBS);
+   }
+
+   BenchmarkCache(Vertx vertx, Path dir, int chunkSize, int maxCachedBlobs) {
+      this.vertx = vertx;
+      this.dir = dir;
+      this.chunkSize = chunkSize;
+      this.maxCachedBlobs = maxCachedBlobs;
+   }
+
+   void load(BenchmarkReference reference, Handler<AsyncResult<Benchmark>> handler) {
+      Path file = dir.resolve(reference.hash() + SUFFIX);
+      vertx.<Benchmark>executeBlocking(future -> {
+         try {
+            if (Files.exists(file)) {
+               byte[] data = Files.readAllBytes(file);
+               if (reference.hash().equals(BenchmarkBlobs.hash(data))) {
+                  // Mark as recently used
+                  Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                  future.complete(BenchmarkBlobs.decode(data));
+                  return;
+               }
+               log.warn("Cached benchmark {} is corrupted", file);
+               Files.deleteIfExists(file);
+            }
+            future.complete(null);
+         } catch (IOException | ClassNotFoundException e) {
+            future.fail(e);
+         }
+      }, false, cached -> {
+         if (cached.failed()) {
+            handler.handle(Future.failedFuture(cached.cause()));
+         } else if (cached.result() != null) {
+            log.info("Loaded benchmark {} from cache", reference);
+            handler.handle(Future.succeededFuture(cached.result()));
+         } else if (reference.size() > Integer.MAX_VALUE) {
+            handler.handle(Future.failedFuture("Benchmark " + reference + " is too big"));
+         } else {
+            log.info("Fetching benchmark {} from controller", reference);
+            new Download(reference, file, handler).start();
+         }
+      });
+   }
+
+   private void store(Path file, byte[] data) throws IOException {
+      Files.createDirectories(dir);
+      Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".part");
+      try {
+         Files.write(temp, data);
+         Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+         Files.deleteIfExists(temp);
+      }
+      List<Path> blobs;
+      try (Stream<Path> files = Files.list(dir)) {
+         blobs = files.filter(f -> f.getFileName().toString().endsWith(SUFFIX))
+               .sorted(Comparator.comparing(BenchmarkCache::lastModified).reversed())
+               .collect(Collectors.toList());
+      }
+      for (int i = maxCachedBlobs; i < blobs.size(); ++i) {
+         Files.deleteIfExists(blobs.get(i));
+      }
+   }
+
+   private static long lastModified(Path file) {
+      return file.toFile().lastModified();
+   }
+
+   private class Download {
+      private final BenchmarkReference reference;
+      private final Path file;
+      private final Handler<AsyncResult<Benchmark>> handler;
+      private final byte[] data;
+      private final int chunks;
+      private int nextChunk;
+      private int completedChunks;
+      private boolean failed;
+
+      Download(BenchmarkReference reference, Path file, Handler<AsyncResult<Benchmark>> handler) {
+         this.reference = reference;
+         this.file = file;
+         this.handler = handler;
+         this.data = new byte[(int) reference.size()];
+         this.chunks = (data.length + chunkSize - 1) / chunkSize;
+      }
+
+      void start() {
+         if (chunks == 0) {
+            complete();
+            return;
+         }
+         while (nextChunk < chunks && nextChunk < PARALLEL_REQUESTS) {
+            requestNext();
+         }
+      }
+
+      private void requestNext() {
+         int offset = nextChunk++ * chunkSize;
+         int length = Math.min(chunkSize, data.length - offset);
+         vertx.eventBus().send(Feeds.BLOB, new BlobChunkRequest(reference.hash(), offset, length), reply -> {
+            if (failed) {
+               return;
+            } else if (reply.failed()) {
+               fail(reply.cause());
+               return;
+            }
+            byte[] bytes = (byte[]) reply.result().body();
+            if (bytes.length != length) {
+               fail(new IOException("Expected " + length + " bytes at " + offset + " but received " + bytes.length));
+               return;
+            }
+            System.arraycopy(bytes, 0, data, offset, length);
+            if (++completedChunks == chunks) {
+               complete();
+            } else if (nextChunk < chunks) {
+               requestNext();
+            }
+         });
+      }
+
+      private void fail(Throwable cause) {
+         failed = true;
+         handler.handle(Future.failedFuture(cause));
+      }
+
+      private void complete() {
+         vertx.<Benchmark>executeBlocking(future -> {
+            if (!reference.hash().equals(BenchmarkBlobs.hash(data))) {
+               future.fail("Content of benchmark " + reference + " does not match the hash");
+               return;
+            }
+            try {
+               store(file, data);
+            } catch (IOException e) {
+               // We can continue without caching the blob
+               log.warn("Cannot store benchmark {} in cache {}", e, reference, dir);
+            }
+            try {
+               future.complete(BenchmarkBlobs.decode(data));
+            } catch (IOException | ClassNotFoundException e) {
+               future.fail(e);
+            }
+         }, false, handler);
+      }
+   }
+}
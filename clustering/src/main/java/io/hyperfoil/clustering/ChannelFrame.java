@@ -0,0 +1,269 @@
+package io.hyperfoil.clustering;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+
+import io.hyperfoil.clustering.messages.ObjectCodec;
+import io.hyperfoil.clustering.messages.StatsEncoding;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+/**
+ * Binary frame exchanged between agents and controller over the {@link AgentChannelServer agent channel}.
+ * Each frame starts with its length (4 bytes, not included in the length) and frame type; numbers are
+ * varint-encoded. Message bodies use the codecs registered in {@link Codecs}, so statistics keep their
+ * compact encoding; other bodies are either simple values or Java-serialized. Deserialization accepts only
+ * Hyperfoil classes and basic JDK types, the channel is exposed on the network.
+ */
+final class ChannelFrame {
+   static final int MAX_LENGTH = 256 * 1024 * 1024;
+
+   /**
+    * First frame on a connection; carries node ID of the agent process and the shared secret.
+    */
+   static final byte HELLO = 0;
+   /**
+    * Agent receives messages sent to given address.
+    */
+   static final byte REGISTER = 1;
+   static final byte SEND = 2;
+   static final byte PUBLISH = 3;
+   static final byte REPLY = 4;
+   static final byte FAILURE = 5;
+   static final byte PING = 6;
+
+   private static final byte BODY_NULL = 0;
+   private static final byte BODY_STRING = 1;
+   private static final byte BODY_LONG = 2;
+   private static final byte BODY_BYTES = 3;
+   private static final byte BODY_CODEC = 4;
+   private static final byte BODY_SERIALIZED = 5;
+
+   final byte type;
+   // Request ID for SEND (0 if the sender does not expect a reply), REPLY and FAILURE
+   final long id;
+   // Address for SEND, PUBLISH and REGISTER, node ID for HELLO, message for FAILURE
+   final String string;
+   final int failureCode;
+   // Message for SEND, PUBLISH and REPLY, secret for HELLO
+   final Object body;
+
+   private ChannelFrame(byte type, long id, String string, int failureCode, Object body) {
+      this.type = type;
+      this.id = id;
+      this.string = string;
+      this.failureCode = failureCode;
+      this.body = body;
+   }
+
+   static Buffer hello(String nodeId, String secret) {
+      Buffer buffer = start(HELLO);
+      StatsEncoding.writeString(buffer, nodeId);
+      StatsEncoding.writeString(buffer, secret);
+      return end(buffer);
+   }
+
+   static Buffer register(String address) {
+      Buffer buffer = start(REGISTER);
+      StatsEncoding.writeString(buffer, address);
+      return end(buffer);
+   }
+
+   static Buffer send(long id, String address, Object body) {
+      Buffer buffer = start(SEND);
+      StatsEncoding.writeVarLong(buffer, id);
+      StatsEncoding.writeString(buffer, address);
+      writeBody(buffer, body);
+      return end(buffer);
+   }
+
+   static Buffer publish(String address, Object body) {
+      Buffer buffer = start(PUBLISH);
+      StatsEncoding.writeString(buffer, address);
+      writeBody(buffer, body);
+      return end(buffer);
+   }
+
+   static Buffer reply(long id, Object body) {
+      Buffer buffer = start(REPLY);
+      StatsEncoding.writeVarLong(buffer, id);
+      writeBody(buffer, body);
+      return end(buffer);
+   }
+
+   static Buffer failure(long id, int code, String message) {
+      Buffer buffer = start(FAILURE);
+      StatsEncoding.writeVarLong(buffer, id);
+      StatsEncoding.writeVarLong(buffer, code);
+      StatsEncoding.writeString(buffer, message);
+      return end(buffer);
+   }
+
+   static Buffer ping() {
+      return end(start(PING));
+   }
+
+   private static Buffer start(byte type) {
+      // The length is filled in when the frame is complete
+      return Buffer.buffer().appendInt(0).appendByte(type);
+   }
+
+   private static Buffer end(Buffer buffer) {
+      return buffer.setInt(0, buffer.length() - 4);
+   }
+
+   /**
+    * @param buffer Frame without the length prefix.
+    * @return Decoded frame.
+    */
+   static ChannelFrame decode(Buffer buffer) {
+      byte type = buffer.getByte(0);
+      StatsEncoding.Reader reader = new StatsEncoding.Reader(buffer, 1);
+      switch (type) {
+         case HELLO: {
+            String nodeId = reader.readString();
+            return new ChannelFrame(type, 0, nodeId, 0, reader.readString());
+         }
+         case REGISTER:
+            return new ChannelFrame(type, 0, reader.readString(), 0, null);
+         case SEND: {
+            long id = reader.readVarLong();
+            String address = reader.readInternedString();
+            return new ChannelFrame(type, id, address, 0, readBody(buffer, reader.position()));
+         }
+         case PUBLISH: {
+            String address = reader.readInternedString();
+            return new ChannelFrame(type, 0, address, 0, readBody(buffer, reader.position()));
+         }
+         case REPLY: {
+            long id = reader.readVarLong();
+            return new ChannelFrame(type, id, null, 0, readBody(buffer, reader.position()));
+         }
+         case FAILURE: {
+            long id = reader.readVarLong();
+            int code = reader.readVarInt();
+            return new ChannelFrame(type, id, reader.readString(), code, null);
+         }
+         case PING:
+            return new ChannelFrame(type, 0, null, 0, null);
+         default:
+            throw new IllegalStateException("Unknown frame type " + type);
+      }
+   }
+
+   private static void writeBody(Buffer buffer, Object body) {
+      MessageCodec<Object, Object> codec = body == null ? null : Codecs.codec(body.getClass());
+      if (codec instanceof ObjectCodec) {
+         // Object codecs deserialize without any restrictions; use the filtered serialization instead
+         codec = null;
+      }
+      if (body == null) {
+         buffer.appendByte(BODY_NULL);
+      } else if (body instanceof String) {
+         buffer.appendByte(BODY_STRING);
+         StatsEncoding.writeString(buffer, (String) body);
+      } else if (body instanceof Long) {
+         buffer.appendByte(BODY_LONG);
+         StatsEncoding.writeVarLong(buffer, (Long) body);
+      } else if (body instanceof byte[]) {
+         byte[] bytes = (byte[]) body;
+         buffer.appendByte(BODY_BYTES);
+         StatsEncoding.writeVarLong(buffer, bytes.length);
+         buffer.appendBytes(bytes);
+      } else if (codec != null) {
+         buffer.appendByte(BODY_CODEC);
+         StatsEncoding.writeString(buffer, codec.name());
+         codec.encodeToWire(buffer, body);
+      } else if (body instanceof Serializable) {
+         buffer.appendByte(BODY_SERIALIZED);
+         ByteArrayOutputStream bos = new ByteArrayOutputStream();
+         try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+            out.writeObject(body);
+         } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot serialize " + body, e);
+         }
+         StatsEncoding.writeVarLong(buffer, bos.size());
+         buffer.appendBytes(bos.toByteArray());
+      } else {
+         throw new IllegalArgumentException("Cannot encode " + body.getClass().getName());
+      }
+   }
+
+   private static Object readBody(Buffer buffer, int position) {
+      byte bodyType = buffer.getByte(position);
+      StatsEncoding.Reader reader = new StatsEncoding.Reader(buffer, position + 1);
+      switch (bodyType) {
+         case BODY_NULL:
+            return null;
+         case BODY_STRING:
+            return reader.readString();
+         case BODY_LONG:
+            return reader.readVarLong();
+         case BODY_BYTES: {
+            int length = reader.readVarInt();
+            return buffer.getBytes(reader.position(), reader.position() + length);
+         }
+         case BODY_CODEC: {
+            String name = reader.readInternedString();
+            MessageCodec<Object, Object> codec = Codecs.codec(name);
+            if (codec == null || codec instanceof ObjectCodec) {
+               throw new IllegalStateException("Unknown codec " + name);
+            }
+            return codec.decodeFromWire(reader.position(), buffer);
+         }
+         case BODY_SERIALIZED: {
+            int length = reader.readVarInt();
+            byte[] bytes = buffer.getBytes(reader.position(), reader.position() + length);
+            try (ObjectInputStream in = new AllowListObjectInputStream(new ByteArrayInputStream(bytes))) {
+               return in.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+               throw new IllegalStateException("Cannot deserialize message body", e);
+            }
+         }
+         default:
+            throw new IllegalStateException("Unknown body type " + bodyType);
+      }
+   }
+
+   /**
+    * Resolves only classes that can be part of the messages; anything else (e.g. gadget classes from libraries
+    * on the classpath) fails before its fields are read.
+    */
+   private static class AllowListObjectInputStream extends ObjectInputStream {
+      private static final String[] ALLOWED_PACKAGES = { "io.hyperfoil.", "java.lang.", "java.util.", "java.time." };
+
+      AllowListObjectInputStream(ByteArrayInputStream in) throws IOException {
+         super(in);
+      }
+
+      @Override
+      protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+         Class<?> clazz = super.resolveClass(desc);
+         Class<?> component = clazz;
+         while (component.isArray()) {
+            component = component.getComponentType();
+         }
+         if (component.isPrimitive() || Throwable.class.isAssignableFrom(component)) {
+            // Failures are sent with their causes, which can come from any library
+            return clazz;
+         }
+         for (String prefix : ALLOWED_PACKAGES) {
+            if (component.getName().startsWith(prefix)) {
+               return clazz;
+            }
+         }
+         throw new InvalidClassException(clazz.getName(), "Class is not allowed in agent channel messages");
+      }
+
+      @Override
+      protected Class<?> resolveProxyClass(String[] interfaces) throws InvalidClassException {
+         throw new InvalidClassException("Proxy classes are not allowed in agent channel messages");
+      }
+   }
+}
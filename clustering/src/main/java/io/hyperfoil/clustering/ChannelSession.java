@@ -0,0 +1,221 @@
+package io.hyperfoil.clustering;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Predicate;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+
+/**
+ * One end of the agent channel: bridges messages between the local event bus and the remote side.
+ * The session outlives the TCP connection; frames written while the connection is down are sent
+ * after reconnect, up to {@link #MAX_QUEUED_BYTES}. Frames that were in flight when the connection broke
+ * are not retransmitted, requests waiting for a reply are failed (as if the event bus reply timed out).
+ * <p>
+ * All methods must be called from the event loop that owns the session.
+ */
+abstract class ChannelSession {
+   private static final Logger log = LoggerFactory.getLogger(ChannelSession.class);
+   static final int PING_INTERVAL = 5000;
+   static final int IDLE_TIMEOUT_SECONDS = 3 * PING_INTERVAL / 1000;
+   static final long MAX_QUEUED_BYTES = 64 * 1024 * 1024;
+
+   protected final Vertx vertx;
+   protected final EventBus eb;
+   private final Queue<Buffer> queued = new ArrayDeque<>();
+   private long queuedBytes;
+   private final Map<Long, Message<Object>> pendingReplies = new HashMap<>();
+   private long nextRequestId = 1;
+   protected NetSocket socket;
+
+   ChannelSession(Vertx vertx) {
+      this.vertx = vertx;
+      this.eb = vertx.eventBus();
+   }
+
+   /**
+    * Installs parser of length-prefixed frames on the socket.
+    *
+    * @param acceptType Frames of other types close the connection before their content is decoded.
+    */
+   static void readFrames(NetSocket socket, Predicate<Byte> acceptType, Handler<ChannelFrame> handler) {
+      RecordParser parser = RecordParser.newFixed(4);
+      parser.handler(new Handler<Buffer>() {
+         private boolean readingLength = true;
+
+         @Override
+         public void handle(Buffer buffer) {
+            if (readingLength) {
+               int length = buffer.getInt(0);
+               if (length <= 0 || length > ChannelFrame.MAX_LENGTH) {
+                  log.error("Invalid frame length {} from {}, closing connection", length, socket.remoteAddress());
+                  socket.close();
+                  return;
+               }
+               readingLength = false;
+               parser.fixedSizeMode(length);
+            } else {
+               readingLength = true;
+               parser.fixedSizeMode(4);
+               if (!acceptType.test(buffer.getByte(0))) {
+                  log.error("Unexpected frame {} from {}, closing connection", buffer.getByte(0), socket.remoteAddress());
+                  socket.close();
+                  return;
+               }
+               ChannelFrame frame;
+               try {
+                  frame = ChannelFrame.decode(buffer);
+               } catch (RuntimeException e) {
+                  log.error("Cannot decode frame from {}, closing connection", e, socket.remoteAddress());
+                  socket.close();
+                  return;
+               }
+               handler.handle(frame);
+            }
+         }
+      });
+      socket.handler(parser);
+   }
+
+   void attach(NetSocket socket) {
+      this.socket = socket;
+      Buffer frame;
+      while ((frame = queued.poll()) != null) {
+         socket.write(frame);
+      }
+      queuedBytes = 0;
+   }
+
+   /**
+    * Called when the connection is closed; replies for requests sent over this connection won't arrive.
+    */
+   void detach() {
+      socket = null;
+      for (Message<Object> message : new ArrayList<>(pendingReplies.values())) {
+         message.fail(-1, "Connection lost");
+      }
+      pendingReplies.clear();
+   }
+
+   boolean isAttached() {
+      return socket != null;
+   }
+
+   void write(Buffer frame) {
+      if (socket != null) {
+         socket.write(frame);
+      } else if (queuedBytes + frame.length() > MAX_QUEUED_BYTES) {
+         log.error("Too many frames queued while the connection is down, dropping the session");
+         queued.clear();
+         queuedBytes = 0;
+         for (Message<Object> message : new ArrayList<>(pendingReplies.values())) {
+            message.fail(-1, "Connection lost");
+         }
+         pendingReplies.clear();
+         overflow();
+      } else {
+         queued.add(frame);
+         queuedBytes += frame.length();
+      }
+   }
+
+   /**
+    * Sends message received on local event bus to the remote side.
+    */
+   void forward(String address, Message<Object> message) {
+      long id = 0;
+      if (message.replyAddress() != null) {
+         id = nextRequestId++;
+         pendingReplies.put(id, message);
+      }
+      Buffer frame;
+      try {
+         frame = ChannelFrame.send(id, address, message.body());
+      } catch (RuntimeException e) {
+         log.error("Cannot encode message for {}", e, address);
+         pendingReplies.remove(id);
+         message.fail(-1, e.getMessage());
+         return;
+      }
+      write(frame);
+   }
+
+   void handleFrame(ChannelFrame frame) {
+      switch (frame.type) {
+         case ChannelFrame.SEND:
+            if (!acceptsMessage(frame.string, frame.body)) {
+               log.error("Rejected message for {}", frame.string);
+               if (frame.id != 0) {
+                  write(ChannelFrame.failure(frame.id, -1, "Address " + frame.string + " is not accessible"));
+               }
+            } else if (frame.id == 0) {
+               eb.send(frame.string, frame.body);
+            } else {
+               long id = frame.id;
+               eb.send(frame.string, frame.body, reply -> {
+                  if (reply.succeeded()) {
+                     write(ChannelFrame.reply(id, reply.result().body()));
+                  } else {
+                     Throwable cause = reply.cause();
+                     int code = cause instanceof ReplyException ? ((ReplyException) cause).failureCode() : -1;
+                     write(ChannelFrame.failure(id, code, cause.getMessage()));
+                  }
+               });
+            }
+            break;
+         case ChannelFrame.PUBLISH:
+            if (acceptsMessage(frame.string, frame.body)) {
+               eb.publish(frame.string, frame.body);
+            } else {
+               log.error("Rejected message published to {}", frame.string);
+            }
+            break;
+         case ChannelFrame.REPLY: {
+            Message<Object> request = pendingReplies.remove(frame.id);
+            if (request != null) {
+               request.reply(frame.body);
+            }
+            break;
+         }
+         case ChannelFrame.FAILURE: {
+            Message<Object> request = pendingReplies.remove(frame.id);
+            if (request != null) {
+               request.fail(frame.failureCode, frame.string);
+            }
+            break;
+         }
+         default:
+            handleControlFrame(frame);
+      }
+   }
+
+   /**
+    * @param address Address on the local event bus.
+    * @param body Message body.
+    * @return True if the remote side can send or publish this message.
+    */
+   protected abstract boolean acceptsMessage(String address, Object body);
+
+   /**
+    * Handles frames that do not carry messages (e.g. {@link ChannelFrame#HELLO}).
+    */
+   protected abstract void handleControlFrame(ChannelFrame frame);
+
+   /**
+    * Called when the frames written while the connection is down exceed the limit; the queued frames
+    * were discarded and the session can't continue.
+    */
+   protected abstract void overflow();
+}
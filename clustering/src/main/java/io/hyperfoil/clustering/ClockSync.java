@@ -0,0 +1,66 @@
+package io.hyperfoil.clustering;
+
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Estimates the offset of controller clock against the local clock in an NTP-like exchange: the agent notes
+ * local time when sending a request and the controller replies with its own timestamp; we assume that the reply
+ * was created in the middle of the round-trip. The sample with the shortest round-trip is the most accurate one.
+ */
+class ClockSync {
+   private static final Logger log = LoggerFactory.getLogger(ClockSync.class);
+   private static final int SAMPLES = 8;
+
+   private final EventBus eb;
+   private final String deploymentId;
+   private final Handler<AsyncResult<Long>> handler;
+   private int remaining = SAMPLES;
+   private long bestRoundTrip = Long.MAX_VALUE;
+   private long bestOffset;
+
+   private ClockSync(EventBus eb, String deploymentId, Handler<AsyncResult<Long>> handler) {
+      this.eb = eb;
+      this.deploymentId = deploymentId;
+      this.handler = handler;
+   }
+
+   /**
+    * @param eb Event bus.
+    * @param deploymentId Identifies this agent.
+    * @param handler Receives controller time minus local time, in milliseconds.
+    */
+   static void estimate(EventBus eb, String deploymentId, Handler<AsyncResult<Long>> handler) {
+      new ClockSync(eb, deploymentId, handler).sample();
+   }
+
+   private void sample() {
+      long sendTime = System.currentTimeMillis();
+      long sendNanos = System.nanoTime();
+      eb.send(Feeds.CLOCK, deploymentId, reply -> {
+         long roundTrip = System.nanoTime() - sendNanos;
+         if (reply.failed()) {
+            handler.handle(Future.failedFuture(reply.cause()));
+            return;
+         }
+         long controllerTime = (Long) reply.result().body();
+         if (roundTrip < bestRoundTrip) {
+            bestRoundTrip = roundTrip;
+            bestOffset = controllerTime - sendTime - TimeUnit.NANOSECONDS.toMillis(roundTrip / 2);
+         }
+         if (--remaining > 0) {
+            sample();
+         } else {
+            log.info("{} clock offset to controller is {} ms (round-trip {} us)", deploymentId, bestOffset,
+                  TimeUnit.NANOSECONDS.toMicros(bestRoundTrip));
+            handler.handle(Future.succeededFuture(bestOffset));
+         }
+      });
+   }
+}
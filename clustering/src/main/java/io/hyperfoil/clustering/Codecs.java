@@ -1,29 +1,75 @@
 package io.hyperfoil.clustering;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import io.hyperfoil.clustering.messages.AgentControlMessage;
 import io.hyperfoil.clustering.messages.AgentHello;
+import io.hyperfoil.clustering.messages.AgentMetricsMessage;
+import io.hyperfoil.clustering.messages.BlobChunkRequest;
 import io.hyperfoil.clustering.messages.ObjectCodec;
 import io.hyperfoil.clustering.messages.PhaseChangeMessage;
 import io.hyperfoil.clustering.messages.PhaseControlMessage;
+import io.hyperfoil.clustering.messages.ProfileChunkMessage;
+import io.hyperfoil.clustering.messages.RequestStatsBatchMessage;
 import io.hyperfoil.clustering.messages.RequestStatsMessage;
+import io.hyperfoil.clustering.messages.SessionListing;
 import io.hyperfoil.clustering.messages.SessionStatsMessage;
+import io.hyperfoil.clustering.messages.SessionSummary;
+import io.hyperfoil.clustering.messages.SlaAbortMessage;
 import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.MessageCodec;
 
 public final class Codecs {
+   private static final Map<Class<?>, MessageCodec<?, ?>> CODECS = new LinkedHashMap<>();
+   private static final Map<String, MessageCodec<?, ?>> CODECS_BY_NAME = new HashMap<>();
+
+   static {
+      CODECS.put(AgentHello.class, new AgentHello.Codec());
+      CODECS.put(AgentControlMessage.class, new AgentControlMessage.Codec());
+      CODECS.put(PhaseChangeMessage.class, new PhaseChangeMessage.Codec());
+      CODECS.put(PhaseControlMessage.class, new PhaseControlMessage.Codec());
+      CODECS.put(RequestStatsMessage.class, new RequestStatsMessage.Codec());
+      CODECS.put(RequestStatsBatchMessage.class, new RequestStatsBatchMessage.Codec());
+      CODECS.put(ArrayList.class, new ObjectCodec.ArrayList());
+      CODECS.put(SessionStatsMessage.class, new SessionStatsMessage.Codec());
+      CODECS.put(AgentMetricsMessage.class, new AgentMetricsMessage.Codec());
+      CODECS.put(ProfileChunkMessage.class, new ProfileChunkMessage.Codec());
+      CODECS.put(BlobChunkRequest.class, new BlobChunkRequest.Codec());
+      CODECS.put(SlaAbortMessage.class, new SlaAbortMessage.Codec());
+      CODECS.put(SessionListing.class, new SessionListing.Codec());
+      CODECS.put(SessionSummary.class, new SessionSummary.Codec());
+      for (MessageCodec<?, ?> codec : CODECS.values()) {
+         CODECS_BY_NAME.put(codec.name(), codec);
+      }
+   }
+
    private Codecs() {}
 
+   @SuppressWarnings("unchecked")
    public static void register(Vertx vertx) {
       EventBus eb = vertx.eventBus();
+      for (Map.Entry<Class<?>, MessageCodec<?, ?>> entry : CODECS.entrySet()) {
+         eb.registerDefaultCodec((Class<Object>) entry.getKey(), (MessageCodec<Object, ?>) entry.getValue());
+      }
+   }
+
+   /**
+    * @return Codec registered for given class (exact match) or <code>null</code>.
+    */
+   @SuppressWarnings("unchecked")
+   static MessageCodec<Object, Object> codec(Class<?> clazz) {
+      return (MessageCodec<Object, Object>) CODECS.get(clazz);
+   }
 
-      eb.registerDefaultCodec(AgentHello.class, new AgentHello.Codec());
-      eb.registerDefaultCodec(AgentControlMessage.class, new AgentControlMessage.Codec());
-      eb.registerDefaultCodec(PhaseChangeMessage.class, new PhaseChangeMessage.Codec());
-      eb.registerDefaultCodec(PhaseControlMessage.class, new PhaseControlMessage.Codec());
-      eb.registerDefaultCodec(RequestStatsMessage.class, new RequestStatsMessage.Codec());
-      eb.registerDefaultCodec(ArrayList.class, new ObjectCodec.ArrayList());
-      eb.registerDefaultCodec(SessionStatsMessage.class, new SessionStatsMessage.Codec());
+   /**
+    * @return Codec with given {@link MessageCodec#name() name} or <code>null</code>.
+    */
+   @SuppressWarnings("unchecked")
+   static MessageCodec<Object, Object> codec(String name) {
+      return (MessageCodec<Object, Object>) CODECS_BY_NAME.get(name);
    }
 }
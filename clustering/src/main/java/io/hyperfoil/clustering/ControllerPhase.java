@@ -12,6 +12,8 @@ public class ControllerPhase {
    private long absoluteStartTime = Long.MIN_VALUE;
    private long absoluteCompletionTime = Long.MIN_VALUE;
    private boolean failed;
+   // Number of agents' final statistics that are still being merged (and SLAs validated)
+   private int pendingStats;
 
    public ControllerPhase(Phase definition) {
       this.definition = definition;
@@ -56,6 +58,21 @@ public class ControllerPhase {
       return failed;
    }
 
+   public void incrementPendingStats() {
+      ++pendingStats;
+   }
+
+   public void decrementPendingStats() {
+      --pendingStats;
+   }
+
+   /**
+    * @return True if the phase must not terminate yet as the SLAs have not been validated.
+    */
+   public boolean hasPendingStats() {
+      return pendingStats > 0;
+   }
+
    enum Status {
       NOT_STARTED,
       STARTING,
@@ -8,16 +8,25 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import io.hyperfoil.api.Version;
@@ -25,16 +34,19 @@ import io.hyperfoil.api.config.Benchmark;
 import io.hyperfoil.api.config.BenchmarkData;
 import io.hyperfoil.api.config.BenchmarkDefinitionException;
 import io.hyperfoil.api.config.Phase;
+import io.hyperfoil.clustering.messages.SessionSummary;
 import io.hyperfoil.controller.ApiService;
 import io.hyperfoil.controller.model.CustomStats;
 import io.hyperfoil.controller.model.Histogram;
 import io.hyperfoil.controller.model.RequestStats;
 import io.hyperfoil.controller.router.ApiRouter;
+import io.hyperfoil.core.impl.statistics.HistogramLog;
 import io.hyperfoil.core.impl.statistics.StatisticsStore;
 import io.hyperfoil.core.parser.BenchmarkParser;
 import io.hyperfoil.core.parser.ParserException;
 import io.hyperfoil.core.util.CountDown;
 import io.hyperfoil.core.util.LowHigh;
+import io.hyperfoil.core.util.OpenMetrics;
 import io.hyperfoil.core.util.Util;
 import io.hyperfoil.internal.Properties;
 import io.netty.handler.codec.http.HttpResponseStatus;
@@ -73,11 +85,13 @@ class ControllerServer implements ApiService {
    private static final BinaryOperator<Run> LAST_RUN_OPERATOR = (r1, r2) -> r1.id.compareTo(r2.id) > 0 ? r1 : r2;
 
    final ControllerVerticle controller;
+   final StatsPublisher statsPublisher;
    HttpServer httpServer;
    String baseURL;
 
    ControllerServer(ControllerVerticle controller, CountDown countDown) {
       this.controller = controller;
+      this.statsPublisher = new StatsPublisher(controller.getVertx(), this);
       Router router = Router.router(controller.getVertx());
       new ApiRouter(this, router);
 
@@ -95,6 +109,7 @@ class ControllerServer implements ApiService {
    }
 
    void stop(Future<Void> stopFuture) {
+      statsPublisher.stop();
       httpServer.close(result -> stopFuture.complete());
    }
 
@@ -199,25 +214,30 @@ class ControllerServer implements ApiService {
 
    @Override
    public void addBenchmark$multipart_form_data(RoutingContext ctx, String ifMatch) {
-      String source = null;
+      // The source may come as a plain form attribute, too
+      String source = ctx.request().getFormAttribute("benchmark");
+      // The response is sent after the data files are copied to the benchmark directory
+      ctx.addBodyEndHandler(nil -> deleteUploads(ctx));
       RequestBenchmarkData data = new RequestBenchmarkData();
       for (FileUpload upload : ctx.fileUploads()) {
-         byte[] bytes;
-         try {
-            bytes = Files.readAllBytes(Paths.get(upload.uploadedFileName()));
-         } catch (IOException e) {
-            log.error("Cannot read uploaded file {}", e, upload.uploadedFileName());
-            ctx.response().setStatusCode(HttpResponseStatus.INTERNAL_SERVER_ERROR.code()).end();
-            return;
-         }
+         // Uploads are spooled to disk by the body handler; data files are read from there only when needed
+         Path uploadedFile = Paths.get(upload.uploadedFileName());
          if (upload.name().equals("benchmark")) {
+            byte[] bytes;
+            try {
+               bytes = Files.readAllBytes(uploadedFile);
+            } catch (IOException e) {
+               log.error("Cannot read uploaded file {}", e, upload.uploadedFileName());
+               ctx.response().setStatusCode(HttpResponseStatus.INTERNAL_SERVER_ERROR.code()).end();
+               return;
+            }
             try {
                source = new String(bytes, upload.charSet());
             } catch (UnsupportedEncodingException e) {
                source = new String(bytes, StandardCharsets.UTF_8);
             }
          } else {
-            data.addFile(upload.fileName(), bytes);
+            data.addFile(upload.fileName(), uploadedFile);
          }
       }
       if (source == null) {
@@ -233,6 +253,16 @@ class ControllerServer implements ApiService {
       }
    }
 
+   private void deleteUploads(RoutingContext ctx) {
+      for (FileUpload upload : ctx.fileUploads()) {
+         ctx.vertx().fileSystem().delete(upload.uploadedFileName(), result -> {
+            if (result.failed()) {
+               log.warn("Cannot delete uploaded file {}", result.cause(), upload.uploadedFileName());
+            }
+         });
+      }
+   }
+
    @Override
    public void getBenchmark$text_vnd_yaml(RoutingContext ctx, String name) {
       withBenchmark(ctx, name, benchmark -> {
@@ -272,12 +302,27 @@ class ControllerServer implements ApiService {
    }
 
    @Override
-   public void startBenchmark(RoutingContext ctx, String name, String desc, String xTriggerJob, String runId) {
+   public void startBenchmark(RoutingContext ctx, String name, String desc, String xTriggerJob, String runId, String profile) {
       Benchmark benchmark = controller.getBenchmark(name);
       if (benchmark == null) {
          ctx.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code()).end("Benchmark not found");
          return;
       }
+      List<String> profiledPhases = new ArrayList<>();
+      if (profile != null) {
+         for (String phase : profile.split(",")) {
+            phase = phase.trim();
+            if (phase.isEmpty()) {
+               continue;
+            }
+            String selected = phase;
+            if (benchmark.phases().stream().noneMatch(p -> p.name().equals(selected) || p.name().startsWith(selected + "/"))) {
+               ctx.response().setStatusCode(HttpResponseStatus.BAD_REQUEST.code()).end("Unknown phase to profile: " + phase);
+               return;
+            }
+            profiledPhases.add(phase);
+         }
+      }
       if (TRIGGER_URL != null) {
          if (xTriggerJob == null) {
             Run run = controller.createRun(benchmark, desc);
@@ -299,6 +344,7 @@ class ControllerServer implements ApiService {
             return;
          }
       }
+      run.profiledPhases.addAll(profiledPhases);
       String error = controller.startBenchmark(run);
       if (error == null) {
          ctx.response().setStatusCode(HttpResponseStatus.ACCEPTED.code()).
@@ -311,19 +357,87 @@ class ControllerServer implements ApiService {
    }
 
    @Override
-   public void listRuns(RoutingContext ctx, boolean details) {
-      io.hyperfoil.controller.model.Run[] runs = controller.runs().stream()
-            .map(r -> details ? runInfo(r, false) : new io.hyperfoil.controller.model.Run(r.id, null, null, null, false, null, null, null, null))
-            .toArray(io.hyperfoil.controller.model.Run[]::new);
+   public void listRuns(RoutingContext ctx, boolean details, String query, String tag) {
+      // Runs that are not loaded are listed from the catalog to avoid reading details of every run
+      Set<String> runIds = new TreeSet<>(controller.runs.keySet());
+      for (JsonObject entry : controller.runCatalog().entries()) {
+         runIds.add(entry.getString("id"));
+      }
+      String lowerCaseQuery = query == null ? null : query.toLowerCase(Locale.ENGLISH);
+      List<io.hyperfoil.controller.model.Run> runs = new ArrayList<>();
+      for (String runId : runIds) {
+         Run run = controller.runs.get(runId);
+         JsonObject entry = run == null ? controller.runCatalog().get(runId) : catalogEntry(run);
+         if (entry == null || !matchesQuery(entry, lowerCaseQuery) || !matchesTag(entry, tag)) {
+            continue;
+         }
+         if (!details) {
+            runs.add(new io.hyperfoil.controller.model.Run(runId, null, null, null, false, null, null, null, null));
+         } else if (run != null) {
+            runs.add(runInfo(run, false));
+         } else {
+            runs.add(runInfo(entry));
+         }
+      }
       ctx.response().end(Json.encodePrettily(runs));
    }
 
+   private static JsonObject catalogEntry(Run run) {
+      return new JsonObject()
+            .put("id", run.id)
+            .put("benchmark", run.benchmark.name())
+            .put("description", run.description)
+            .put("tags", new JsonObject(run.benchmark.tags()));
+   }
+
+   private static boolean matchesQuery(JsonObject entry, String lowerCaseQuery) {
+      if (lowerCaseQuery == null || lowerCaseQuery.isEmpty()) {
+         return true;
+      }
+      for (String key : new String[]{ "id", "benchmark", "description" }) {
+         String value = entry.getString(key);
+         if (value != null && value.toLowerCase(Locale.ENGLISH).contains(lowerCaseQuery)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private static boolean matchesTag(JsonObject entry, String tag) {
+      if (tag == null || tag.isEmpty()) {
+         return true;
+      }
+      JsonObject tags = entry.getJsonObject("tags");
+      if (tags == null) {
+         return false;
+      }
+      int eqIndex = tag.indexOf('=');
+      if (eqIndex < 0) {
+         return tags.containsKey(tag);
+      }
+      Object value = tags.getValue(tag.substring(0, eqIndex));
+      return value != null && String.valueOf(value).equals(tag.substring(eqIndex + 1));
+   }
+
+   private io.hyperfoil.controller.model.Run runInfo(JsonObject entry) {
+      Long startTime = entry.getLong("startTime");
+      Long terminateTime = entry.getLong("terminateTime");
+      JsonArray errors = entry.getJsonArray("errors");
+      return new io.hyperfoil.controller.model.Run(entry.getString("id"), entry.getString("benchmark", "<unknown>"),
+            startTime == null || startTime == Long.MIN_VALUE ? null : new Date(startTime),
+            terminateTime == null ? null : new Date(terminateTime),
+            entry.getBoolean("cancelled", false), entry.getString("description"), null, Collections.emptyList(),
+            errors == null ? Collections.emptyList() : errors.stream().map(JsonObject.class::cast)
+                  .map(e -> e.containsKey("agent") ? e.getString("agent") + ": " + e.getString("msg") : e.getString("msg"))
+                  .collect(Collectors.toList()));
+   }
+
    @Override
    public void getRun(RoutingContext ctx, String runId) {
       withRun(ctx, runId, run -> ctx.response().end(Json.encodePrettily(runInfo(run, true))));
    }
 
-   private io.hyperfoil.controller.model.Run runInfo(Run run, boolean reportPhases) {
+   io.hyperfoil.controller.model.Run runInfo(Run run, boolean reportPhases) {
       String benchmark = null;
       if (run.benchmark != null) {
          benchmark = run.benchmark.name();
@@ -382,9 +496,8 @@ class ControllerServer implements ApiService {
    private void withRun(RoutingContext ctx, String runId, Consumer<Run> consumer) {
       Run run;
       if ("last".equals(runId)) {
-         run = controller.runs.values().stream()
-               .reduce(LAST_RUN_OPERATOR)
-               .orElse(null);
+         String lastRunId = controller.lastRunId();
+         run = lastRunId == null ? null : controller.run(lastRunId);
       } else {
          run = controller.run(runId);
       }
@@ -409,64 +522,72 @@ class ControllerServer implements ApiService {
    }
 
    @Override
-   public void listSessions(RoutingContext ctx, String runId, boolean inactive) {
+   public void listSessions(RoutingContext ctx, String runId, boolean inactive, String cursor, int limit, int sample) {
+      if (limit <= 0 || sample <= 0) {
+         ctx.response().setStatusCode(HttpResponseStatus.BAD_REQUEST.code()).end("Limit and sample must be positive.");
+         return;
+      }
       withRun(ctx, runId, run -> {
-         ctx.response().setChunked(true);
-         controller.listSessions(run, inactive,
-               (agent, session) -> {
-                  String line = agent.name + ": " + session + "\n";
-                  ctx.response().write(Buffer.buffer(line.getBytes(StandardCharsets.UTF_8)));
-               },
-               commonListingHandler(ctx.response()));
+         // The page is bounded by the limit; we need to know the next cursor before sending headers
+         StringBuilder page = new StringBuilder();
+         controller.listSessions(run, inactive, cursor, limit, sample,
+               (agent, session) -> page.append(agent.name).append(": ").append(session).append('\n'),
+               result -> {
+                  if (result.succeeded()) {
+                     if (result.result() != null) {
+                        ctx.response().putHeader("x-next-cursor", result.result());
+                     }
+                     ctx.response().end(page.toString());
+                  } else if (result.cause() instanceof IllegalArgumentException) {
+                     ctx.response().setStatusCode(HttpResponseStatus.BAD_REQUEST.code()).end(result.cause().getMessage());
+                  } else {
+                     commonListingHandler(ctx.response()).handle(result.mapEmpty());
+                  }
+               });
       });
    }
 
-   private Handler<AsyncResult<Void>> commonListingHandler(HttpServerResponse response) {
-      return result -> {
-         if (result.succeeded()) {
-            response.setStatusCode(HttpResponseStatus.OK.code()).end();
-         } else if (result.cause() instanceof NoStackTraceThrowable) {
-            response.setStatusCode(HttpResponseStatus.NOT_FOUND.code()).end();
-         } else {
-            response.setStatusCode(HttpResponseStatus.INTERNAL_SERVER_ERROR.code()).end(result.cause().getMessage());
-         }
-      };
-   }
-
-   @Override
-   public void getRecentSessions(RoutingContext ctx, String runId) {
-      getSessionStats(ctx, runId, ss -> ss.recentSessionPoolSummary(System.currentTimeMillis() - 5000));
-   }
-
    @Override
-   public void getTotalSessions(RoutingContext ctx, String runId) {
-      getSessionStats(ctx, runId, ss -> ss.totalSessionPoolSummary());
-   }
-
-   private void getSessionStats(RoutingContext ctx, String runId, Function<StatisticsStore, Map<String, Map<String, LowHigh>>> func) {
+   public void getSessionSummary(RoutingContext ctx, String runId, boolean inactive) {
       withRun(ctx, runId, run -> {
-         if (run.statisticsStore == null) {
-            ctx.response().end("{}");
-            return;
-         }
-         Map<String, Map<String, LowHigh>> stats = func.apply(run.statisticsStore);
-         JsonObject reply = new JsonObject();
-         stats.forEach((phase, addressStats) -> {
-            JsonObject phaseStats = new JsonObject();
-            reply.put(phase, phaseStats);
-            addressStats.forEach((address, lowHigh) -> {
-               String agent = run.agents.stream().filter(a -> a.deploymentId.equals(address)).map(a -> a.name).findFirst().orElse("unknown");
-               phaseStats.put(agent, new JsonObject().put("min", lowHigh.low).put("max", lowHigh.high));
-            });
+         Map<String, SessionSummary> summaries = new LinkedHashMap<>();
+         controller.summarizeSessions(run, inactive, (agent, summary) -> summaries.put(agent.name, summary), result -> {
+            if (result.succeeded()) {
+               JsonArray groups = mergeSessionSummaries(summaries);
+               ctx.response().putHeader(HttpHeaders.CONTENT_TYPE, MIME_TYPE_JSON).end(groups.encodePrettily());
+            } else {
+               commonListingHandler(ctx.response()).handle(result);
+            }
          });
-         ctx.response().end(reply.encodePrettily());
       });
    }
 
+   /**
+    * @param summaries Summaries by agent name.
+    * @return Groups with total count and counts per agent, the largest group first.
+    */
+   static JsonArray mergeSessionSummaries(Map<String, SessionSummary> summaries) {
+      Map<SessionSummary.Group, JsonObject> groups = new HashMap<>();
+      summaries.forEach((agent, summary) -> {
+         for (SessionSummary.Group group : summary.groups) {
+            JsonObject merged = groups.computeIfAbsent(group, g -> new JsonObject()
+                  .put("phase", g.phase).put("sequence", g.sequence).put("step", g.step).put("blocked", g.blocked)
+                  .put("count", 0).put("agents", new JsonObject()));
+            merged.put("count", merged.getInteger("count") + group.count);
+            merged.getJsonObject("agents").put(agent, group.count);
+         }
+      });
+      JsonArray array = new JsonArray();
+      groups.values().stream()
+            .sorted(Comparator.comparing((JsonObject group) -> group.getInteger("count")).reversed())
+            .forEach(array::add);
+      return array;
+   }
 
    @Override
    public void listConnections(RoutingContext ctx, String runId) {
       withRun(ctx, runId, run -> {
+         ctx.response().setChunked(true);
          controller.listConnections(run,
                (agent, connection) -> {
                   String line = agent.name + ": " + connection + "\n";
@@ -492,9 +613,25 @@ class ControllerServer implements ApiService {
       });
    }
 
+   @Override
+   public void getAllStats$application_x_hdrhistogram_log(RoutingContext ctx, String runId) {
+      withTerminatedRun(ctx, runId, run -> {
+         Path histogramLog = controller.getRunDir(run).resolve(HistogramLog.FILE_NAME);
+         if (!histogramLog.toFile().exists()) {
+            ctx.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code()).end("Run " + run.id + " has no histogram log.");
+            return;
+         }
+         ctx.response()
+               .putHeader(HttpHeaders.CONTENT_TYPE, "application/x-hdrhistogram-log")
+               .sendFile(histogramLog.toString());
+      });
+   }
+
    private void withTerminatedRun(RoutingContext ctx, String runId, Consumer<Run> consumer) {
       withRun(ctx, runId, run -> {
-         if (!run.terminateTime.isComplete()) {
+         if (run.recovering) {
+            respondRecovering(ctx);
+         } else if (!run.terminateTime.isComplete()) {
             ctx.response().setStatusCode(HttpResponseStatus.SEE_OTHER.code())
                   .setStatusMessage("Run is not completed yet.")
                   .putHeader(HttpHeaders.LOCATION, "/run/" + run.id)
@@ -508,19 +645,49 @@ class ControllerServer implements ApiService {
    @Override
    public void getRecentStats(RoutingContext ctx, String runId) {
       withStats(ctx, runId, run -> {
+         // Statistics are merged concurrently; read the version first so that the tag is never newer than the data
+         long version = run.statisticsStore.version();
          List<RequestStats> stats = run.statisticsStore.recentSummary(System.currentTimeMillis() - 5000);
-         ctx.response().end(Json.encodePrettily(statsToJson(run, stats)));
+         // Between two versions the entries can only expire, therefore the count identifies the content
+         String etag = runStatus(run) + "-" + version + "-" + stats.size();
+         sendCachedStats(ctx, run.recentStatsCache, etag, () -> Json.encodePrettily(statsToJson(run, stats)));
       });
    }
 
    @Override
    public void getTotalStats(RoutingContext ctx, String runId) {
       withStats(ctx, runId, run -> {
-         List<RequestStats> stats = run.statisticsStore.totalSummary();
-         ctx.response().end(Json.encodePrettily(statsToJson(run, stats)));
+         String etag = runStatus(run) + "-" + run.statisticsStore.version();
+         sendCachedStats(ctx, run.totalStatsCache, etag,
+               () -> Json.encodePrettily(statsToJson(run, run.statisticsStore.totalSummary())));
+      });
+   }
+
+   private void sendCachedStats(RoutingContext ctx, Run.CachedResponse cache, String version, Supplier<String> body) {
+      String etag = "\"" + version + "\"";
+      ctx.response().putHeader(HttpHeaders.ETAG, etag);
+      if (etag.equals(ctx.request().getHeader(HttpHeaders.IF_NONE_MATCH))) {
+         ctx.response().setStatusCode(HttpResponseStatus.NOT_MODIFIED.code()).end();
+      } else {
+         ctx.response().end(cache.get(etag, body));
+      }
+   }
+
+   @Override
+   public void getOpenMetrics(RoutingContext ctx, String runId) {
+      withStats(ctx, runId, run -> {
+         HttpServerResponse response = ctx.response().setChunked(true)
+               .putHeader(HttpHeaders.CONTENT_TYPE, OpenMetrics.CONTENT_TYPE);
+         run.statisticsStore.writeOpenMetrics(chunk -> response.write(chunk));
+         response.end();
       });
    }
 
+   @Override
+   public void streamStats(RoutingContext ctx, String runId) {
+      withRun(ctx, runId, run -> statsPublisher.subscribe(run, ctx.response()));
+   }
+
    @Override
    public void getCustomStats(RoutingContext ctx, String runId) {
       withStats(ctx, runId, run -> {
@@ -540,7 +707,9 @@ class ControllerServer implements ApiService {
 
    private void withStats(RoutingContext ctx, String runId, Consumer<Run> consumer) {
       withRun(ctx, runId, run -> {
-         if (run.statisticsStore == null) {
+         if (run.recovering) {
+            respondRecovering(ctx);
+         } else if (run.statisticsStore == null) {
             ctx.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code()).end();
          } else {
             consumer.accept(run);
@@ -548,16 +717,22 @@ class ControllerServer implements ApiService {
       });
    }
 
-   private io.hyperfoil.controller.model.RequestStatisticsResponse statsToJson(Run run, List<RequestStats> stats) {
-      String status;
+   private static void respondRecovering(RoutingContext ctx) {
+      ctx.response().setStatusCode(HttpResponseStatus.SERVICE_UNAVAILABLE.code()).end("Statistics of this run are being recovered.");
+   }
+
+   io.hyperfoil.controller.model.RequestStatisticsResponse statsToJson(Run run, List<RequestStats> stats) {
+      return new io.hyperfoil.controller.model.RequestStatisticsResponse(runStatus(run), stats);
+   }
+
+   static String runStatus(Run run) {
       if (run.terminateTime.isComplete()) {
-         status = "TERMINATED";
+         return "TERMINATED";
       } else if (run.startTime > Long.MIN_VALUE) {
-         status = "RUNNING";
+         return "RUNNING";
       } else {
-         status = "INITIALIZING";
+         return "INITIALIZING";
       }
-      return new io.hyperfoil.controller.model.RequestStatisticsResponse(status, stats);
    }
 
    @Override
@@ -570,6 +745,36 @@ class ControllerServer implements ApiService {
       withRun(ctx, runId, run -> sendSerializedBenchmark(ctx, run.benchmark));
    }
 
+   @Override
+   public void listProfiles(RoutingContext ctx, String runId) {
+      withRun(ctx, runId, run -> {
+         File dir = controller.getRunDir(run).resolve(ControllerVerticle.PROFILES_DIR).toFile();
+         String[] files = dir.list((d, f) -> f.endsWith(".jfr"));
+         List<String> profiles = files == null ? new ArrayList<>() : Arrays.asList(files);
+         Collections.sort(profiles);
+         ctx.response().putHeader(HttpHeaders.CONTENT_TYPE, MIME_TYPE_JSON).end(new JsonArray(profiles).encodePrettily());
+      });
+   }
+
+   @Override
+   public void getProfile(RoutingContext ctx, String runId, String profile) {
+      withRun(ctx, runId, run -> {
+         if (profile.contains("/") || profile.contains("\\") || profile.startsWith(".") || !profile.endsWith(".jfr")) {
+            ctx.response().setStatusCode(HttpResponseStatus.BAD_REQUEST.code()).end("Invalid profile name");
+            return;
+         }
+         File file = controller.getRunDir(run).resolve(ControllerVerticle.PROFILES_DIR).resolve(profile).toFile();
+         if (!file.isFile()) {
+            ctx.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code()).end("Profile " + profile + " not found");
+            return;
+         }
+         ctx.response()
+               .putHeader(HttpHeaders.CONTENT_TYPE, "application/octet-stream")
+               .putHeader("Content-Disposition", "attachment; filename=\"" + profile + "\"")
+               .sendFile(file.toString());
+      });
+   }
+
    @Override
    public void listAgents(RoutingContext ctx) {
       ctx.response().end(new JsonArray(controller.runs.values().stream()
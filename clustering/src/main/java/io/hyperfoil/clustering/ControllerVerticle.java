@@ -8,31 +8,52 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.hyperfoil.api.BenchmarkExecutionException;
 import io.hyperfoil.api.config.Benchmark;
 import io.hyperfoil.api.config.Agent;
+import io.hyperfoil.api.config.ElasticConfig;
 import io.hyperfoil.api.config.Phase;
 import io.hyperfoil.api.config.RunHook;
+import io.hyperfoil.api.config.StatisticsConfig;
 import io.hyperfoil.api.deployment.DeployedAgent;
 import io.hyperfoil.api.deployment.Deployer;
 import io.hyperfoil.api.session.PhaseInstance;
+import io.hyperfoil.api.statistics.CustomMetrics;
 import io.hyperfoil.clustering.messages.AgentControlMessage;
 import io.hyperfoil.clustering.messages.AgentHello;
+import io.hyperfoil.clustering.messages.AgentMetricsMessage;
+import io.hyperfoil.clustering.messages.ElasticScale;
+import io.hyperfoil.clustering.messages.SessionListing;
+import io.hyperfoil.clustering.messages.SessionQuery;
 import io.hyperfoil.clustering.messages.SessionStatsMessage;
+import io.hyperfoil.clustering.messages.SessionSummary;
+import io.hyperfoil.clustering.messages.SlaAbortMessage;
 import io.hyperfoil.clustering.messages.StatsMessage;
 import io.hyperfoil.core.hooks.ExecRunHook;
+import io.hyperfoil.core.impl.AgentMetrics;
+import io.hyperfoil.core.impl.statistics.FileSeriesStorage;
+import io.hyperfoil.core.impl.statistics.HistogramLog;
+import io.hyperfoil.core.impl.statistics.SeriesStorage;
+import io.hyperfoil.core.impl.statistics.StatisticsJournal;
+import io.hyperfoil.core.impl.statistics.StatisticsShards;
 import io.hyperfoil.core.impl.statistics.StatisticsStore;
 import io.hyperfoil.clustering.util.PersistenceUtil;
 import io.hyperfoil.clustering.messages.PhaseChangeMessage;
 import io.hyperfoil.clustering.messages.PhaseControlMessage;
+import io.hyperfoil.clustering.messages.ProfileChunkMessage;
+import io.hyperfoil.clustering.messages.RequestStatsBatchMessage;
 import io.hyperfoil.clustering.messages.RequestStatsMessage;
 import io.hyperfoil.core.util.CountDown;
+import io.hyperfoil.core.util.FlightRecorder;
 import io.hyperfoil.internal.Controller;
+import io.hyperfoil.internal.Properties;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
@@ -44,11 +65,19 @@ import io.vertx.ext.cluster.infinispan.InfinispanClusterManager;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -56,21 +85,36 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.infinispan.commons.api.BasicCacheContainer;
 
 public class ControllerVerticle extends AbstractVerticle implements NodeListener {
    private static final Logger log = LoggerFactory.getLogger(ControllerVerticle.class);
+   static final String PROFILES_DIR = "profiles";
 
    private EventBus eb;
-   private ControllerServer server;
-   private Deployer deployer;
+   ControllerServer server;
+   private AgentChannelServer channelServer;
+   // Tests can set the deployer before the verticle starts
+   Deployer deployer;
    private AtomicInteger runIds = new AtomicInteger();
+   private final RunCatalog runCatalog = new RunCatalog(Controller.RUN_DIR);
    private Map<String, Benchmark> benchmarks = new HashMap<>();
+   private StatisticsShards statisticsShards;
+   private final BenchmarkBlobs benchmarkBlobs = new BenchmarkBlobs();
    private long timerId = -1;
+   // Agents waiting for another run, by name
+   private final Map<String, PooledAgent> agentPool = new HashMap<>();
+   private boolean agentPoolEnabled;
+   private long agentIdleTimeout;
+   private long agentHealthCheckPeriod;
+   // Remote agents start phases at an agreed time, accounting for the delivery of the control message
+   private final long phaseStartDelay = Properties.getLong(Properties.CONTROLLER_PHASE_START_DELAY, 100);
 
    Map<String, Run> runs = new HashMap<>();
 
@@ -78,13 +122,26 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
    public void start(Future<Void> future) {
       log.info("Starting in directory {}...", Controller.ROOT_DIR);
       CountDown startCountDown = new CountDown(future, 2);
+      statisticsShards = new StatisticsShards(Properties.getInt(Properties.CONTROLLER_STATISTICS_THREADS,
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
       server = new ControllerServer(this, startCountDown);
       vertx.exceptionHandler(throwable -> log.error("Uncaught error: ", throwable));
       if (Files.exists(Controller.RUN_DIR)) {
          try {
-            Files.list(Controller.RUN_DIR).forEach(this::updateRuns);
+            runCatalog.load(this::readRunInfo);
          } catch (IOException e) {
-            log.error("Could not list run dir contents", e);
+            log.error("Could not load run catalog", e);
+         }
+         String lastRunId = runCatalog.lastRunId();
+         if (lastRunId != null) {
+            runIds.set(Integer.parseInt(lastRunId, 16) + 1);
+         }
+         // Details of other runs are loaded lazily when requested
+         for (JsonObject info : runCatalog.entries()) {
+            if (!info.containsKey("terminateTime")) {
+               // The controller did not complete the run, probably crashed
+               recoverRun(info);
+            }
          }
       }
       Controller.HOOKS_DIR.resolve("pre").toFile().mkdirs();
@@ -118,6 +175,11 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
          agentInfo.status = AgentInfo.Status.REGISTERED;
          message.reply("Registered");
 
+         if (agentInfo.elastic) {
+            vertx.cancelTimer(agentInfo.deployTimerId);
+            joinAgent(run, agentInfo);
+            return;
+         }
          if (run.agents.stream().allMatch(a -> a.status != AgentInfo.Status.STARTING)) {
             handleAgentsStarted(run);
          } else {
@@ -133,7 +195,7 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
             log.error("No run {}", phaseChange.runId());
             return;
          }
-         AgentInfo agent = run.agents.stream().filter(a -> a.deploymentId.equals(phaseChange.senderId())).findAny().orElse(null);
+         AgentInfo agent = run.agents.stream().filter(a -> phaseChange.senderId().equals(a.deploymentId)).findAny().orElse(null);
          if (agent == null) {
             log.error("No agent {}", phaseChange.senderId());
             return;
@@ -181,12 +243,22 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
                   run.statisticsStore.record(requestStatsMessage.address, requestStatsMessage.phaseId, requestStatsMessage.stepId,
                         requestStatsMessage.metric, requestStatsMessage.statistics);
                   if (requestStatsMessage.isPhaseComplete) {
-                     run.statisticsStore.completePhase(phase);
-                     if (!run.statisticsStore.validateSlas()) {
-                        log.info("SLA validation failed for {}", phase);
-                        ControllerPhase controllerPhase = run.phases.get(phase);
-                        controllerPhase.setFailed();
-                        failNotStartedPhases(run, controllerPhase);
+                     completePhaseStats(run, phase);
+                  }
+               } else if (statsMessage instanceof RequestStatsBatchMessage) {
+                  RequestStatsBatchMessage batchMessage = (RequestStatsBatchMessage) statsMessage;
+                  log.trace("Run {}: Received {} stats from {}", batchMessage.runId, batchMessage.entries.size(), batchMessage.address);
+                  Set<String> completedPhases = batchMessage.isPhaseComplete ? new HashSet<>() : null;
+                  for (RequestStatsBatchMessage.Entry entry : batchMessage.entries) {
+                     run.statisticsStore.record(batchMessage.address, entry.phaseId, entry.stepId, entry.metric, entry.statistics);
+                     if (completedPhases != null) {
+                        completedPhases.add(run.phase(entry.phaseId));
+                     }
+                  }
+                  // Complete the phases only after the whole batch has been recorded
+                  if (completedPhases != null) {
+                     for (String phase : completedPhases) {
+                        completePhaseStats(run, phase);
                      }
                   }
                } else if (statsMessage instanceof SessionStatsMessage) {
@@ -196,6 +268,20 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
                      run.statisticsStore.recordSessionStats(sessionStatsMessage.address,
                            sessionStatsMessage.timestamp, entry.getKey(), entry.getValue().min, entry.getValue().max);
                   }
+               } else if (statsMessage instanceof AgentMetricsMessage) {
+                  AgentMetricsMessage agentMetricsMessage = (AgentMetricsMessage) statsMessage;
+                  log.trace("Run {}: Received agent metrics from {}", agentMetricsMessage.runId, agentMetricsMessage.address);
+                  run.statisticsStore.recordAgentMetrics(agentMetricsMessage.address, agentMetricsMessage.metrics);
+                  checkSchedulingLag(run, agentMetricsMessage.address, agentMetricsMessage.metrics);
+                  checkSaturation(run, agentMetricsMessage.address, agentMetricsMessage.metrics);
+               } else if (statsMessage instanceof SlaAbortMessage) {
+                  SlaAbortMessage abortMessage = (SlaAbortMessage) statsMessage;
+                  String phase = run.phase(abortMessage.phaseId);
+                  log.info("Run {}: Agent {} reports SLA failure in {}/{}", abortMessage.runId, abortMessage.address, phase, abortMessage.metric);
+                  if (abortPhase(run, phase)) {
+                     run.statisticsStore.addFailure(phase, abortMessage.metric, abortMessage.startTime, abortMessage.endTime,
+                           abortMessage.message + " (on agent " + abortMessage.address + ")");
+                  }
                }
             }
          } else {
@@ -204,22 +290,41 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
          message.reply("OK");
       });
 
-      if (vertx.isClustered()) {
-         for (Deployer.Factory deployerFactory : ServiceLoader.load(Deployer.Factory.class)) {
-            log.debug("Found deployer {}", deployerFactory.name());
-            if (Controller.DEPLOYER.equals(deployerFactory.name())) {
-               deployer = deployerFactory.create();
-               break;
+      eb.consumer(Feeds.PROFILE, this::handleProfileChunk);
+      eb.consumer(Feeds.BLOB, benchmarkBlobs::handleChunkRequest);
+      eb.consumer(Feeds.CLOCK, message -> message.reply(System.currentTimeMillis()));
+
+      int channelPort = Properties.getInt(Properties.CONTROLLER_CHANNEL_PORT, -1);
+      if (!vertx.isClustered() && channelPort >= 0) {
+         startCountDown.increment();
+         startChannelServer(channelPort, startCountDown);
+      }
+      if (isDistributed()) {
+         if (deployer == null) {
+            for (Deployer.Factory deployerFactory : ServiceLoader.load(Deployer.Factory.class)) {
+               log.debug("Found deployer {}", deployerFactory.name());
+               if (Controller.DEPLOYER.equals(deployerFactory.name())) {
+                  deployer = deployerFactory.create();
+                  break;
+               }
             }
          }
          if (deployer == null) {
             throw new IllegalStateException("Hyperfoil is running in clustered mode but it couldn't load deployer '" + Controller.DEPLOYER + "'");
          }
 
-         if (vertx instanceof VertxInternal) {
+         if (vertx.isClustered() && vertx instanceof VertxInternal) {
             ClusterManager clusterManager = ((VertxInternal) vertx).getClusterManager();
             clusterManager.nodeListener(this);
          }
+
+         agentPoolEnabled = Properties.getBoolean(Properties.CONTROLLER_AGENT_POOL, false);
+         if (agentPoolEnabled) {
+            agentIdleTimeout = Properties.getLong(Properties.CONTROLLER_AGENT_IDLE_TIMEOUT, TimeUnit.MINUTES.toMillis(10));
+            agentHealthCheckPeriod = Properties.getLong(Properties.CONTROLLER_AGENT_HEALTH_CHECK_PERIOD, TimeUnit.SECONDS.toMillis(10));
+            log.info("Agents are kept in the pool for {} ms after a run", agentIdleTimeout);
+            vertx.setPeriodic(agentHealthCheckPeriod, id -> checkAgentPool());
+         }
       }
 
       if (!Controller.BENCHMARK_DIR.toFile().exists() && !Controller.BENCHMARK_DIR.toFile().mkdirs()) {
@@ -230,12 +335,57 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
       startCountDown.countDown();
    }
 
+   private void startChannelServer(int port, CountDown startCountDown) {
+      String secret = System.getProperty(Properties.CONTROLLER_CHANNEL_SECRET);
+      if (secret == null) {
+         // Deployers pass the secret to the agents along with the address
+         byte[] bytes = new byte[32];
+         new SecureRandom().nextBytes(bytes);
+         secret = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+         System.setProperty(Properties.CONTROLLER_CHANNEL_SECRET, secret);
+      }
+      channelServer = new AgentChannelServer(vertx, this, secret);
+      channelServer.start(Properties.get(Properties.CONTROLLER_CLUSTER_IP, "0.0.0.0"), port, result -> {
+         if (result.failed()) {
+            log.error("Failed to start agent channel", result.cause());
+            startCountDown.handle(Future.failedFuture(result.cause()));
+            return;
+         }
+         // Deployers pass these to the agents
+         if (System.getProperty(Properties.CONTROLLER_CLUSTER_IP) == null) {
+            try {
+               System.setProperty(Properties.CONTROLLER_CLUSTER_IP, InetAddress.getLocalHost().getHostAddress());
+            } catch (UnknownHostException e) {
+               log.error("Cannot find controller address; set -D" + Properties.CONTROLLER_CLUSTER_IP + "=x.x.x.x", e);
+            }
+         }
+         System.setProperty(Properties.CONTROLLER_CHANNEL_PORT, String.valueOf(result.result()));
+         startCountDown.countDown();
+      });
+   }
+
+   /**
+    * Agents run in separate processes, connected either through the cluster or the agent channel.
+    */
+   private boolean isDistributed() {
+      return vertx.isClustered() || channelServer != null;
+   }
+
    @Override
    public void nodeAdded(String nodeID) {
    }
 
    @Override
    public void nodeLeft(String nodeID) {
+      // The event is not delivered on event loop
+      context.runOnContext(nil -> {
+         for (PooledAgent pooled : new ArrayList<>(agentPool.values())) {
+            if (Objects.equals(pooled.nodeId, nodeID) && agentPool.remove(pooled.definition.name, pooled)) {
+               log.info("Pooled agent {} left the cluster", pooled);
+               stopDeployedAgent(pooled);
+            }
+         }
+      });
       for (Run run : runs.values()) {
          if (run.terminateTime.isComplete()) {
             continue;
@@ -254,26 +404,26 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
       }
    }
 
-   private void updateRuns(Path runDir) {
-      File file = runDir.toFile();
-      if (!file.getName().matches("[0-9A-F][0-9A-F][0-9A-F][0-9A-F]")) {
-         return;
-      }
-      String runId = file.getName();
-      int id = Integer.parseInt(runId, 16);
-      if (id >= runIds.get()) runIds.set(id + 1);
+   private JsonObject readRunInfo(Path runDir) {
       Path infoFile = runDir.resolve("info.json");
-      JsonObject info = new JsonObject();
       if (infoFile.toFile().exists() && infoFile.toFile().isFile()) {
          try {
-            info = new JsonObject(new String(Files.readAllBytes(infoFile), StandardCharsets.UTF_8));
-         } catch (IOException e) {
-            log.error("Cannot read info for run {}", runId);
-            return;
+            return new JsonObject(new String(Files.readAllBytes(infoFile), StandardCharsets.UTF_8));
+         } catch (IOException | DecodeException e) {
+            log.error("Cannot read info for run {}", e, runDir.getFileName());
+            return null;
          }
       }
+      return new JsonObject();
+   }
+
+   private Run loadRun(JsonObject info) {
+      String runId = info.getString("id");
+      Path runDir = Controller.RUN_DIR.resolve(runId);
+      JsonObject tags = info.getJsonObject("tags");
       Run run = new Run(runId, runDir, new Benchmark(info.getString("benchmark", "<unknown>"), null, Collections.emptyMap(), null, 0, null,
-            Collections.emptyMap(), Collections.emptyList(), Collections.emptyMap(), 0, Collections.emptyList(), Collections.emptyList()));
+            Collections.emptyMap(), Collections.emptyList(), tags == null ? Collections.emptyMap() : tags.getMap(), 0,
+            Collections.emptyList(), Collections.emptyList(), new CustomMetrics(), StatisticsConfig.DEFAULT, ElasticConfig.DISABLED));
       run.startTime = info.getLong("startTime", 0L);
       run.terminateTime.complete(info.getLong("terminateTime", 0L));
       run.description = info.getString("description");
@@ -286,19 +436,82 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
       }
       run.cancelled = info.getBoolean("cancelled", Boolean.FALSE);
       runs.put(runId, run);
+      return run;
+   }
+
+   /**
+    * Loads run that was not completed and replays its journal in a worker thread. The run is marked as terminated
+    * in the catalog only after the statistics are recovered so that a crash during recovery does not lose them.
+    */
+   private void recoverRun(JsonObject info) {
+      Run run = loadRun(info);
+      run.recovering = true;
+      vertx.executeBlocking(future -> future.complete(recoverStatistics(run)), false, result -> {
+         run.recovering = false;
+         if (result.failed()) {
+            log.error("Failed to recover statistics for run {}", result.cause(), run.id);
+         } else if (result.result() != null) {
+            StatisticsStore store = (StatisticsStore) result.result();
+            run.benchmark = store.benchmark();
+            run.statisticsStore = store;
+         }
+         runCatalog.update(info.copy().put("terminateTime", 0L));
+      });
+   }
+
+   private StatisticsStore recoverStatistics(Run run) {
+      Path journal = run.dir.resolve(StatisticsJournal.FILE_NAME);
+      // Phases are persisted as these complete; total.csv is written only when the whole run is persisted
+      if (!journal.toFile().exists() || run.dir.resolve("stats").resolve("total.csv").toFile().exists()) {
+         return null;
+      }
+      // The controller did not persist the statistics, probably crashed during the run
+      Benchmark benchmark;
+      try (Stream<Path> files = Files.list(run.dir)) {
+         benchmark = files.filter(f -> f.getFileName().toString().endsWith(".serialized"))
+               .findFirst().map(PersistenceUtil::load).orElse(null);
+      } catch (IOException e) {
+         log.error("Cannot list files of run {}", e, run.id);
+         return null;
+      }
+      if (benchmark == null) {
+         log.warn("Cannot recover statistics for run {}: benchmark not found", run.id);
+         return null;
+      }
+      try {
+         StatisticsStore store = StatisticsStore.rebuild(benchmark, journal, failure -> {
+         }, new FileSeriesStorage(run.dir.resolve("series")));
+         store.persist(run.dir.resolve("stats"));
+         log.info("Recovered statistics for run {} from {}", run.id, journal);
+         return store;
+      } catch (IOException e) {
+         log.error("Failed to recover statistics for run {}", e, run.id);
+         return null;
+      }
    }
 
    @Override
    public void stop(Future<Void> stopFuture) throws Exception {
+      for (PooledAgent pooled : new ArrayList<>(agentPool.values())) {
+         retireAgent(pooled);
+      }
       if (deployer != null) {
          deployer.close();
       }
+      if (channelServer != null) {
+         channelServer.stop();
+      }
+      statisticsShards.stop();
       server.stop(stopFuture);
    }
 
    private void tryProgressStatus(Run run, String phase) {
       PhaseInstance.Status minStatus = null;
       for (AgentInfo a : run.agents) {
+         if (a.elastic && (a.assignedPhases == null || !a.assignedPhases.contains(phase))) {
+            // Elastic agents execute only the phases they joined
+            continue;
+         }
          PhaseInstance.Status status = a.phases.get(phase);
          if (status == null) {
             // The status is not defined on one of the nodes, so we can't progress it.
@@ -307,6 +520,9 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
             minStatus = status;
          }
       }
+      if (minStatus == null) {
+         return;
+      }
       ControllerPhase controllerPhase = run.phases.get(phase);
       switch (minStatus) {
          case RUNNING:
@@ -316,8 +532,14 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
             controllerPhase.status(ControllerPhase.Status.FINISHED);
             break;
          case TERMINATED:
+            if (controllerPhase.hasPendingStats()) {
+               // Dependent phases must not start before we know if the SLAs failed; completePhaseStats will retry
+               log.debug("Run {}: Phase {} is terminated on all agents, waiting for statistics", run.id, phase);
+               break;
+            }
             controllerPhase.status(ControllerPhase.Status.TERMINATED);
             controllerPhase.absoluteCompletionTime(System.currentTimeMillis());
+            stopProfiling(run, phase);
             break;
       }
       if (controllerPhase.isFailed()) {
@@ -325,6 +547,344 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
       }
    }
 
+   private void completePhaseStats(Run run, String phase) {
+      ControllerPhase controllerPhase = run.phases.get(phase);
+      // The phase is held from terminating until the callback runs
+      controllerPhase.incrementPendingStats();
+      // SLAs for the whole phase are validated in the statistics shards
+      run.statisticsStore.completePhase(phase, () -> context.runOnContext(nil -> {
+         controllerPhase.decrementPendingStats();
+         if (!run.statisticsStore.validateSlas()) {
+            log.info("SLA validation failed for {}", phase);
+            controllerPhase.setFailed();
+            failNotStartedPhases(run, controllerPhase);
+         }
+         if (!controllerPhase.hasPendingStats() && !run.terminateTime.isComplete()) {
+            // The agents might have reported termination in the meantime
+            tryProgressStatus(run, phase);
+            runSimulation(run);
+         }
+      }));
+   }
+
+   /**
+    * Terminates the phase right away after an SLA with abort on failure has been violated.
+    *
+    * @return False if the phase was already failed or terminated.
+    */
+   private boolean abortPhase(Run run, String phase) {
+      ControllerPhase controllerPhase = run.phases.get(phase);
+      if (controllerPhase == null || controllerPhase.isFailed() || controllerPhase.status().isTerminated()) {
+         return false;
+      }
+      log.warn("Run {}: Aborting phase {} due to SLA failure", run.id, phase);
+      controllerPhase.setFailed();
+      if (controllerPhase.status() == ControllerPhase.Status.NOT_STARTED) {
+         controllerPhase.status(ControllerPhase.Status.CANCELLED);
+      } else if (controllerPhase.status() != ControllerPhase.Status.TERMINATING) {
+         eb.publish(Feeds.CONTROL, new PhaseControlMessage(PhaseControlMessage.Command.TERMINATE, phase));
+         controllerPhase.status(ControllerPhase.Status.TERMINATING);
+      }
+      failNotStartedPhases(run, controllerPhase);
+      return true;
+   }
+
+   private void checkSchedulingLag(Run run, String address, AgentMetrics metrics) {
+      long maxLag = run.benchmark.statistics().maxSchedulingLag();
+      long lag = TimeUnit.MICROSECONDS.toMillis(metrics.maxSchedulingLag());
+      if (maxLag < 0 || lag <= maxLag) {
+         return;
+      }
+      String agent = run.agents.stream().filter(a -> address.equals(a.deploymentId)).map(a -> a.name).findFirst().orElse(address);
+      for (ControllerPhase phase : run.phases.values()) {
+         ControllerPhase.Status status = phase.status();
+         if (status == ControllerPhase.Status.NOT_STARTED || status.isTerminated() || !run.saturatedAgents.add(address + "/" + phase.definition().name)) {
+            continue;
+         }
+         String message = "Agent " + agent + " is saturated: scheduling lag " + lag + " ms exceeds " + maxLag + " ms";
+         log.warn("Run {}, phase {}: {}", run.id, phase.definition().name, message);
+         // The failure invalidates results the same way as failed SLA
+         run.statisticsStore.addFailure(phase.definition().name, null, metrics.startTime, metrics.endTime, message);
+      }
+   }
+
+   /**
+    * Adds an agent when the metrics report saturation for several consecutive samples; the cooldown gives
+    * the previously added agent time to take over part of the load.
+    */
+   private void checkSaturation(Run run, String address, AgentMetrics metrics) {
+      ElasticConfig elastic = run.benchmark.elastic();
+      if (!elastic.isEnabled(run.benchmark.agents().length) || deployer == null || run.terminateTime.isComplete()) {
+         return;
+      }
+      AgentInfo agent = run.agents.stream().filter(a -> address.equals(a.deploymentId)).findFirst().orElse(null);
+      if (agent == null) {
+         return;
+      }
+      if (!isSaturated(elastic, metrics)) {
+         agent.saturatedSamples = 0;
+         return;
+      } else if (++agent.saturatedSamples < elastic.saturatedSamples()) {
+         return;
+      }
+      long now = System.currentTimeMillis();
+      if (run.agents.size() >= elastic.maxAgents() || now - run.lastScaleTime < elastic.cooldown()
+            || run.agents.stream().anyMatch(a -> a.elastic && (a.status == AgentInfo.Status.STARTING || a.joining))) {
+         return;
+      }
+      if (joinablePhases(run, now).isEmpty()) {
+         log.debug("Run {}: agent {} is saturated but there are no phases to re-partition", run.id, agent.name);
+         return;
+      }
+      agent.saturatedSamples = 0;
+      run.lastScaleTime = now;
+      addElasticAgent(run, agent);
+   }
+
+   private static boolean isSaturated(ElasticConfig elastic, AgentMetrics metrics) {
+      if (TimeUnit.MICROSECONDS.toMillis(metrics.maxSchedulingLag()) > elastic.maxSchedulingLag()) {
+         return true;
+      }
+      if (elastic.maxBusyRatio() < 0 || metrics.busyRatio == null) {
+         return false;
+      }
+      double sum = 0;
+      int threads = 0;
+      for (double ratio : metrics.busyRatio) {
+         // Negative ratio means that the thread CPU time is not supported
+         if (ratio >= 0) {
+            sum += ratio;
+            ++threads;
+         }
+      }
+      return threads > 0 && sum / threads > elastic.maxBusyRatio();
+   }
+
+   /**
+    * @return Running open-model phases that won't complete too soon, mapped to their start times.
+    */
+   private static Map<String, Long> joinablePhases(Run run, long now) {
+      long minRemainingDuration = run.benchmark.elastic().minRemainingDuration();
+      Map<String, Long> phases = new HashMap<>();
+      for (ControllerPhase phase : run.phases.values()) {
+         ControllerPhase.Status status = phase.status();
+         if ((status == ControllerPhase.Status.STARTING || status == ControllerPhase.Status.RUNNING)
+               && phase.definition() instanceof Phase.OpenModelPhase
+               && phase.absoluteStartTime() + phase.definition().duration() - now >= minRemainingDuration) {
+            phases.put(phase.definition().name, phase.absoluteStartTime());
+         }
+      }
+      return phases;
+   }
+
+   /**
+    * Phase definitions are divided by the number of declared agents; when more agents run the phase
+    * each of them generates only a fraction of that rate.
+    */
+   private static double rateFactor(Run run) {
+      long activeAgents = run.agents.stream()
+            .filter(a -> a.status == AgentInfo.Status.INITIALIZING || a.status == AgentInfo.Status.INITIALIZED).count();
+      return (double) run.benchmark.agents().length / Math.max(activeAgents, 1);
+   }
+
+   private void addElasticAgent(Run run, AgentInfo saturated) {
+      Agent[] declared = run.benchmark.agents();
+      int index = run.elasticAgentCounter++;
+      // Elastic agents share the settings of declared agents in round-robin fashion
+      Agent template = declared[index % declared.length];
+      Agent definition = new Agent(template.name + "-elastic-" + index, template.inlineConfig, template.properties);
+      AgentInfo agentInfo = new AgentInfo(definition.name, run.agents.size());
+      agentInfo.elastic = true;
+      run.agents.add(agentInfo);
+      log.info("Run {}: agent {} is saturated, adding agent {}", run.id, saturated.name, definition.name);
+      vertx.executeBlocking(future -> {
+         agentInfo.deployedAgent = deployer.start(definition, run.id, exception -> {
+            log.warn("Run {}: failed to deploy elastic agent {}", exception, run.id, definition.name);
+            vertx.runOnContext(nil -> removeElasticAgent(run, agentInfo));
+         });
+         future.complete();
+      }, false, result -> {
+         if (result.failed()) {
+            log.warn("Run {}: failed to start elastic agent {}", result.cause(), run.id, definition.name);
+            removeElasticAgent(run, agentInfo);
+         }
+      });
+      agentInfo.deployTimerId = vertx.setTimer(Controller.DEPLOY_TIMEOUT, id -> {
+         log.warn("Run {}: elastic agent {} did not register in time", run.id, definition.name);
+         removeElasticAgent(run, agentInfo);
+      });
+   }
+
+   /**
+    * Elastic agent is not essential for the run; when it fails the run continues with the remaining agents.
+    */
+   private void removeElasticAgent(Run run, AgentInfo agent) {
+      if (!run.agents.remove(agent)) {
+         return;
+      }
+      vertx.cancelTimer(agent.deployTimerId);
+      if (agent.deploymentId != null) {
+         eb.send(agent.deploymentId, new AgentControlMessage(AgentControlMessage.Command.STOP, agent.id, null));
+      }
+      if (agent.deployedAgent != null) {
+         agent.deployedAgent.stop();
+      }
+   }
+
+   private void joinAgent(Run run, AgentInfo agent) {
+      if (run.terminateTime.isComplete() || run.benchmarkBlob == null) {
+         removeElasticAgent(run, agent);
+         return;
+      }
+      Map<String, Long> phases = joinablePhases(run, System.currentTimeMillis());
+      agent.status = AgentInfo.Status.INITIALIZING;
+      agent.assignedPhases = new HashSet<>(phases.keySet());
+      agent.pendingPhases = new HashMap<>();
+      sendJoin(run, agent, run.benchmarkBlob.reference, phases);
+   }
+
+   private void sendJoin(Run run, AgentInfo agent, Object benchmark, Map<String, Long> phases) {
+      double rateFactor = rateFactor(run);
+      agent.joining = true;
+      log.info("Run {}: agent {} joins phases {}, rate factor is {}", run.id, agent.name, phases.keySet(), rateFactor);
+      ElasticScale join = new ElasticScale(benchmark, rateFactor, phases);
+      eb.send(agent.deploymentId, new AgentControlMessage(AgentControlMessage.Command.JOIN, agent.id, join, run.id), reply -> {
+         if (run.terminateTime.isComplete()) {
+            return;
+         } else if (reply.failed()) {
+            log.warn("Run {}: agent {} failed to join", reply.cause(), run.id, agent.name);
+            removeElasticAgent(run, agent);
+            return;
+         }
+         agent.status = AgentInfo.Status.INITIALIZED;
+         agent.joining = false;
+         // Phases started on other agents while this one was joining got the previous rate
+         Map<String, Long> scaledPhases = new HashMap<>(phases);
+         scaledPhases.putAll(agent.pendingPhases);
+         ElasticScale scale = new ElasticScale(null, rateFactor, scaledPhases);
+         for (AgentInfo other : run.agents) {
+            if (other != agent && other.status == AgentInfo.Status.INITIALIZED) {
+               eb.send(other.deploymentId, new AgentControlMessage(AgentControlMessage.Command.SCALE, other.id, scale), scaleReply -> {
+                  if (scaleReply.failed()) {
+                     log.error("Run {}: agent {} failed to scale", scaleReply.cause(), run.id, other.name);
+                  }
+               });
+            }
+         }
+         if (!agent.pendingPhases.isEmpty()) {
+            Map<String, Long> pendingPhases = agent.pendingPhases;
+            agent.pendingPhases = new HashMap<>();
+            sendJoin(run, agent, null, pendingPhases);
+         }
+         // Finishing phases might have been postponed
+         runSimulation(run);
+      });
+   }
+
+   private void joinElasticAgents(Run run, String phase, long startTime) {
+      for (AgentInfo agent : run.agents) {
+         if (!agent.elastic || agent.assignedPhases == null) {
+            continue;
+         }
+         agent.assignedPhases.add(phase);
+         if (agent.joining) {
+            agent.pendingPhases.put(phase, startTime);
+         } else if (agent.status == AgentInfo.Status.INITIALIZED) {
+            sendJoin(run, agent, null, Collections.singletonMap(phase, startTime));
+         }
+      }
+   }
+
+   private static boolean isJoining(Run run, String phase) {
+      return run.agents.stream().anyMatch(a -> a.joining && a.assignedPhases.contains(phase));
+   }
+
+   private static String recordingName(Run run, String phase) {
+      return "hyperfoil-controller-" + run.id + "-" + phase;
+   }
+
+   static String profileFileName(String source, String phase) {
+      // Keep the names safe for both filesystem and URLs
+      return (source + "." + phase).replaceAll("[^a-zA-Z0-9_.-]", "_") + ".jfr";
+   }
+
+   private void startProfiling(Run run, String phase) {
+      run.recordedPhases.add(phase);
+      // Ordered with stopProfiling, otherwise stop could run before the recording starts in short phases
+      vertx.executeBlocking(future -> {
+         if (FlightRecorder.start(recordingName(run, phase))) {
+            future.complete();
+         } else {
+            future.fail("Cannot start recording");
+         }
+      }, true, result -> {
+         if (result.failed()) {
+            log.error("Run {}: Failed to start profiling phase {} on controller", run.id, phase);
+            run.recordedPhases.remove(phase);
+         }
+      });
+   }
+
+   private void stopProfiling(Run run, String phase) {
+      if (!run.recordedPhases.remove(phase)) {
+         return;
+      }
+      Path file = run.dir.resolve(PROFILES_DIR).resolve(profileFileName("controller", phase));
+      vertx.executeBlocking(future -> {
+         if (file.getParent().toFile().mkdirs() || file.getParent().toFile().isDirectory()) {
+            if (FlightRecorder.stop(recordingName(run, phase), file)) {
+               future.complete();
+               return;
+            }
+         }
+         future.fail("Cannot stop recording");
+      }, true, result -> {
+         if (result.succeeded()) {
+            log.info("Run {}: Profile of phase {} on controller written to {}", run.id, phase, file);
+         } else {
+            log.error("Run {}: Failed to write profile of phase {} on controller", run.id, phase);
+         }
+      });
+   }
+
+   private void handleProfileChunk(Message<Object> message) {
+      ProfileChunkMessage chunk = (ProfileChunkMessage) message.body();
+      Run run = runs.get(chunk.runId);
+      if (run == null) {
+         log.error("Unknown run {}", chunk.runId);
+         message.fail(1, "Unknown run");
+         return;
+      }
+      Path file = run.dir.resolve(PROFILES_DIR).resolve(profileFileName(chunk.agentName, chunk.phase));
+      Path partFile = file.resolveSibling(file.getFileName() + ".part");
+      // Chunks of one file arrive sequentially; the agent waits for reply before sending next one
+      vertx.executeBlocking(future -> {
+         try {
+            Files.createDirectories(partFile.getParent());
+            try (RandomAccessFile raf = new RandomAccessFile(partFile.toFile(), "rw")) {
+               raf.seek(chunk.position);
+               raf.write(chunk.data);
+            }
+            if (chunk.last) {
+               Files.move(partFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            future.complete();
+         } catch (IOException e) {
+            future.fail(e);
+         }
+      }, false, result -> {
+         if (result.succeeded()) {
+            if (chunk.last) {
+               log.info("Run {}: Received profile of phase {} from {}", run.id, chunk.phase, chunk.agentName);
+            }
+            message.reply("OK");
+         } else {
+            log.error("Run {}: Cannot write profile {}", result.cause(), run.id, file);
+            message.fail(1, result.cause().getMessage());
+         }
+      });
+   }
+
    private void failNotStartedPhases(Run run, ControllerPhase controllerPhase) {
       log.info("Phase {} failed, cancelling other phases...", controllerPhase.definition().name());
       for (ControllerPhase p : run.phases.values()) {
@@ -340,11 +900,39 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
       runDir.toFile().mkdirs();
       Run run = new Run(runId, runDir, benchmark);
       run.description = description;
+      // With spilling the per-second series are kept in memory-mapped files instead of heap
+      SeriesStorage seriesStorage = Properties.getBoolean(Properties.CONTROLLER_STATISTICS_SPILL, false) ?
+            new FileSeriesStorage(runDir.resolve("series")) : SeriesStorage.HEAP;
       run.statisticsStore = new StatisticsStore(run.benchmark, failure -> {
          log.warn("Failed verify SLA(s) for {}/{}: {}", failure.phase(), failure.metric(), failure.message());
-      });
+         if (failure.sla() != null && failure.sla().abortOnFailure()) {
+            // The failure handler is invoked in the statistics shard
+            context.runOnContext(nil -> abortPhase(run, failure.phase()));
+         }
+      }, seriesStorage, statisticsShards);
+      try {
+         run.statisticsStore.setJournal(new StatisticsJournal(runDir.resolve(StatisticsJournal.FILE_NAME)));
+      } catch (IOException e) {
+         log.error("Cannot open statistics journal for run {}", e, runId);
+      }
+      try {
+         run.statisticsStore.setHistogramLog(new HistogramLog(runDir.resolve(HistogramLog.FILE_NAME)));
+      } catch (IOException e) {
+         log.error("Cannot open histogram log for run {}", e, runId);
+      }
+      run.statisticsStore.setPersistDir(runDir.resolve("stats"));
       runs.put(run.id, run);
       PersistenceUtil.store(run.benchmark, run.dir);
+      JsonObject info = new JsonObject()
+            .put("id", run.id)
+            .put("benchmark", benchmark.name())
+            .put("description", description)
+            .put("tags", new JsonObject(benchmark.tags()));
+      // Ordered with the update in writeRun
+      vertx.executeBlocking(future -> {
+         runCatalog.update(info);
+         future.complete();
+      }, null);
       return run;
    }
 
@@ -364,7 +952,7 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
       }
 
       if (run.benchmark.agents().length == 0) {
-         if (vertx.isClustered()) {
+         if (isDistributed()) {
             run.terminateTime.complete(System.currentTimeMillis());
             return "Server is started in clustered mode; benchmarks must define agents.";
          } else {
@@ -373,7 +961,7 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
             vertx.deployVerticle(AgentVerticle.class, new DeploymentOptions().setConfig(config));
          }
       } else {
-         if (!vertx.isClustered()) {
+         if (!isDistributed()) {
             return "Server is not started as clustered and does not accept benchmarks with agents defined.";
          }
          log.info("Starting agents for run {}", run.id);
@@ -381,6 +969,16 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
          for (Agent agent : run.benchmark.agents()) {
             AgentInfo agentInfo = new AgentInfo(agent.name, agentCounter++);
             run.agents.add(agentInfo);
+            PooledAgent pooled = agentPool.remove(agent.name);
+            if (pooled != null) {
+               if (pooled.matches(agent)) {
+                  log.info("Reusing agent {} from the pool", pooled);
+                  pooled.assignTo(agentInfo);
+                  continue;
+               }
+               log.info("Agent {} in the pool has different settings, replacing it", pooled);
+               retireAgent(pooled);
+            }
             log.debug("Starting agent {}", agent.name);
             vertx.executeBlocking(future -> agentInfo.deployedAgent = deployer.start(agent, run.id, exception -> {
                run.errors.add(new Run.Error(agentInfo, new BenchmarkExecutionException("Failed to deploy agent", exception)));
@@ -399,6 +997,10 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
          log.error("Deployment timed out.");
          stopSimulation(run);
       });
+      if (!run.agents.isEmpty() && run.agents.stream().allMatch(a -> a.status == AgentInfo.Status.REGISTERED)) {
+         // All agents were taken from the pool
+         vertx.runOnContext(nil -> handleAgentsStarted(run));
+      }
 
       return null;
    }
@@ -408,12 +1010,37 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
 
       log.info("Starting benchmark {} - run {}", run.benchmark.name(), run.id);
 
+      if (run.benchmark.agents().length == 0) {
+         // In-vm agent receives the benchmark directly
+         initializeAgents(run, run.benchmark);
+         return;
+      }
+      vertx.<BenchmarkBlobs.Blob>executeBlocking(future -> {
+         try {
+            future.complete(BenchmarkBlobs.create(run.benchmark));
+         } catch (IOException e) {
+            future.fail(e);
+         }
+      }, result -> {
+         if (result.failed()) {
+            log.error("Failed to serialize benchmark {}", result.cause(), run.benchmark.name());
+            run.errors.add(new Run.Error(null, new BenchmarkExecutionException("Failed to serialize benchmark", result.cause())));
+            stopSimulation(run);
+            return;
+         }
+         run.benchmarkBlob = benchmarkBlobs.acquire(result.result());
+         log.info("Distributing benchmark {} to agents", run.benchmarkBlob.reference);
+         initializeAgents(run, run.benchmarkBlob.reference);
+      });
+   }
+
+   private void initializeAgents(Run run, Object benchmark) {
       for (AgentInfo agent : run.agents) {
          if (agent.status != AgentInfo.Status.REGISTERED) {
             log.error("Already initializing {}, status is {}!", agent.deploymentId, agent.status);
          } else {
             agent.status = AgentInfo.Status.INITIALIZING;
-            eb.send(agent.deploymentId, new AgentControlMessage(AgentControlMessage.Command.INITIALIZE, agent.id, run.benchmark), reply -> {
+            eb.send(agent.deploymentId, new AgentControlMessage(AgentControlMessage.Command.INITIALIZE, agent.id, benchmark, run.id), reply -> {
                if (reply.succeeded()) {
                   agent.status = AgentInfo.Status.INITIALIZED;
                   if (run.agents.stream().allMatch(a -> a.status == AgentInfo.Status.INITIALIZED)) {
@@ -471,6 +1098,10 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
       }
       long now = System.currentTimeMillis();
       for (ControllerPhase phase : run.phases.values()) {
+         if (isJoining(run, phase.definition().name)) {
+            // The agent would miss the command
+            continue;
+         }
          if (phase.status() == ControllerPhase.Status.RUNNING && phase.absoluteStartTime() + phase.definition().duration() <= now) {
             eb.publish(Feeds.CONTROL, new PhaseControlMessage(PhaseControlMessage.Command.FINISH, phase.definition().name));
             phase.status(ControllerPhase.Status.FINISHING);
@@ -485,10 +1116,19 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
          }
       }
       ControllerPhase[] availablePhases = run.getAvailablePhases();
+      // The in-vm agent can start right away
+      long startTime = run.benchmark.agents().length > 0 && phaseStartDelay > 0 ? now + phaseStartDelay : Long.MIN_VALUE;
       for (ControllerPhase phase : availablePhases) {
-         eb.publish(Feeds.CONTROL, new PhaseControlMessage(PhaseControlMessage.Command.RUN, phase.definition().name));
-         phase.absoluteStartTime(now);
+         boolean profile = run.isProfiled(phase.definition().name);
+         eb.publish(Feeds.CONTROL, new PhaseControlMessage(PhaseControlMessage.Command.RUN, phase.definition().name, profile, startTime));
+         if (profile) {
+            startProfiling(run, phase.definition().name);
+         }
+         phase.absoluteStartTime(startTime == Long.MIN_VALUE ? now : startTime);
          phase.status(ControllerPhase.Status.STARTING);
+         if (phase.definition() instanceof Phase.OpenModelPhase) {
+            joinElasticAgents(run, phase.definition().name, phase.absoluteStartTime());
+         }
       }
 
       if (run.phases.values().stream().allMatch(phase -> phase.status().isTerminated())) {
@@ -518,7 +1158,14 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
          return;
       }
       run.terminateTime.complete(System.currentTimeMillis());
+      // Phases might not terminate when the run is killed or agents fail
+      for (String phase : new ArrayList<>(run.recordedPhases)) {
+         stopProfiling(run, phase);
+      }
       for (AgentInfo agent : run.agents) {
+         if (agent.elastic) {
+            vertx.cancelTimer(agent.deployTimerId);
+         }
          if (agent.deploymentId == null) {
             assert agent.status == AgentInfo.Status.STARTING;
             if (agent.deployedAgent != null) {
@@ -526,7 +1173,12 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
             }
             continue;
          }
-         eb.send(agent.deploymentId, new AgentControlMessage(AgentControlMessage.Command.STOP, agent.id, null), reply -> {
+         // Elastic agents are not part of the benchmark definition and can't be matched in the pool
+         boolean reuse = agentPoolEnabled && run.benchmark.agents().length > 0 && !agent.elastic && agent.status != AgentInfo.Status.FAILED;
+         AgentControlMessage stop = reuse ?
+               new AgentControlMessage(AgentControlMessage.Command.RESET, agent.id, agentHealthCheckPeriod) :
+               new AgentControlMessage(AgentControlMessage.Command.STOP, agent.id, null);
+         eb.send(agent.deploymentId, stop, reply -> {
             if (reply.succeeded()) {
                agent.status = AgentInfo.Status.STOPPED;
                checkAgentsStopped(run);
@@ -534,7 +1186,15 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
                agent.status = AgentInfo.Status.FAILED;
                log.error("Agent {} failed to stop", reply.cause(), agent.deploymentId);
             }
-            if (agent.deployedAgent != null) {
+            if (reuse && reply.succeeded()) {
+               PooledAgent pooled = new PooledAgent(run.benchmark.agents()[agent.id], agent, System.currentTimeMillis());
+               PooledAgent previous = agentPool.put(agent.name, pooled);
+               if (previous != null) {
+                  // Another run has deployed agent with the same name in the meantime
+                  retireAgent(previous);
+               }
+               log.debug("Agent {} returned to the pool", pooled);
+            } else if (agent.deployedAgent != null) {
                agent.deployedAgent.stop();
             }
          });
@@ -544,14 +1204,60 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
 
    private void checkAgentsStopped(Run run) {
       if (run.agents.stream().allMatch(a -> a.status != AgentInfo.Status.INITIALIZED)) {
+         if (run.benchmarkBlob != null) {
+            benchmarkBlobs.release(run.benchmarkBlob);
+            run.benchmarkBlob = null;
+         }
          persistRun(run);
          log.info("Run {} completed", run.id);
       }
    }
 
+   private void checkAgentPool() {
+      long now = System.currentTimeMillis();
+      for (PooledAgent pooled : new ArrayList<>(agentPool.values())) {
+         if (now - pooled.idleSince >= agentIdleTimeout) {
+            log.info("Agent {} was idle for {} ms, stopping", pooled, now - pooled.idleSince);
+            retireAgent(pooled);
+            continue;
+         }
+         DeliveryOptions options = new DeliveryOptions().setSendTimeout(agentHealthCheckPeriod);
+         eb.send(pooled.deploymentId, new AgentControlMessage(AgentControlMessage.Command.PING, -1, null), options, reply -> {
+            // The agent might have been assigned to a run in the meantime
+            if (reply.failed() && agentPool.remove(pooled.definition.name, pooled)) {
+               log.warn("Agent {} failed health check, removing it from the pool", reply.cause(), pooled);
+               stopDeployedAgent(pooled);
+            }
+         });
+      }
+   }
+
+   private void retireAgent(PooledAgent pooled) {
+      agentPool.remove(pooled.definition.name, pooled);
+      eb.send(pooled.deploymentId, new AgentControlMessage(AgentControlMessage.Command.STOP, -1, null), reply -> {
+         if (reply.failed()) {
+            log.warn("Agent {} failed to stop", reply.cause(), pooled);
+         }
+         stopDeployedAgent(pooled);
+      });
+   }
+
+   private void stopDeployedAgent(PooledAgent pooled) {
+      if (pooled.deployedAgent != null) {
+         pooled.deployedAgent.stop();
+      }
+   }
+
    private void persistRun(Run run) {
+      // Statistics received so far might be still processed in the shards
+      run.statisticsStore.flush(() -> context.runOnContext(nil -> writeRun(run)));
+   }
+
+   private void writeRun(Run run) {
       vertx.executeBlocking(future -> {
          try {
+            run.statisticsStore.closeJournal();
+            run.statisticsStore.closeHistogramLog();
             run.statisticsStore.persist(run.dir.resolve("stats"));
          } catch (IOException e) {
             log.error("Failed to persist statistics", e);
@@ -565,6 +1271,7 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
                .put("terminateTime", run.terminateTime.result())
                .put("cancelled", run.cancelled)
                .put("description", run.description)
+               .put("tags", new JsonObject(run.benchmark.tags()))
                .put("errors", new JsonArray(run.errors.stream()
                      .map(e -> {
                         JsonObject json = new JsonObject();
@@ -581,6 +1288,7 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
             log.error("Cannot write info file", e);
             future.fail(e);
          }
+         runCatalog.update(info);
 
          try (FileOutputStream stream = new FileOutputStream(run.dir.resolve("all.json").toFile())) {
             JsonFactory jfactory = new JsonFactory();
@@ -652,8 +1360,30 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
       return properties;
    }
 
+   /**
+    * Runs that are not in memory are loaded from the catalog; this does not touch run directory.
+    */
    public Run run(String runId) {
-      return runs.get(runId);
+      Run run = runs.get(runId);
+      if (run == null) {
+         JsonObject info = runCatalog.get(runId);
+         if (info != null) {
+            run = loadRun(info);
+         }
+      }
+      return run;
+   }
+
+   /**
+    * @return ID of the most recently created run or <code>null</code> if there are no runs.
+    */
+   public String lastRunId() {
+      int next = runIds.get();
+      return next == 0 ? null : String.format("%04X", next - 1);
+   }
+
+   RunCatalog runCatalog() {
+      return runCatalog;
    }
 
    public Collection<Run> runs() {
@@ -738,16 +1468,74 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
    }
 
 
-   public void listSessions(Run run, boolean includeInactive, BiConsumer<AgentInfo, String> sessionStateHandler, Handler<AsyncResult<Void>> completionHandler) {
-      invokeOnAgents(run, AgentControlMessage.Command.LIST_SESSIONS, includeInactive, completionHandler, (agent, result) -> {
-         @SuppressWarnings("unchecked")
-         List<String> sessions = (List<String>) result.result().body();
-         for (String state : sessions) {
+   /**
+    * Lists up to <code>limit</code> sessions, agent after agent.
+    *
+    * @param cursor            Position returned from previous invocation (<code>agentId:offset</code>) or <code>null</code> to start from the beginning.
+    * @param completionHandler Receives cursor for the next page, or <code>null</code> if all sessions have been listed.
+    */
+   public void listSessions(Run run, boolean includeInactive, String cursor, int limit, int sample,
+                            BiConsumer<AgentInfo, String> sessionStateHandler, Handler<AsyncResult<String>> completionHandler) {
+      List<AgentInfo> agents = run.agents.stream().filter(a -> a.deploymentId != null)
+            .sorted(Comparator.comparingInt(a -> a.id)).collect(Collectors.toList());
+      int agentIndex = 0;
+      int offset = 0;
+      if (cursor != null) {
+         int colon = cursor.indexOf(':');
+         try {
+            int agentId = Integer.parseInt(cursor.substring(0, colon));
+            offset = Integer.parseInt(cursor.substring(colon + 1));
+            while (agentIndex < agents.size() && agents.get(agentIndex).id < agentId) {
+               ++agentIndex;
+            }
+         } catch (RuntimeException e) {
+            completionHandler.handle(Future.failedFuture(new IllegalArgumentException("Invalid cursor " + cursor)));
+            return;
+         }
+      }
+      listSessions(agents, agentIndex, new SessionQuery(includeInactive, offset, limit, sample), sessionStateHandler, completionHandler);
+   }
+
+   private void listSessions(List<AgentInfo> agents, int agentIndex, SessionQuery query,
+                             BiConsumer<AgentInfo, String> sessionStateHandler, Handler<AsyncResult<String>> completionHandler) {
+      if (agentIndex >= agents.size()) {
+         completionHandler.handle(Future.succeededFuture());
+         return;
+      }
+      AgentInfo agent = agents.get(agentIndex);
+      if (query.limit <= 0) {
+         completionHandler.handle(Future.succeededFuture(agent.id + ":" + query.offset));
+         return;
+      }
+      eb.send(agent.deploymentId, new AgentControlMessage(AgentControlMessage.Command.LIST_SESSIONS, agent.id, query), result -> {
+         if (result.failed()) {
+            log.error("Failed to retrieve sessions", result.cause());
+            completionHandler.handle(Future.failedFuture(result.cause()));
+            return;
+         }
+         SessionListing listing = (SessionListing) result.result().body();
+         for (String state : listing.sessions) {
             sessionStateHandler.accept(agent, state);
          }
+         int remaining = query.limit - listing.sessions.size();
+         if (listing.next >= 0) {
+            listSessions(agents, agentIndex, new SessionQuery(query.includeInactive, listing.next, remaining, query.sample),
+                  sessionStateHandler, completionHandler);
+         } else {
+            listSessions(agents, agentIndex + 1, new SessionQuery(query.includeInactive, 0, remaining, query.sample),
+                  sessionStateHandler, completionHandler);
+         }
       });
    }
 
+   /**
+    * Counts sessions grouped by phase, sequence, step and blocked state on each agent.
+    */
+   public void summarizeSessions(Run run, boolean includeInactive, BiConsumer<AgentInfo, SessionSummary> summaryHandler, Handler<AsyncResult<Void>> completionHandler) {
+      invokeOnAgents(run, AgentControlMessage.Command.SUMMARIZE_SESSIONS, includeInactive, completionHandler,
+            (agent, result) -> summaryHandler.accept(agent, (SessionSummary) result.result().body()));
+   }
+
    public void listConnections(Run run, BiConsumer<AgentInfo, String> connectionHandler, Handler<AsyncResult<Void>> completionHandler) {
       invokeOnAgents(run, AgentControlMessage.Command.LIST_CONNECTIONS, null, completionHandler, (agent, result) -> {
          @SuppressWarnings("unchecked")
@@ -761,6 +1549,10 @@ public class ControllerVerticle extends AbstractVerticle implements NodeListener
    private void invokeOnAgents(Run run, AgentControlMessage.Command command, Object param, Handler<AsyncResult<Void>> completionHandler, BiConsumer<AgentInfo, AsyncResult<Message<Object>>> handler) {
       AtomicInteger agentCounter = new AtomicInteger(1);
       for (AgentInfo agent : run.agents) {
+         if (agent.deploymentId == null) {
+            // Elastic agent that is still being deployed
+            continue;
+         }
          agentCounter.incrementAndGet();
          eb.send(agent.deploymentId, new AgentControlMessage(command, agent.id, param), result -> {
             if (result.failed()) {
@@ -5,4 +5,7 @@ public final class Feeds {
    public static final String CONTROL = "control-feed";
    public static final String RESPONSE = "response-feed";
    public static final String STATS = "stats-feed";
+   public static final String PROFILE = "profile-feed";
+   public static final String BLOB = "blob-feed";
+   public static final String CLOCK = "clock-feed";
 }
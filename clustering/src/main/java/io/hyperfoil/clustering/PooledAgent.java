@@ -0,0 +1,48 @@
+package io.hyperfoil.clustering;
+
+import java.util.Objects;
+
+import io.hyperfoil.api.config.Agent;
+import io.hyperfoil.api.deployment.DeployedAgent;
+
+/**
+ * Agent that finished a run and waits for another run that names it; this saves the deployment
+ * (JVM startup, joining the cluster and warm-up) when running many short benchmarks.
+ */
+class PooledAgent {
+   final Agent definition;
+   final String nodeId;
+   final String deploymentId;
+   final DeployedAgent deployedAgent;
+   final long idleSince;
+
+   PooledAgent(Agent definition, AgentInfo agentInfo, long idleSince) {
+      this.definition = definition;
+      this.nodeId = agentInfo.nodeId;
+      this.deploymentId = agentInfo.deploymentId;
+      this.deployedAgent = agentInfo.deployedAgent;
+      this.idleSince = idleSince;
+   }
+
+   /**
+    * @param agent Agent definition in the new benchmark.
+    * @return True if the agent was deployed with the same settings.
+    */
+   boolean matches(Agent agent) {
+      return definition.name.equals(agent.name)
+            && Objects.equals(definition.inlineConfig, agent.inlineConfig)
+            && Objects.equals(definition.properties, agent.properties);
+   }
+
+   void assignTo(AgentInfo agentInfo) {
+      agentInfo.nodeId = nodeId;
+      agentInfo.deploymentId = deploymentId;
+      agentInfo.deployedAgent = deployedAgent;
+      agentInfo.status = AgentInfo.Status.REGISTERED;
+   }
+
+   @Override
+   public String toString() {
+      return definition.name + " (" + nodeId + "/" + deploymentId + ")";
+   }
+}
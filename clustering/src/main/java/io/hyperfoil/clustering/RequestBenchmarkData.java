@@ -1,31 +1,46 @@
 package io.hyperfoil.clustering;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
 import io.hyperfoil.api.config.BenchmarkData;
+import io.hyperfoil.core.impl.DataFileMap;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
 
+/**
+ * Data files uploaded along with the benchmark. The uploads are spooled to disk by the body handler
+ * and we read them from there rather than loading these into heap.
+ */
 public class RequestBenchmarkData implements BenchmarkData {
-   private final Map<String, byte[]> files = new HashMap<>();
+   private static final Logger log = LoggerFactory.getLogger(RequestBenchmarkData.class);
+   private final Map<String, Path> files = new HashMap<>();
 
-   public void addFile(String name, byte[] bytes) {
-      files.put(Objects.requireNonNull(name), Objects.requireNonNull(bytes));
+   public void addFile(String name, Path path) {
+      files.put(Objects.requireNonNull(name), Objects.requireNonNull(path));
    }
 
    @Override
    public InputStream readFile(String file) {
-      byte[] bytes = files.get(file);
-      if (bytes == null) {
+      Path path = files.get(file);
+      if (path == null) {
+         return null;
+      }
+      try {
+         return Files.newInputStream(path);
+      } catch (IOException e) {
+         log.error("Cannot read uploaded file {} from {}", e, file, path);
          return null;
       }
-      return new ByteArrayInputStream(bytes);
    }
 
    @Override
    public Map<String, byte[]> files() {
-      return files;
+      return new DataFileMap(files);
    }
 }
@@ -1,11 +1,17 @@
 package io.hyperfoil.clustering;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import io.hyperfoil.api.config.Benchmark;
 import io.hyperfoil.api.config.Phase;
+import io.hyperfoil.api.config.SLA;
 import io.hyperfoil.api.statistics.StatisticsSnapshot;
 import io.hyperfoil.core.util.CountDown;
+import io.hyperfoil.core.impl.statistics.SlaMonitor;
 import io.hyperfoil.core.impl.statistics.StatisticsCollector;
-import io.hyperfoil.clustering.messages.RequestStatsMessage;
+import io.hyperfoil.clustering.messages.RequestStatsBatchMessage;
+import io.hyperfoil.clustering.messages.SlaAbortMessage;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
@@ -16,30 +22,63 @@ public class RequestStatsSender extends StatisticsCollector {
    private final String address;
    private final String runId;
    private final EventBus eb;
-   private final StatisticsConsumer sendStats = this::sendStats;
+   // Controller time minus local time
+   private final long clockOffset;
+   private final StatisticsConsumer addToBatch = this::addToBatch;
+   // Checks SLAs that abort the phase on this agent's statistics; null if there are none
+   private final SlaMonitor slaMonitor;
+   private List<RequestStatsBatchMessage.Entry> batch = new ArrayList<>();
 
-   public RequestStatsSender(Benchmark benchmark, EventBus eb, String address, String runId) {
+   public RequestStatsSender(Benchmark benchmark, EventBus eb, String address, String runId, long clockOffset) {
       super(benchmark);
       this.eb = eb;
       this.address = address;
       this.runId = runId;
+      this.clockOffset = clockOffset;
+      SlaMonitor monitor = new SlaMonitor(benchmark);
+      this.slaMonitor = monitor.isEmpty() ? null : monitor;
    }
 
    public void send(boolean isPhaseComplete, CountDown completion) {
-      visitStatistics(sendStats, isPhaseComplete, completion);
+      visitStatistics(addToBatch, isPhaseComplete, completion);
+      if (batch.isEmpty()) {
+         return;
+      }
+      log.debug("Sending {} statistics snapshots", batch.size());
+      // The batch is handed over to the eventbus, we must not reuse the list
+      List<RequestStatsBatchMessage.Entry> entries = batch;
+      batch = new ArrayList<>(entries.size());
+      completion.increment();
+      eb.send(Feeds.STATS, new RequestStatsBatchMessage(address, runId, isPhaseComplete, entries),
+            reply -> completion.countDown());
    }
 
-   private void sendStats(Phase phase, boolean isPhaseComplete, int stepId, String metric, StatisticsSnapshot statistics, CountDown countDown) {
+   private void addToBatch(Phase phase, boolean isPhaseComplete, int stepId, String metric, StatisticsSnapshot statistics, CountDown countDown) {
       if (statistics.histogram.getEndTimeStamp() >= statistics.histogram.getStartTimeStamp()) {
-         log.debug("Sending stats for {} {}/{}, id {}: {} requests, {} responses", phase.name(), stepId, metric,
+         log.trace("Adding stats for {} {}/{}, id {}: {} requests, {} responses", phase.name(), stepId, metric,
                statistics.sequenceId, statistics.requestCount, statistics.responseCount);
-         // On clustered eventbus, ObjectCodec is not called synchronously so we *must* do a copy here.
+         // On clustered eventbus, the codec is not called synchronously so we *must* do a copy here.
          // (on a local eventbus we'd have to do a copy in transform() anyway)
          StatisticsSnapshot copy = new StatisticsSnapshot();
          statistics.copyInto(copy);
-         countDown.increment();
-         eb.send(Feeds.STATS, new RequestStatsMessage(address, runId, phase.id(), isPhaseComplete, stepId, metric, copy),
-               reply -> countDown.countDown());
+         // Report the sample in controller time
+         copy.histogram.setStartTimeStamp(copy.histogram.getStartTimeStamp() + clockOffset);
+         copy.histogram.setEndTimeStamp(copy.histogram.getEndTimeStamp() + clockOffset);
+         batch.add(new RequestStatsBatchMessage.Entry(phase.id(), stepId, metric, copy));
+         if (slaMonitor != null) {
+            checkSla(phase, stepId, metric, copy);
+         }
+      }
+   }
+
+   private void checkSla(Phase phase, int stepId, String metric, StatisticsSnapshot statistics) {
+      SLA.Failure failure = slaMonitor.record(phase, stepId, metric, statistics);
+      if (failure != null) {
+         log.warn("SLA for {}/{} failed on this agent, aborting phase: {}", phase.name(), metric, failure.message());
+         long endTime = statistics.histogram.getEndTimeStamp();
+         // Sent right away rather than with the batch so that the controller can terminate the phase sooner
+         eb.send(Feeds.STATS, new SlaAbortMessage(address, runId, phase.id(), metric,
+               endTime - failure.sla().window(), endTime, failure.message()));
       }
    }
 }
@@ -3,8 +3,11 @@ package io.hyperfoil.clustering;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import io.hyperfoil.api.config.Benchmark;
 import io.hyperfoil.api.config.Phase;
@@ -28,6 +31,22 @@ class Run {
    Future<Long> terminateTime = Future.future();
    boolean cancelled;
    StatisticsStore statisticsStore;
+   // statistics are being recovered from the journal after a crash of the controller
+   boolean recovering;
+   // definition distributed to agents
+   BenchmarkBlobs.Blob benchmarkBlob;
+   final CachedResponse recentStatsCache = new CachedResponse();
+   final CachedResponse totalStatsCache = new CachedResponse();
+   // agent address + phase that were already reported as saturated
+   final Set<String> saturatedAgents = new HashSet<>();
+   // when the last elastic agent was added
+   long lastScaleTime;
+   // number of elastic agents ever added, used to name them
+   int elasticAgentCounter;
+   // phases recorded with JDK Flight Recorder
+   final Set<String> profiledPhases = new HashSet<>();
+   // phases currently recorded on the controller
+   final Set<String> recordedPhases = new HashSet<>();
 
    Run(String id, Path dir, Benchmark benchmark) {
       this.id = id;
@@ -57,6 +76,18 @@ class Run {
             .toArray(ControllerPhase[]::new);
    }
 
+   /**
+    * Phase is profiled when it's selected either directly or through its parent (for iterations and forks).
+    */
+   boolean isProfiled(String phase) {
+      for (String selected : profiledPhases) {
+         if (phase.equals(selected) || phase.startsWith(selected + "/")) {
+            return true;
+         }
+      }
+      return false;
+   }
+
    public String phase(int phaseId) {
       return phasesById[phaseId].name();
    }
@@ -85,4 +116,20 @@ class Run {
          this.output = output;
       }
    }
+
+   /**
+    * Encoded response that is reused as long as the tag does not change.
+    */
+   static class CachedResponse {
+      private String tag;
+      private String body;
+
+      String get(String tag, Supplier<String> body) {
+         if (!tag.equals(this.tag)) {
+            this.body = body.get();
+            this.tag = tag;
+         }
+         return this.body;
+      }
+   }
 }
@@ -0,0 +1,143 @@
+package io.hyperfoil.clustering;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Append-only index of runs stored in the run directory. Each line holds run info (the same JSON as in
+ * <code>info.json</code>); a later line for the same run replaces the earlier one. The controller reads
+ * the catalog on startup instead of parsing info of every run, and loads details of a run only when it is needed.
+ * <p>
+ * The catalog can be always rebuilt from the run directories: runs missing in the catalog are added from their
+ * directories on load, and entries without a directory are dropped. Deleting the file forces a full rebuild.
+ * <p>
+ * Entries can be read from any thread; {@link #load(Function)} and {@link #update(JsonObject)} do blocking I/O.
+ */
+class RunCatalog {
+   private static final Logger log = LoggerFactory.getLogger(RunCatalog.class);
+   static final String FILE_NAME = "catalog.jsonl";
+   private static final String RUN_ID_PATTERN = "[0-9A-F][0-9A-F][0-9A-F][0-9A-F]";
+
+   private final Path runDir;
+   private final Path file;
+   // Run IDs have fixed width so these are ordered by creation
+   private final ConcurrentSkipListMap<String, JsonObject> entries = new ConcurrentSkipListMap<>();
+
+   RunCatalog(Path runDir) {
+      this.runDir = runDir;
+      this.file = runDir.resolve(FILE_NAME);
+   }
+
+   /**
+    * @param infoReader Reads run info from run directory; used for runs that are not in the catalog.
+    */
+   synchronized void load(Function<Path, JsonObject> infoReader) throws IOException {
+      entries.clear();
+      int lines = 0;
+      boolean corrupted = false;
+      if (Files.exists(file)) {
+         for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) {
+               continue;
+            }
+            ++lines;
+            try {
+               JsonObject info = new JsonObject(line);
+               entries.put(info.getString("id"), info);
+            } catch (DecodeException | NullPointerException e) {
+               // Probably a partially written line after crash
+               log.warn("Ignoring invalid line in run catalog {}", file);
+               corrupted = true;
+            }
+         }
+      } else {
+         log.info("Run catalog {} does not exist, building it from run directories.", file);
+      }
+      List<Path> dirs;
+      try (Stream<Path> stream = Files.list(runDir)) {
+         dirs = stream.filter(dir -> dir.getFileName().toString().matches(RUN_ID_PATTERN) && Files.isDirectory(dir))
+               .collect(Collectors.toList());
+      }
+      Set<String> existing = new HashSet<>();
+      List<JsonObject> added = new ArrayList<>();
+      for (Path dir : dirs) {
+         String runId = dir.getFileName().toString();
+         existing.add(runId);
+         if (!entries.containsKey(runId)) {
+            JsonObject info = infoReader.apply(dir);
+            if (info != null) {
+               info.put("id", runId);
+               entries.put(runId, info);
+               added.add(info);
+            }
+         }
+      }
+      int removed = entries.size();
+      entries.keySet().retainAll(existing);
+      removed -= entries.size();
+      if (corrupted || removed > 0 || lines > 2 * entries.size()) {
+         write(file.resolveSibling(FILE_NAME + ".tmp"), entries.values(), false);
+         Files.move(file.resolveSibling(FILE_NAME + ".tmp"), file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } else if (!added.isEmpty()) {
+         write(file, added, true);
+      }
+      log.info("Run catalog has {} runs ({} added from run directories, {} removed)", entries.size(), added.size(), removed);
+   }
+
+   /**
+    * Replaces the entry and appends it to the catalog.
+    */
+   synchronized void update(JsonObject info) {
+      String runId = info.getString("id");
+      entries.put(runId, info);
+      try {
+         write(file, Collections.singletonList(info), true);
+      } catch (IOException e) {
+         log.error("Cannot update run catalog with run {}", e, runId);
+      }
+   }
+
+   JsonObject get(String runId) {
+      return entries.get(runId);
+   }
+
+   Collection<JsonObject> entries() {
+      return entries.values();
+   }
+
+   String lastRunId() {
+      return entries.isEmpty() ? null : entries.lastKey();
+   }
+
+   private static void write(Path path, Collection<JsonObject> infos, boolean append) throws IOException {
+      StandardOpenOption[] options = append ?
+            new StandardOpenOption[]{ StandardOpenOption.CREATE, StandardOpenOption.APPEND } :
+            new StandardOpenOption[]{ StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE };
+      try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, options)) {
+         for (JsonObject info : infos) {
+            writer.write(info.encode());
+            writer.newLine();
+         }
+      }
+   }
+}
@@ -11,17 +11,20 @@ public class SessionStatsSender implements SessionStatsConsumer {
    private final String address;
    private final String runId;
    private final EventBus eb;
+   // Controller time minus local time
+   private final long clockOffset;
    private Map<String, SessionStatsMessage.MinMax> sessionStats;
 
-   public SessionStatsSender(EventBus eb, String address, String runId) {
+   public SessionStatsSender(EventBus eb, String address, String runId, long clockOffset) {
       this.address = address;
       this.runId = runId;
       this.eb = eb;
+      this.clockOffset = clockOffset;
    }
 
    public void send() {
       if (sessionStats != null) {
-         eb.send(Feeds.STATS, new SessionStatsMessage(address, runId, System.currentTimeMillis(), sessionStats));
+         eb.send(Feeds.STATS, new SessionStatsMessage(address, runId, System.currentTimeMillis() + clockOffset, sessionStats));
          sessionStats = null;
       }
    }
@@ -0,0 +1,264 @@
+package io.hyperfoil.clustering;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import io.hyperfoil.controller.model.RequestStats;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.Json;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Pushes live statistics to subscribers as server-sent events. The events for each run are rendered once per tick
+ * and shared by all subscribers of that run. Subscribers that received the statistics from previous change get only
+ * the entries that changed since then ('stats-delta' event); others get all entries ('stats' event).
+ * A subscriber with full write queue skips the tick and later receives the latest state in full; when it does not drain
+ * for {@link #MAX_STALLED_TICKS} ticks it is disconnected.
+ */
+class StatsPublisher {
+   private static final Logger log = LoggerFactory.getLogger(StatsPublisher.class);
+   static final String MIME_TYPE = "text/event-stream";
+   private static final long PERIOD = 1000;
+   private static final int MAX_STALLED_TICKS = 30;
+   private static final Buffer END = Buffer.buffer("event: end\ndata: {}\n\n");
+
+   private final Vertx vertx;
+   private final ControllerServer server;
+   private final Map<Run, RunSubscribers> subscribers = new HashMap<>();
+   private long timerId = -1;
+
+   StatsPublisher(Vertx vertx, ControllerServer server) {
+      this.vertx = vertx;
+      this.server = server;
+   }
+
+   void subscribe(Run run, HttpServerResponse response) {
+      response.setChunked(true)
+            .putHeader(HttpHeaders.CONTENT_TYPE, MIME_TYPE)
+            .putHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+      Subscriber subscriber = new Subscriber(response);
+      RunSubscribers runSubscribers = subscribers.computeIfAbsent(run, r -> new RunSubscribers());
+      runSubscribers.list.add(subscriber);
+      response.closeHandler(nil -> unsubscribe(run, subscriber));
+      if (timerId < 0) {
+         timerId = vertx.setPeriodic(PERIOD, id -> tick());
+      }
+      // Don't let the new subscriber wait for the next tick. If there are other subscribers it gets the statistics
+      // from last tick; refreshing these now would make the others miss a change and receive full update.
+      List<Subscriber> single = new ArrayList<>(1);
+      single.add(subscriber);
+      publish(run, runSubscribers, single, runSubscribers.stats == null);
+      if (subscriber.response.ended()) {
+         unsubscribe(run, subscriber);
+      }
+   }
+
+   void stop() {
+      if (timerId >= 0) {
+         vertx.cancelTimer(timerId);
+         timerId = -1;
+      }
+      subscribers.values().forEach(runSubscribers -> runSubscribers.list.forEach(s -> s.response.close()));
+      subscribers.clear();
+   }
+
+   boolean hasSubscribers() {
+      return !subscribers.isEmpty();
+   }
+
+   private void unsubscribe(Run run, Subscriber subscriber) {
+      RunSubscribers runSubscribers = subscribers.get(run);
+      if (runSubscribers == null || !runSubscribers.list.remove(subscriber) || !runSubscribers.list.isEmpty()) {
+         return;
+      }
+      subscribers.remove(run);
+      if (subscribers.isEmpty() && timerId >= 0) {
+         vertx.cancelTimer(timerId);
+         timerId = -1;
+      }
+   }
+
+   private void tick() {
+      // Copy as ending a response can remove subscribers
+      for (Map.Entry<Run, RunSubscribers> entry : new ArrayList<>(subscribers.entrySet())) {
+         List<Subscriber> list = new ArrayList<>(entry.getValue().list);
+         publish(entry.getKey(), entry.getValue(), list, true);
+         for (Subscriber subscriber : list) {
+            if (subscriber.response.ended()) {
+               unsubscribe(entry.getKey(), subscriber);
+            }
+         }
+      }
+   }
+
+   private void publish(Run run, RunSubscribers runSubscribers, List<Subscriber> list, boolean refreshStats) {
+      Update update = null;
+      for (Subscriber subscriber : list) {
+         HttpServerResponse response = subscriber.response;
+         if (response.ended() || response.closed()) {
+            continue;
+         }
+         if (response.writeQueueFull()) {
+            if (++subscriber.stalledTicks > MAX_STALLED_TICKS) {
+               log.warn("Subscriber to statistics of run {} does not receive updates, disconnecting.", run.id);
+               response.close();
+            }
+            continue;
+         }
+         subscriber.stalledTicks = 0;
+         if (update == null) {
+            update = new Update(run, runSubscribers, refreshStats);
+         }
+         update.writeTo(subscriber);
+      }
+   }
+
+   private static Buffer event(String name, String data) {
+      return Buffer.buffer("event: " + name + "\ndata: " + data + "\n\n", StandardCharsets.UTF_8.name());
+   }
+
+   private static String key(RequestStats stats) {
+      return stats.phase + "/" + stats.stepId + "/" + stats.metric;
+   }
+
+   private static class RunSubscribers {
+      final List<Subscriber> list = new ArrayList<>();
+      // Last pushed statistics; the entries are replaced by new instances when these change
+      List<RequestStats> stats;
+      String status;
+      int statsSequence;
+   }
+
+   private static class Subscriber {
+      final HttpServerResponse response;
+      // Sequence of the statistics this subscriber has received, -1 if none
+      int statsSequence = -1;
+      String sessions;
+      String phasesTag;
+      int stalledTicks;
+
+      Subscriber(HttpServerResponse response) {
+         this.response = response;
+      }
+   }
+
+   /**
+    * Data for single tick; each event is rendered lazily at most once.
+    */
+   private class Update {
+      final Run run;
+      final boolean terminated;
+      final RunSubscribers runSubscribers;
+      // Statistics before the change in this tick, null if there was no change
+      List<RequestStats> previousStats;
+      Buffer statsEvent;
+      Buffer statsDeltaEvent;
+      String sessions;
+      Buffer sessionsEvent;
+      String phasesTag;
+      Buffer phasesEvent;
+
+      Update(Run run, RunSubscribers runSubscribers, boolean refreshStats) {
+         this.run = run;
+         this.runSubscribers = runSubscribers;
+         this.terminated = run.terminateTime.isComplete();
+         long now = System.currentTimeMillis();
+         if (run.statisticsStore != null) {
+            if (refreshStats) {
+               List<RequestStats> stats = run.statisticsStore.recentSummary(now - 5000);
+               String status = ControllerServer.runStatus(run);
+               if (!status.equals(runSubscribers.status) || !sameInstances(runSubscribers.stats, stats)) {
+                  previousStats = runSubscribers.stats == null ? Collections.emptyList() : runSubscribers.stats;
+                  runSubscribers.stats = stats;
+                  runSubscribers.status = status;
+                  ++runSubscribers.statsSequence;
+               }
+            }
+            sessions = server.sessionStatsToJson(run, run.statisticsStore.recentSessionPoolSummary(now - 5000)).encode();
+         }
+         phasesTag = run.phases.values().stream()
+               .map(p -> p.definition().name() + ":" + p.status() + ":" + p.isFailed())
+               .sorted().collect(Collectors.joining(","));
+      }
+
+      private boolean sameInstances(List<RequestStats> previous, List<RequestStats> current) {
+         // Statistics store creates new instance whenever the stats change, and keeps the order
+         if (previous == null || previous.size() != current.size()) {
+            return false;
+         }
+         for (int i = 0; i < current.size(); ++i) {
+            if (previous.get(i) != current.get(i)) {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      private Buffer statsDeltaEvent() {
+         if (statsDeltaEvent == null) {
+            Set<RequestStats> unchanged = Collections.newSetFromMap(new IdentityHashMap<>());
+            unchanged.addAll(previousStats);
+            Set<String> currentKeys = new HashSet<>();
+            List<RequestStats> delta = new ArrayList<>();
+            for (RequestStats stats : runSubscribers.stats) {
+               currentKeys.add(key(stats));
+               if (!unchanged.contains(stats)) {
+                  delta.add(stats);
+               }
+            }
+            // Entries without summary tell the subscriber to drop these (e.g. when the recent stats expire)
+            for (RequestStats stats : previousStats) {
+               if (!currentKeys.contains(key(stats))) {
+                  delta.add(new RequestStats(stats.phase, stats.stepId, stats.metric, null, Collections.emptyList()));
+               }
+            }
+            statsDeltaEvent = event("stats-delta", Json.encode(server.statsToJson(run, delta)));
+         }
+         return statsDeltaEvent;
+      }
+
+      void writeTo(Subscriber subscriber) {
+         HttpServerResponse response = subscriber.response;
+         if (runSubscribers.stats != null && subscriber.statsSequence != runSubscribers.statsSequence) {
+            if (previousStats != null && subscriber.statsSequence == runSubscribers.statsSequence - 1) {
+               response.write(statsDeltaEvent());
+            } else {
+               if (statsEvent == null) {
+                  statsEvent = event("stats", Json.encode(server.statsToJson(run, runSubscribers.stats)));
+               }
+               response.write(statsEvent);
+            }
+            subscriber.statsSequence = runSubscribers.statsSequence;
+         }
+         if (sessions != null && !sessions.equals(subscriber.sessions)) {
+            if (sessionsEvent == null) {
+               sessionsEvent = event("sessions", sessions);
+            }
+            response.write(sessionsEvent);
+            subscriber.sessions = sessions;
+         }
+         if (!phasesTag.equals(subscriber.phasesTag)) {
+            if (phasesEvent == null) {
+               phasesEvent = event("phases", Json.encode(server.runInfo(run, true).phases));
+            }
+            response.write(phasesEvent);
+            subscriber.phasesTag = phasesTag;
+         }
+         if (terminated) {
+            response.end(END);
+         }
+      }
+   }
+}
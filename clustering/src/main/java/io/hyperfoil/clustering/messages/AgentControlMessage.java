@@ -9,11 +9,17 @@ public class AgentControlMessage implements Serializable, Immutable {
    private Command command;
    private int agentId;
    private Object param;
+   private String runId;
 
    public AgentControlMessage(Command command, int agentId, Object param) {
+      this(command, agentId, param, null);
+   }
+
+   public AgentControlMessage(Command command, int agentId, Object param, String runId) {
       this.command = command;
       this.agentId = agentId;
       this.param = param;
+      this.runId = runId;
    }
 
    public Command command() {
@@ -24,19 +30,79 @@ public class AgentControlMessage implements Serializable, Immutable {
       return (Benchmark) param;
    }
 
+   /**
+    * @return Reference to the benchmark that should be loaded from cache or fetched from controller,
+    * or <code>null</code> if the message contains the {@link #benchmark() benchmark} itself.
+    */
+   public BenchmarkReference benchmarkReference() {
+      return param instanceof BenchmarkReference ? (BenchmarkReference) param : null;
+   }
+
+   /**
+    * @return Include sessions that are not running, sent with {@link Command#SUMMARIZE_SESSIONS}.
+    */
    public boolean includeInactive() {
       return (Boolean) param;
    }
 
+   /**
+    * @return Page of sessions requested by {@link Command#LIST_SESSIONS}.
+    */
+   public SessionQuery sessionQuery() {
+      return (SessionQuery) param;
+   }
+
+   /**
+    * @return Period of health checks in milliseconds, sent with {@link Command#RESET}.
+    */
+   public long healthCheckPeriod() {
+      return (Long) param;
+   }
+
+   /**
+    * @return Rate re-partitioning sent with {@link Command#JOIN} or {@link Command#SCALE}.
+    */
+   public ElasticScale elasticScale() {
+      return (ElasticScale) param;
+   }
+
    public int agentId() {
       return agentId;
    }
 
+   /**
+    * @return Run the agent is assigned to by {@link Command#INITIALIZE}; <code>null</code> keeps the current one.
+    */
+   public String runId() {
+      return runId;
+   }
+
    public enum Command {
       INITIALIZE,
       STOP,
+      /**
+       * Like {@link #STOP} but the agent stays running and waits for another run (agent pool).
+       */
+      RESET,
+      /**
+       * Health check of a pooled agent.
+       */
+      PING,
       LIST_SESSIONS,
-      LIST_CONNECTIONS
+      /**
+       * Counts sessions by phase, sequence and step, without listing them.
+       */
+      SUMMARIZE_SESSIONS,
+      LIST_CONNECTIONS,
+      /**
+       * Initializes an agent added to a running benchmark and starts the phases it should participate in.
+       * Elastic agents start only phases they are explicitly asked to join.
+       */
+      JOIN,
+      /**
+       * Changes the arrival rate of open-model phases after another agent joined.
+       */
+      SCALE
    }
 
    public static class Codec extends ObjectCodec<AgentControlMessage> {}
@@ -0,0 +1,89 @@
+package io.hyperfoil.clustering.messages;
+
+import io.hyperfoil.core.impl.AgentMetrics;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+public class AgentMetricsMessage extends StatsMessage {
+   private static final byte VERSION = 1;
+   // Busy ratio is sent in parts per million
+   private static final double RATIO_SCALE = 1_000_000;
+
+   public final AgentMetrics metrics;
+
+   public AgentMetricsMessage(String address, String runId, AgentMetrics metrics) {
+      super(address, runId);
+      this.metrics = metrics;
+   }
+
+   /**
+    * Agents send the metrics periodically, in the same cadence as statistics; we use the compact binary format.
+    */
+   public static class Codec implements MessageCodec<AgentMetricsMessage, AgentMetricsMessage> {
+      @Override
+      public void encodeToWire(Buffer buffer, AgentMetricsMessage message) {
+         AgentMetrics metrics = message.metrics;
+         buffer.appendByte(VERSION);
+         StatsEncoding.writeString(buffer, message.address);
+         StatsEncoding.writeString(buffer, message.runId);
+         StatsEncoding.writeVarLong(buffer, metrics.startTime);
+         StatsEncoding.writeVarLong(buffer, metrics.endTime - metrics.startTime);
+         StatsEncoding.writeVarLong(buffer, metrics.maxLag.length);
+         for (int i = 0; i < metrics.maxLag.length; ++i) {
+            StatsEncoding.writeVarLong(buffer, metrics.maxPendingTasks[i]);
+            StatsEncoding.writeVarLong(buffer, metrics.meanLag[i]);
+            StatsEncoding.writeVarLong(buffer, metrics.maxLag[i]);
+            StatsEncoding.writeVarLong(buffer, Math.round(metrics.busyRatio[i] * RATIO_SCALE));
+            StatsEncoding.writeVarLong(buffer, metrics.allocationRate[i]);
+         }
+         StatsEncoding.writeVarLong(buffer, metrics.gcPauseTime);
+         StatsEncoding.writeVarLong(buffer, metrics.maxArrivalLag);
+      }
+
+      @Override
+      public AgentMetricsMessage decodeFromWire(int position, Buffer buffer) {
+         byte version = buffer.getByte(position);
+         if (version != VERSION) {
+            throw new IllegalStateException("Unsupported version of agent metrics message: " + version);
+         }
+         StatsEncoding.Reader reader = new StatsEncoding.Reader(buffer, position + 1);
+         String address = reader.readInternedString();
+         String runId = reader.readInternedString();
+         long startTime = reader.readVarLong();
+         long endTime = startTime + reader.readVarLong();
+         int executors = reader.readVarInt();
+         int[] maxPendingTasks = new int[executors];
+         long[] meanLag = new long[executors];
+         long[] maxLag = new long[executors];
+         double[] busyRatio = new double[executors];
+         long[] allocationRate = new long[executors];
+         for (int i = 0; i < executors; ++i) {
+            maxPendingTasks[i] = reader.readVarInt();
+            meanLag[i] = reader.readVarLong();
+            maxLag[i] = reader.readVarLong();
+            busyRatio[i] = reader.readVarLong() / RATIO_SCALE;
+            allocationRate[i] = reader.readVarLong();
+         }
+         long gcPauseTime = reader.readVarLong();
+         long maxArrivalLag = reader.readVarLong();
+         return new AgentMetricsMessage(address, runId, new AgentMetrics(startTime, endTime, maxPendingTasks, meanLag, maxLag,
+               busyRatio, allocationRate, gcPauseTime, maxArrivalLag));
+      }
+
+      @Override
+      public AgentMetricsMessage transform(AgentMetricsMessage message) {
+         // The metrics are immutable
+         return message;
+      }
+
+      @Override
+      public String name() {
+         return getClass().getName();
+      }
+
+      @Override
+      public byte systemCodecID() {
+         return -1;
+      }
+   }
+}
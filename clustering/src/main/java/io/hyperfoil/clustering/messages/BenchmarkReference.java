@@ -0,0 +1,44 @@
+package io.hyperfoil.clustering.messages;
+
+import java.io.Serializable;
+
+import io.hyperfoil.util.Immutable;
+
+/**
+ * Identifies serialized and compressed benchmark definition by its content hash; the agents fetch the blob
+ * from controller only if it is not present in their local cache.
+ */
+public class BenchmarkReference implements Serializable, Immutable {
+   private final String name;
+   private final String hash;
+   private final long size;
+
+   public BenchmarkReference(String name, String hash, long size) {
+      this.name = name;
+      this.hash = hash;
+      this.size = size;
+   }
+
+   public String name() {
+      return name;
+   }
+
+   /**
+    * @return Hex-encoded SHA-256 of the blob.
+    */
+   public String hash() {
+      return hash;
+   }
+
+   /**
+    * @return Size of the blob in bytes.
+    */
+   public long size() {
+      return size;
+   }
+
+   @Override
+   public String toString() {
+      return name + " (" + hash + ", " + size + " bytes)";
+   }
+}
@@ -0,0 +1,23 @@
+package io.hyperfoil.clustering.messages;
+
+import java.io.Serializable;
+
+import io.hyperfoil.util.Immutable;
+
+/**
+ * Request for part of a blob registered on controller; the reply contains the bytes. Agents send several
+ * requests in parallel.
+ */
+public class BlobChunkRequest implements Serializable, Immutable {
+   public final String hash;
+   public final long offset;
+   public final int length;
+
+   public BlobChunkRequest(String hash, long offset, int length) {
+      this.hash = hash;
+      this.offset = offset;
+      this.length = length;
+   }
+
+   public static class Codec extends ObjectCodec<BlobChunkRequest> {}
+}
@@ -0,0 +1,42 @@
+package io.hyperfoil.clustering.messages;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import io.hyperfoil.util.Immutable;
+
+/**
+ * Re-partitioning of the arrival rate after an agent was added to the run. The new agent receives this
+ * with {@link AgentControlMessage.Command#JOIN} and starts the listed phases; other agents receive it
+ * with {@link AgentControlMessage.Command#SCALE} and only adjust the rate of these phases.
+ * In both cases the rate factor applies to phases that have not started yet, too.
+ */
+public class ElasticScale implements Serializable, Immutable {
+   private final Object benchmark;
+   private final double rateFactor;
+   private final Map<String, Long> phases;
+
+   public ElasticScale(Object benchmark, double rateFactor, Map<String, Long> phases) {
+      this.benchmark = benchmark;
+      this.rateFactor = rateFactor;
+      this.phases = phases;
+   }
+
+   /**
+    * @return Benchmark reference for an agent that has not been initialized yet, or <code>null</code>.
+    */
+   public BenchmarkReference benchmarkReference() {
+      return benchmark instanceof BenchmarkReference ? (BenchmarkReference) benchmark : null;
+   }
+
+   public double rateFactor() {
+      return rateFactor;
+   }
+
+   /**
+    * @return Names of phases mapped to the time (in controller clock) when these were started.
+    */
+   public Map<String, Long> phases() {
+      return phases;
+   }
+}
@@ -7,10 +7,18 @@ import io.hyperfoil.util.Immutable;
 public class PhaseControlMessage implements Serializable, Immutable {
    private final Command command;
    private final String phase;
+   private final boolean profile;
+   private final long startTime;
 
    public PhaseControlMessage(Command command, String phase) {
+      this(command, phase, false, Long.MIN_VALUE);
+   }
+
+   public PhaseControlMessage(Command command, String phase, boolean profile, long startTime) {
       this.command = command;
       this.phase = phase;
+      this.profile = profile;
+      this.startTime = startTime;
    }
 
    public Command command() {
@@ -21,6 +29,21 @@ public class PhaseControlMessage implements Serializable, Immutable {
       return phase;
    }
 
+   /**
+    * @return True if the phase should be recorded by JDK Flight Recorder; relevant only for {@link Command#RUN}.
+    */
+   public boolean profile() {
+      return profile;
+   }
+
+   /**
+    * @return Timestamp (in controller clock) when all agents should start the phase, or <code>Long.MIN_VALUE</code>
+    * to start immediately; relevant only for {@link Command#RUN}.
+    */
+   public long startTime() {
+      return startTime;
+   }
+
    public enum Command {
       RUN,
       FINISH,
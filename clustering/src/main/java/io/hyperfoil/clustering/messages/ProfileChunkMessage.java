@@ -0,0 +1,27 @@
+package io.hyperfoil.clustering.messages;
+
+import java.io.Serializable;
+
+/**
+ * Part of JDK Flight Recorder file sent from agent to controller. Chunks are sent one by one, the next chunk
+ * is sent after the controller replies to the previous one.
+ */
+public class ProfileChunkMessage implements Serializable {
+   public final String runId;
+   public final String agentName;
+   public final String phase;
+   public final long position;
+   public final byte[] data;
+   public final boolean last;
+
+   public ProfileChunkMessage(String runId, String agentName, String phase, long position, byte[] data, boolean last) {
+      this.runId = runId;
+      this.agentName = agentName;
+      this.phase = phase;
+      this.position = position;
+      this.data = data;
+      this.last = last;
+   }
+
+   public static class Codec extends ObjectCodec<ProfileChunkMessage> {}
+}
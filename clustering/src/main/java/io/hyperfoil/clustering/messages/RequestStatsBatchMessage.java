@@ -0,0 +1,95 @@
+package io.hyperfoil.clustering.messages;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.hyperfoil.api.statistics.StatisticsSnapshot;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+/**
+ * All statistics collected by an agent in one pass, sent as a single message (with single reply).
+ */
+public class RequestStatsBatchMessage extends StatsMessage {
+   private static final byte VERSION = 2;
+
+   public final boolean isPhaseComplete;
+   public final List<Entry> entries;
+
+   public RequestStatsBatchMessage(String address, String runId, boolean isPhaseComplete, List<Entry> entries) {
+      super(address, runId);
+      this.isPhaseComplete = isPhaseComplete;
+      this.entries = entries;
+   }
+
+   public static class Entry implements Serializable {
+      public final int phaseId;
+      public final int stepId;
+      public final String metric;
+      public final StatisticsSnapshot statistics;
+
+      public Entry(int phaseId, int stepId, String metric, StatisticsSnapshot statistics) {
+         this.phaseId = phaseId;
+         this.stepId = stepId;
+         this.metric = metric;
+         this.statistics = statistics;
+      }
+   }
+
+   public static class Codec implements MessageCodec<RequestStatsBatchMessage, RequestStatsBatchMessage> {
+      @Override
+      public void encodeToWire(Buffer buffer, RequestStatsBatchMessage message) {
+         buffer.appendByte(VERSION);
+         StatsEncoding.writeString(buffer, message.address);
+         StatsEncoding.writeString(buffer, message.runId);
+         StatsEncoding.writeBoolean(buffer, message.isPhaseComplete);
+         StatsEncoding.writeVarLong(buffer, message.entries.size());
+         // Metric names repeat for each step and phase, write them only once
+         StatsEncoding.NameTable names = new StatsEncoding.NameTable();
+         for (Entry entry : message.entries) {
+            StatsEncoding.writeVarLong(buffer, entry.phaseId);
+            StatsEncoding.writeVarLong(buffer, entry.stepId);
+            StatsEncoding.writeName(buffer, names, entry.metric);
+            StatsEncoding.writeSnapshot(buffer, names, entry.statistics);
+         }
+      }
+
+      @Override
+      public RequestStatsBatchMessage decodeFromWire(int position, Buffer buffer) {
+         byte version = buffer.getByte(position);
+         if (version != VERSION) {
+            throw new IllegalStateException("Unsupported version of statistics batch message: " + version);
+         }
+         StatsEncoding.Reader reader = new StatsEncoding.Reader(buffer, position + 1);
+         String address = reader.readInternedString();
+         String runId = reader.readInternedString();
+         boolean isPhaseComplete = reader.readBoolean();
+         int size = reader.readVarInt();
+         List<Entry> entries = new ArrayList<>(size);
+         for (int i = 0; i < size; ++i) {
+            int phaseId = reader.readVarInt();
+            int stepId = reader.readVarInt();
+            String metric = reader.readName();
+            entries.add(new Entry(phaseId, stepId, metric, reader.readSnapshot()));
+         }
+         return new RequestStatsBatchMessage(address, runId, isPhaseComplete, entries);
+      }
+
+      @Override
+      public RequestStatsBatchMessage transform(RequestStatsBatchMessage message) {
+         // The sender does not touch the snapshots after sending
+         return message;
+      }
+
+      @Override
+      public String name() {
+         return getClass().getName();
+      }
+
+      @Override
+      public byte systemCodecID() {
+         return -1;
+      }
+   }
+}
@@ -1,8 +1,12 @@
 package io.hyperfoil.clustering.messages;
 
 import io.hyperfoil.api.statistics.StatisticsSnapshot;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
 
 public class RequestStatsMessage extends StatsMessage {
+   private static final byte VERSION = 2;
+
    public final int phaseId;
    public final boolean isPhaseComplete;
    public final int stepId;
@@ -18,5 +22,55 @@ public class RequestStatsMessage extends StatsMessage {
       this.statistics = statistics;
    }
 
-   public static class Codec extends ObjectCodec<RequestStatsMessage> {}
+   /**
+    * Statistics are the most frequent messages sent over the cluster; we use compact binary format
+    * instead of Java serialization.
+    */
+   public static class Codec implements MessageCodec<RequestStatsMessage, RequestStatsMessage> {
+      @Override
+      public void encodeToWire(Buffer buffer, RequestStatsMessage message) {
+         buffer.appendByte(VERSION);
+         StatsEncoding.writeString(buffer, message.address);
+         StatsEncoding.writeString(buffer, message.runId);
+         StatsEncoding.writeVarLong(buffer, message.phaseId);
+         StatsEncoding.writeBoolean(buffer, message.isPhaseComplete);
+         StatsEncoding.writeVarLong(buffer, message.stepId);
+         StatsEncoding.NameTable names = new StatsEncoding.NameTable();
+         StatsEncoding.writeName(buffer, names, message.metric);
+         StatsEncoding.writeSnapshot(buffer, names, message.statistics);
+      }
+
+      @Override
+      public RequestStatsMessage decodeFromWire(int position, Buffer buffer) {
+         byte version = buffer.getByte(position);
+         if (version != VERSION) {
+            throw new IllegalStateException("Unsupported version of statistics message: " + version);
+         }
+         StatsEncoding.Reader reader = new StatsEncoding.Reader(buffer, position + 1);
+         String address = reader.readInternedString();
+         String runId = reader.readInternedString();
+         int phaseId = reader.readVarInt();
+         boolean isPhaseComplete = reader.readBoolean();
+         int stepId = reader.readVarInt();
+         String metric = reader.readName();
+         StatisticsSnapshot statistics = reader.readSnapshot();
+         return new RequestStatsMessage(address, runId, phaseId, isPhaseComplete, stepId, metric, statistics);
+      }
+
+      @Override
+      public RequestStatsMessage transform(RequestStatsMessage message) {
+         // The sender does not touch the snapshot after sending
+         return message;
+      }
+
+      @Override
+      public String name() {
+         return getClass().getName();
+      }
+
+      @Override
+      public byte systemCodecID() {
+         return -1;
+      }
+   }
 }
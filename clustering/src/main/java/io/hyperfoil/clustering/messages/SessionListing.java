@@ -0,0 +1,20 @@
+package io.hyperfoil.clustering.messages;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Reply to {@link AgentControlMessage.Command#LIST_SESSIONS}.
+ */
+public class SessionListing implements Serializable {
+   public final List<String> sessions;
+   // Offset for the next query or -1 if all sessions on the agent have been listed
+   public final int next;
+
+   public SessionListing(List<String> sessions, int next) {
+      this.sessions = sessions;
+      this.next = next;
+   }
+
+   public static class Codec extends ObjectCodec<SessionListing> {}
+}
@@ -0,0 +1,24 @@
+package io.hyperfoil.clustering.messages;
+
+import java.io.Serializable;
+
+import io.hyperfoil.util.Immutable;
+
+/**
+ * Selects a page of sessions listed by {@link AgentControlMessage.Command#LIST_SESSIONS}.
+ */
+public class SessionQuery implements Serializable, Immutable {
+   public final boolean includeInactive;
+   // Index of the first session on the agent that should be considered
+   public final int offset;
+   public final int limit;
+   // Only every n-th session is listed
+   public final int sample;
+
+   public SessionQuery(boolean includeInactive, int offset, int limit, int sample) {
+      this.includeInactive = includeInactive;
+      this.offset = offset;
+      this.limit = limit;
+      this.sample = sample;
+   }
+}
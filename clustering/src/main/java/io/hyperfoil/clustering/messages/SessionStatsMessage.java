@@ -1,9 +1,15 @@
 package io.hyperfoil.clustering.messages;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.Map;
 
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
 public class SessionStatsMessage extends StatsMessage {
+   private static final byte VERSION = 1;
+
    public final long timestamp;
    public final Map<String, MinMax> sessionStats;
 
@@ -23,5 +29,57 @@ public class SessionStatsMessage extends StatsMessage {
       }
    }
 
-   public static class Codec extends ObjectCodec<SessionStatsMessage> {}
+   public static class Codec implements MessageCodec<SessionStatsMessage, SessionStatsMessage> {
+      @Override
+      public void encodeToWire(Buffer buffer, SessionStatsMessage message) {
+         buffer.appendByte(VERSION);
+         StatsEncoding.writeString(buffer, message.address);
+         StatsEncoding.writeString(buffer, message.runId);
+         StatsEncoding.writeVarLong(buffer, message.timestamp);
+         StatsEncoding.writeVarLong(buffer, message.sessionStats.size());
+         StatsEncoding.NameTable names = new StatsEncoding.NameTable();
+         for (Map.Entry<String, MinMax> entry : message.sessionStats.entrySet()) {
+            StatsEncoding.writeName(buffer, names, entry.getKey());
+            StatsEncoding.writeVarLong(buffer, entry.getValue().min);
+            StatsEncoding.writeVarLong(buffer, entry.getValue().max);
+         }
+      }
+
+      @Override
+      public SessionStatsMessage decodeFromWire(int position, Buffer buffer) {
+         byte version = buffer.getByte(position);
+         if (version != VERSION) {
+            throw new IllegalStateException("Unsupported version of session statistics message: " + version);
+         }
+         StatsEncoding.Reader reader = new StatsEncoding.Reader(buffer, position + 1);
+         String address = reader.readInternedString();
+         String runId = reader.readInternedString();
+         long timestamp = reader.readVarLong();
+         int size = reader.readVarInt();
+         Map<String, MinMax> sessionStats = new HashMap<>();
+         for (int i = 0; i < size; ++i) {
+            String phase = reader.readName();
+            int min = reader.readVarInt();
+            int max = reader.readVarInt();
+            sessionStats.put(phase, new MinMax(min, max));
+         }
+         return new SessionStatsMessage(address, runId, timestamp, sessionStats);
+      }
+
+      @Override
+      public SessionStatsMessage transform(SessionStatsMessage message) {
+         // The sender creates new map for each message
+         return message;
+      }
+
+      @Override
+      public String name() {
+         return getClass().getName();
+      }
+
+      @Override
+      public byte systemCodecID() {
+         return -1;
+      }
+   }
 }
@@ -0,0 +1,103 @@
+package io.hyperfoil.clustering.messages;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import io.hyperfoil.api.session.SequenceInstance;
+import io.hyperfoil.api.session.Session;
+
+/**
+ * Reply to {@link AgentControlMessage.Command#SUMMARIZE_SESSIONS}: number of running sequences grouped
+ * by phase, sequence name, current step and whether the sequence is blocked waiting for a connection.
+ * Sessions that do not run any sequence are counted in a group without sequence.
+ */
+public class SessionSummary implements Serializable {
+   public final List<Group> groups;
+
+   public SessionSummary(List<Group> groups) {
+      this.groups = groups;
+   }
+
+   public static class Group implements Serializable {
+      public String phase;
+      // Null for sessions that are not running any sequence
+      public String sequence;
+      public int step;
+      public boolean blocked;
+      public int count;
+
+      Group set(String phase, String sequence, int step, boolean blocked) {
+         this.phase = phase;
+         this.sequence = sequence;
+         this.step = step;
+         this.blocked = blocked;
+         return this;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (this == o) {
+            return true;
+         }
+         if (!(o instanceof Group)) {
+            return false;
+         }
+         Group group = (Group) o;
+         return step == group.step && blocked == group.blocked &&
+               Objects.equals(phase, group.phase) && Objects.equals(sequence, group.sequence);
+      }
+
+      @Override
+      public int hashCode() {
+         int result = phase == null ? 0 : phase.hashCode();
+         result = 31 * result + (sequence == null ? 0 : sequence.hashCode());
+         result = 31 * result + step;
+         return 31 * result + (blocked ? 1 : 0);
+      }
+   }
+
+   /**
+    * Aggregates sessions without allocating anything but the groups.
+    */
+   public static class Builder {
+      private final Map<Group, Group> groups = new HashMap<>();
+      private final Group probe = new Group();
+      private final Consumer<SequenceInstance> sequenceConsumer = this::addSequence;
+      private String phase;
+      private boolean running;
+
+      public void add(Session session) {
+         phase = session.phase() == null ? null : session.phase().definition().name;
+         running = false;
+         session.visitRunningSequences(sequenceConsumer);
+         if (!running) {
+            increment(null, -1, false);
+         }
+      }
+
+      private void addSequence(SequenceInstance sequence) {
+         running = true;
+         increment(sequence.name(), sequence.currentStep(), sequence.isBlocked());
+      }
+
+      private void increment(String sequence, int step, boolean blocked) {
+         Group group = groups.get(probe.set(phase, sequence, step, blocked));
+         if (group == null) {
+            group = new Group().set(phase, sequence, step, blocked);
+            groups.put(group, group);
+         }
+         group.count++;
+      }
+
+      public SessionSummary build() {
+         return new SessionSummary(new ArrayList<>(groups.values()));
+      }
+   }
+
+   public static class Codec extends ObjectCodec<SessionSummary> {}
+}
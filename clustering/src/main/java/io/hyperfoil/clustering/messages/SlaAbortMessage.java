@@ -0,0 +1,23 @@
+package io.hyperfoil.clustering.messages;
+
+/**
+ * Agent found that an SLA with abort on failure was violated and the phase should be terminated.
+ */
+public class SlaAbortMessage extends StatsMessage {
+   public final int phaseId;
+   public final String metric;
+   public final long startTime;
+   public final long endTime;
+   public final String message;
+
+   public SlaAbortMessage(String address, String runId, int phaseId, String metric, long startTime, long endTime, String message) {
+      super(address, runId);
+      this.phaseId = phaseId;
+      this.metric = metric;
+      this.startTime = startTime;
+      this.endTime = endTime;
+      this.message = message;
+   }
+
+   public static class Codec extends ObjectCodec<SlaAbortMessage> {}
+}
@@ -0,0 +1,338 @@
+package io.hyperfoil.clustering.messages;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import org.HdrHistogram.Histogram;
+
+import io.hyperfoil.api.statistics.CustomValue;
+import io.hyperfoil.api.statistics.IntValue;
+import io.hyperfoil.api.statistics.LongValue;
+import io.hyperfoil.api.statistics.StatisticsSnapshot;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Compact binary representation of statistics: numbers are written as zig-zag encoded varints,
+ * histograms use HdrHistogram compressed encoding and decoded metric names are interned.
+ * <p>
+ * Names (metrics, phases, custom statistics keys) repeat many times in one message; these are written
+ * through a {@link NameTable}: only the first occurrence carries the string, subsequent ones refer to its index.
+ */
+public final class StatsEncoding {
+   private static final byte CUSTOM_INT = 0;
+   private static final byte CUSTOM_LONG = 1;
+   private static final byte CUSTOM_SERIALIZED = 2;
+   // We don't want to grow the cache without bounds if the metric names are generated;
+   // least recently used names are evicted, e.g. those from previous runs
+   private static final int MAX_INTERNED = 10_000;
+   private static final Map<String, String> INTERNED = Collections.synchronizedMap(new LinkedHashMap<String, String>(256, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+         return size() > MAX_INTERNED;
+      }
+   });
+
+   private StatsEncoding() {}
+
+   public static void writeVarLong(Buffer buffer, long value) {
+      long zigzag = (value << 1) ^ (value >> 63);
+      while ((zigzag & ~0x7FL) != 0) {
+         buffer.appendByte((byte) ((zigzag & 0x7F) | 0x80));
+         zigzag >>>= 7;
+      }
+      buffer.appendByte((byte) zigzag);
+   }
+
+   public static void writeBoolean(Buffer buffer, boolean value) {
+      buffer.appendByte(value ? (byte) 1 : (byte) 0);
+   }
+
+   public static void writeString(Buffer buffer, String string) {
+      if (string == null) {
+         writeVarLong(buffer, -1);
+         return;
+      }
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(buffer, bytes.length);
+      buffer.appendBytes(bytes);
+   }
+
+   /**
+    * Writes the string or a back-reference to its earlier occurrence; read with {@link Reader#readName()}.
+    */
+   public static void writeName(Buffer buffer, NameTable names, String name) {
+      if (name == null) {
+         writeVarLong(buffer, -1);
+         return;
+      }
+      int index = names.indices.getOrDefault(name, -1);
+      if (index >= 0) {
+         writeVarLong(buffer, index);
+      } else {
+         names.indices.put(name, names.indices.size());
+         byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+         writeVarLong(buffer, -2 - bytes.length);
+         buffer.appendBytes(bytes);
+      }
+   }
+
+   public static void writeSnapshot(Buffer buffer, NameTable names, StatisticsSnapshot snapshot) {
+      writeVarLong(buffer, snapshot.sequenceId);
+      writeVarLong(buffer, snapshot.totalSendTime);
+      writeVarLong(buffer, snapshot.connectFailureCount);
+      writeVarLong(buffer, snapshot.requestCount);
+      writeVarLong(buffer, snapshot.responseCount);
+      writeVarLong(buffer, snapshot.status_2xx);
+      writeVarLong(buffer, snapshot.status_3xx);
+      writeVarLong(buffer, snapshot.status_4xx);
+      writeVarLong(buffer, snapshot.status_5xx);
+      writeVarLong(buffer, snapshot.status_other);
+      writeVarLong(buffer, snapshot.invalid);
+      writeVarLong(buffer, snapshot.cacheHits);
+      writeVarLong(buffer, snapshot.resetCount);
+      writeVarLong(buffer, snapshot.timeouts);
+      writeVarLong(buffer, snapshot.blockedCount);
+      writeVarLong(buffer, snapshot.blockedTime);
+      writeVarLong(buffer, snapshot.histogramOverflows);
+      writeHistogram(buffer, snapshot.histogram);
+
+      writeVarLong(buffer, snapshot.custom.size());
+      for (Map.Entry<Object, CustomValue> entry : snapshot.custom.entrySet()) {
+         writeName(buffer, names, String.valueOf(entry.getKey()));
+         CustomValue value = entry.getValue();
+         if (value instanceof IntValue) {
+            buffer.appendByte(CUSTOM_INT);
+            writeVarLong(buffer, ((IntValue) value).value());
+         } else if (value instanceof LongValue) {
+            buffer.appendByte(CUSTOM_LONG);
+            writeVarLong(buffer, ((LongValue) value).value());
+         } else {
+            buffer.appendByte(CUSTOM_SERIALIZED);
+            byte[] bytes = serialize(value);
+            writeVarLong(buffer, bytes.length);
+            buffer.appendBytes(bytes);
+         }
+      }
+      writeVarLong(buffer, snapshot.customValues.length);
+      for (long value : snapshot.customValues) {
+         writeVarLong(buffer, value);
+      }
+      writeVarLong(buffer, snapshot.customHistograms.length);
+      for (Histogram histogram : snapshot.customHistograms) {
+         writeBoolean(buffer, histogram != null);
+         if (histogram != null) {
+            writeHistogram(buffer, histogram);
+         }
+      }
+   }
+
+   private static void writeHistogram(Buffer buffer, Histogram histogram) {
+      writeVarLong(buffer, histogram.getStartTimeStamp());
+      writeVarLong(buffer, histogram.getEndTimeStamp());
+      writeBoolean(buffer, histogram.isAutoResize());
+      ByteBuffer bytes = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+      int length = histogram.encodeIntoCompressedByteBuffer(bytes, Deflater.BEST_SPEED);
+      writeVarLong(buffer, length);
+      buffer.appendBytes(bytes.array(), 0, length);
+   }
+
+   private static byte[] serialize(Object object) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+         out.writeObject(object);
+      } catch (IOException e) {
+         throw new IllegalStateException("Cannot serialize " + object, e);
+      }
+      return bos.toByteArray();
+   }
+
+   /**
+    * Names already written to one message; the table must not be shared between messages.
+    */
+   public static final class NameTable {
+      private final Map<String, Integer> indices = new HashMap<>();
+   }
+
+   public static final class Reader {
+      private final Buffer buffer;
+      private int position;
+      private List<String> names;
+
+      public Reader(Buffer buffer, int position) {
+         this.buffer = buffer;
+         this.position = position;
+      }
+
+      public int position() {
+         return position;
+      }
+
+      public long readVarLong() {
+         long zigzag = 0;
+         int shift = 0;
+         byte b;
+         do {
+            b = buffer.getByte(position++);
+            zigzag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+         } while ((b & 0x80) != 0);
+         return (zigzag >>> 1) ^ -(zigzag & 1);
+      }
+
+      public int readVarInt() {
+         return (int) readVarLong();
+      }
+
+      public boolean readBoolean() {
+         return buffer.getByte(position++) != 0;
+      }
+
+      public String readString() {
+         int length = readVarInt();
+         if (length < 0) {
+            return null;
+         }
+         String string = buffer.getString(position, position + length, StandardCharsets.UTF_8.name());
+         position += length;
+         return string;
+      }
+
+      /**
+       * Use for strings with limited cardinality, e.g. metric names or addresses.
+       *
+       * @return Interned string.
+       */
+      public String readInternedString() {
+         String string = readString();
+         return string == null ? null : intern(string);
+      }
+
+      private static String intern(String string) {
+         String interned = INTERNED.putIfAbsent(string, string);
+         return interned == null ? string : interned;
+      }
+
+      public String readName() {
+         int ref = readVarInt();
+         if (ref == -1) {
+            return null;
+         } else if (ref >= 0) {
+            if (names == null || ref >= names.size()) {
+               throw new IllegalStateException("Invalid name reference " + ref);
+            }
+            return names.get(ref);
+         }
+         int length = -2 - ref;
+         String name = intern(buffer.getString(position, position + length, StandardCharsets.UTF_8.name()));
+         position += length;
+         if (names == null) {
+            names = new ArrayList<>();
+         }
+         names.add(name);
+         return name;
+      }
+
+      public StatisticsSnapshot readSnapshot() {
+         StatisticsSnapshot snapshot = new StatisticsSnapshot();
+         snapshot.sequenceId = readVarInt();
+         snapshot.totalSendTime = readVarLong();
+         snapshot.connectFailureCount = readVarInt();
+         snapshot.requestCount = readVarInt();
+         snapshot.responseCount = readVarInt();
+         snapshot.status_2xx = readVarInt();
+         snapshot.status_3xx = readVarInt();
+         snapshot.status_4xx = readVarInt();
+         snapshot.status_5xx = readVarInt();
+         snapshot.status_other = readVarInt();
+         snapshot.invalid = readVarInt();
+         snapshot.cacheHits = readVarInt();
+         snapshot.resetCount = readVarInt();
+         snapshot.timeouts = readVarInt();
+         snapshot.blockedCount = readVarInt();
+         snapshot.blockedTime = readVarLong();
+         snapshot.histogramOverflows = readVarInt();
+         snapshot.histogram = readHistogram();
+
+         int customSize = readVarInt();
+         for (int i = 0; i < customSize; ++i) {
+            String key = readName();
+            byte type = buffer.getByte(position++);
+            switch (type) {
+               case CUSTOM_INT:
+                  IntValue intValue = new IntValue();
+                  intValue.add(readVarInt());
+                  snapshot.custom.put(key, intValue);
+                  break;
+               case CUSTOM_LONG:
+                  LongValue longValue = new LongValue();
+                  longValue.add(readVarLong());
+                  snapshot.custom.put(key, longValue);
+                  break;
+               case CUSTOM_SERIALIZED:
+                  int length = readVarInt();
+                  snapshot.custom.put(key, (CustomValue) deserialize(buffer.getBytes(position, position + length)));
+                  position += length;
+                  break;
+               default:
+                  throw new IllegalStateException("Unknown custom value type " + type);
+            }
+         }
+         int customValues = readVarInt();
+         if (customValues > 0) {
+            snapshot.customValues = new long[customValues];
+            for (int i = 0; i < customValues; ++i) {
+               snapshot.customValues[i] = readVarLong();
+            }
+         }
+         int customHistograms = readVarInt();
+         if (customHistograms > 0) {
+            snapshot.customHistograms = new Histogram[customHistograms];
+            for (int i = 0; i < customHistograms; ++i) {
+               if (readBoolean()) {
+                  snapshot.customHistograms[i] = readHistogram();
+               }
+            }
+         }
+         return snapshot;
+      }
+
+      private Histogram readHistogram() {
+         long startTimestamp = readVarLong();
+         long endTimestamp = readVarLong();
+         boolean autoResize = readBoolean();
+         int length = readVarInt();
+         Histogram histogram;
+         try {
+            histogram = Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(buffer.getBytes(position, position + length)), 0);
+         } catch (DataFormatException e) {
+            throw new IllegalStateException("Cannot decode histogram", e);
+         }
+         position += length;
+         histogram.setAutoResize(autoResize);
+         histogram.setStartTimeStamp(startTimestamp);
+         histogram.setEndTimeStamp(endTimestamp);
+         return histogram;
+      }
+
+      private static Object deserialize(byte[] bytes) {
+         try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+         } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Cannot deserialize custom value", e);
+         }
+      }
+   }
+}
@@ -0,0 +1,29 @@
+package io.hyperfoil.clustering.util;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import io.hyperfoil.api.config.Benchmark;
+
+/**
+ * Serializes the benchmark without its {@link Benchmark#files() data files}. These are parsed into the steps
+ * when the benchmark is built; only parsing the source again needs them.
+ */
+public class DefinitionOutputStream extends ObjectOutputStream {
+   private final Map<String, byte[]> files;
+
+   public DefinitionOutputStream(OutputStream out, Benchmark benchmark) throws IOException {
+      super(out);
+      this.files = benchmark.files();
+      enableReplaceObject(true);
+   }
+
+   @Override
+   protected Object replaceObject(Object obj) {
+      // Phases refer to the benchmark, too, therefore we cannot simply serialize a copy without files
+      return obj == files && !files.isEmpty() ? Collections.emptyMap() : obj;
+   }
+}
@@ -8,9 +8,12 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import io.hyperfoil.api.config.BenchmarkData;
+import io.hyperfoil.core.impl.DataFileMap;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 
@@ -34,15 +37,8 @@ public class PersistedBenchmarkData implements BenchmarkData {
 
    @Override
    public Map<String, byte[]> files() {
-      try {
-         return Files.list(dir).collect(Collectors.toMap(path -> path.getFileName().toString(), (Path path) -> {
-            try {
-               return Files.readAllBytes(path);
-            } catch (IOException e) {
-               log.error("Cannot read file {}", e, path);
-               throw new RuntimeException(e);
-            }
-         }));
+      try (Stream<Path> files = Files.list(dir)) {
+         return new DataFileMap(files.collect(Collectors.toMap(path -> path.getFileName().toString(), Function.identity())));
       } catch (IOException e) {
          throw new RuntimeException("Cannot list directory " + dir, e);
       }
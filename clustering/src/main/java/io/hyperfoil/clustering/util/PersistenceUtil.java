@@ -1,14 +1,19 @@
 package io.hyperfoil.clustering.util;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
 import java.util.Map;
 
 import io.hyperfoil.api.config.Benchmark;
 import io.hyperfoil.api.config.BenchmarkData;
+import io.hyperfoil.core.impl.DataFileMap;
 import io.hyperfoil.core.parser.BenchmarkParser;
 import io.hyperfoil.core.parser.ParserException;
 import io.hyperfoil.util.Util;
@@ -19,19 +24,15 @@ public class PersistenceUtil {
    private static final Logger log = LoggerFactory.getLogger(PersistenceUtil.class);
 
    public static void store(Benchmark benchmark, Path dir) {
-      try {
-         byte[] bytes = Util.serialize(benchmark);
-         if (bytes != null) {
-            Path path = dir.resolve(benchmark.name() + ".serialized");
-            try {
-               Files.write(path, bytes);
-               log.info("Stored benchmark '{}' in {}", benchmark.name(), path);
-            } catch (IOException e) {
-               log.error(e, "Failed to persist benchmark {} to {}", benchmark.name(), path);
-            }
-         }
+      Path serializedPath = dir.resolve(benchmark.name() + ".serialized");
+      // When we have the source the data files are stored next to it; don't copy them into the serialized form
+      try (ObjectOutputStream output = benchmark.source() == null ?
+            new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(serializedPath))) :
+            new DefinitionOutputStream(new BufferedOutputStream(Files.newOutputStream(serializedPath)), benchmark)) {
+         output.writeObject(benchmark);
+         log.info("Stored benchmark '{}' in {}", benchmark.name(), serializedPath);
       } catch (IOException e) {
-         log.error("Failed to serialize", e);
+         log.error(e, "Failed to persist benchmark {} to {}", benchmark.name(), serializedPath);
       }
       if (benchmark.source() != null) {
          if (!dir.toFile().exists()) {
@@ -63,14 +64,27 @@ public class PersistenceUtil {
                }
             }
          }
-         for (Map.Entry<String, byte[]> entry : benchmark.files().entrySet()) {
+         Map<String, byte[]> files = benchmark.files();
+         Map<String, Path> persisted = new HashMap<>();
+         for (String file : files.keySet()) {
+            Path target = dataDirPath.resolve(PersistedBenchmarkData.sanitize(file));
             try {
-               String sanitizedName = PersistedBenchmarkData.sanitize(entry.getKey());
-               Files.write(dataDirPath.resolve(sanitizedName), entry.getValue());
+               // Files on disk are copied rather than loaded into memory
+               Path source = files instanceof DataFileMap ? ((DataFileMap) files).path(file) : null;
+               if (source != null) {
+                  Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+               } else {
+                  Files.write(target, files.get(file));
+               }
+               persisted.put(file, target);
             } catch (IOException e) {
-               log.error("Couldn't persist data file {}", e, entry.getKey());
+               log.error("Couldn't persist data file {}", e, file);
             }
          }
+         if (files instanceof DataFileMap) {
+            // The original files might be temporary (e.g. uploads)
+            ((DataFileMap) files).relocate(persisted);
+         }
       }
    }
 
@@ -0,0 +1,176 @@
+package io.hyperfoil.deploy.local;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * CPUs of the local machine grouped by NUMA nodes, as published in <code>/sys/devices/system/node</code>.
+ * Also tracks how many agents are placed on each node so that new agents go to the least loaded one.
+ */
+class CpuTopology {
+   private static final Logger log = LoggerFactory.getLogger(CpuTopology.class);
+   static final Path SYSFS_NODES = Paths.get("/sys/devices/system/node");
+   private static final Pattern NODE_DIR = Pattern.compile("node(\\d+)");
+
+   private final int[] nodeIds;
+   private final int[][] cpus;
+   private final int[] agents;
+
+   CpuTopology(int[] nodeIds, int[][] cpus) {
+      if (nodeIds.length == 0 || nodeIds.length != cpus.length) {
+         throw new IllegalArgumentException("Invalid topology: " + Arrays.toString(nodeIds) + " / " + cpus.length);
+      }
+      this.nodeIds = nodeIds;
+      this.cpus = cpus;
+      this.agents = new int[nodeIds.length];
+   }
+
+   /**
+    * @param dir Directory with <code>nodeX/cpulist</code> files.
+    * @return Topology; if the directory cannot be read all available processors are considered to be in node 0.
+    */
+   static CpuTopology read(Path dir) {
+      // Sorted by node ID
+      TreeMap<Integer, int[]> nodes = new TreeMap<>();
+      try (Stream<Path> files = Files.list(dir)) {
+         for (Path nodeDir : files.collect(Collectors.toList())) {
+            Matcher matcher = NODE_DIR.matcher(nodeDir.getFileName().toString());
+            Path cpuList = nodeDir.resolve("cpulist");
+            if (!matcher.matches() || !Files.exists(cpuList)) {
+               continue;
+            }
+            int[] nodeCpus = parseCpuList(new String(Files.readAllBytes(cpuList), StandardCharsets.UTF_8));
+            // Memory-only nodes have no CPUs
+            if (nodeCpus.length > 0) {
+               nodes.put(Integer.parseInt(matcher.group(1)), nodeCpus);
+            }
+         }
+      } catch (IOException | IllegalArgumentException e) {
+         log.warn("Cannot read NUMA topology from {}", e, dir);
+         nodes.clear();
+      }
+      if (nodes.isEmpty()) {
+         nodes.put(0, IntStream.range(0, Runtime.getRuntime().availableProcessors()).toArray());
+      }
+      return new CpuTopology(nodes.keySet().stream().mapToInt(Integer::intValue).toArray(), nodes.values().toArray(new int[0][]));
+   }
+
+   /**
+    * @param list CPU list in the format used by Linux kernel, e.g. <code>0-3,8,10-11</code>
+    * @return Sorted CPU numbers.
+    */
+   static int[] parseCpuList(String list) {
+      IntStream.Builder builder = IntStream.builder();
+      for (String part : list.trim().split(",")) {
+         part = part.trim();
+         if (part.isEmpty()) {
+            continue;
+         }
+         int dash = part.indexOf('-');
+         try {
+            if (dash < 0) {
+               builder.add(Integer.parseInt(part));
+            } else {
+               int from = Integer.parseInt(part.substring(0, dash).trim());
+               int to = Integer.parseInt(part.substring(dash + 1).trim());
+               if (to < from) {
+                  throw new IllegalArgumentException("Invalid CPU range " + part);
+               }
+               IntStream.rangeClosed(from, to).forEach(builder::add);
+            }
+         } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid CPU list " + list, e);
+         }
+      }
+      return builder.build().sorted().distinct().toArray();
+   }
+
+   /**
+    * @param cpus Sorted CPU numbers.
+    * @return Compact CPU list, e.g. <code>0-3,8,10-11</code>
+    */
+   static String formatCpuList(int[] cpus) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < cpus.length; ++i) {
+         int from = cpus[i];
+         while (i + 1 < cpus.length && cpus[i + 1] == cpus[i] + 1) {
+            ++i;
+         }
+         if (sb.length() > 0) {
+            sb.append(',');
+         }
+         sb.append(from);
+         if (cpus[i] != from) {
+            sb.append('-').append(cpus[i]);
+         }
+      }
+      return sb.toString();
+   }
+
+   int nodes() {
+      return nodeIds.length;
+   }
+
+   /**
+    * @param node NUMA node ID.
+    * @return CPUs in this node or <code>null</code> if there is no such node.
+    */
+   int[] cpus(int node) {
+      int index = indexOf(node);
+      return index < 0 ? null : cpus[index];
+   }
+
+   /**
+    * @return ID of the node with the least agents; this node is considered occupied by another agent
+    * until {@link #release(int) released}.
+    */
+   synchronized int allocate() {
+      int best = 0;
+      for (int i = 1; i < agents.length; ++i) {
+         if (agents[i] < agents[best]) {
+            best = i;
+         }
+      }
+      agents[best]++;
+      return nodeIds[best];
+   }
+
+   /**
+    * Marks an explicitly selected node as occupied by another agent.
+    */
+   synchronized void allocate(int node) {
+      int index = indexOf(node);
+      if (index >= 0) {
+         agents[index]++;
+      }
+   }
+
+   synchronized void release(int node) {
+      int index = indexOf(node);
+      if (index >= 0 && agents[index] > 0) {
+         agents[index]--;
+      }
+   }
+
+   private int indexOf(int node) {
+      for (int i = 0; i < nodeIds.length; ++i) {
+         if (nodeIds[i] == node) {
+            return i;
+         }
+      }
+      return -1;
+   }
+}
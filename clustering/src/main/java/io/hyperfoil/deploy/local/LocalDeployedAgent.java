@@ -0,0 +1,51 @@
+package io.hyperfoil.deploy.local;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import io.hyperfoil.api.deployment.DeployedAgent;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+class LocalDeployedAgent implements DeployedAgent {
+   private static final Logger log = LoggerFactory.getLogger(LocalDeployedAgent.class);
+
+   private final String name;
+   private final Process process;
+   private final Path logFile;
+   private final Runnable onStop;
+   private boolean stopped;
+
+   LocalDeployedAgent(String name, Process process, Path logFile, Runnable onStop) {
+      this.name = name;
+      this.process = process;
+      this.logFile = logFile;
+      this.onStop = onStop;
+   }
+
+   @Override
+   public synchronized void stop() {
+      if (stopped) {
+         return;
+      }
+      stopped = true;
+      log.info("Stopping agent {}", name);
+      // The agent usually terminates itself after the run; we don't wait for the process as this can be
+      // called from an event loop
+      process.destroy();
+      onStop.run();
+   }
+
+   void downloadLog(long offset, Path destinationFile) throws IOException {
+      try (FileChannel source = FileChannel.open(logFile, StandardOpenOption.READ);
+           FileChannel target = FileChannel.open(destinationFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+         long position = offset;
+         long size = source.size();
+         while (position < size) {
+            position += source.transferTo(position, size - position, target);
+         }
+      }
+   }
+}
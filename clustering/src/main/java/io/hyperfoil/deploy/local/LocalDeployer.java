@@ -0,0 +1,208 @@
+package io.hyperfoil.deploy.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.kohsuke.MetaInfServices;
+
+import io.hyperfoil.api.config.Agent;
+import io.hyperfoil.api.deployment.DeployedAgent;
+import io.hyperfoil.api.deployment.Deployer;
+import io.hyperfoil.api.deployment.DeploymentException;
+import io.hyperfoil.internal.Controller;
+import io.hyperfoil.internal.Properties;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Starts agents as separate processes on the controller machine, each pinned to a set of CPUs: on large
+ * multi-socket machines this keeps the event loops and the heap of each agent within one NUMA node.
+ * <p>
+ * The CPUs are selected by agent properties:
+ * <ul>
+ * <li><code>cpus</code> (or the inline config): explicit CPU list, e.g. <code>0-15,64-79</code></li>
+ * <li><code>node</code>: all CPUs of given NUMA node; memory is allocated from this node, too</li>
+ * </ul>
+ * When none of these is set the agent is placed on the NUMA node with the least agents.
+ * Other properties: <code>extras</code> adds JVM options.
+ */
+public class LocalDeployer implements Deployer {
+   private static final Logger log = LoggerFactory.getLogger(LocalDeployer.class);
+   private static final String AGENT_MAIN_CLASS = "io.hyperfoil.Hyperfoil$Agent";
+
+   private final CpuTopology topology;
+   private final boolean hasNumactl;
+   private final boolean hasTaskset;
+
+   private LocalDeployer() {
+      topology = CpuTopology.read(CpuTopology.SYSFS_NODES);
+      hasNumactl = isOnPath("numactl");
+      hasTaskset = isOnPath("taskset");
+      log.info("Found {} NUMA node(s); numactl: {}, taskset: {}", topology.nodes(), hasNumactl, hasTaskset);
+   }
+
+   private static boolean isOnPath(String executable) {
+      String path = System.getenv("PATH");
+      if (path == null) {
+         return false;
+      }
+      for (String dir : path.split(File.pathSeparator)) {
+         if (Files.isExecutable(Paths.get(dir, executable))) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   @Override
+   public DeployedAgent start(Agent agent, String runId, Consumer<Throwable> exceptionHandler) {
+      String cpuList = agent.inlineConfig;
+      String nodeString = null;
+      String extras = null;
+      if (agent.properties != null) {
+         cpuList = agent.properties.getOrDefault("cpus", cpuList);
+         nodeString = agent.properties.get("node");
+         extras = agent.properties.get("extras");
+      }
+      int node = -1;
+      try {
+         if (cpuList != null) {
+            // Validate the format
+            cpuList = CpuTopology.formatCpuList(CpuTopology.parseCpuList(cpuList));
+         } else if (nodeString != null) {
+            node = Integer.parseInt(nodeString.trim());
+            if (topology.cpus(node) == null) {
+               throw new IllegalArgumentException("There is no NUMA node " + node);
+            }
+            topology.allocate(node);
+         } else {
+            node = topology.allocate();
+         }
+      } catch (IllegalArgumentException e) {
+         exceptionHandler.accept(new DeploymentException("Invalid CPU selection for agent " + agent.name, e));
+         return null;
+      }
+
+      int allocatedNode = node;
+      List<String> command = affinityCommand(node, cpuList);
+      command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      String log4jConfigurationFile = System.getProperty(Properties.LOG4J2_CONFIGURATION_FILE);
+      if (log4jConfigurationFile != null) {
+         command.add("-D" + Properties.LOG4J2_CONFIGURATION_FILE + "=" + log4jConfigurationFile);
+      }
+      command.add("-Djava.net.preferIPv4Stack=true");
+      command.add("-Dvertx.logger-delegate-factory-class-name=io.vertx.core.logging.Log4j2LogDelegateFactory");
+      command.add("-D" + Properties.AGENT_NAME + "=" + agent.name);
+      command.add("-D" + Properties.RUN_ID + "=" + runId);
+      addProperty(command, Properties.CONTROLLER_CLUSTER_IP);
+      addProperty(command, Properties.CONTROLLER_CLUSTER_PORT);
+      addProperty(command, Properties.CONTROLLER_CHANNEL_PORT);
+      if (extras != null) {
+         for (String option : extras.trim().split("\\s+")) {
+            command.add(option);
+         }
+      }
+      command.add(AGENT_MAIN_CLASS);
+
+      Path logFile = Controller.ROOT_DIR.resolve("agent." + agent.name + ".log");
+      log.debug("Starting agent {}: {}", agent.name, command);
+      try {
+         Files.createDirectories(logFile.getParent());
+         ProcessBuilder processBuilder = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(logFile.toFile());
+         String secret = System.getProperty(Properties.CONTROLLER_CHANNEL_SECRET);
+         if (secret != null) {
+            // Environment of the process is not visible to other users, unlike its command line
+            processBuilder.environment().put(Properties.env(Properties.CONTROLLER_CHANNEL_SECRET), secret);
+         }
+         Process process = processBuilder.start();
+         return new LocalDeployedAgent(agent.name, process, logFile, () -> release(allocatedNode));
+      } catch (IOException e) {
+         release(allocatedNode);
+         exceptionHandler.accept(new DeploymentException("Cannot start agent " + agent.name, e));
+         return null;
+      }
+   }
+
+   private void release(int node) {
+      if (node >= 0) {
+         topology.release(node);
+      }
+   }
+
+   private List<String> affinityCommand(int node, String cpuList) {
+      List<String> command = new ArrayList<>();
+      if (hasNumactl) {
+         command.add("numactl");
+         if (node >= 0) {
+            command.add("--cpunodebind=" + node);
+            command.add("--membind=" + node);
+         } else {
+            command.add("--physcpubind=" + cpuList);
+            command.add("--localalloc");
+         }
+      } else if (hasTaskset) {
+         // Without numactl we rely on the default first-touch policy to allocate memory locally
+         command.add("taskset");
+         command.add("-c");
+         command.add(node >= 0 ? CpuTopology.formatCpuList(topology.cpus(node)) : cpuList);
+      } else {
+         log.warn("Neither numactl nor taskset is available, the agent won't be pinned to CPUs.");
+      }
+      return command;
+   }
+
+   private static void addProperty(List<String> command, String property) {
+      String value = System.getProperty(property);
+      if (value != null) {
+         command.add("-D" + property + "=" + value);
+      }
+   }
+
+   @Override
+   public boolean hasControllerLog() {
+      return false;
+   }
+
+   @Override
+   public void downloadControllerLog(long offset, String destinationFile, Handler<AsyncResult<Void>> handler) {
+      throw new UnsupportedOperationException();
+   }
+
+   @Override
+   public void downloadAgentLog(DeployedAgent deployedAgent, long offset, String destinationFile, Handler<AsyncResult<Void>> handler) {
+      try {
+         ((LocalDeployedAgent) deployedAgent).downloadLog(offset, Paths.get(destinationFile));
+         handler.handle(Future.succeededFuture());
+      } catch (IOException e) {
+         handler.handle(Future.failedFuture(e));
+      }
+   }
+
+   @Override
+   public void close() {
+   }
+
+   @MetaInfServices(Deployer.Factory.class)
+   public static class Factory implements Deployer.Factory {
+      @Override
+      public String name() {
+         return "local";
+      }
+
+      @Override
+      public LocalDeployer create() {
+         return new LocalDeployer();
+      }
+   }
+}
@@ -7,6 +7,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -170,6 +171,18 @@ public class SshDeployedAgent implements DeployedAgent {
       startAgentCommmand.append(" -D").append(Properties.RUN_ID).append('=').append(runId);
       startAgentCommmand.append(" -D").append(Properties.CONTROLLER_CLUSTER_IP).append('=').append(System.getProperty(Properties.CONTROLLER_CLUSTER_IP));
       startAgentCommmand.append(" -D").append(Properties.CONTROLLER_CLUSTER_PORT).append('=').append(System.getProperty(Properties.CONTROLLER_CLUSTER_PORT));
+      String channelPort = System.getProperty(Properties.CONTROLLER_CHANNEL_PORT);
+      if (channelPort != null) {
+         startAgentCommmand.append(" -D").append(Properties.CONTROLLER_CHANNEL_PORT).append('=').append(channelPort);
+         String secretFile = dir + File.separatorChar + "agent." + name + ".secret";
+         try {
+            uploadSecret(secretFile, System.getProperty(Properties.CONTROLLER_CHANNEL_SECRET));
+         } catch (IOException e) {
+            exceptionHandler.accept(new DeploymentException("Cannot upload agent channel secret", e));
+            return;
+         }
+         startAgentCommmand.append(" -D").append(Properties.CONTROLLER_CHANNEL_SECRET_FILE).append('=').append(secretFile);
+      }
       if (DEBUG_ADDRESS != null) {
          startAgentCommmand.append(" -agentlib:jdwp=transport=dt_socket,server=y,suspend=").append(DEBUG_SUSPEND).append(",address=").append(DEBUG_ADDRESS);
       }
@@ -183,6 +196,16 @@ public class SshDeployedAgent implements DeployedAgent {
       runCommand(startAgent, false);
    }
 
+   private void uploadSecret(String path, String secret) throws IOException {
+      try (SftpClient sftpClient = SftpClientFactory.instance().createSftpClient(session)) {
+         try (SftpClient.CloseableHandle handle = sftpClient.open(path, SftpClient.OpenMode.Write, SftpClient.OpenMode.Create, SftpClient.OpenMode.Truncate)) {
+            // Restrict permissions before writing so that the secret is never readable by others
+            sftpClient.setStat(handle, new SftpClient.Attributes().perms(0600));
+            sftpClient.write(handle, 0, secret.getBytes(StandardCharsets.UTF_8));
+         }
+      }
+   }
+
    private List<String> runCommand(String cmd, boolean wait) {
       log.trace("Running command {}", cmd);
       commandStream.println(cmd);
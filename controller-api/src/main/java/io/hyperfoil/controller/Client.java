@@ -42,6 +42,13 @@ public interface Client {
       Benchmark get();
 
       RunRef start(String description);
+
+      /**
+       * @param description Run description.
+       * @param profiledPhases Phases that should be recorded by JDK Flight Recorder on all agents and controller.
+       * @return Reference to the started run.
+       */
+      RunRef start(String description, Collection<String> profiledPhases);
    }
 
    interface RunRef {
@@ -66,11 +73,38 @@ public interface Client {
 
       RequestStatisticsResponse statsTotal();
 
+      /**
+       * Subscribes to recent statistics pushed by the controller, rather than polling {@link #statsRecent()}.
+       *
+       * @return Open stream; the caller is responsible for closing it.
+       */
+      StatsStream statsStream();
+
       void statsAll(String format, String destinationFile);
 
       Histogram histogram(String phase, int stepId, String metric);
 
       Collection<CustomStats> customStats();
+
+      /**
+       * @return Names of JDK Flight Recorder files recorded during this run.
+       */
+      Collection<String> profiles();
+
+      void downloadProfile(String profile, String destinationFile);
+   }
+
+   interface StatsStream extends AutoCloseable {
+      /**
+       * Blocks until the controller pushes new statistics. Updates that were not consumed in time are skipped.
+       *
+       * @return Latest statistics or <code>null</code> when the run has terminated.
+       * @throws InterruptedException When the waiting thread is interrupted.
+       */
+      RequestStatisticsResponse next() throws InterruptedException;
+
+      @Override
+      void close();
    }
 
    class MinMax {
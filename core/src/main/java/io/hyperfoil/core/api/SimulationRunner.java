@@ -12,6 +12,16 @@ public interface SimulationRunner {
 
    void visitSessions(Consumer<Session> consumer);
 
+   /**
+    * Visits a range of sessions, holding the lock that prevents adding sessions only for this range.
+    *
+    * @param from     Index of the first session.
+    * @param max      Maximum number of sessions visited.
+    * @param consumer Session consumer.
+    * @return Index of the first session that was not visited or -1 if all sessions have been visited.
+    */
+   int visitSessions(int from, int max, Consumer<Session> consumer);
+
    void startPhase(String phase);
 
    void finishPhase(String phase);
@@ -2,25 +2,25 @@ package io.hyperfoil.core.handlers;
 
 import org.kohsuke.MetaInfServices;
 
+import io.hyperfoil.api.config.BenchmarkDefinitionException;
 import io.hyperfoil.api.config.InitFromParam;
+import io.hyperfoil.api.config.Locator;
 import io.hyperfoil.api.config.Name;
+import io.hyperfoil.api.statistics.CustomMetrics;
 import io.netty.buffer.ByteBuf;
 import io.hyperfoil.api.connection.Request;
 import io.hyperfoil.api.http.RawBytesHandler;
-import io.hyperfoil.api.statistics.LongValue;
-import io.hyperfoil.api.statistics.Statistics;
 
 public class ResponseSizeRecorder implements RawBytesHandler {
-   private final String customMetric;
+   private final int customMetric;
 
-   public ResponseSizeRecorder(String customMetric) {
+   public ResponseSizeRecorder(int customMetric) {
       this.customMetric = customMetric;
    }
 
    @Override
    public void accept(Request request, ByteBuf buf, int offset, int length, boolean isLastPart) {
-      Statistics statistics = request.statistics();
-      statistics.getCustom(request.startTimestampMillis(), customMetric, LongValue::new).add(length);
+      request.statistics().addCustom(request.startTimestampMillis(), customMetric, length);
    }
 
    /**
@@ -30,6 +30,18 @@ public class ResponseSizeRecorder implements RawBytesHandler {
    @Name("responseSizeRecorder")
    public static class Builder implements RawBytesHandler.Builder, InitFromParam<Builder> {
       private String customMetric;
+      private Locator locator;
+
+      @Override
+      public Builder setLocator(Locator locator) {
+         this.locator = locator;
+         return this;
+      }
+
+      @Override
+      public Builder copy(Locator locator) {
+         return new Builder().customMetric(customMetric).setLocator(locator);
+      }
 
       /**
        * @param param Name of the custom metric.
@@ -53,7 +65,11 @@ public class ResponseSizeRecorder implements RawBytesHandler {
 
       @Override
       public ResponseSizeRecorder build() {
-         return new ResponseSizeRecorder(customMetric);
+         if (customMetric == null) {
+            throw new BenchmarkDefinitionException("Must define the custom metric name.");
+         }
+         CustomMetrics customMetrics = locator.scenario().endScenario().endPhase().customMetrics();
+         return new ResponseSizeRecorder(customMetrics.register(customMetric, CustomMetrics.Kind.SUM));
       }
    }
 }
@@ -0,0 +1,105 @@
+package io.hyperfoil.core.impl;
+
+import java.io.Serializable;
+
+/**
+ * Health of the load generator itself during one statistics collection period. When the event loops cannot
+ * run the scheduled tasks on time the recorded response times reflect the client rather than the server.
+ * Arrays are indexed by the event loop (executor).
+ */
+public class AgentMetrics implements Serializable {
+   public final long startTime;
+   public final long endTime;
+   /**
+    * Maximum number of tasks waiting in the event loop queue.
+    */
+   public final int[] maxPendingTasks;
+   /**
+    * Mean delay of scheduled tasks compared to their target time, in microseconds.
+    */
+   public final long[] meanLag;
+   /**
+    * Maximum delay of scheduled tasks compared to their target time, in microseconds.
+    */
+   public final long[] maxLag;
+   /**
+    * Ratio of CPU time consumed by the event loop thread to wall-clock time, or -1 if not supported by the JVM.
+    */
+   public final double[] busyRatio;
+   /**
+    * Bytes allocated by the event loop thread per second, or -1 if not supported by the JVM.
+    */
+   public final long[] allocationRate;
+   /**
+    * Time spent in garbage collection (the whole JVM), in milliseconds.
+    */
+   public final long gcPauseTime;
+   /**
+    * Maximum delay of starting new users in open-model phases compared to the planned arrival, in microseconds.
+    */
+   public final long maxArrivalLag;
+
+   public AgentMetrics(long startTime, long endTime, int[] maxPendingTasks, long[] meanLag, long[] maxLag, double[] busyRatio,
+                       long[] allocationRate, long gcPauseTime, long maxArrivalLag) {
+      this.startTime = startTime;
+      this.endTime = endTime;
+      this.maxPendingTasks = maxPendingTasks;
+      this.meanLag = meanLag;
+      this.maxLag = maxLag;
+      this.busyRatio = busyRatio;
+      this.allocationRate = allocationRate;
+      this.gcPauseTime = gcPauseTime;
+      this.maxArrivalLag = maxArrivalLag;
+   }
+
+   /**
+    * Combines metrics from this period and the following one. Maxima are kept, means and ratios are weighted
+    * by the duration of the periods.
+    *
+    * @param next Metrics from the subsequent period.
+    * @return Metrics for both periods.
+    */
+   public AgentMetrics merge(AgentMetrics next) {
+      int executors = Math.max(maxLag.length, next.maxLag.length);
+      long duration = Math.max(1, endTime - startTime);
+      long nextDuration = Math.max(1, next.endTime - next.startTime);
+      int[] maxPendingTasks = new int[executors];
+      long[] meanLag = new long[executors];
+      long[] maxLag = new long[executors];
+      double[] busyRatio = new double[executors];
+      long[] allocationRate = new long[executors];
+      for (int i = 0; i < executors; ++i) {
+         boolean hasThis = i < this.maxLag.length;
+         boolean hasNext = i < next.maxLag.length;
+         maxPendingTasks[i] = Math.max(hasThis ? this.maxPendingTasks[i] : 0, hasNext ? next.maxPendingTasks[i] : 0);
+         maxLag[i] = Math.max(hasThis ? this.maxLag[i] : 0, hasNext ? next.maxLag[i] : 0);
+         meanLag[i] = (long) weighted(hasThis ? this.meanLag[i] : -1, duration, hasNext ? next.meanLag[i] : -1, nextDuration);
+         busyRatio[i] = weighted(hasThis ? this.busyRatio[i] : -1, duration, hasNext ? next.busyRatio[i] : -1, nextDuration);
+         allocationRate[i] = (long) weighted(hasThis ? this.allocationRate[i] : -1, duration,
+               hasNext ? next.allocationRate[i] : -1, nextDuration);
+      }
+      return new AgentMetrics(Math.min(startTime, next.startTime), Math.max(endTime, next.endTime), maxPendingTasks,
+            meanLag, maxLag, busyRatio, allocationRate, gcPauseTime + next.gcPauseTime, Math.max(maxArrivalLag, next.maxArrivalLag));
+   }
+
+   private static double weighted(double a, long aDuration, double b, long bDuration) {
+      // Negative values mean that the value is not available
+      if (a < 0) {
+         return b;
+      } else if (b < 0) {
+         return a;
+      }
+      return (a * aDuration + b * bDuration) / (aDuration + bDuration);
+   }
+
+   /**
+    * @return Maximum of event loop and arrival lag, in microseconds.
+    */
+   public long maxSchedulingLag() {
+      long max = maxArrivalLag;
+      for (long lag : maxLag) {
+         max = Math.max(max, lag);
+      }
+      return max;
+   }
+}
@@ -0,0 +1,165 @@
+package io.hyperfoil.core.impl;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+/**
+ * Instruments the event loops running the simulation. Each loop runs a probe task every {@link #PROBE_PERIOD_NANOS}
+ * that records how late it was executed and how many tasks were waiting in the queue; CPU time and allocations
+ * of the loop threads and GC time are read when the metrics are {@link #sample() sampled}.
+ */
+public class AgentMonitor {
+   private static final long PROBE_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+   private final Probe[] probes;
+   private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+   private final List<GarbageCollectorMXBean> garbageCollectors = ManagementFactory.getGarbageCollectorMXBeans();
+   private final boolean cpuTimeSupported;
+   private final boolean allocatedBytesSupported;
+   private final AtomicLong maxArrivalLag = new AtomicLong();
+   private volatile boolean running;
+   private long lastSampleNanos;
+   private long lastSampleMillis;
+   private long lastGcTime;
+
+   public AgentMonitor(EventExecutor[] executors) {
+      this.probes = new Probe[executors.length];
+      for (int i = 0; i < executors.length; ++i) {
+         probes[i] = new Probe(executors[i]);
+      }
+      this.cpuTimeSupported = threads.isThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+      this.allocatedBytesSupported = threads instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+   }
+
+   public void start() {
+      running = true;
+      lastSampleNanos = System.nanoTime();
+      lastSampleMillis = System.currentTimeMillis();
+      lastGcTime = gcTime();
+      for (Probe probe : probes) {
+         probe.executor.execute(probe);
+      }
+   }
+
+   public void stop() {
+      running = false;
+   }
+
+   /**
+    * @param lagMillis Difference between the actual and planned time of starting a new user.
+    */
+   public void recordArrivalLag(long lagMillis) {
+      maxArrivalLag.accumulateAndGet(lagMillis, Math::max);
+   }
+
+   /**
+    * Reads and resets the metrics collected since the previous invocation. Should not be called concurrently.
+    *
+    * @return Metrics for the period since last sample.
+    */
+   public AgentMetrics sample() {
+      long nowNanos = System.nanoTime();
+      long nowMillis = System.currentTimeMillis();
+      long elapsed = Math.max(1, nowNanos - lastSampleNanos);
+      int[] maxPendingTasks = new int[probes.length];
+      long[] meanLag = new long[probes.length];
+      long[] maxLag = new long[probes.length];
+      double[] busyRatio = new double[probes.length];
+      long[] allocationRate = new long[probes.length];
+      for (int i = 0; i < probes.length; ++i) {
+         Probe probe = probes[i];
+         int count = probe.count.getAndSet(0);
+         long lagSum = probe.lagSum.getAndSet(0);
+         meanLag[i] = count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(lagSum / count);
+         maxLag[i] = TimeUnit.NANOSECONDS.toMicros(probe.maxLag.getAndSet(0));
+         maxPendingTasks[i] = probe.maxPendingTasks.getAndSet(0);
+         busyRatio[i] = -1;
+         allocationRate[i] = -1;
+         long threadId = probe.threadId;
+         if (threadId < 0) {
+            continue;
+         }
+         if (cpuTimeSupported) {
+            long cpuTime = threads.getThreadCpuTime(threadId);
+            if (cpuTime >= 0 && probe.lastCpuTime >= 0) {
+               busyRatio[i] = Math.min(1.0, (double) (cpuTime - probe.lastCpuTime) / elapsed);
+            }
+            probe.lastCpuTime = cpuTime;
+         }
+         if (allocatedBytesSupported) {
+            long allocated = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId);
+            if (allocated >= 0 && probe.lastAllocated >= 0) {
+               allocationRate[i] = (long) ((allocated - probe.lastAllocated) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed);
+            }
+            probe.lastAllocated = allocated;
+         }
+      }
+      long gcTime = gcTime();
+      AgentMetrics metrics = new AgentMetrics(lastSampleMillis, nowMillis, maxPendingTasks, meanLag, maxLag, busyRatio,
+            allocationRate, gcTime - lastGcTime, TimeUnit.MILLISECONDS.toMicros(maxArrivalLag.getAndSet(0)));
+      lastSampleNanos = nowNanos;
+      lastSampleMillis = nowMillis;
+      lastGcTime = gcTime;
+      return metrics;
+   }
+
+   private long gcTime() {
+      long total = 0;
+      for (GarbageCollectorMXBean gc : garbageCollectors) {
+         long time = gc.getCollectionTime();
+         if (time > 0) {
+            total += time;
+         }
+      }
+      return total;
+   }
+
+   private class Probe implements Runnable {
+      final EventExecutor executor;
+      final AtomicLong maxLag = new AtomicLong();
+      final AtomicLong lagSum = new AtomicLong();
+      final AtomicInteger count = new AtomicInteger();
+      final AtomicInteger maxPendingTasks = new AtomicInteger();
+      volatile long threadId = -1;
+      long expected = -1;
+      // accessed only from sample()
+      long lastCpuTime = -1;
+      long lastAllocated = -1;
+
+      Probe(EventExecutor executor) {
+         this.executor = executor;
+      }
+
+      @Override
+      public void run() {
+         long now = System.nanoTime();
+         if (expected < 0) {
+            threadId = Thread.currentThread().getId();
+         } else {
+            long lag = Math.max(0, now - expected);
+            maxLag.accumulateAndGet(lag, Math::max);
+            lagSum.addAndGet(lag);
+            count.incrementAndGet();
+         }
+         if (executor instanceof SingleThreadEventExecutor) {
+            maxPendingTasks.accumulateAndGet(((SingleThreadEventExecutor) executor).pendingTasks(), Math::max);
+         }
+         if (running) {
+            expected = now + PROBE_PERIOD_NANOS;
+            executor.schedule(this, PROBE_PERIOD_NANOS, TimeUnit.NANOSECONDS);
+         } else {
+            expected = -1;
+         }
+      }
+   }
+}
@@ -0,0 +1,131 @@
+package io.hyperfoil.core.impl;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import io.hyperfoil.api.config.Benchmark;
+
+/**
+ * Data files of the {@link Benchmark} kept on disk. The content of a file is read only when its value is requested,
+ * therefore benchmarks referencing big files do not hold them in heap; code that only copies the files around
+ * should use {@link #path(String)} instead.
+ * <p>
+ * When serialized (e.g. sending the benchmark to another node) the content is loaded and the map is deserialized
+ * as a plain in-memory map.
+ */
+public class DataFileMap extends AbstractMap<String, byte[]> implements Serializable {
+   // Replaced as a whole when the files are relocated
+   private transient volatile Map<String, Path> paths;
+   private transient Map<String, byte[]> content;
+
+   public DataFileMap(Map<String, Path> paths) {
+      this.paths = paths;
+   }
+
+   /**
+    * @param name Name of the file as referenced from the benchmark.
+    * @return Location of the file or <code>null</code> if the file is not known.
+    */
+   public Path path(String name) {
+      return paths.get(name);
+   }
+
+   /**
+    * Points the entries to other copies of the files, e.g. when the original files are temporary.
+    *
+    * @param relocated New locations of the files, by name.
+    */
+   public void relocate(Map<String, Path> relocated) {
+      Map<String, Path> copy = new HashMap<>(paths);
+      copy.putAll(relocated);
+      paths = copy;
+   }
+
+   @Override
+   public int size() {
+      return paths.size();
+   }
+
+   @Override
+   public boolean containsKey(Object key) {
+      return paths.containsKey(key);
+   }
+
+   @Override
+   public byte[] get(Object key) {
+      Path path = paths.get(key);
+      return path == null ? null : read(path);
+   }
+
+   @Override
+   public Set<String> keySet() {
+      return Collections.unmodifiableSet(paths.keySet());
+   }
+
+   @Override
+   public Set<Entry<String, byte[]>> entrySet() {
+      return new AbstractSet<Entry<String, byte[]>>() {
+         @Override
+         public Iterator<Entry<String, byte[]>> iterator() {
+            Iterator<Entry<String, Path>> it = paths.entrySet().iterator();
+            return new Iterator<Entry<String, byte[]>>() {
+               @Override
+               public boolean hasNext() {
+                  return it.hasNext();
+               }
+
+               @Override
+               public Entry<String, byte[]> next() {
+                  // Files are loaded one by one as the iteration proceeds
+                  Entry<String, Path> entry = it.next();
+                  return new SimpleImmutableEntry<>(entry.getKey(), read(entry.getValue()));
+               }
+            };
+         }
+
+         @Override
+         public int size() {
+            return paths.size();
+         }
+      };
+   }
+
+   private static byte[] read(Path path) {
+      try {
+         return Files.readAllBytes(path);
+      } catch (IOException e) {
+         throw new UncheckedIOException("Cannot read data file " + path, e);
+      }
+   }
+
+   private void writeObject(ObjectOutputStream out) throws IOException {
+      out.defaultWriteObject();
+      try {
+         out.writeObject(new HashMap<>(this));
+      } catch (UncheckedIOException e) {
+         throw e.getCause();
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+      in.defaultReadObject();
+      content = (Map<String, byte[]>) in.readObject();
+   }
+
+   private Object readResolve() {
+      return content;
+   }
+}
@@ -2,9 +2,8 @@ package io.hyperfoil.core.impl;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
@@ -15,18 +14,15 @@ import io.vertx.core.logging.LoggerFactory;
 
 public class LocalBenchmarkData implements BenchmarkData {
    private static final Logger log = LoggerFactory.getLogger(LocalBenchmarkData.class);
-   private Map<String, byte[]> readFiles = new HashMap<>();
+   // Only the location is recorded, the content is streamed when the benchmark is uploaded
+   private final Map<String, Path> readFiles = new HashMap<>();
 
    @Override
    public InputStream readFile(String file) {
       try {
-         readFiles.put(file, Files.readAllBytes(Paths.get(file)));
-      } catch (IOException e) {
-         log.error("Local file {} cannot be read.", e, file);
-         return null;
-      }
-      try {
-         return new FileInputStream(file);
+         InputStream stream = new FileInputStream(file);
+         readFiles.put(file, Paths.get(file));
+         return stream;
       } catch (FileNotFoundException e) {
          log.error("Local file {} not found.", e, file);
          return null;
@@ -35,6 +31,6 @@ public class LocalBenchmarkData implements BenchmarkData {
 
    @Override
    public Map<String, byte[]> files() {
-      return readFiles;
+      return new DataFileMap(readFiles);
    }
 }
@@ -24,7 +24,7 @@ public abstract class PhaseInstanceImpl<D extends Phase> implements PhaseInstanc
    protected static final Logger log = LoggerFactory.getLogger(PhaseInstanceImpl.class);
    protected static final boolean trace = log.isTraceEnabled();
 
-   private static Map<Class<? extends Phase>, Function<? extends Phase, PhaseInstance>> constructors = new HashMap<>();
+   private static Map<Class<? extends Phase>, Function<? extends Phase, PhaseInstanceImpl<?>>> constructors = new HashMap<>();
 
    protected D def;
    protected ElasticPool<Session> sessionPool;
@@ -36,21 +36,29 @@ public abstract class PhaseInstanceImpl<D extends Phase> implements PhaseInstanc
    protected AtomicInteger activeSessions = new AtomicInteger(0);
    private volatile Throwable error;
    private volatile boolean sessionLimitExceeded;
+   protected AgentMonitor monitor;
+   protected volatile double rateFactor = 1;
 
    public static PhaseInstance newInstance(Phase def) {
+      return newInstance(def, null);
+   }
+
+   public static PhaseInstance newInstance(Phase def, AgentMonitor monitor) {
       @SuppressWarnings("unchecked")
-      Function<Phase, PhaseInstance> ctor = (Function<Phase, PhaseInstance>) constructors.get(def.getClass());
+      Function<Phase, PhaseInstanceImpl<?>> ctor = (Function<Phase, PhaseInstanceImpl<?>>) constructors.get(def.getClass());
       if (ctor == null) throw new BenchmarkDefinitionException("Unknown phase type: " + def);
-      return ctor.apply(def);
+      PhaseInstanceImpl<?> instance = ctor.apply(def);
+      instance.monitor = monitor;
+      return instance;
    }
 
    static {
-      constructors.put(Phase.AtOnce.class, (Function<Phase.AtOnce, PhaseInstance>) AtOnce::new);
-      constructors.put(Phase.Always.class, (Function<Phase.Always, PhaseInstance>) Always::new);
-      constructors.put(Phase.RampPerSec.class, (Function<Phase.RampPerSec, PhaseInstance>) RampPerSec::new);
-      constructors.put(Phase.ConstantPerSec.class, (Function<Phase.ConstantPerSec, PhaseInstance>) ConstantPerSec::new);
-      constructors.put(Phase.Sequentially.class, (Function<Phase.Sequentially, PhaseInstance>) Sequentially::new);
-      constructors.put(Phase.Noop.class, (Function<Phase.Noop, PhaseInstance>) Noop::new);
+      constructors.put(Phase.AtOnce.class, (Function<Phase.AtOnce, PhaseInstanceImpl<?>>) AtOnce::new);
+      constructors.put(Phase.Always.class, (Function<Phase.Always, PhaseInstanceImpl<?>>) Always::new);
+      constructors.put(Phase.RampPerSec.class, (Function<Phase.RampPerSec, PhaseInstanceImpl<?>>) RampPerSec::new);
+      constructors.put(Phase.ConstantPerSec.class, (Function<Phase.ConstantPerSec, PhaseInstanceImpl<?>>) ConstantPerSec::new);
+      constructors.put(Phase.Sequentially.class, (Function<Phase.Sequentially, PhaseInstanceImpl<?>>) Sequentially::new);
+      constructors.put(Phase.Noop.class, (Function<Phase.Noop, PhaseInstanceImpl<?>>) Noop::new);
    }
 
    protected PhaseInstanceImpl(D def) {
@@ -74,14 +82,24 @@ public abstract class PhaseInstanceImpl<D extends Phase> implements PhaseInstanc
 
    @Override
    public void start(EventExecutorGroup executorGroup) {
+      start(executorGroup, System.currentTimeMillis());
+   }
+
+   @Override
+   public void start(EventExecutorGroup executorGroup, long startTime) {
       assert status == Status.NOT_STARTED : "Status is " + status;
       status = Status.RUNNING;
-      absoluteStartTime = System.currentTimeMillis();
+      absoluteStartTime = startTime;
       log.debug("{} changing status to RUNNING", def.name);
       phaseChangeHandler.onChange(def, Status.RUNNING, false, error);
       proceed(executorGroup);
    }
 
+   @Override
+   public void setRateFactor(double rateFactor) {
+      this.rateFactor = rateFactor;
+   }
+
    @Override
    public void finish() {
       assert status == Status.RUNNING : "Status is " + status;
@@ -252,14 +270,30 @@ public abstract class PhaseInstanceImpl<D extends Phase> implements PhaseInstanc
 
    protected abstract static class OpenModelPhase<P extends Phase.OpenModelPhase> extends PhaseInstanceImpl<P> {
       protected final Random random = new Random();
+      // Rate factor used by the schedule; must be initialized before the first nextSessionRandomized()
+      protected double appliedRateFactor = 1;
       protected double nextScheduled = nextSessionRandomized();
       protected AtomicLong throttledUsers = new AtomicLong(0);
       protected long startedOrThrottledUsers = 0;
+      protected long plannedDelta = -1;
+      // The metronome schedule continues from this point with the applied rate factor
+      protected long rebaseDelta = 0;
+      protected long rebaseUsers = 0;
 
       protected OpenModelPhase(P def) {
          super(def);
       }
 
+      @Override
+      public void start(EventExecutorGroup executorGroup, long startTime) {
+         long delta = System.currentTimeMillis() - startTime;
+         if (delta > 0) {
+            // Joining a running phase: we don't catch up with users started by other agents
+            rebase(delta);
+         }
+         super.start(executorGroup, startTime);
+      }
+
       @Override
       public void proceed(EventExecutorGroup executorGroup) {
          if (status.isFinished()) {
@@ -268,6 +302,12 @@ public abstract class PhaseInstanceImpl<D extends Phase> implements PhaseInstanc
          long now = System.currentTimeMillis();
          long delta = now - absoluteStartTime;
          long nextDelta;
+         if (monitor != null && plannedDelta >= 0) {
+            monitor.recordArrivalLag(delta - plannedDelta);
+         }
+         if (appliedRateFactor != rateFactor) {
+            rebase(delta);
+         }
 
          if (def.variance) {
             while (delta > nextScheduled) {
@@ -295,9 +335,24 @@ public abstract class PhaseInstanceImpl<D extends Phase> implements PhaseInstanc
             log.trace("{}: {} after start, {} started ({} throttled), next user in {} ms", def.name, delta,
                   startedOrThrottledUsers, throttledUsers.get(), nextDelta - delta);
          }
+         plannedDelta = Math.max(nextDelta, delta);
          executorGroup.schedule(() -> proceed(executorGroup), nextDelta - delta, TimeUnit.MILLISECONDS);
       }
 
+      /**
+       * Restarts the schedule at given point, using current rate factor for the rest of the phase.
+       */
+      void rebase(long delta) {
+         rebaseDelta = delta;
+         rebaseUsers = startedOrThrottledUsers;
+         appliedRateFactor = rateFactor;
+         if (def.variance) {
+            // Arrivals are memoryless so we can just draw the next one with the new rate
+            nextScheduled = delta;
+            nextScheduled = nextSessionRandomized();
+         }
+      }
+
       protected abstract long nextSessionMetronome(long delta);
 
       protected abstract double nextSessionRandomized();
@@ -336,22 +391,33 @@ public abstract class PhaseInstanceImpl<D extends Phase> implements PhaseInstanc
       @Override
       protected long nextSessionMetronome(long delta) {
          double progress = (def.targetUsersPerSec - def.initialUsersPerSec) / (def.duration * 1000);
-         long required = (long) (((progress * (delta + 1)) / 2 + def.initialUsersPerSec / 1000) * delta);
+         double rebaseBase = usersAt(progress, rebaseDelta);
+         long required = rebaseUsers + (long) (appliedRateFactor * (usersAt(progress, delta) - rebaseBase));
          // Next time is the root of quadratic equation
          double bCoef = progress + def.initialUsersPerSec / 500;
-         nextScheduled = Math.ceil((-bCoef + Math.sqrt(bCoef * bCoef + 8 * progress * (startedOrThrottledUsers + 1))) / (2 * progress));
+         double nextUsers = rebaseBase + (startedOrThrottledUsers + 1 - rebaseUsers) / appliedRateFactor;
+         nextScheduled = Math.ceil((-bCoef + Math.sqrt(bCoef * bCoef + 8 * progress * nextUsers)) / (2 * progress));
          return required;
       }
 
+      /**
+       * @return Number of users started since the beginning of the phase with original rate.
+       */
+      private double usersAt(double progress, long delta) {
+         return ((progress * (delta + 1)) / 2 + def.initialUsersPerSec / 1000) * delta;
+      }
+
       @Override
       protected double nextSessionRandomized() {
+         double initialUsersPerSec = def.initialUsersPerSec * appliedRateFactor;
+         double targetUsersPerSec = def.targetUsersPerSec * appliedRateFactor;
          // we're solving quadratic equation coming from t = (duration * -log(rand))/(((t + now) * (target - initial)) + initial * duration)
-         double aCoef = (def.targetUsersPerSec - def.initialUsersPerSec);
+         double aCoef = (targetUsersPerSec - initialUsersPerSec);
          if (aCoef < 0.000001) {
             // prevent division 0f/0f
-            return 1000 * -Math.log(Math.max(1e-20, random.nextDouble())) / def.initialUsersPerSec;
+            return 1000 * -Math.log(Math.max(1e-20, random.nextDouble())) / initialUsersPerSec;
          }
-         double bCoef = nextScheduled * (def.targetUsersPerSec - def.initialUsersPerSec) + def.initialUsersPerSec * def.duration;
+         double bCoef = nextScheduled * (targetUsersPerSec - initialUsersPerSec) + initialUsersPerSec * def.duration;
          double cCoef = def.duration * 1000 * Math.log(random.nextDouble());
          return nextScheduled + (-bCoef + Math.sqrt(bCoef * bCoef - 4 * aCoef * cCoef)) / (2 * aCoef);
       }
@@ -365,14 +431,15 @@ public abstract class PhaseInstanceImpl<D extends Phase> implements PhaseInstanc
 
       @Override
       protected long nextSessionMetronome(long delta) {
-         long required = (long) (delta * def.usersPerSec / 1000);
-         nextScheduled = (1000 * (startedOrThrottledUsers + 1) + def.usersPerSec) / def.usersPerSec;
+         double usersPerSec = def.usersPerSec * appliedRateFactor;
+         long required = rebaseUsers + (long) ((delta - rebaseDelta) * usersPerSec / 1000);
+         nextScheduled = rebaseDelta + (1000 * (startedOrThrottledUsers + 1 - rebaseUsers) + usersPerSec) / usersPerSec;
          return required;
       }
 
       @Override
       protected double nextSessionRandomized() {
-         return nextScheduled + (1000 * -Math.log(Math.max(1e-20, random.nextDouble())) / def.usersPerSec);
+         return nextScheduled + (1000 * -Math.log(Math.max(1e-20, random.nextDouble())) / (def.usersPerSec * appliedRateFactor));
       }
    }
 
@@ -7,8 +7,10 @@ import io.hyperfoil.api.statistics.SessionStatistics;
 import io.hyperfoil.core.client.netty.HttpDestinationTableImpl;
 import io.hyperfoil.core.client.netty.PrivateConnectionPool;
 import io.hyperfoil.core.session.SharedDataImpl;
+import io.hyperfoil.core.util.OpenMetrics;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
 import io.hyperfoil.api.config.Http;
 import io.hyperfoil.api.config.Phase;
 import io.hyperfoil.api.connection.HttpClientPool;
@@ -60,6 +62,7 @@ public class SimulationRunnerImpl implements SimulationRunner {
    protected final EventExecutor[] executors;
    protected final Map<String, HttpClientPool> httpClientPools = new HashMap<>();
    protected final HttpDestinationTableImpl[] httpDestinations;
+   protected final AgentMonitor monitor;
    private final Queue<Phase> toPrune;
    private PhaseChangeHandler phaseChangeHandler;
    private boolean isDepletedMessageQuietened;
@@ -71,6 +74,7 @@ public class SimulationRunnerImpl implements SimulationRunner {
       this.agentId = agentId;
       this.httpDestinations = new HttpDestinationTableImpl[executors.length];
       this.toPrune = new ArrayBlockingQueue<>(benchmark.phases().size());
+      this.monitor = new AgentMonitor(executors);
       @SuppressWarnings("unchecked")
       Map<String, HttpConnectionPool>[] httpConnectionPools = new Map[executors.length];
       for (Map.Entry<String, Http> http : benchmark.http().entrySet()) {
@@ -163,13 +167,15 @@ public class SimulationRunnerImpl implements SimulationRunner {
             });
             this.sharedResources.put(def.sharedResources, sharedResources);
          }
-         PhaseInstance phase = PhaseInstanceImpl.newInstance(def);
+         PhaseInstance phase = PhaseInstanceImpl.newInstance(def, monitor);
          instances.put(def.name(), phase);
          phase.setComponents(sharedResources.sessionPool, sharedResources.sessions, this::phaseChanged);
          phase.reserveSessions();
          // at this point all session resources should be reserved
       }
 
+      monitor.start();
+
       CompositeFuture composite = CompositeFuture.join(futures);
       composite.setHandler(result -> {
          if (result.failed()) {
@@ -214,6 +220,7 @@ public class SimulationRunnerImpl implements SimulationRunner {
 
    @Override
    public void shutdown() {
+      monitor.stop();
       for (HttpClientPool pool : httpClientPools.values()) {
          pool.shutdown();
       }
@@ -228,6 +235,17 @@ public class SimulationRunnerImpl implements SimulationRunner {
       }
    }
 
+   @Override
+   public int visitSessions(int from, int max, Consumer<Session> consumer) {
+      synchronized (sessions) {
+         int end = Math.min(sessions.size(), from + max);
+         for (int i = from; i < end; ++i) {
+            consumer.accept(sessions.get(i));
+         }
+         return end < sessions.size() ? end : -1;
+      }
+   }
+
    // This method should be invoked only from vert.x eventpool thread
    public void visitStatistics(Consumer<SessionStatistics> consumer) {
       for (SharedResources sharedResources : this.sharedResources.values()) {
@@ -292,24 +310,78 @@ public class SimulationRunnerImpl implements SimulationRunner {
       }
    }
 
+   /**
+    * @return Load generator health since the previous invocation.
+    */
+   public AgentMetrics agentMetrics() {
+      return monitor.sample();
+   }
+
    @Override
    public void startPhase(String phase) {
+      startPhase(phase, System.currentTimeMillis());
+   }
+
+   /**
+    * @param phase Name of the phase.
+    * @param startTime Scheduled start of the phase; statistics samples are aligned to this timestamp
+    *                  rather than to the moment the phase was actually started.
+    */
+   public void startPhase(String phase, long startTime) {
       PhaseInstance phaseInstance = instances.get(phase);
       SharedResources sharedResources = this.sharedResources.get(phaseInstance.definition().sharedResources);
       if (sharedResources != null) {
          // Avoid NPE in noop phases
          sharedResources.currentPhase = phaseInstance;
          if (sharedResources.statistics != null) {
-            long now = System.currentTimeMillis();
+            // No request can be recorded before the statistics start
+            long start = Math.min(startTime, System.currentTimeMillis());
             for (int i = 0; i < executors.length; ++i) {
                SessionStatistics statistics = sharedResources.statistics[i];
-               executors[i].execute(() -> applyToPhase(statistics, phaseInstance.definition(), now, Statistics::start));
+               executors[i].execute(() -> applyToPhase(statistics, phaseInstance.definition(), start, Statistics::start));
             }
          }
       }
       phaseInstance.start(eventLoopGroup);
    }
 
+   /**
+    * Starts a phase that is already running on other agents.
+    *
+    * @param phase Name of the phase.
+    * @param startTime Time when the phase was started on other agents; the schedule of open-model phases
+    *                  and statistics samples continue from this point.
+    */
+   public void joinPhase(String phase, long startTime) {
+      PhaseInstance phaseInstance = instances.get(phase);
+      SharedResources sharedResources = this.sharedResources.get(phaseInstance.definition().sharedResources);
+      if (sharedResources != null) {
+         sharedResources.currentPhase = phaseInstance;
+         if (sharedResources.statistics != null) {
+            for (int i = 0; i < executors.length; ++i) {
+               SessionStatistics statistics = sharedResources.statistics[i];
+               executors[i].execute(() -> applyToPhase(statistics, phaseInstance.definition(), startTime, Statistics::start));
+            }
+         }
+      }
+      phaseInstance.start(eventLoopGroup, startTime);
+   }
+
+   /**
+    * Scales arrival rate of open-model phases that have not started yet and of the listed running phases.
+    * Other running phases are not executed on all agents and keep their rate.
+    *
+    * @param rateFactor Multiplier of the rate in phase definitions.
+    * @param phases Running phases that should be scaled.
+    */
+   public void setRateFactor(double rateFactor, Collection<String> phases) {
+      for (PhaseInstance instance : instances.values()) {
+         if (instance.status() == PhaseInstance.Status.NOT_STARTED || phases.contains(instance.definition().name())) {
+            instance.setRateFactor(rateFactor);
+         }
+      }
+   }
+
    private void applyToPhase(SessionStatistics statistics, Phase phase, long now, BiConsumer<Statistics, Long> f) {
       for (int j = 0; j < statistics.size(); ++j) {
          if (statistics.phase(j) == phase) {
@@ -362,6 +434,50 @@ public class SimulationRunnerImpl implements SimulationRunner {
       return list;
    }
 
+   /**
+    * Appends agent internals (event loops and connection pools) in OpenMetrics format, without the EOF marker.
+    *
+    * @param sb Output.
+    */
+   public void writeOpenMetrics(StringBuilder sb) {
+      OpenMetrics.family(sb, "hyperfoil_agent_event_loop_pending_tasks", "gauge", "Tasks waiting in the event loop queue.");
+      for (int i = 0; i < executors.length; ++i) {
+         if (executors[i] instanceof SingleThreadEventExecutor) {
+            OpenMetrics.sample(sb, "hyperfoil_agent_event_loop_pending_tasks", OpenMetrics.label("executor", i),
+                  ((SingleThreadEventExecutor) executors[i]).pendingTasks());
+         }
+      }
+      StringBuilder available = OpenMetrics.family(new StringBuilder(), "hyperfoil_agent_connections_available", "gauge", "Connections available for new requests.");
+      StringBuilder inFlight = OpenMetrics.family(new StringBuilder(), "hyperfoil_agent_requests_in_flight", "gauge", "Requests waiting for response.");
+      StringBuilder waiting = OpenMetrics.family(new StringBuilder(), "hyperfoil_agent_waiting_sessions", "gauge", "Sessions waiting for a connection (estimate).");
+      OpenMetrics.family(sb, "hyperfoil_agent_connections", "gauge", "Open connections.");
+      // Connection pools should be accessed only from the executor, but since we're only publishing stats...
+      for (int i = 0; i < httpDestinations.length; ++i) {
+         for (Map.Entry<String, HttpConnectionPool> entry : httpDestinations[i].iterable()) {
+            if (entry.getKey() == null) {
+               // Ignore default pool: it's there twice
+               continue;
+            }
+            String labels = OpenMetrics.label("authority", entry.getKey()) + "," + OpenMetrics.label("executor", i);
+            HttpConnectionPool pool = entry.getValue();
+            Collection<? extends HttpConnection> connections = pool.connections();
+            int availableConnections = 0;
+            int inFlightRequests = 0;
+            for (HttpConnection conn : connections) {
+               if (conn.isAvailable()) {
+                  availableConnections++;
+               }
+               inFlightRequests += conn.inFlight();
+            }
+            OpenMetrics.sample(sb, "hyperfoil_agent_connections", labels, connections.size());
+            OpenMetrics.sample(available, "hyperfoil_agent_connections_available", labels, availableConnections);
+            OpenMetrics.sample(inFlight, "hyperfoil_agent_requests_in_flight", labels, inFlightRequests);
+            OpenMetrics.sample(waiting, "hyperfoil_agent_waiting_sessions", labels, pool.waitingSessions());
+         }
+      }
+      sb.append(available).append(inFlight).append(waiting);
+   }
+
    private static class SharedResources {
       static final SharedResources NONE = new SharedResources(0);
 
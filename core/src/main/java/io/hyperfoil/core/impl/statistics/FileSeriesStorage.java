@@ -0,0 +1,214 @@
+package io.hyperfoil.core.impl.statistics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.hyperfoil.api.statistics.StatisticsSummary;
+
+/**
+ * Appends the summaries into files, one file per series. Records have fixed size and are written
+ * in batches using positional I/O; the series on heap holds only the batch of records not written yet
+ * (released when the series is {@link Series#release() released}). Files are open only during the write
+ * or read of a batch, so the number of series is not limited by file handles or memory mappings.
+ */
+public class FileSeriesStorage implements SeriesStorage {
+   private static final int WRITE_BATCH_RECORDS = 64;
+   private static final int READ_BATCH_RECORDS = 256;
+   private static final int LONG_FIELDS = 7;
+   private static final int INT_FIELDS = 13;
+
+   private final Path dir;
+   private final AtomicInteger counter = new AtomicInteger();
+
+   public FileSeriesStorage(Path dir) {
+      this.dir = dir;
+   }
+
+   @Override
+   public Series newSeries(String name, double[] percentiles) {
+      try {
+         Files.createDirectories(dir);
+      } catch (IOException e) {
+         throw new IllegalStateException("Cannot create directory " + dir, e);
+      }
+      String fileName = counter.getAndIncrement() + "." + name.replaceAll("[^a-zA-Z0-9_.-]", "_") + ".series";
+      return new FileSeries(dir.resolve(fileName), percentiles);
+   }
+
+   private static final class FileSeries implements Series {
+      private final Path file;
+      private final double[] percentiles;
+      private final int recordSize;
+      private ByteBuffer pending;
+      private int written;
+      private int size;
+
+      private FileSeries(Path file, double[] percentiles) {
+         this.file = file;
+         this.percentiles = percentiles;
+         this.recordSize = 8 * LONG_FIELDS + 4 * INT_FIELDS + 8 * percentiles.length;
+      }
+
+      @Override
+      public void add(StatisticsSummary summary) {
+         if (pending == null) {
+            pending = ByteBuffer.allocate(recordSize * WRITE_BATCH_RECORDS);
+         }
+         write(pending, pending.position(), summary);
+         pending.position(pending.position() + recordSize);
+         ++size;
+         if (!pending.hasRemaining()) {
+            flush();
+         }
+      }
+
+      @Override
+      public void release() {
+         flush();
+         pending = null;
+      }
+
+      private void flush() {
+         if (pending == null || pending.position() == 0) {
+            return;
+         }
+         pending.flip();
+         try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long position = (long) written * recordSize;
+            while (pending.hasRemaining()) {
+               position += channel.write(pending, position);
+            }
+         } catch (IOException e) {
+            throw new IllegalStateException("Cannot write records " + written + " - " + size + " to " + file, e);
+         }
+         written = size;
+         pending.clear();
+      }
+
+      private void write(ByteBuffer buffer, int offset, StatisticsSummary summary) {
+         buffer.putLong(offset, summary.startTime);
+         buffer.putLong(offset + 8, summary.endTime);
+         buffer.putLong(offset + 16, summary.minResponseTime);
+         buffer.putLong(offset + 24, summary.meanResponseTime);
+         buffer.putLong(offset + 32, summary.maxResponseTime);
+         buffer.putLong(offset + 40, summary.meanSendTime);
+         buffer.putLong(offset + 48, summary.blockedTime);
+         offset += 8 * LONG_FIELDS;
+         buffer.putInt(offset, summary.connectFailureCount);
+         buffer.putInt(offset + 4, summary.requestCount);
+         buffer.putInt(offset + 8, summary.responseCount);
+         buffer.putInt(offset + 12, summary.status_2xx);
+         buffer.putInt(offset + 16, summary.status_3xx);
+         buffer.putInt(offset + 20, summary.status_4xx);
+         buffer.putInt(offset + 24, summary.status_5xx);
+         buffer.putInt(offset + 28, summary.status_other);
+         buffer.putInt(offset + 32, summary.invalid);
+         buffer.putInt(offset + 36, summary.cacheHits);
+         buffer.putInt(offset + 40, summary.resetCount);
+         buffer.putInt(offset + 44, summary.timeouts);
+         buffer.putInt(offset + 48, summary.blockedCount);
+         offset += 4 * INT_FIELDS;
+         for (double p : percentiles) {
+            Long value = summary.percentileResponseTime.get(p * 100);
+            buffer.putLong(offset, value == null ? 0 : value);
+            offset += 8;
+         }
+      }
+
+      private StatisticsSummary read(ByteBuffer buffer, int offset) {
+         long startTime = buffer.getLong(offset);
+         long endTime = buffer.getLong(offset + 8);
+         long minResponseTime = buffer.getLong(offset + 16);
+         long meanResponseTime = buffer.getLong(offset + 24);
+         long maxResponseTime = buffer.getLong(offset + 32);
+         long meanSendTime = buffer.getLong(offset + 40);
+         long blockedTime = buffer.getLong(offset + 48);
+         int ints = offset + 8 * LONG_FIELDS;
+         TreeMap<Double, Long> percentileResponseTime = new TreeMap<>();
+         int percentileOffset = ints + 4 * INT_FIELDS;
+         for (double p : percentiles) {
+            percentileResponseTime.put(p * 100, buffer.getLong(percentileOffset));
+            percentileOffset += 8;
+         }
+         return new StatisticsSummary(startTime, endTime, minResponseTime, meanResponseTime, maxResponseTime, meanSendTime,
+               percentileResponseTime, buffer.getInt(ints), buffer.getInt(ints + 4), buffer.getInt(ints + 8),
+               buffer.getInt(ints + 12), buffer.getInt(ints + 16), buffer.getInt(ints + 20), buffer.getInt(ints + 24),
+               buffer.getInt(ints + 28), buffer.getInt(ints + 32), buffer.getInt(ints + 36), buffer.getInt(ints + 40),
+               buffer.getInt(ints + 44), buffer.getInt(ints + 48), blockedTime);
+      }
+
+      private ByteBuffer readBatch(int index, int limit) {
+         int records = Math.min(READ_BATCH_RECORDS, limit - index);
+         ByteBuffer buffer = ByteBuffer.allocate(records * recordSize);
+         try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = (long) index * recordSize;
+            while (buffer.hasRemaining()) {
+               int read = channel.read(buffer, position);
+               if (read < 0) {
+                  throw new IllegalStateException("Unexpected end of " + file + " reading record " + index);
+               }
+               position += read;
+            }
+         } catch (IOException e) {
+            throw new IllegalStateException("Cannot read records from " + file, e);
+         }
+         return buffer;
+      }
+
+      @Override
+      public int size() {
+         return size;
+      }
+
+      @Override
+      public Iterator<StatisticsSummary> iterator() {
+         // Records already in the file are not modified; the rest is copied so that later adds don't affect the iterator
+         int writtenLimit = written;
+         int limit = size;
+         ByteBuffer pendingCopy = pending == null ? null : ByteBuffer.wrap(Arrays.copyOf(pending.array(), pending.position()));
+         return new Iterator<StatisticsSummary>() {
+            int index;
+            ByteBuffer batch;
+            int batchStart;
+
+            @Override
+            public boolean hasNext() {
+               return index < limit;
+            }
+
+            @Override
+            public StatisticsSummary next() {
+               if (index >= limit) {
+                  throw new NoSuchElementException();
+               }
+               StatisticsSummary summary;
+               if (index >= writtenLimit) {
+                  summary = read(pendingCopy, (index - writtenLimit) * recordSize);
+               } else {
+                  if (batch == null || index >= batchStart + batch.capacity() / recordSize) {
+                     batchStart = index;
+                     batch = readBatch(index, writtenLimit);
+                  }
+                  summary = read(batch, (index - batchStart) * recordSize);
+               }
+               ++index;
+               return summary;
+            }
+         };
+      }
+
+      @Override
+      public String toString() {
+         return file + " (" + size + " records)";
+      }
+   }
+}
@@ -0,0 +1,101 @@
+package io.hyperfoil.core.impl.statistics;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.HdrHistogram.EncodableHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.HdrHistogram.HistogramLogWriter;
+
+/**
+ * Streams merged per-interval response time histograms of all metrics into a single
+ * <a href="http://hdrhistogram.org/">HdrHistogram</a> interval log that can be processed with the standard tools
+ * (e.g. <code>HistogramLogProcessor -tag ...</code>). Each interval is tagged with the metric key
+ * (<code>phase.metric.stepId</code>) and stored compressed; summing all intervals with the same tag reproduces
+ * the total histogram of that metric. Values are in nanoseconds, interval timestamps are absolute (seconds since epoch).
+ */
+public class HistogramLog implements Closeable {
+   public static final String FILE_NAME = "histograms.hlog";
+
+   private final Path file;
+   private final PrintStream stream;
+   private final HistogramLogWriter writer;
+   private boolean started;
+
+   public HistogramLog(Path file) throws IOException {
+      this.file = file;
+      this.stream = new PrintStream(new BufferedOutputStream(Files.newOutputStream(file)), false, "UTF-8");
+      this.writer = new HistogramLogWriter(stream);
+      writer.outputLogFormatVersion();
+   }
+
+   /**
+    * @param tag Metric identification; characters that would break the log format are replaced.
+    * @param histogram Interval histogram with start and end timestamps set.
+    */
+   public synchronized void write(String tag, Histogram histogram) {
+      if (!started) {
+         writer.outputStartTime(histogram.getStartTimeStamp());
+         writer.outputLegend();
+         started = true;
+      }
+      String originalTag = histogram.getTag();
+      histogram.setTag(tag.replaceAll("[\\s,]", "_"));
+      try {
+         // Max value is written in milliseconds
+         writer.outputIntervalHistogram(histogram);
+      } finally {
+         histogram.setTag(originalTag);
+      }
+   }
+
+   public synchronized void flush() throws IOException {
+      // checkError() flushes the stream
+      if (stream.checkError()) {
+         throw new IOException("Failed to write " + file);
+      }
+   }
+
+   @Override
+   public synchronized void close() throws IOException {
+      boolean failed = stream.checkError();
+      stream.close();
+      if (failed) {
+         throw new IOException("Failed to write " + file);
+      }
+   }
+
+   /**
+    * @param file Log written by this class.
+    * @return Interval histograms in the order of the log, grouped by tag (metric).
+    * @throws IOException When the file cannot be read.
+    */
+   public static Map<String, List<Histogram>> read(Path file) throws IOException {
+      Map<String, List<Histogram>> intervals = new HashMap<>();
+      HistogramLogReader reader = new HistogramLogReader(file.toFile());
+      try {
+         for (EncodableHistogram h = reader.nextIntervalHistogram(); h != null; h = reader.nextIntervalHistogram()) {
+            if (h instanceof Histogram) {
+               intervals.computeIfAbsent(h.getTag() == null ? "" : h.getTag(), tag -> new ArrayList<>()).add((Histogram) h);
+            }
+         }
+      } finally {
+         reader.close();
+      }
+      return intervals;
+   }
+
+   @Override
+   public String toString() {
+      return file.toString();
+   }
+}
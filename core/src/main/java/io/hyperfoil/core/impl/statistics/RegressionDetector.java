@@ -0,0 +1,387 @@
+package io.hyperfoil.core.impl.statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+
+/**
+ * Decides whether response time percentiles of a candidate run regressed compared to a set of baseline runs.
+ * Runs are represented by the per-interval histograms of each metric, as written to the {@link HistogramLog}.
+ * <p>
+ * For each metric and percentile we use two tests:
+ * <ul>
+ * <li>Confidence interval of the relative change of the percentile (computed from full histograms) is estimated
+ * using bootstrap: we resample the baseline runs, then intervals within these runs (blocks of one interval keep
+ * the short-term correlation of response times) and do the same for the candidate.</li>
+ * <li>One-sided Mann-Whitney U test compares the per-interval values of the percentile.</li>
+ * </ul>
+ * The metric is reported as regressed only when the relative change exceeds the threshold, the confidence interval
+ * does not include zero and the Mann-Whitney test is significant; this keeps false alarms on noisy metrics low.
+ * Resampling uses fixed seed; the same input always yields the same verdict.
+ */
+public class RegressionDetector {
+   public static final int MIN_INTERVALS = 5;
+   private static final long SEED = 0x48797065726F696CL;
+
+   private final double threshold;
+   private final double confidence;
+   private final int resamples;
+   private final double[] percentiles;
+
+   /**
+    * @param threshold Relative change of the percentile that is considered significant, e.g. 0.03 for 3%.
+    * @param confidence Confidence level of the tests, e.g. 0.95.
+    * @param resamples Number of bootstrap resamples.
+    * @param percentiles Compared percentiles, in range 0 - 100.
+    */
+   public RegressionDetector(double threshold, double confidence, int resamples, double... percentiles) {
+      if (threshold < 0) {
+         throw new IllegalArgumentException("Threshold must not be negative: " + threshold);
+      } else if (confidence <= 0 || confidence >= 1) {
+         throw new IllegalArgumentException("Confidence must be between 0 and 1: " + confidence);
+      } else if (resamples < 10) {
+         throw new IllegalArgumentException("Use at least 10 resamples: " + resamples);
+      } else if (percentiles.length == 0) {
+         throw new IllegalArgumentException("No percentiles to compare.");
+      }
+      for (double p : percentiles) {
+         if (p <= 0 || p > 100) {
+            throw new IllegalArgumentException("Percentile must be in range (0, 100]: " + p);
+         }
+      }
+      this.threshold = threshold;
+      this.confidence = confidence;
+      this.resamples = resamples;
+      this.percentiles = percentiles.clone();
+      Arrays.sort(this.percentiles);
+   }
+
+   /**
+    * @param baseline Intervals of each metric (keyed by histogram log tag) for each baseline run.
+    * @param candidate Intervals of each metric in the candidate run.
+    * @return Results sorted by metric and percentile.
+    */
+   public List<Result> compare(Collection<Map<String, List<Histogram>>> baseline, Map<String, List<Histogram>> candidate) {
+      TreeSet<String> metrics = new TreeSet<>(candidate.keySet());
+      baseline.forEach(run -> metrics.addAll(run.keySet()));
+      List<Result> results = new ArrayList<>();
+      for (String metric : metrics) {
+         List<List<Histogram>> baselineRuns = new ArrayList<>();
+         for (Map<String, List<Histogram>> run : baseline) {
+            List<Histogram> intervals = run.get(metric);
+            if (intervals != null && !intervals.isEmpty()) {
+               baselineRuns.add(intervals);
+            }
+         }
+         List<Histogram> candidateIntervals = candidate.getOrDefault(metric, Collections.emptyList());
+         compare(metric, baselineRuns, candidateIntervals, results);
+      }
+      return results;
+   }
+
+   private void compare(String metric, List<List<Histogram>> baselineRuns, List<Histogram> candidateIntervals, List<Result> results) {
+      if (baselineRuns.isEmpty() || candidateIntervals.isEmpty()) {
+         for (double p : percentiles) {
+            results.add(new Result(metric, p, Verdict.MISSING, -1, -1, Double.NaN, Double.NaN, Double.NaN, Double.NaN));
+         }
+         return;
+      }
+      Values values = new Values(baselineRuns, candidateIntervals);
+      List<List<Interval>> baseline = new ArrayList<>();
+      for (List<Histogram> run : baselineRuns) {
+         baseline.add(values.intervals(run));
+      }
+      List<List<Interval>> candidate = Collections.singletonList(values.intervals(candidateIntervals));
+      long baselineIntervals = baseline.stream().mapToLong(run -> run.stream().filter(i -> i.total > 0).count()).sum();
+      long candidateNonEmpty = candidate.get(0).stream().filter(i -> i.total > 0).count();
+
+      long[] baselineValues = values.percentiles(all(baseline), percentiles);
+      long[] candidateValues = values.percentiles(all(candidate), percentiles);
+      if (baselineIntervals < MIN_INTERVALS || candidateNonEmpty < MIN_INTERVALS) {
+         for (int i = 0; i < percentiles.length; ++i) {
+            results.add(new Result(metric, percentiles[i], Verdict.INSUFFICIENT_DATA, baselineValues[i], candidateValues[i],
+                  relativeChange(baselineValues[i], candidateValues[i]), Double.NaN, Double.NaN, Double.NaN));
+         }
+         return;
+      }
+
+      SplittableRandom random = new SplittableRandom(SEED ^ metric.hashCode());
+      double[][] changes = new double[percentiles.length][resamples];
+      long[] counts = new long[values.values.length];
+      for (int r = 0; r < resamples; ++r) {
+         long[] b = values.percentiles(resample(baseline, random, counts), percentiles);
+         long[] c = values.percentiles(resample(candidate, random, counts), percentiles);
+         for (int i = 0; i < percentiles.length; ++i) {
+            changes[i][r] = relativeChange(b[i], c[i]);
+         }
+      }
+      double alpha = 1 - confidence;
+      for (int i = 0; i < percentiles.length; ++i) {
+         double[] sorted = changes[i];
+         Arrays.sort(sorted);
+         double low = sorted[(int) Math.floor(alpha / 2 * (resamples - 1))];
+         double high = sorted[(int) Math.ceil((1 - alpha / 2) * (resamples - 1))];
+         double[] baselineSeries = values.series(baseline, percentiles[i]);
+         double[] candidateSeries = values.series(candidate, percentiles[i]);
+         double change = relativeChange(baselineValues[i], candidateValues[i]);
+         Verdict verdict;
+         double pValue;
+         if (change > 0) {
+            pValue = mannWhitneyGreater(baselineSeries, candidateSeries);
+            verdict = change > threshold && low > 0 && pValue < alpha ? Verdict.REGRESSION : Verdict.NO_CHANGE;
+         } else {
+            pValue = mannWhitneyGreater(candidateSeries, baselineSeries);
+            verdict = change < -threshold && high < 0 && pValue < alpha ? Verdict.IMPROVEMENT : Verdict.NO_CHANGE;
+         }
+         results.add(new Result(metric, percentiles[i], verdict, baselineValues[i], candidateValues[i], change, low, high, pValue));
+      }
+   }
+
+   private static double relativeChange(long baseline, long candidate) {
+      if (baseline == candidate) {
+         return 0;
+      }
+      return baseline == 0 ? Double.POSITIVE_INFINITY : (double) (candidate - baseline) / baseline;
+   }
+
+   private static List<Interval> all(List<List<Interval>> runs) {
+      List<Interval> all = new ArrayList<>();
+      runs.forEach(all::addAll);
+      return all;
+   }
+
+   private static long[] resample(List<List<Interval>> runs, SplittableRandom random, long[] counts) {
+      Arrays.fill(counts, 0);
+      for (int r = 0; r < runs.size(); ++r) {
+         List<Interval> run = runs.get(runs.size() == 1 ? 0 : random.nextInt(runs.size()));
+         for (int i = 0; i < run.size(); ++i) {
+            Interval interval = run.get(random.nextInt(run.size()));
+            for (int j = 0; j < interval.indices.length; ++j) {
+               counts[interval.indices[j]] += interval.counts[j];
+            }
+         }
+      }
+      return counts;
+   }
+
+   /**
+    * Probability of observing the ranks (or more extreme) if values in <code>second</code> were not stochastically
+    * greater than values in <code>first</code>; uses normal approximation with tie and continuity correction.
+    */
+   static double mannWhitneyGreater(double[] first, double[] second) {
+      int n1 = first.length;
+      int n2 = second.length;
+      if (n1 == 0 || n2 == 0) {
+         return 1;
+      }
+      int n = n1 + n2;
+      double[] combined = new double[n];
+      System.arraycopy(first, 0, combined, 0, n1);
+      System.arraycopy(second, 0, combined, n1, n2);
+      Integer[] order = new Integer[n];
+      for (int i = 0; i < n; ++i) {
+         order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Double.compare(combined[a], combined[b]));
+      double rankSum = 0;
+      double tieCorrection = 0;
+      for (int i = 0; i < n; ) {
+         int j = i;
+         while (j + 1 < n && combined[order[j + 1]] == combined[order[i]]) {
+            ++j;
+         }
+         double rank = (i + j) / 2.0 + 1;
+         for (int k = i; k <= j; ++k) {
+            if (order[k] >= n1) {
+               rankSum += rank;
+            }
+         }
+         double ties = j - i + 1;
+         tieCorrection += ties * ties * ties - ties;
+         i = j + 1;
+      }
+      double u = rankSum - n2 * (n2 + 1) / 2.0;
+      double mean = (double) n1 * n2 / 2;
+      double variance = (double) n1 * n2 / 12 * ((n + 1) - tieCorrection / ((double) n * (n - 1)));
+      if (variance <= 0) {
+         return 1;
+      }
+      double z = (u - mean - 0.5) / Math.sqrt(variance);
+      return 1 - normalCdf(z);
+   }
+
+   static double normalCdf(double z) {
+      return 0.5 * erfc(-z / Math.sqrt(2));
+   }
+
+   // Chebyshev approximation with fractional error below 1.2e-7
+   private static double erfc(double x) {
+      double z = Math.abs(x);
+      double t = 1 / (1 + 0.5 * z);
+      double r = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+            + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+            + t * (-0.82215223 + t * 0.17087277)))))))));
+      return x >= 0 ? r : 2 - r;
+   }
+
+   public enum Verdict {
+      REGRESSION,
+      IMPROVEMENT,
+      NO_CHANGE,
+      /**
+       * Too few non-empty intervals to draw any conclusions.
+       */
+      INSUFFICIENT_DATA,
+      /**
+       * The metric is missing in baseline or candidate.
+       */
+      MISSING
+   }
+
+   public static class Result {
+      public final String metric;
+      public final double percentile;
+      public final Verdict verdict;
+      /**
+       * Value of the percentile in all baseline runs merged, in nanoseconds.
+       */
+      public final long baseline;
+      /**
+       * Value of the percentile in the candidate run, in nanoseconds.
+       */
+      public final long candidate;
+      public final double change;
+      /**
+       * Lower bound of the confidence interval for the relative change.
+       */
+      public final double changeLow;
+      /**
+       * Upper bound of the confidence interval for the relative change.
+       */
+      public final double changeHigh;
+      /**
+       * P-value of one-sided Mann-Whitney U test on per-interval values, in the direction of the change.
+       */
+      public final double pValue;
+
+      public Result(String metric, double percentile, Verdict verdict, long baseline, long candidate, double change,
+                    double changeLow, double changeHigh, double pValue) {
+         this.metric = metric;
+         this.percentile = percentile;
+         this.verdict = verdict;
+         this.baseline = baseline;
+         this.candidate = candidate;
+         this.change = change;
+         this.changeLow = changeLow;
+         this.changeHigh = changeHigh;
+         this.pValue = pValue;
+      }
+   }
+
+   /**
+    * Histogram reduced to the recorded values; indices point to the sorted array of all distinct values.
+    */
+   private static final class Interval {
+      final int[] indices;
+      final long[] counts;
+      final long total;
+
+      Interval(int[] indices, long[] counts, long total) {
+         this.indices = indices;
+         this.counts = counts;
+         this.total = total;
+      }
+   }
+
+   private static final class Values {
+      final long[] values;
+
+      Values(List<List<Histogram>> baseline, List<Histogram> candidate) {
+         List<Histogram> all = new ArrayList<>(candidate);
+         baseline.forEach(all::addAll);
+         long[] recorded = new long[1024];
+         int size = 0;
+         for (Histogram h : all) {
+            for (HistogramIterationValue value : h.recordedValues()) {
+               if (size == recorded.length) {
+                  recorded = Arrays.copyOf(recorded, size * 2);
+               }
+               recorded[size++] = value.getValueIteratedTo();
+            }
+         }
+         this.values = Arrays.stream(recorded, 0, size).sorted().distinct().toArray();
+      }
+
+      List<Interval> intervals(List<Histogram> histograms) {
+         List<Interval> intervals = new ArrayList<>(histograms.size());
+         for (Histogram h : histograms) {
+            int size = 0;
+            for (HistogramIterationValue ignored : h.recordedValues()) {
+               ++size;
+            }
+            int[] indices = new int[size];
+            long[] counts = new long[size];
+            int i = 0;
+            for (HistogramIterationValue value : h.recordedValues()) {
+               indices[i] = Arrays.binarySearch(values, value.getValueIteratedTo());
+               counts[i] = value.getCountAddedInThisIterationStep();
+               ++i;
+            }
+            intervals.add(new Interval(indices, counts, h.getTotalCount()));
+         }
+         return intervals;
+      }
+
+      long[] percentiles(List<Interval> intervals, double[] percentiles) {
+         long[] counts = new long[values.length];
+         for (Interval interval : intervals) {
+            for (int j = 0; j < interval.indices.length; ++j) {
+               counts[interval.indices[j]] += interval.counts[j];
+            }
+         }
+         return percentiles(counts, percentiles);
+      }
+
+      /**
+       * Same algorithm as {@link Histogram#getValueAtPercentile(double)}.
+       *
+       * @param counts Count for each value.
+       * @param percentiles Sorted percentiles.
+       * @return Values at the percentiles.
+       */
+      long[] percentiles(long[] counts, double[] percentiles) {
+         long total = 0;
+         for (long count : counts) {
+            total += count;
+         }
+         long[] result = new long[percentiles.length];
+         if (total == 0) {
+            return result;
+         }
+         long cumulative = 0;
+         int index = 0;
+         for (int p = 0; p < percentiles.length; ++p) {
+            long countAtPercentile = Math.max(1, (long) (percentiles[p] / 100 * total + 0.5));
+            while (cumulative < countAtPercentile && index < counts.length) {
+               cumulative += counts[index++];
+            }
+            result[p] = values[Math.max(0, index - 1)];
+         }
+         return result;
+      }
+
+      double[] series(List<List<Interval>> runs, double percentile) {
+         double[] percentiles = { percentile };
+         return runs.stream().flatMap(List::stream).filter(i -> i.total > 0)
+               .mapToDouble(i -> percentiles(Collections.singletonList(i), percentiles)[0]).toArray();
+      }
+   }
+}
@@ -0,0 +1,159 @@
+package io.hyperfoil.core.impl.statistics;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import io.hyperfoil.api.config.HistogramConfig;
+import io.hyperfoil.api.config.StatisticsConfig;
+import io.hyperfoil.api.statistics.StatisticsSnapshot;
+import io.hyperfoil.api.statistics.StatisticsSummary;
+
+/**
+ * Series of summaries sampled with the {@link StatisticsConfig#samplingPeriod() sampling period} of the benchmark.
+ * With one-second sampling each sample goes directly to the {@link SeriesStorage}. With sub-second sampling
+ * the fine samples are kept on heap only for the {@link StatisticsConfig#fineRetention() retention window}
+ * while the storage receives consecutive fine samples merged into one-second samples; iteration returns
+ * the coarse samples preceding the retention window followed by the retained fine samples.
+ * <p>
+ * Not thread-safe; the owner must synchronize access.
+ */
+class SampledSeries implements Iterable<StatisticsSummary> {
+   private final SeriesStorage.Series coarse;
+   private final double[] percentiles;
+   private final HistogramConfig histogramConfig;
+   private final int samplesPerCoarse;
+   private final int maxFine;
+   private final ArrayDeque<Sample> fine = new ArrayDeque<>();
+   private StatisticsSnapshot bucket;
+   private int bucketId = -1;
+
+   SampledSeries(SeriesStorage.Series coarse, double[] percentiles, HistogramConfig histogramConfig, StatisticsConfig config) {
+      this.coarse = coarse;
+      this.percentiles = percentiles;
+      this.histogramConfig = histogramConfig;
+      this.samplesPerCoarse = config.samplesPerCoarsePeriod();
+      this.maxFine = (int) (config.fineRetention() / config.samplingPeriod());
+   }
+
+   /**
+    * @param sequenceId Index of the sample.
+    * @param snapshot Data of the sample; not modified.
+    * @param summary Summary of the snapshot.
+    * @return Summary appended to the storage, or <code>null</code> if the coarse sample is not complete yet.
+    */
+   StatisticsSummary add(int sequenceId, StatisticsSnapshot snapshot, StatisticsSummary summary) {
+      if (samplesPerCoarse == 1) {
+         coarse.add(summary);
+         return summary;
+      }
+      int coarseId = sequenceId / samplesPerCoarse;
+      StatisticsSummary completed = coarseId == bucketId ? null : complete();
+      if (bucket == null) {
+         bucket = new StatisticsSnapshot(histogramConfig);
+         bucketId = coarseId;
+      }
+      snapshot.addInto(bucket);
+      fine.addLast(new Sample(coarseId, summary));
+      // Drop whole coarse samples; a partially dropped one would leave a gap in the series
+      while (fine.size() > maxFine && fine.peekFirst().coarseId != bucketId) {
+         int dropped = fine.peekFirst().coarseId;
+         while (!fine.isEmpty() && fine.peekFirst().coarseId == dropped) {
+            fine.removeFirst();
+         }
+      }
+      return completed;
+   }
+
+   /**
+    * Appends the incomplete coarse sample (if any) to the storage.
+    *
+    * @return Summary appended to the storage or <code>null</code>.
+    */
+   StatisticsSummary complete() {
+      if (bucket == null) {
+         return null;
+      }
+      StatisticsSummary summary = bucket.summary(percentiles);
+      coarse.add(summary);
+      bucket = null;
+      return summary;
+   }
+
+   /**
+    * Appends the incomplete coarse sample (if any) and releases resources of the storage.
+    *
+    * @return Summary appended to the storage or <code>null</code>.
+    */
+   StatisticsSummary completeAndRelease() {
+      StatisticsSummary summary = complete();
+      coarse.release();
+      return summary;
+   }
+
+   /**
+    * Appends a summary recovered from journal.
+    */
+   void addCoarse(StatisticsSummary summary) {
+      coarse.add(summary);
+   }
+
+   /**
+    * @return Number of requests in the storage (which covers fine samples only after {@link #complete()}).
+    */
+   long coarseRequestCount() {
+      long requestCount = 0;
+      for (StatisticsSummary summary : coarse) {
+         requestCount += summary.requestCount;
+      }
+      return requestCount;
+   }
+
+   @Override
+   public Iterator<StatisticsSummary> iterator() {
+      if (fine.isEmpty()) {
+         return coarse.iterator();
+      }
+      long fineStart = fine.peekFirst().summary.startTime;
+      Iterator<StatisticsSummary> coarseIterator = coarse.iterator();
+      Iterator<Sample> fineIterator = fine.iterator();
+      return new Iterator<StatisticsSummary>() {
+         private StatisticsSummary next = nextCoarse();
+
+         private StatisticsSummary nextCoarse() {
+            if (coarseIterator.hasNext()) {
+               StatisticsSummary summary = coarseIterator.next();
+               if (summary.startTime < fineStart) {
+                  return summary;
+               }
+            }
+            return fineIterator.hasNext() ? fineIterator.next().summary : null;
+         }
+
+         @Override
+         public boolean hasNext() {
+            return next != null;
+         }
+
+         @Override
+         public StatisticsSummary next() {
+            if (next == null) {
+               throw new NoSuchElementException();
+            }
+            StatisticsSummary current = next;
+            next = current.startTime < fineStart ? nextCoarse() : fineIterator.hasNext() ? fineIterator.next().summary : null;
+            return current;
+         }
+      };
+   }
+
+   private static final class Sample {
+      final int coarseId;
+      final StatisticsSummary summary;
+
+      Sample(int coarseId, StatisticsSummary summary) {
+         this.coarseId = coarseId;
+         this.summary = summary;
+      }
+   }
+}
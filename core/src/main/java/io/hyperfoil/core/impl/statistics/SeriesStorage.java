@@ -0,0 +1,54 @@
+package io.hyperfoil.core.impl.statistics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import io.hyperfoil.api.statistics.StatisticsSummary;
+
+/**
+ * Holds the per-second summaries ({@link Series}) recorded by {@link StatisticsStore}.
+ * The default keeps everything on heap; {@link FileSeriesStorage} spills the series to disk.
+ */
+public interface SeriesStorage {
+   SeriesStorage HEAP = (name, percentiles) -> new HeapSeries();
+
+   /**
+    * @param name Unique identification of the series, e.g. phase, metric and agent.
+    * @param percentiles Percentiles recorded in each summary.
+    * @return Empty series.
+    */
+   Series newSeries(String name, double[] percentiles);
+
+   interface Series extends Iterable<StatisticsSummary> {
+      void add(StatisticsSummary summary);
+
+      int size();
+
+      /**
+       * Called when no more summaries are expected; the series can release resources used for appending
+       * but must remain readable.
+       */
+      default void release() {
+      }
+   }
+
+   class HeapSeries implements Series {
+      private final List<StatisticsSummary> list = new ArrayList<>();
+
+      @Override
+      public void add(StatisticsSummary summary) {
+         list.add(summary);
+      }
+
+      @Override
+      public int size() {
+         return list.size();
+      }
+
+      @Override
+      public Iterator<StatisticsSummary> iterator() {
+         return list.iterator();
+      }
+   }
+}
@@ -0,0 +1,146 @@
+package io.hyperfoil.core.impl.statistics;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import io.hyperfoil.api.config.Benchmark;
+import io.hyperfoil.api.config.Phase;
+import io.hyperfoil.api.config.SLA;
+import io.hyperfoil.api.statistics.StatisticsSnapshot;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+/**
+ * Validates windowed SLAs marked with {@link SLA#abortOnFailure()} on statistics of a single agent,
+ * so that the agent can ask for terminating the phase without waiting until the controller merges
+ * statistics from all agents.
+ * <p>
+ * Snapshots arrive in arbitrary order and the same sample is reported again when late responses are recorded;
+ * as in {@link StatisticsStore} the parts are merged by sequence ID. The window consists of the last samples
+ * by sequence ID and it is validated whenever new data arrive, so the failure is detected in the same tick.
+ * Data for samples that already left the window are ignored here (the controller still accounts for them).
+ * The check is conservative in that the window must be full and contain at least {@link #MIN_NON_EMPTY_SAMPLES}
+ * samples with any requests, so a single sample cannot abort the phase on its own.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class SlaMonitor {
+   static final int MIN_NON_EMPTY_SAMPLES = 2;
+
+   private final long samplingPeriod;
+   private final Map<Integer, SLA[]> abortingSlas;
+   // phaseId << 16 + stepId -> metric -> samples in the window
+   private final Map<Integer, Map<String, MetricState>> states = new HashMap<>();
+   private final Set<String> abortedPhases = new HashSet<>();
+
+   public SlaMonitor(Benchmark benchmark) {
+      this.samplingPeriod = benchmark.statistics().samplingPeriod();
+      this.abortingSlas = benchmark.steps()
+            .filter(SLA.Provider.class::isInstance).map(SLA.Provider.class::cast)
+            .filter(provider -> provider.sla() != null)
+            .collect(Collectors.toMap(SLA.Provider::id,
+                  provider -> Stream.of(provider.sla()).filter(sla -> sla.window() > 0 && sla.abortOnFailure()).toArray(SLA[]::new),
+                  (s1, s2) -> s1));
+      abortingSlas.values().removeIf(slas -> slas.length == 0);
+   }
+
+   /**
+    * @return True if there is nothing to monitor.
+    */
+   public boolean isEmpty() {
+      return abortingSlas.isEmpty();
+   }
+
+   /**
+    * @param phase      Phase the statistics belong to.
+    * @param stepId     Step ID.
+    * @param metric     Metric name.
+    * @param statistics Part of one sample of statistics; it is copied if needed.
+    * @return Failure of the first SLA that has been violated or <code>null</code>. Failure is reported only once per phase.
+    */
+   public SLA.Failure record(Phase phase, int stepId, String metric, StatisticsSnapshot statistics) {
+      SLA[] slas = abortingSlas.get(stepId);
+      if (slas == null || abortedPhases.contains(phase.name())) {
+         return null;
+      }
+      MetricState state = states.computeIfAbsent((phase.id() << 16) + stepId, k -> new HashMap<>())
+            .computeIfAbsent(metric, m -> new MetricState(slas));
+      SLA.Failure failure = state.record(phase.name(), metric, statistics);
+      if (failure != null) {
+         abortedPhases.add(phase.name());
+         states.keySet().removeIf(key -> (key >> 16) == phase.id());
+      }
+      return failure;
+   }
+
+   private class MetricState {
+      private final SLA[] slas;
+      private final int[] windowSamples;
+      private final int maxWindowSamples;
+      private final StatisticsSnapshot sum = new StatisticsSnapshot();
+      // Samples (merged from their parts) in the longest window
+      private final IntObjectMap<StatisticsSnapshot> samples = new IntObjectHashMap<>();
+      private int firstSequenceId = Integer.MAX_VALUE;
+      private int highestSequenceId = -1;
+
+      MetricState(SLA[] slas) {
+         this.slas = slas;
+         this.windowSamples = Stream.of(slas).mapToInt(sla -> (int) Math.max(1, sla.window() / samplingPeriod)).toArray();
+         this.maxWindowSamples = IntStream.of(windowSamples).max().orElse(1);
+      }
+
+      SLA.Failure record(String phase, String metric, StatisticsSnapshot statistics) {
+         int sequenceId = statistics.sequenceId;
+         if (sequenceId <= highestSequenceId - maxWindowSamples) {
+            return null;
+         }
+         StatisticsSnapshot sample = samples.get(sequenceId);
+         if (sample == null) {
+            sample = new StatisticsSnapshot();
+            statistics.copyInto(sample);
+            samples.put(sequenceId, sample);
+         } else {
+            statistics.addInto(sample);
+         }
+         firstSequenceId = Math.min(firstSequenceId, sequenceId);
+         if (sequenceId > highestSequenceId) {
+            int previous = highestSequenceId;
+            highestSequenceId = sequenceId;
+            for (int id = Math.max(firstSequenceId, previous - maxWindowSamples + 1); id <= highestSequenceId - maxWindowSamples; ++id) {
+               samples.remove(id);
+            }
+         }
+         for (int i = 0; i < slas.length; ++i) {
+            SLA.Failure failure = validate(slas[i], windowSamples[i], phase, metric);
+            if (failure != null) {
+               return failure;
+            }
+         }
+         return null;
+      }
+
+      private SLA.Failure validate(SLA sla, int windowSamples, String phase, String metric) {
+         if (highestSequenceId - firstSequenceId + 1 < windowSamples) {
+            return null;
+         }
+         sum.reset();
+         int nonEmpty = 0;
+         for (int id = highestSequenceId - windowSamples + 1; id <= highestSequenceId; ++id) {
+            StatisticsSnapshot sample = samples.get(id);
+            if (sample != null && sample.requestCount > 0) {
+               sample.addInto(sum);
+               ++nonEmpty;
+            }
+         }
+         if (nonEmpty < Math.min(windowSamples, MIN_NON_EMPTY_SAMPLES)) {
+            return null;
+         }
+         return sla.validate(phase, metric, sum);
+      }
+   }
+}
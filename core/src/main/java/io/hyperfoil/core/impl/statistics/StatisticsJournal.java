@@ -0,0 +1,388 @@
+package io.hyperfoil.core.impl.statistics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import io.hyperfoil.api.config.SLA;
+import io.hyperfoil.api.statistics.StatisticsSnapshot;
+import io.hyperfoil.api.statistics.StatisticsSummary;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Append-only log of the statistics that became final during the run: merged per-second summaries,
+ * phase totals, SLA failures and session pool records. Each record is prefixed with its length and CRC
+ * so that a record torn by a crash is detected and ignored on {@link #replay(Path, Visitor) replay}.
+ * <p>
+ * Records are encoded in the calling thread (which can be the controller event loop or any of the
+ * {@link StatisticsShards statistics shards}) and handed over to a dedicated writer thread; callers never
+ * block on file I/O. The writer appends records in batches and syncs the file at most once per second,
+ * and immediately when {@link #sync() requested} (e.g. when a phase completes) or after an SLA failure.
+ */
+public class StatisticsJournal implements Closeable {
+   private static final Logger log = LoggerFactory.getLogger(StatisticsJournal.class);
+   public static final String FILE_NAME = "statistics.journal";
+
+   private static final long SYNC_PERIOD = 1000;
+   // When the writer cannot keep up we rather give up journalling than exhaust memory
+   private static final int MAX_QUEUED_RECORDS = 65536;
+   private static final byte SERIES = 1;
+   private static final byte TOTAL = 2;
+   private static final byte FAILURE = 3;
+   private static final byte SESSIONS = 4;
+   // Markers in the queue; compared by identity
+   private static final byte[] SYNC = new byte[0];
+   private static final byte[] CLOSE = new byte[0];
+
+   private final Path file;
+   private final FileChannel channel;
+   private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(MAX_QUEUED_RECORDS);
+   private final Thread writer;
+   private volatile boolean failed;
+   private volatile boolean closed;
+
+   public StatisticsJournal(Path file) throws IOException {
+      this.file = file;
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      this.writer = new Thread(this::writeLoop, "statistics-journal-" + file.toAbsolutePath().getParent().getFileName());
+      this.writer.setDaemon(true);
+      this.writer.start();
+   }
+
+   public void writeSeries(String phase, int stepId, String metric, String agent, StatisticsSummary summary) throws IOException {
+      Record record = new Record(SERIES);
+      DataOutputStream output = record.output;
+      writeKey(output, phase, stepId, metric, agent);
+      output.writeLong(summary.startTime);
+      output.writeLong(summary.endTime);
+      output.writeLong(summary.minResponseTime);
+      output.writeLong(summary.meanResponseTime);
+      output.writeLong(summary.maxResponseTime);
+      output.writeLong(summary.meanSendTime);
+      output.writeInt(summary.percentileResponseTime.size());
+      for (Map.Entry<Double, Long> entry : summary.percentileResponseTime.entrySet()) {
+         output.writeDouble(entry.getKey());
+         output.writeLong(entry.getValue());
+      }
+      output.writeInt(summary.connectFailureCount);
+      output.writeInt(summary.requestCount);
+      output.writeInt(summary.responseCount);
+      output.writeInt(summary.status_2xx);
+      output.writeInt(summary.status_3xx);
+      output.writeInt(summary.status_4xx);
+      output.writeInt(summary.status_5xx);
+      output.writeInt(summary.status_other);
+      output.writeInt(summary.invalid);
+      output.writeInt(summary.cacheHits);
+      output.writeInt(summary.resetCount);
+      output.writeInt(summary.timeouts);
+      output.writeInt(summary.blockedCount);
+      output.writeLong(summary.blockedTime);
+      enqueue(record.payload());
+   }
+
+   public void writeTotal(String phase, int stepId, String metric, String agent, StatisticsSnapshot total) throws IOException {
+      Record record = new Record(TOTAL);
+      writeKey(record.output, phase, stepId, metric, agent);
+      ObjectOutputStream objectOutput = new ObjectOutputStream(record.output);
+      objectOutput.writeObject(total);
+      objectOutput.flush();
+      enqueue(record.payload());
+   }
+
+   public void writeFailure(SLA.Failure failure) throws IOException {
+      Record record = new Record(FAILURE);
+      DataOutputStream output = record.output;
+      output.writeUTF(failure.phase());
+      writeNullable(output, failure.metric());
+      writeNullable(output, failure.message());
+      output.writeLong(failure.statistics().histogram.getStartTimeStamp());
+      output.writeLong(failure.statistics().histogram.getEndTimeStamp());
+      enqueue(record.payload());
+      sync();
+   }
+
+   public void writeSessionStats(String address, long timestamp, String phase, int minSessions, int maxSessions) throws IOException {
+      Record record = new Record(SESSIONS);
+      DataOutputStream output = record.output;
+      output.writeUTF(address);
+      output.writeLong(timestamp);
+      output.writeUTF(phase);
+      output.writeInt(minSessions);
+      output.writeInt(maxSessions);
+      enqueue(record.payload());
+   }
+
+   /**
+    * Asks the writer to sync the file after writing all records enqueued so far; does not wait for that.
+    */
+   public void sync() throws IOException {
+      enqueue(SYNC);
+   }
+
+   /**
+    * Writes all enqueued records, syncs the file and stops the writer thread; blocks until that is done.
+    */
+   @Override
+   public void close() throws IOException {
+      closed = true;
+      // If the queue is full the writer notices the flag once it drains the queue
+      queue.offer(CLOSE);
+      try {
+         writer.join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted closing " + file);
+      }
+      if (failed) {
+         throw new IOException("Some records were not written to " + file);
+      }
+   }
+
+   private void enqueue(byte[] payload) throws IOException {
+      if (closed) {
+         throw new IOException("Journal " + file + " is closed");
+      } else if (failed) {
+         throw new IOException("Journal " + file + " failed");
+      } else if (!queue.offer(payload)) {
+         failed = true;
+         throw new IOException("Journal " + file + " cannot keep up with the records");
+      }
+   }
+
+   private void writeLoop() {
+      List<byte[]> batch = new ArrayList<>();
+      CRC32 crc = new CRC32();
+      long lastSync = System.currentTimeMillis();
+      boolean dirty = false;
+      boolean close = false;
+      while (!close) {
+         byte[] first;
+         try {
+            first = queue.poll(SYNC_PERIOD, TimeUnit.MILLISECONDS);
+         } catch (InterruptedException e) {
+            log.error("Statistics journal {} writer was interrupted", file);
+            failed = true;
+            break;
+         }
+         boolean sync = false;
+         if (first == null) {
+            close = closed;
+         } else {
+            batch.add(first);
+            queue.drainTo(batch);
+            for (byte[] payload : batch) {
+               if (payload == SYNC) {
+                  sync = true;
+               } else if (payload == CLOSE) {
+                  close = true;
+               } else if (!failed) {
+                  try {
+                     writeRecord(crc, payload);
+                     dirty = true;
+                  } catch (IOException e) {
+                     log.error("Failed to write statistics journal {}", e, file);
+                     failed = true;
+                  }
+               }
+            }
+            batch.clear();
+         }
+         if (dirty && !failed && (sync || close || System.currentTimeMillis() - lastSync >= SYNC_PERIOD)) {
+            try {
+               channel.force(false);
+            } catch (IOException e) {
+               log.error("Failed to sync statistics journal {}", e, file);
+               failed = true;
+            }
+            lastSync = System.currentTimeMillis();
+            dirty = false;
+         }
+      }
+      try {
+         channel.close();
+      } catch (IOException e) {
+         log.error("Failed to close statistics journal {}", e, file);
+      }
+   }
+
+   private void writeRecord(CRC32 crc, byte[] payload) throws IOException {
+      crc.reset();
+      crc.update(payload, 0, payload.length);
+      ByteBuffer buffer = ByteBuffer.allocate(payload.length + 8);
+      buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+      while (buffer.hasRemaining()) {
+         channel.write(buffer);
+      }
+   }
+
+   private static void writeKey(DataOutputStream output, String phase, int stepId, String metric, String agent) throws IOException {
+      output.writeUTF(phase);
+      output.writeInt(stepId);
+      output.writeUTF(metric);
+      writeNullable(output, agent);
+   }
+
+   private static void writeNullable(DataOutputStream output, String string) throws IOException {
+      output.writeBoolean(string != null);
+      if (string != null) {
+         output.writeUTF(string);
+      }
+   }
+
+   @Override
+   public String toString() {
+      return file.toString();
+   }
+
+   /**
+    * Reads all complete records from the journal; reading stops at the first torn or corrupted record.
+    *
+    * @param file Journal file.
+    * @param visitor Receives the records.
+    * @throws IOException When the file cannot be read.
+    */
+   public static void replay(Path file, Visitor visitor) throws IOException {
+      CRC32 crc = new CRC32();
+      try (DataInputStream input = new DataInputStream(Files.newInputStream(file))) {
+         for (int record = 0; ; ++record) {
+            int length;
+            try {
+               length = input.readInt();
+            } catch (EOFException e) {
+               return;
+            }
+            byte[] payload;
+            int checksum;
+            try {
+               checksum = input.readInt();
+               if (length < 0) {
+                  throw new EOFException();
+               }
+               payload = new byte[length];
+               input.readFully(payload);
+            } catch (EOFException e) {
+               log.warn("Journal {} ends with incomplete record {}", file, record);
+               return;
+            }
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            if ((int) crc.getValue() != checksum) {
+               log.warn("Journal {} has corrupted record {}, ignoring the rest of the file", file, record);
+               return;
+            }
+            replayRecord(new DataInputStream(new ByteArrayInputStream(payload)), visitor);
+         }
+      }
+   }
+
+   private static void replayRecord(DataInputStream input, Visitor visitor) throws IOException {
+      byte type = input.readByte();
+      switch (type) {
+         case SERIES: {
+            String phase = input.readUTF();
+            int stepId = input.readInt();
+            String metric = input.readUTF();
+            String agent = readNullable(input);
+            long startTime = input.readLong();
+            long endTime = input.readLong();
+            long minResponseTime = input.readLong();
+            long meanResponseTime = input.readLong();
+            long maxResponseTime = input.readLong();
+            long meanSendTime = input.readLong();
+            int percentiles = input.readInt();
+            SortedMap<Double, Long> percentileResponseTime = new TreeMap<>();
+            for (int i = 0; i < percentiles; ++i) {
+               percentileResponseTime.put(input.readDouble(), input.readLong());
+            }
+            StatisticsSummary summary = new StatisticsSummary(startTime, endTime, minResponseTime, meanResponseTime,
+                  maxResponseTime, meanSendTime, percentileResponseTime, input.readInt(), input.readInt(), input.readInt(),
+                  input.readInt(), input.readInt(), input.readInt(), input.readInt(), input.readInt(), input.readInt(),
+                  input.readInt(), input.readInt(), input.readInt(), input.readInt(), input.readLong());
+            visitor.series(phase, stepId, metric, agent, summary);
+            break;
+         }
+         case TOTAL: {
+            String phase = input.readUTF();
+            int stepId = input.readInt();
+            String metric = input.readUTF();
+            String agent = readNullable(input);
+            visitor.total(phase, stepId, metric, agent, readSnapshot(input));
+            break;
+         }
+         case FAILURE: {
+            String phase = input.readUTF();
+            String metric = readNullable(input);
+            String message = readNullable(input);
+            long startTimestamp = input.readLong();
+            long endTimestamp = input.readLong();
+            visitor.failure(phase, metric, startTimestamp, endTimestamp, message);
+            break;
+         }
+         case SESSIONS:
+            visitor.sessionStats(input.readUTF(), input.readLong(), input.readUTF(), input.readInt(), input.readInt());
+            break;
+         default:
+            throw new IOException("Unknown journal record type " + type);
+      }
+   }
+
+   private static String readNullable(DataInputStream input) throws IOException {
+      return input.readBoolean() ? input.readUTF() : null;
+   }
+
+   private static StatisticsSnapshot readSnapshot(InputStream input) throws IOException {
+      try (ObjectInputStream objectInput = new ObjectInputStream(input)) {
+         return (StatisticsSnapshot) objectInput.readObject();
+      } catch (ClassNotFoundException e) {
+         throw new IOException("Cannot read statistics snapshot", e);
+      }
+   }
+
+   private static final class Record {
+      private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+      private final DataOutputStream output = new DataOutputStream(bytes);
+
+      private Record(byte type) throws IOException {
+         output.writeByte(type);
+      }
+
+      private byte[] payload() throws IOException {
+         output.flush();
+         return bytes.toByteArray();
+      }
+   }
+
+   public interface Visitor {
+      void series(String phase, int stepId, String metric, String agent, StatisticsSummary summary);
+
+      void total(String phase, int stepId, String metric, String agent, StatisticsSnapshot total);
+
+      void failure(String phase, String metric, long startTimestamp, long endTimestamp, String message);
+
+      void sessionStats(String address, long timestamp, String phase, int minSessions, int maxSessions);
+   }
+}
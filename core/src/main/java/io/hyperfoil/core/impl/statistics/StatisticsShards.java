@@ -0,0 +1,154 @@
+package io.hyperfoil.core.impl.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Threads merging the statistics received from agents. Each task has a key and tasks with the same key
+ * are always executed by the same thread, in the order of submission; this preserves the ordering
+ * that {@link StatisticsStore} needs for merging snapshots of one metric. Tasks are handed off through
+ * lock-free queues, so the submitting thread (controller event loop) never blocks.
+ * <p>
+ * Instance with zero threads ({@link #DIRECT}) executes everything in the caller thread.
+ */
+public class StatisticsShards {
+   private static final Logger log = LoggerFactory.getLogger(StatisticsShards.class);
+   private static final long DEFER_LIMIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+   public static final StatisticsShards DIRECT = new StatisticsShards(0);
+
+   private final Shard[] shards;
+
+   public StatisticsShards(int threads) {
+      shards = new Shard[threads];
+      for (int i = 0; i < threads; ++i) {
+         shards[i] = new Shard("statistics-shard-" + i);
+         shards[i].start();
+      }
+   }
+
+   /**
+    * Runs the action after the current shard executes all queued tasks, or at latest after 100 ms. This is useful
+    * when a series of tasks produces a result that should be published only once.
+    * When not invoked from a shard thread the action is executed immediately.
+    *
+    * @param action Action to be executed.
+    */
+   public static void defer(Runnable action) {
+      Thread thread = Thread.currentThread();
+      if (thread instanceof Shard) {
+         ((Shard) thread).defer(action);
+      } else {
+         action.run();
+      }
+   }
+
+   public int size() {
+      return shards.length;
+   }
+
+   public void execute(int key, Runnable task) {
+      if (shards.length == 0) {
+         task.run();
+      } else {
+         shards[Math.floorMod(key, shards.length)].submit(task);
+      }
+   }
+
+   /**
+    * @param callback Invoked (from one of the shard threads) when all tasks submitted before this call complete.
+    */
+   public void barrier(Runnable callback) {
+      if (shards.length == 0) {
+         callback.run();
+         return;
+      }
+      AtomicInteger remaining = new AtomicInteger(shards.length);
+      for (Shard shard : shards) {
+         shard.submit(() -> {
+            if (remaining.decrementAndGet() == 0) {
+               callback.run();
+            }
+         });
+      }
+   }
+
+   /**
+    * Stops the threads; tasks that were not executed yet are discarded.
+    */
+   public void stop() {
+      for (Shard shard : shards) {
+         shard.running = false;
+         LockSupport.unpark(shard);
+      }
+   }
+
+   private static final class Shard extends Thread {
+      private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+      // accessed only by this thread
+      private final List<Runnable> deferred = new ArrayList<>();
+      private long deferredSince;
+      private volatile boolean waiting;
+      private volatile boolean running = true;
+
+      Shard(String name) {
+         super(name);
+         setDaemon(true);
+      }
+
+      void submit(Runnable task) {
+         tasks.offer(task);
+         if (waiting) {
+            LockSupport.unpark(this);
+         }
+      }
+
+      void defer(Runnable action) {
+         if (deferred.isEmpty()) {
+            deferredSince = System.nanoTime();
+         }
+         deferred.add(action);
+      }
+
+      @Override
+      public void run() {
+         while (running) {
+            Runnable task = tasks.poll();
+            if (task != null) {
+               invoke(task);
+               if (deferred.isEmpty() || System.nanoTime() - deferredSince < DEFER_LIMIT_NANOS) {
+                  continue;
+               }
+            }
+            for (int i = 0; i < deferred.size(); ++i) {
+               invoke(deferred.get(i));
+            }
+            deferred.clear();
+            if (task == null) {
+               // The submitter unparks us only after seeing the flag, therefore we have to check the queue again
+               waiting = true;
+               if (tasks.isEmpty() && running) {
+                  LockSupport.park(this);
+               }
+               waiting = false;
+            }
+         }
+      }
+
+      private void invoke(Runnable task) {
+         try {
+            task.run();
+         } catch (Throwable t) {
+            log.error("Failed to process statistics", t);
+         }
+      }
+   }
+}
@@ -3,15 +3,21 @@ package io.hyperfoil.core.impl.statistics;
 import com.fasterxml.jackson.core.JsonGenerator;
 
 import io.hyperfoil.api.config.Benchmark;
+import io.hyperfoil.api.config.HistogramConfig;
 import io.hyperfoil.api.config.SLA;
+import io.hyperfoil.api.statistics.CustomMetrics;
 import io.hyperfoil.api.statistics.CustomValue;
+import io.hyperfoil.api.statistics.IntValue;
+import io.hyperfoil.api.statistics.LongValue;
 import io.hyperfoil.api.statistics.StatisticsSnapshot;
 import io.hyperfoil.api.statistics.StatisticsSummary;
 import io.hyperfoil.controller.HistogramConverter;
 import io.hyperfoil.controller.model.CustomStats;
 import io.hyperfoil.controller.model.Histogram;
 import io.hyperfoil.controller.model.RequestStats;
+import io.hyperfoil.core.impl.AgentMetrics;
 import io.hyperfoil.core.util.LowHigh;
+import io.hyperfoil.core.util.OpenMetrics;
 import io.netty.util.collection.IntObjectHashMap;
 import io.netty.util.collection.IntObjectMap;
 import io.vertx.core.logging.Logger;
@@ -25,6 +31,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,15 +39,29 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
+/**
+ * Merges statistics from agents. The per-metric data are processed by {@link StatisticsShards}: all mutations
+ * of one metric are executed by one shard thread while the summaries are published for readers in the thread
+ * that owns the store (controller event loop). Methods reading full histograms synchronize on the metric data;
+ * {@link #persist(Path)} and {@link #writeJson(JsonGenerator)} expect that the store was {@link #flush(Runnable) flushed}.
+ */
 public class StatisticsStore {
    private static final Logger log = LoggerFactory.getLogger(StatisticsStore.class);
    private static final String DEFAULT_FIELD_NAME = ":DEFAULT:";
@@ -50,6 +71,18 @@ public class StatisticsStore {
    // When we receive snapshot with order #N we will attempt to compact agent snapshots #(N-60)
    // We are delaying this because the statistics for outlier may come with a significant delay
    private static final int MERGE_DELAY = 60;
+   // Maximum number of agent metrics samples kept per agent; must be even
+   static final int MAX_AGENT_METRICS = 2048;
+   // With sub-second sampling the delay is shorter than 60 seconds but we keep at least this much
+   private static final long MIN_MERGE_DELAY_MILLIS = 10_000;
+   // Response time histogram buckets exposed through OpenMetrics, in nanoseconds
+   private static final long[] OPEN_METRICS_BUCKETS = LongStream.of(1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000)
+         .map(TimeUnit.MILLISECONDS::toNanos).toArray();
+   private static final String[] OPEN_METRICS_BUCKET_LABELS = LongStream.of(OPEN_METRICS_BUCKETS)
+         .mapToObj(nanos -> "," + OpenMetrics.label("le", nanos / 1_000_000_000.0)).toArray(String[]::new);
+   private static final double[] OPEN_METRICS_QUANTILES = { 0.5, 0.9, 0.99, 0.999, 1.0 };
+   private static final String[] OPEN_METRICS_QUANTILE_LABELS = Arrays.stream(OPEN_METRICS_QUANTILES)
+         .mapToObj(q -> "," + OpenMetrics.label("quantile", q)).toArray(String[]::new);
    private static final Comparator<RequestStats> REQUEST_STATS_COMPARATOR =
          Comparator.<RequestStats, Long>comparing(rs -> rs.summary.startTime)
                .thenComparing(rs -> rs.phase).thenComparing(rs -> rs.metric);
@@ -59,13 +92,37 @@ public class StatisticsStore {
    private final Map<Integer, Map<String, Data>> data = new HashMap<>();
    private final Consumer<SLA.Failure> failureHandler;
    private final double[] percentiles;
-   private final List<SLA.Failure> failures = new ArrayList<>();
+   // Written by the shards and read from the event loop
+   private final List<SLA.Failure> failures = new CopyOnWriteArrayList<>();
    private final int maxFailures = 100;
    private final Map<Integer, SLA.Provider> slaProviders;
    private final Map<String, SessionPoolStats> sessionPoolStats = new HashMap<>();
-
-   public StatisticsStore(Benchmark benchmark, Consumer<SLA.Failure> failureHandler, double[] percentiles) {
+   private final Map<String, AgentMetricsSeries> agentMetrics = new HashMap<>();
+   private final SeriesStorage seriesStorage;
+   private final StatisticsShards shards;
+   private volatile StatisticsJournal journal;
+   private volatile HistogramLog histogramLog;
+   private volatile Path persistDir;
+   // Incremented on any change that could affect the request stats summaries
+   private final AtomicLong version = new AtomicLong();
+   // Without shard threads the data are published lazily, when the summaries are read
+   private final Queue<Data> unpublished = new ConcurrentLinkedQueue<>();
+   private long recentCandidatesVersion = -1;
+   private List<RequestStats> recentCandidates = Collections.emptyList();
+   private long totalSummaryVersion = -1;
+   private List<RequestStats> totalSummary = Collections.emptyList();
+
+   /**
+    * @param benchmark Benchmark definition.
+    * @param failureHandler Invoked when SLA validation fails; with shards this happens in the shard thread.
+    * @param percentiles Percentiles included in summaries.
+    * @param seriesStorage Storage for per-second summaries.
+    * @param shards Threads that merge the data.
+    */
+   public StatisticsStore(Benchmark benchmark, Consumer<SLA.Failure> failureHandler, double[] percentiles, SeriesStorage seriesStorage, StatisticsShards shards) {
       this.benchmark = benchmark;
+      this.seriesStorage = seriesStorage;
+      this.shards = shards;
       this.numAgents = Math.max(benchmark.agents().length, 1);
       this.failureHandler = failureHandler;
       this.percentiles = percentiles;
@@ -79,26 +136,180 @@ public class StatisticsStore {
             }));
    }
 
+   public StatisticsStore(Benchmark benchmark, Consumer<SLA.Failure> failureHandler, double[] percentiles) {
+      this(benchmark, failureHandler, percentiles, SeriesStorage.HEAP, StatisticsShards.DIRECT);
+   }
+
    public StatisticsStore(Benchmark benchmark, Consumer<SLA.Failure> failureHandler) {
       this(benchmark, failureHandler, PERCENTILES);
    }
 
+   public StatisticsStore(Benchmark benchmark, Consumer<SLA.Failure> failureHandler, SeriesStorage seriesStorage) {
+      this(benchmark, failureHandler, PERCENTILES, seriesStorage, StatisticsShards.DIRECT);
+   }
+
+   public StatisticsStore(Benchmark benchmark, Consumer<SLA.Failure> failureHandler, SeriesStorage seriesStorage, StatisticsShards shards) {
+      this(benchmark, failureHandler, PERCENTILES, seriesStorage, shards);
+   }
+
+   /**
+    * Streams all statistics that become final into the journal, so that the store can be
+    * {@link #rebuild(Benchmark, Path, Consumer) rebuilt} even if the controller does not finish the run.
+    *
+    * @param journal Open journal, closed by {@link #closeJournal()}.
+    */
+   public void setJournal(StatisticsJournal journal) {
+      this.journal = journal;
+   }
+
+   public synchronized void closeJournal() {
+      StatisticsJournal journal = this.journal;
+      if (journal != null) {
+         this.journal = null;
+         try {
+            journal.close();
+         } catch (IOException e) {
+            log.error("Failed to close statistics journal {}", e, journal);
+         }
+      }
+   }
+
+   /**
+    * Writes series and histograms of each phase into the directory as soon as the phase completes;
+    * {@link #persist(Path)} into the same directory then writes only the summary files.
+    *
+    * @param dir Directory for the statistics.
+    */
+   public void setPersistDir(Path dir) {
+      this.persistDir = dir;
+   }
+
+   /**
+    * Streams merged per-interval histograms of all metrics into the log as these become final.
+    *
+    * @param histogramLog Open log, closed by {@link #closeHistogramLog()}.
+    */
+   public void setHistogramLog(HistogramLog histogramLog) {
+      this.histogramLog = histogramLog;
+   }
+
+   public synchronized void closeHistogramLog() {
+      HistogramLog histogramLog = this.histogramLog;
+      if (histogramLog != null) {
+         this.histogramLog = null;
+         try {
+            histogramLog.close();
+         } catch (IOException e) {
+            log.error("Failed to close histogram log {}", e, histogramLog);
+         }
+      }
+   }
+
+   /**
+    * Recreates the store from journal written during the run. Phases that were not completed
+    * before the journal ended have their series but no totals.
+    *
+    * @param benchmark Benchmark of the run.
+    * @param journalFile Journal written by {@link StatisticsJournal}.
+    * @param failureHandler Handler for SLA failures found later.
+    * @param seriesStorage Storage for the replayed series; the journal of a long run should not be replayed to heap.
+    * @return New store.
+    * @throws IOException When the journal cannot be read.
+    */
+   public static StatisticsStore rebuild(Benchmark benchmark, Path journalFile, Consumer<SLA.Failure> failureHandler, SeriesStorage seriesStorage) throws IOException {
+      StatisticsStore store = new StatisticsStore(benchmark, failureHandler, seriesStorage);
+      StatisticsJournal.replay(journalFile, store.new Replay());
+      return store;
+   }
+
+   public Benchmark benchmark() {
+      return benchmark;
+   }
+
+   /**
+    * Hands the snapshot over to the shard owning this metric; must be always invoked from the same thread.
+    */
    public void record(String address, int phaseId, int stepId, String metric, StatisticsSnapshot stats) {
+      Data data = data(phaseId, stepId, metric);
+      shards.execute(data.shardKey, () -> data.record(address, stats));
+   }
+
+   /**
+    * @param callback Invoked (possibly from another thread) when all data recorded so far are processed.
+    */
+   public void flush(Runnable callback) {
+      shards.barrier(() -> {
+         publishPending();
+         callback.run();
+      });
+   }
+
+   /**
+    * @return Number that changes whenever the results of {@link #recentSummary(long)} or {@link #totalSummary()}
+    * could change (except for recent entries expiring).
+    */
+   public long version() {
+      publishPending();
+      return version.get();
+   }
+
+   private void publishPending() {
+      Data data;
+      while ((data = unpublished.poll()) != null) {
+         data.publish();
+      }
+   }
+
+   private Data data(int phaseId, int stepId, String metric) {
       Map<String, Data> map = this.data.computeIfAbsent((phaseId << 16) + stepId, phaseStep -> new HashMap<>());
       Data data = map.get(metric);
       if (data == null) {
-         long collectionPeriod = benchmark.statisticsCollectionPeriod();
+         long samplingPeriod = benchmark.statistics().samplingPeriod();
          SLA.Provider slaProvider = slaProviders.get(stepId);
          Map<SLA, Window> rings = slaProvider == null || slaProvider.sla() == null ? Collections.emptyMap() :
                Stream.of(slaProvider.sla()).filter(sla -> sla.window() > 0).collect(
                      Collectors.toMap(Function.identity(),
-                           sla -> new Window((int) (sla.window() / collectionPeriod))));
+                           sla -> new Window((int) Math.max(1, sla.window() / samplingPeriod))));
          SLA[] total = slaProvider == null || slaProvider.sla() == null ? new SLA[0] : Stream.of(slaProvider.sla())
                .filter(sla -> sla.window() <= 0).toArray(SLA[]::new);
          String phase = benchmark.phases().stream().filter(p -> p.id() == phaseId).findFirst().get().name();
-         map.put(metric, data = new Data(phase, stepId, metric, rings, total));
+         int shardKey = 31 * ((phaseId << 16) + stepId) + metric.hashCode();
+         map.put(metric, data = new Data(phase, stepId, metric, shardKey, rings, total));
+      }
+      return data;
+   }
+
+   private void journal(JournalAction action) {
+      StatisticsJournal journal = this.journal;
+      if (journal == null) {
+         return;
+      }
+      try {
+         action.write(journal);
+      } catch (IOException e) {
+         log.error("Failed to write statistics journal {}, disabling it", e, journal);
+         closeJournal();
+      }
+   }
+
+   private void writeHistogram(String tag, org.HdrHistogram.Histogram histogram) {
+      HistogramLog histogramLog = this.histogramLog;
+      if (histogramLog != null) {
+         histogramLog.write(tag, histogram);
+      }
+   }
+
+   private void flushHistogramLog() {
+      HistogramLog histogramLog = this.histogramLog;
+      if (histogramLog == null) {
+         return;
+      }
+      try {
+         histogramLog.flush();
+      } catch (IOException e) {
+         log.error("Failed to write histogram log {}, disabling it", e, histogramLog);
+         closeHistogramLog();
       }
-      data.record(address, stats);
    }
 
    public String toPhaseName(String phaseName, String iteration, String fork) {
@@ -163,7 +374,7 @@ public class StatisticsStore {
       jGenerator.writeEndArray(); //end histogram
    }
 
-   public void seriesArray(JsonGenerator jGenerator, List<StatisticsSummary> series) throws IOException {
+   public void seriesArray(JsonGenerator jGenerator, Iterable<StatisticsSummary> series) throws IOException {
       jGenerator.writeStartArray(); //series
       if (series != null) {
          for (StatisticsSummary summary : series) {
@@ -187,11 +398,14 @@ public class StatisticsStore {
          jGenerator.writeNumberField("start", data.total.histogram.getStartTimeStamp());
          jGenerator.writeNumberField("end", data.total.histogram.getEndTimeStamp());
          jGenerator.writeObjectField("summary", snapshot.summary(percentiles));
+         if (snapshot.histogramOverflows > 0) {
+            jGenerator.writeNumberField("histogramOverflows", snapshot.histogramOverflows);
+         }
          jGenerator.writeFieldName("custom");
 
          jGenerator.writeStartObject();
-         for (Map.Entry<Object, CustomValue> entry : snapshot.custom.entrySet()) {
-            jGenerator.writeStringField(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+         for (Map.Entry<String, String> entry : customValues(snapshot).entrySet()) {
+            jGenerator.writeStringField(entry.getKey(), entry.getValue());
          }
          jGenerator.writeEndObject();
 
@@ -211,7 +425,10 @@ public class StatisticsStore {
       StatisticsSnapshot statistics = new StatisticsSnapshot();
       statistics.histogram.setStartTimeStamp(startTimestamp);
       statistics.histogram.setEndTimeStamp(endTimestamp);
-      failures.add(new SLA.Failure(null, phase, metric, statistics, cause));
+      SLA.Failure failure = new SLA.Failure(null, phase, metric, statistics, cause);
+      failures.add(failure);
+      journal(j -> j.writeFailure(failure));
+      version.incrementAndGet();
    }
 
    private interface PhaseIterForkWalker<T> {
@@ -551,8 +768,10 @@ public class StatisticsStore {
          }
       }
       for (Data data : sorted) {
-         String filePrefix = dir + File.separator + sanitize(data.phase) + "." + sanitize(data.metric) + "." + data.stepId;
-         persistHistogramAndSeries(filePrefix, data.total, data.series);
+         // Phases completed during the run have been written already
+         if (!dir.equals(data.persistedTo)) {
+            persistHistogramsAndSeries(dir, data);
+         }
       }
       persistCustomStats(sorted, data -> data.total, dir + File.separator + "custom.csv");
       String[] agents = this.data.values().stream()
@@ -594,10 +813,6 @@ public class StatisticsStore {
                writer.println();
             }
          }
-         for (Data data : sorted) {
-            String filePrefix = dir + File.separator + sanitize(data.phase) + "." + sanitize(data.metric) + "." + data.stepId + ".agent." + agent;
-            persistHistogramAndSeries(filePrefix, data.perAgent.get(agent), data.agentSeries.get(agent));
-         }
          persistCustomStats(sorted, data -> data.perAgent.get(agent), dir + File.separator + "agent." + sanitize(agent) + ".custom.csv");
       }
       try (PrintWriter writer = new PrintWriter(dir + File.separator + "failures.csv")) {
@@ -620,6 +835,9 @@ public class StatisticsStore {
             writer.println();
          }
       }
+      if (!agentMetrics.isEmpty()) {
+         persistAgentMetrics(dir + File.separator + "agent-metrics.csv");
+      }
       for (Map.Entry<String, SessionPoolStats> entry : sessionPoolStats.entrySet()) {
          try (PrintWriter writer = new PrintWriter(dir + File.separator + sanitize(entry.getKey()) + ".sessions.csv")) {
             SessionPoolStats sps = entry.getValue();
@@ -654,12 +872,45 @@ public class StatisticsStore {
       }
    }
 
+   private void persistAgentMetrics(String fileName) throws FileNotFoundException {
+      try (PrintWriter writer = new PrintWriter(fileName)) {
+         writer.println("Address,Start,End,Executor,MaxPendingTasks,MeanLag(us),MaxLag(us),BusyRatio,AllocationRate(B/s),GcPauseTime(ms),MaxArrivalLag(us)");
+         for (Map.Entry<String, AgentMetricsSeries> entry : agentMetrics.entrySet()) {
+            for (AgentMetrics metrics : entry.getValue().samples) {
+               for (int i = 0; i < metrics.maxLag.length; ++i) {
+                  writer.print(entry.getKey());
+                  writer.print(',');
+                  writer.print(metrics.startTime);
+                  writer.print(',');
+                  writer.print(metrics.endTime);
+                  writer.print(',');
+                  writer.print(i);
+                  writer.print(',');
+                  writer.print(metrics.maxPendingTasks[i]);
+                  writer.print(',');
+                  writer.print(metrics.meanLag[i]);
+                  writer.print(',');
+                  writer.print(metrics.maxLag[i]);
+                  writer.print(',');
+                  writer.print(metrics.busyRatio[i]);
+                  writer.print(',');
+                  writer.print(metrics.allocationRate[i]);
+                  writer.print(',');
+                  writer.print(metrics.gcPauseTime);
+                  writer.print(',');
+                  writer.println(metrics.maxArrivalLag);
+               }
+            }
+         }
+      }
+   }
+
    private void persistCustomStats(Data[] sorted, Function<Data, StatisticsSnapshot> selector, String fileName) throws FileNotFoundException {
       try (PrintWriter writer = new PrintWriter(fileName)) {
          writer.println("Phase,Metric,Custom,Value");
          for (Data data : sorted) {
             StatisticsSnapshot snapshot = selector.apply(data);
-            for (Map.Entry<Object, CustomValue> entry : snapshot.custom.entrySet()) {
+            for (Map.Entry<String, String> entry : customValues(snapshot).entrySet()) {
                writer.print(data.phase);
                writer.print(',');
                writer.print(data.metric);
@@ -676,7 +927,15 @@ public class StatisticsStore {
       return phase.replaceAll(File.separator, "_");
    }
 
-   private void persistHistogramAndSeries(String filePrefix, StatisticsSnapshot total, List<StatisticsSummary> series) throws FileNotFoundException {
+   private void persistHistogramsAndSeries(Path dir, Data data) throws FileNotFoundException {
+      String filePrefix = dir + File.separator + sanitize(data.phase) + "." + sanitize(data.metric) + "." + data.stepId;
+      persistHistogramAndSeries(filePrefix, data.total, data.series);
+      for (Map.Entry<String, StatisticsSnapshot> entry : data.perAgent.entrySet()) {
+         persistHistogramAndSeries(filePrefix + ".agent." + entry.getKey(), entry.getValue(), data.agentSeries.get(entry.getKey()));
+      }
+   }
+
+   private void persistHistogramAndSeries(String filePrefix, StatisticsSnapshot total, Iterable<StatisticsSummary> series) throws FileNotFoundException {
       if (total != null) {
          try (PrintStream stream = new PrintStream(new FileOutputStream(filePrefix + ".histogram.csv"))) {
             total.histogram.outputPercentileDistribution(stream, 5, 1000_000.0, true);
@@ -700,13 +959,27 @@ public class StatisticsStore {
    }
 
    public void completePhase(String phase) {
+      completePhase(phase, null);
+   }
+
+   /**
+    * Merges remaining snapshots of the phase and validates SLAs for the whole phase.
+    *
+    * @param phase Phase name.
+    * @param callback Invoked (possibly from another thread) when the phase is completed. Nullable.
+    */
+   public void completePhase(String phase, Runnable callback) {
       for (Map<String, Data> m : this.data.values()) {
          for (Data data : m.values()) {
             if (data.phase.equals(phase)) {
-               data.completePhase();
+               shards.execute(data.shardKey, data::completePhase);
             }
          }
       }
+      version.incrementAndGet();
+      if (callback != null) {
+         shards.barrier(callback);
+      }
    }
 
    public boolean validateSlas() {
@@ -714,54 +987,62 @@ public class StatisticsStore {
    }
 
    public List<RequestStats> recentSummary(long minValidTimestamp) {
-      ArrayList<RequestStats> result = new ArrayList<>();
-      for (Map<String, Data> m : this.data.values()) {
-         for (Data data : m.values()) {
-            OptionalInt lastSequenceId = data.lastStats.values().stream()
-                  .flatMapToInt(map -> map.keySet().stream().mapToInt(Integer::intValue)).max();
-            if (!lastSequenceId.isPresent()) {
-               continue;
-            }
-            // We'll use one id before the last one since the last one is likely not completed yet
-            int penultimateId = lastSequenceId.getAsInt() - 1;
-            StatisticsSnapshot sum = new StatisticsSnapshot();
-            data.lastStats.values().stream().map(map -> map.get(penultimateId))
-                  .filter(snapshot -> snapshot != null)
-                  .forEach(snapshot -> snapshot.addInto(sum));
-            if (sum.isEmpty() || sum.histogram.getStartTimeStamp() < minValidTimestamp) {
-               continue;
+      long version = version();
+      if (recentCandidatesVersion != version) {
+         ArrayList<RequestStats> candidates = new ArrayList<>();
+         for (Map<String, Data> m : this.data.values()) {
+            for (Data data : m.values()) {
+               RequestStats stats = data.recentStats();
+               if (stats != null) {
+                  candidates.add(stats);
+               }
             }
-            List<String> failures = this.failures.stream()
-                  .filter(f -> f.phase().equals(data.phase) && (f.metric() == null || f.metric().equals(data.metric)))
-                  .map(f -> f.message()).collect(Collectors.toList());
-            result.add(new RequestStats(data.phase, data.stepId, data.metric, sum.summary(PERCENTILES), failures));
+         }
+         candidates.sort(REQUEST_STATS_COMPARATOR);
+         recentCandidates = candidates;
+         recentCandidatesVersion = version;
+      }
+      ArrayList<RequestStats> result = new ArrayList<>(recentCandidates.size());
+      for (RequestStats stats : recentCandidates) {
+         if (stats.summary.startTime >= minValidTimestamp) {
+            result.add(stats);
          }
       }
-      result.sort(REQUEST_STATS_COMPARATOR);
       return result;
    }
 
    public List<RequestStats> totalSummary() {
-      ArrayList<RequestStats> result = new ArrayList<>();
-      for (Map<String, Data> m : this.data.values()) {
-         for (Data data : m.values()) {
-            StatisticsSummary last = data.total.summary(percentiles);
-            List<String> failures = this.failures.stream()
-                  .filter(f -> f.phase().equals(data.phase) && (f.metric() == null || f.metric().equals(data.metric)))
-                  .map(f -> f.message()).collect(Collectors.toList());
-            result.add(new RequestStats(data.phase, data.stepId, data.metric, last, failures));
+      long version = version();
+      if (totalSummaryVersion != version) {
+         ArrayList<RequestStats> result = new ArrayList<>();
+         for (Map<String, Data> m : this.data.values()) {
+            for (Data data : m.values()) {
+               result.add(data.totalStats());
+            }
          }
+         result.sort(REQUEST_STATS_COMPARATOR);
+         totalSummary = Collections.unmodifiableList(result);
+         totalSummaryVersion = version;
       }
-      result.sort(REQUEST_STATS_COMPARATOR);
-      return result;
+      return totalSummary;
+   }
+
+   private List<String> failureMessages(Data data) {
+      return this.failures.stream()
+            .filter(f -> f.phase().equals(data.phase) && (f.metric() == null || f.metric().equals(data.metric)))
+            .map(f -> f.message()).collect(Collectors.toList());
    }
 
    public List<CustomStats> customStats() {
       ArrayList<CustomStats> list = new ArrayList<>();
       for (Map<String, Data> m : this.data.values()) {
          for (Data data : m.values()) {
-            for (Map.Entry<Object, CustomValue> entry : data.total.custom.entrySet()) {
-               list.add(new CustomStats(data.phase, data.stepId, data.metric, entry.getKey().toString(), entry.getValue().toString()));
+            Map<String, String> values;
+            synchronized (data) {
+               values = customValues(data.total);
+            }
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+               list.add(new CustomStats(data.phase, data.stepId, data.metric, entry.getKey(), entry.getValue()));
             }
          }
       }
@@ -771,6 +1052,206 @@ public class StatisticsStore {
       return list;
    }
 
+   private Map<String, String> customValues(StatisticsSnapshot snapshot) {
+      Map<String, String> values = new LinkedHashMap<>();
+      for (Map.Entry<Object, CustomValue> entry : snapshot.custom.entrySet()) {
+         values.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+      }
+      CustomMetrics customMetrics = benchmark.customMetrics();
+      for (int i = 0; i < customMetrics.size(); ++i) {
+         if (customMetrics.kind(i) == CustomMetrics.Kind.HISTOGRAM) {
+            org.HdrHistogram.Histogram histogram = i < snapshot.customHistograms.length ? snapshot.customHistograms[i] : null;
+            if (histogram != null && histogram.getTotalCount() > 0) {
+               values.put(customMetrics.name(i), String.format("count=%d, min=%d, mean=%.2f, p99=%d, max=%d",
+                     histogram.getTotalCount(), histogram.getMinValue(), histogram.getMean(),
+                     histogram.getValueAtPercentile(99), histogram.getMaxValue()));
+            }
+         } else {
+            long value = snapshot.customValue(i);
+            if (value != 0) {
+               values.put(customMetrics.name(i), String.valueOf(value));
+            }
+         }
+      }
+      return values;
+   }
+
+   /**
+    * Writes totals of all metrics in OpenMetrics format. The output is produced in chunks (one per metric family)
+    * and the cost does not depend on the duration of the run.
+    *
+    * @param output Receives the chunks.
+    */
+   public void writeOpenMetrics(Consumer<String> output) {
+      Data[] all = this.data.values().stream().flatMap(m -> m.values().stream()).toArray(Data[]::new);
+      openMetricsCounter(output, all, "hyperfoil_requests", "Sent requests.", s -> s.requestCount);
+      openMetricsCounter(output, all, "hyperfoil_responses", "Received responses.", s -> s.responseCount);
+      openMetricsCounter(output, all, "hyperfoil_connect_failures", "Failures to open connection.", s -> s.connectFailureCount);
+      openMetricsCounter(output, all, "hyperfoil_resets", "Connections reset while waiting for response.", s -> s.resetCount);
+      openMetricsCounter(output, all, "hyperfoil_timeouts", "Requests that timed out.", s -> s.timeouts);
+      openMetricsCounter(output, all, "hyperfoil_invalid", "Responses marked as invalid.", s -> s.invalid);
+      openMetricsCounter(output, all, "hyperfoil_cache_hits", "Requests served from the cache.", s -> s.cacheHits);
+      openMetricsCounter(output, all, "hyperfoil_blocked", "Requests blocked waiting for a connection.", s -> s.blockedCount);
+
+      StringBuilder sb = new StringBuilder();
+      OpenMetrics.family(sb, "hyperfoil_status", "counter", "Responses by status class.");
+      for (Data data : all) {
+         synchronized (data) {
+            OpenMetrics.sample(sb, "hyperfoil_status_total", data.labels + ",status=\"2xx\"", data.total.status_2xx);
+            OpenMetrics.sample(sb, "hyperfoil_status_total", data.labels + ",status=\"3xx\"", data.total.status_3xx);
+            OpenMetrics.sample(sb, "hyperfoil_status_total", data.labels + ",status=\"4xx\"", data.total.status_4xx);
+            OpenMetrics.sample(sb, "hyperfoil_status_total", data.labels + ",status=\"5xx\"", data.total.status_5xx);
+            OpenMetrics.sample(sb, "hyperfoil_status_total", data.labels + ",status=\"other\"", data.total.status_other);
+         }
+      }
+      output.accept(sb.toString());
+
+      sb.setLength(0);
+      OpenMetrics.family(sb, "hyperfoil_response_time_seconds", "histogram", "Response times.");
+      sb.append("# UNIT hyperfoil_response_time_seconds seconds\n");
+      long[] buckets = new long[OPEN_METRICS_BUCKETS.length];
+      for (Data data : all) {
+         long count;
+         double mean;
+         Arrays.fill(buckets, 0);
+         synchronized (data) {
+            org.HdrHistogram.Histogram histogram = data.total.histogram;
+            // Iterating recorded values is cheaper than querying the count below each bucket boundary
+            for (HistogramIterationValue value : histogram.recordedValues()) {
+               long responseTime = value.getValueIteratedTo();
+               for (int i = 0; i < OPEN_METRICS_BUCKETS.length; ++i) {
+                  if (responseTime <= OPEN_METRICS_BUCKETS[i]) {
+                     buckets[i] += value.getCountAddedInThisIterationStep();
+                     break;
+                  }
+               }
+            }
+            count = histogram.getTotalCount();
+            mean = count == 0 ? 0 : histogram.getMean();
+         }
+         long cumulative = 0;
+         for (int i = 0; i < OPEN_METRICS_BUCKETS.length; ++i) {
+            cumulative += buckets[i];
+            OpenMetrics.sample(sb, "hyperfoil_response_time_seconds_bucket", data.labels + OPEN_METRICS_BUCKET_LABELS[i], cumulative);
+         }
+         OpenMetrics.sample(sb, "hyperfoil_response_time_seconds_bucket", data.labels + ",le=\"+Inf\"", count);
+         OpenMetrics.sample(sb, "hyperfoil_response_time_seconds_count", data.labels, count);
+         OpenMetrics.sample(sb, "hyperfoil_response_time_seconds_sum", data.labels, mean * count / 1_000_000_000.0);
+      }
+      output.accept(sb.toString());
+
+      openMetricsCustom(output, all);
+      openMetricsCustomHistograms(output, all);
+      if (!agentMetrics.isEmpty()) {
+         output.accept(openMetricsAgentMetrics());
+      }
+      output.accept(OpenMetrics.EOF);
+   }
+
+   private void openMetricsCustom(Consumer<String> output, Data[] all) {
+      CustomMetrics customMetrics = benchmark.customMetrics();
+      StringBuilder sb = OpenMetrics.family(new StringBuilder(), "hyperfoil_custom", "counter", "Custom metrics recorded by the benchmark.");
+      int familyLength = sb.length();
+      String[] customLabels = new String[customMetrics.size()];
+      for (int i = 0; i < customMetrics.size(); ++i) {
+         customLabels[i] = "," + OpenMetrics.label("custom", customMetrics.name(i));
+      }
+      for (Data data : all) {
+         synchronized (data) {
+            for (int i = 0; i < customMetrics.size(); ++i) {
+               if (customMetrics.kind(i) != CustomMetrics.Kind.HISTOGRAM) {
+                  OpenMetrics.sample(sb, "hyperfoil_custom_total", data.labels + customLabels[i], data.total.customValue(i));
+               }
+            }
+            // Values keyed by arbitrary objects are exported only when these are numeric
+            for (Map.Entry<Object, CustomValue> entry : data.total.custom.entrySet()) {
+               CustomValue value = entry.getValue();
+               long number;
+               if (value instanceof LongValue) {
+                  number = ((LongValue) value).value();
+               } else if (value instanceof IntValue) {
+                  number = ((IntValue) value).value();
+               } else {
+                  continue;
+               }
+               OpenMetrics.sample(sb, "hyperfoil_custom_total", data.labels + "," + OpenMetrics.label("custom", entry.getKey()), number);
+            }
+         }
+      }
+      if (sb.length() > familyLength) {
+         output.accept(sb.toString());
+      }
+   }
+
+   private void openMetricsCustomHistograms(Consumer<String> output, Data[] all) {
+      CustomMetrics customMetrics = benchmark.customMetrics();
+      StringBuilder sb = OpenMetrics.family(new StringBuilder(), "hyperfoil_custom_histogram", "summary",
+            "Custom histograms recorded by the benchmark; the unit is defined by the recorder.");
+      int familyLength = sb.length();
+      for (int i = 0; i < customMetrics.size(); ++i) {
+         if (customMetrics.kind(i) != CustomMetrics.Kind.HISTOGRAM) {
+            continue;
+         }
+         String customLabel = "," + OpenMetrics.label("custom", customMetrics.name(i));
+         for (Data data : all) {
+            synchronized (data) {
+               // The range of recorded values is not known upfront so we can't use fixed buckets as for response times
+               org.HdrHistogram.Histogram histogram = i < data.total.customHistograms.length ? data.total.customHistograms[i] : null;
+               if (histogram == null || histogram.getTotalCount() == 0) {
+                  continue;
+               }
+               String labels = data.labels + customLabel;
+               for (int j = 0; j < OPEN_METRICS_QUANTILES.length; ++j) {
+                  OpenMetrics.sample(sb, "hyperfoil_custom_histogram", labels + OPEN_METRICS_QUANTILE_LABELS[j],
+                        histogram.getValueAtPercentile(OPEN_METRICS_QUANTILES[j] * 100));
+               }
+               long count = histogram.getTotalCount();
+               OpenMetrics.sample(sb, "hyperfoil_custom_histogram_count", labels, count);
+               OpenMetrics.sample(sb, "hyperfoil_custom_histogram_sum", labels, histogram.getMean() * count);
+            }
+         }
+      }
+      if (sb.length() > familyLength) {
+         output.accept(sb.toString());
+      }
+   }
+
+   private String openMetricsAgentMetrics() {
+      StringBuilder lag = OpenMetrics.family(new StringBuilder(), "hyperfoil_agent_scheduling_lag_seconds", "gauge",
+            "Maximum delay of tasks scheduled on agent event loop in last collection period.");
+      StringBuilder busy = OpenMetrics.family(new StringBuilder(), "hyperfoil_agent_busy_ratio", "gauge",
+            "Ratio of CPU time used by agent event loop in last collection period.");
+      StringBuilder arrival = OpenMetrics.family(new StringBuilder(), "hyperfoil_agent_arrival_lag_seconds", "gauge",
+            "Maximum delay of new users arrivals in last collection period.");
+      for (Map.Entry<String, AgentMetricsSeries> entry : agentMetrics.entrySet()) {
+         AgentMetrics last = entry.getValue().last;
+         String agentLabel = OpenMetrics.label("agent", entry.getKey());
+         for (int i = 0; i < last.maxLag.length; ++i) {
+            String labels = agentLabel + "," + OpenMetrics.label("executor", i);
+            OpenMetrics.sample(lag, "hyperfoil_agent_scheduling_lag_seconds", labels, last.maxLag[i] / 1_000_000.0);
+            if (last.busyRatio[i] >= 0) {
+               OpenMetrics.sample(busy, "hyperfoil_agent_busy_ratio", labels, last.busyRatio[i]);
+            }
+         }
+         OpenMetrics.sample(arrival, "hyperfoil_agent_arrival_lag_seconds", agentLabel, last.maxArrivalLag / 1_000_000.0);
+      }
+      return lag.append(busy).append(arrival).toString();
+   }
+
+   private void openMetricsCounter(Consumer<String> output, Data[] all, String name, String help, ToLongFunction<StatisticsSnapshot> selector) {
+      StringBuilder sb = new StringBuilder();
+      OpenMetrics.family(sb, name, "counter", help);
+      String sampleName = name + "_total";
+      for (Data data : all) {
+         long value;
+         synchronized (data) {
+            value = selector.applyAsLong(data.total);
+         }
+         OpenMetrics.sample(sb, sampleName, data.labels, value);
+      }
+      output.accept(sb.toString());
+   }
+
    public Histogram histogram(String phase, int stepId, String metric) {
       int phaseId = benchmark.phases().stream().filter(p -> p.name.equals(phase)).mapToInt(p -> p.id).findFirst().orElse(-1);
       Map<String, Data> phaseStepData = data.get((phaseId << 16) + stepId);
@@ -781,12 +1262,28 @@ public class StatisticsStore {
       if (data == null) {
          return null;
       }
-      return HistogramConverter.convert(phase, metric, data.total.histogram);
+      synchronized (data) {
+         return HistogramConverter.convert(phase, metric, data.total.histogram);
+      }
    }
 
    public void recordSessionStats(String address, long timestamp, String phase, int minSessions, int maxSessions) {
       SessionPoolStats sps = this.sessionPoolStats.computeIfAbsent(phase, p -> new SessionPoolStats());
       sps.records.computeIfAbsent(address, a -> new ArrayList<>()).add(new SessionPoolRecord(timestamp, minSessions, maxSessions));
+      journal(j -> j.writeSessionStats(address, timestamp, phase, minSessions, maxSessions));
+   }
+
+   public void recordAgentMetrics(String address, AgentMetrics metrics) {
+      agentMetrics.computeIfAbsent(address, a -> new AgentMetricsSeries()).add(metrics);
+   }
+
+   /**
+    * @param address Agent address.
+    * @return Metrics of the agent; after {@link #MAX_AGENT_METRICS} samples the adjacent samples are merged.
+    */
+   public List<AgentMetrics> agentMetrics(String address) {
+      AgentMetricsSeries series = agentMetrics.get(address);
+      return series == null ? Collections.emptyList() : Collections.unmodifiableList(series.samples);
    }
 
    public Map<String, Map<String, LowHigh>> recentSessionPoolSummary(long minValidTimestamp) {
@@ -825,7 +1322,7 @@ public class StatisticsStore {
       return result;
    }
 
-   private static final class Window {
+   static final class Window {
       private final StatisticsSnapshot[] ring;
       private final StatisticsSnapshot sum = new StatisticsSnapshot();
       private int ptr = 0;
@@ -857,29 +1354,54 @@ public class StatisticsStore {
       private final String phase;
       private final int stepId;
       private final String metric;
+      private final int shardKey;
+      private final String labels;
+      private final HistogramConfig histogramConfig;
       // for reporting
-      private final StatisticsSnapshot total = new StatisticsSnapshot();
+      private final StatisticsSnapshot total;
       private final Map<String, StatisticsSnapshot> perAgent = new HashMap<>();
       private final Map<String, IntObjectMap<StatisticsSnapshot>> lastStats = new HashMap<>();
-      private final List<StatisticsSummary> series = new ArrayList<>();
-      private final Map<String, List<StatisticsSummary>> agentSeries = new HashMap<>();
+      private final SampledSeries series;
+      private final Map<String, SampledSeries> agentSeries = new HashMap<>();
+      private final int mergeDelay;
+      private final int samplesPerCoarse;
       // floating statistics for SLAs
       private final Map<SLA, Window> windowSlas;
       private final SLA[] totalSlas;
       private int highestSequenceId = 0;
-      private boolean completed;
-
-      private Data(String phase, int stepId, String metric, Map<SLA, Window> periodSlas, SLA[] totalSlas) {
+      private volatile boolean completed;
+      private volatile Path persistedTo;
+      private boolean publishPending;
+      // summaries computed by the shard, read by the event loop
+      private volatile StatisticsSummary publishedRecent;
+      private volatile StatisticsSummary publishedTotal;
+      // cached summaries, recomputed only after the shard publishes new data
+      private RequestStats recentStats;
+      private StatisticsSummary recentStatsSummary;
+      private int recentStatsFailures = -1;
+      private RequestStats totalStats;
+      private StatisticsSummary totalStatsSummary;
+      private int totalStatsFailures = -1;
+
+      private Data(String phase, int stepId, String metric, int shardKey, Map<SLA, Window> periodSlas, SLA[] totalSlas) {
          this.phase = phase;
          this.stepId = stepId;
          this.metric = metric;
+         this.shardKey = shardKey;
+         this.labels = OpenMetrics.label("phase", phase) + "," + OpenMetrics.label("metric", metric) + "," + OpenMetrics.label("step", stepId);
+         this.histogramConfig = benchmark.statistics().histogram(metric);
+         this.total = new StatisticsSnapshot(histogramConfig);
+         this.series = newSeries(null);
+         this.mergeDelay = (int) Math.max(MERGE_DELAY, MIN_MERGE_DELAY_MILLIS / benchmark.statistics().samplingPeriod());
+         this.samplesPerCoarse = benchmark.statistics().samplesPerCoarsePeriod();
          this.windowSlas = periodSlas;
          this.totalSlas = totalSlas;
+         this.publishedTotal = total.summary(percentiles);
       }
 
-      private void record(String address, StatisticsSnapshot stats) {
+      private synchronized void record(String address, StatisticsSnapshot stats) {
          stats.addInto(total);
-         stats.addInto(perAgent.computeIfAbsent(address, a -> new StatisticsSnapshot()));
+         stats.addInto(perAgent.computeIfAbsent(address, a -> new StatisticsSnapshot(histogramConfig)));
          IntObjectMap<StatisticsSnapshot> partialSnapshots = lastStats.computeIfAbsent(address, a -> new IntObjectHashMap<>());
          StatisticsSnapshot partialSnapshot = partialSnapshots.get(stats.sequenceId);
          if (partialSnapshot == null) {
@@ -889,12 +1411,49 @@ public class StatisticsStore {
          }
          while (stats.sequenceId > highestSequenceId) {
             ++highestSequenceId;
-            int mergedSequenceId = highestSequenceId - MERGE_DELAY;
+            int mergedSequenceId = highestSequenceId - mergeDelay;
             if (mergedSequenceId < 0) {
                continue;
             }
             mergeSnapshots(mergedSequenceId);
          }
+         if (!publishPending) {
+            publishPending = true;
+            // Computing percentiles is costly; when agents send many snapshots we publish only once they are merged
+            if (shards.size() == 0) {
+               unpublished.add(this);
+            } else {
+               StatisticsShards.defer(this::publish);
+            }
+         }
+      }
+
+      private synchronized void publish() {
+         publishPending = false;
+         OptionalInt lastSequenceId = lastStats.values().stream()
+               .flatMapToInt(map -> map.keySet().stream().mapToInt(Integer::intValue)).max();
+         StatisticsSummary recent = null;
+         if (lastSequenceId.isPresent()) {
+            // We'll use one id before the last one since the last one is likely not completed yet;
+            // with sub-second sampling we sum all samples in the last second to report comparable numbers
+            int penultimateId = lastSequenceId.getAsInt() - 1;
+            StatisticsSnapshot sum = new StatisticsSnapshot();
+            for (int id = Math.max(0, penultimateId - samplesPerCoarse + 1); id <= penultimateId; ++id) {
+               for (IntObjectMap<StatisticsSnapshot> map : lastStats.values()) {
+                  StatisticsSnapshot snapshot = map.get(id);
+                  if (snapshot != null) {
+                     snapshot.addInto(sum);
+                  }
+               }
+            }
+            if (!sum.isEmpty()) {
+               recent = sum.summary(PERCENTILES);
+            }
+         }
+         publishedRecent = recent;
+         publishedTotal = total.summary(percentiles);
+         // Bump the version only after the summaries are visible
+         version.incrementAndGet();
       }
 
       private void mergeSnapshots(int sequenceId) {
@@ -903,11 +1462,16 @@ public class StatisticsStore {
             StatisticsSnapshot snapshot = entry.getValue().remove(sequenceId);
             if (snapshot != null) {
                snapshot.addInto(sum);
-               agentSeries.computeIfAbsent(entry.getKey(), a -> new ArrayList<>()).add(snapshot.summary(percentiles));
+               StatisticsSummary stored = agentSeries.computeIfAbsent(entry.getKey(), this::newSeries)
+                     .add(sequenceId, snapshot, snapshot.summary(percentiles));
+               journalSeries(entry.getKey(), stored);
             }
          }
          if (!sum.isEmpty()) {
-            series.add(sum.summary(percentiles));
+            journalSeries(null, series.add(sequenceId, sum, sum.summary(percentiles)));
+            if (sum.histogram.getTotalCount() > 0) {
+               writeHistogram(seriesName(null), sum.histogram);
+            }
          }
          for (Map.Entry<SLA, Window> entry : windowSlas.entrySet()) {
             SLA sla = entry.getKey();
@@ -920,34 +1484,149 @@ public class StatisticsStore {
             if (window.isFull() && failure != null) {
                if (failures.size() < maxFailures) {
                   failures.add(failure);
+                  journal(j -> j.writeFailure(failure));
                }
                failureHandler.accept(failure);
             }
          }
       }
 
-      void completePhase() {
-         for (int i = Math.max(0, highestSequenceId - MERGE_DELAY); i <= highestSequenceId; ++i) {
+      synchronized void completePhase() {
+         for (int i = Math.max(0, highestSequenceId - mergeDelay); i <= highestSequenceId; ++i) {
             mergeSnapshots(i);
          }
+         journalSeries(null, series.completeAndRelease());
+         for (Map.Entry<String, SampledSeries> entry : agentSeries.entrySet()) {
+            journalSeries(entry.getKey(), entry.getValue().completeAndRelease());
+         }
          // Just sanity checks
-         if (series.stream().mapToLong(ss -> ss.requestCount).sum() != total.requestCount) {
+         if (series.coarseRequestCount() != total.requestCount) {
             log.error("We lost some data (series) in phase {} metric {}", phase, metric);
          }
-         if (agentSeries.values().stream().flatMap(List::stream).mapToLong(ss -> ss.requestCount).sum() != total.requestCount) {
+         if (agentSeries.values().stream().mapToLong(SampledSeries::coarseRequestCount).sum() != total.requestCount) {
             log.error("We lost some data (agent series) in phase {} metric {}", phase, metric);
          }
          if (perAgent.values().stream().mapToLong(ss -> ss.requestCount).sum() != total.requestCount) {
             log.error("We lost some data (per agent) in phase {} metric {}", phase, metric);
          }
+         if (total.histogramOverflows > 0) {
+            log.warn("{} responses in phase {} metric {} exceeded histogram range ({}) and were clamped",
+                  total.histogramOverflows, phase, metric, histogramConfig);
+         }
          for (SLA sla : totalSlas) {
             SLA.Failure failure = sla.validate(phase, metric, total);
             if (failure != null) {
                failures.add(failure);
+               journal(j -> j.writeFailure(failure));
                failureHandler.accept(failure);
             }
          }
          completed = true;
+         journal(j -> {
+            j.writeTotal(phase, stepId, metric, null, total);
+            for (Map.Entry<String, StatisticsSnapshot> entry : perAgent.entrySet()) {
+               j.writeTotal(phase, stepId, metric, entry.getKey(), entry.getValue());
+            }
+            j.sync();
+         });
+         flushHistogramLog();
+         publish();
+         Path dir = persistDir;
+         if (dir != null) {
+            try {
+               Files.createDirectories(dir);
+               persistHistogramsAndSeries(dir, this);
+               persistedTo = dir;
+            } catch (IOException e) {
+               log.error("Failed to persist statistics of phase {} metric {}, these will be written at the end of run", e, phase, metric);
+            }
+         }
+      }
+
+      private RequestStats recentStats() {
+         StatisticsSummary summary = publishedRecent;
+         if (recentStatsSummary != summary || recentStatsFailures != failures.size()) {
+            recentStatsSummary = summary;
+            recentStatsFailures = failures.size();
+            recentStats = summary == null ? null : new RequestStats(phase, stepId, metric, summary, failureMessages(this));
+         }
+         return recentStats;
+      }
+
+      private RequestStats totalStats() {
+         StatisticsSummary summary = publishedTotal;
+         if (totalStatsSummary != summary || totalStatsFailures != failures.size()) {
+            totalStatsSummary = summary;
+            totalStatsFailures = failures.size();
+            totalStats = new RequestStats(phase, stepId, metric, summary, failureMessages(this));
+         }
+         return totalStats;
+      }
+
+      private void journalSeries(String agent, StatisticsSummary summary) {
+         if (summary != null) {
+            journal(j -> j.writeSeries(phase, stepId, metric, agent, summary));
+         }
+      }
+
+      private SampledSeries newSeries(String agent) {
+         return new SampledSeries(seriesStorage.newSeries(seriesName(agent), percentiles), percentiles, histogramConfig, benchmark.statistics());
+      }
+
+      private String seriesName(String agent) {
+         String name = phase + "." + metric + "." + stepId;
+         return agent == null ? name : name + ".agent." + agent;
+      }
+   }
+
+   private interface JournalAction {
+      void write(StatisticsJournal journal) throws IOException;
+   }
+
+   private final class Replay implements StatisticsJournal.Visitor {
+      private Data data(String phase, int stepId, String metric) {
+         int phaseId = benchmark.phases().stream().filter(p -> p.name().equals(phase)).mapToInt(p -> p.id()).findFirst().orElse(-1);
+         if (phaseId < 0) {
+            log.warn("Journal refers to unknown phase {}", phase);
+            return null;
+         }
+         return StatisticsStore.this.data(phaseId, stepId, metric);
+      }
+
+      @Override
+      public void series(String phase, int stepId, String metric, String agent, StatisticsSummary summary) {
+         Data data = data(phase, stepId, metric);
+         if (data == null) {
+            return;
+         } else if (agent == null) {
+            data.series.addCoarse(summary);
+         } else {
+            data.agentSeries.computeIfAbsent(agent, data::newSeries).addCoarse(summary);
+         }
+      }
+
+      @Override
+      public void total(String phase, int stepId, String metric, String agent, StatisticsSnapshot total) {
+         Data data = data(phase, stepId, metric);
+         if (data == null) {
+            return;
+         } else if (agent == null) {
+            total.addInto(data.total);
+            data.completed = true;
+            data.publish();
+         } else {
+            total.addInto(data.perAgent.computeIfAbsent(agent, a -> new StatisticsSnapshot(data.histogramConfig)));
+         }
+      }
+
+      @Override
+      public void failure(String phase, String metric, long startTimestamp, long endTimestamp, String message) {
+         addFailure(phase, metric, startTimestamp, endTimestamp, message);
+      }
+
+      @Override
+      public void sessionStats(String address, long timestamp, String phase, int minSessions, int maxSessions) {
+         recordSessionStats(address, timestamp, phase, minSessions, maxSessions);
       }
    }
 
@@ -973,6 +1652,42 @@ public class StatisticsStore {
       }
    }
 
+   /**
+    * Keeps at most {@link #MAX_AGENT_METRICS} samples; when the limit is exceeded the pairs of adjacent samples
+    * are merged and further samples are merged into the last one until it spans the same number of collection periods.
+    */
+   private static class AgentMetricsSeries {
+      final List<AgentMetrics> samples = new ArrayList<>();
+      // Latest metrics as received from the agent
+      AgentMetrics last;
+      // Number of collection periods in each sample (but the last one)
+      int span = 1;
+      // Number of collection periods in the last sample
+      int lastSpan;
+
+      void add(AgentMetrics metrics) {
+         last = metrics;
+         if (lastSpan > 0 && lastSpan < span) {
+            samples.set(samples.size() - 1, samples.get(samples.size() - 1).merge(metrics));
+            ++lastSpan;
+            return;
+         }
+         samples.add(metrics);
+         lastSpan = 1;
+         if (samples.size() > MAX_AGENT_METRICS) {
+            // The limit is even so all but the newly added sample form pairs
+            List<AgentMetrics> merged = new ArrayList<>(MAX_AGENT_METRICS / 2 + 1);
+            for (int i = 0; i + 1 < samples.size(); i += 2) {
+               merged.add(samples.get(i).merge(samples.get(i + 1)));
+            }
+            merged.add(metrics);
+            samples.clear();
+            samples.addAll(merged);
+            span *= 2;
+         }
+      }
+   }
+
    private static class SessionPoolRecord extends LowHigh {
       final long timestamp;
 
@@ -59,6 +59,8 @@ public class BenchmarkParser extends AbstractMappingParser<BenchmarkBuilder> {
       register("phases", new PhasesParser());
       register("threads", new PropertyParser.Int<>(BenchmarkBuilder::threads));
       register("statisticsCollectionPeriod", new PropertyParser.Int<>(BenchmarkBuilder::statisticsCollectionPeriod));
+      register("statistics", new StatisticsParser());
+      register("elastic", new ElasticParser());
       // simplified single-phase definition
       register("usersPerSec", new PropertyParser.Double<>((bb, value) -> bb.singleConstantPerSecPhase().usersPerSec(value)));
       register("duration", new PropertyParser.String<>((bb, value) -> bb.singleConstantPerSecPhase().duration(value)));
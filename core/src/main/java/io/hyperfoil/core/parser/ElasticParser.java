@@ -0,0 +1,20 @@
+package io.hyperfoil.core.parser;
+
+import io.hyperfoil.api.config.BenchmarkBuilder;
+import io.hyperfoil.api.config.ElasticConfigBuilder;
+
+class ElasticParser extends AbstractParser<BenchmarkBuilder, ElasticConfigBuilder> {
+   ElasticParser() {
+      register("maxAgents", new PropertyParser.Int<>(ElasticConfigBuilder::maxAgents));
+      register("maxSchedulingLag", new PropertyParser.String<>(ElasticConfigBuilder::maxSchedulingLag));
+      register("maxBusyRatio", new PropertyParser.Double<>(ElasticConfigBuilder::maxBusyRatio));
+      register("saturatedSamples", new PropertyParser.Int<>(ElasticConfigBuilder::saturatedSamples));
+      register("cooldown", new PropertyParser.String<>(ElasticConfigBuilder::cooldown));
+      register("minRemainingDuration", new PropertyParser.String<>(ElasticConfigBuilder::minRemainingDuration));
+   }
+
+   @Override
+   public void parse(Context ctx, BenchmarkBuilder target) throws ParserException {
+      callSubBuilders(ctx, target.elastic());
+   }
+}
@@ -0,0 +1,34 @@
+package io.hyperfoil.core.parser;
+
+import io.hyperfoil.api.config.BenchmarkBuilder;
+import io.hyperfoil.api.config.HistogramConfigBuilder;
+import io.hyperfoil.api.config.StatisticsConfigBuilder;
+
+class StatisticsParser extends AbstractParser<BenchmarkBuilder, StatisticsConfigBuilder> {
+   private static final HistogramParser HISTOGRAM_PARSER = new HistogramParser();
+
+   StatisticsParser() {
+      register("histogram", (ctx, builder) -> HISTOGRAM_PARSER.parse(ctx, builder.histogram()));
+      register("metrics", StatisticsParser::parseMetrics);
+      register("maxSchedulingLag", new PropertyParser.String<>(StatisticsConfigBuilder::maxSchedulingLag));
+      register("samplingPeriod", new PropertyParser.String<>(StatisticsConfigBuilder::samplingPeriod));
+      register("fineRetention", new PropertyParser.String<>(StatisticsConfigBuilder::fineRetention));
+   }
+
+   @Override
+   public void parse(Context ctx, BenchmarkBuilder target) throws ParserException {
+      callSubBuilders(ctx, target.statistics());
+   }
+
+   private static void parseMetrics(Context ctx, StatisticsConfigBuilder builder) throws ParserException {
+      ctx.parseMapping(builder, event -> (ctx1, b) -> HISTOGRAM_PARSER.parse(ctx1, b.metric(event.getValue())));
+   }
+
+   private static class HistogramParser extends AbstractMappingParser<HistogramConfigBuilder> {
+      HistogramParser() {
+         register("range", new PropertyParser.String<>(HistogramConfigBuilder::range));
+         register("significantDigits", new PropertyParser.Int<>(HistogramConfigBuilder::significantDigits));
+         register("autoResize", new PropertyParser.Boolean<>(HistogramConfigBuilder::autoResize));
+      }
+   }
+}
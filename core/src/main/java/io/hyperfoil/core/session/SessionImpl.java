@@ -26,6 +26,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 
 class SessionImpl implements Session, Callable<Void> {
    private static final Logger log = LoggerFactory.getLogger(SessionImpl.class);
@@ -344,6 +345,16 @@ class SessionImpl implements Session, Callable<Void> {
       return currentSequence;
    }
 
+   @Override
+   public void visitRunningSequences(Consumer<SequenceInstance> consumer) {
+      for (int i = 0; i <= lastRunningSequence; ++i) {
+         SequenceInstance instance = runningSequences[i];
+         if (instance != null) {
+            consumer.accept(instance);
+         }
+      }
+   }
+
    @Override
    public void attach(EventExecutor executor, SharedData sharedData, HttpDestinationTable httpDestinations, SessionStatistics statistics) {
       assert this.executor == null;
@@ -336,7 +336,7 @@ public class HttpResponseHandlersImpl implements HttpResponseHandlers, ResourceU
       }
 
       public Builder rawBytes(RawBytesHandler.Builder builder) {
-         rawBytesHandlers.add(builder);
+         rawBytesHandlers.add(builder.setLocator(locator));
          return this;
       }
 
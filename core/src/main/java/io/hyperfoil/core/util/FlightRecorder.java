@@ -0,0 +1,86 @@
+package io.hyperfoil.core.util;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+
+import javax.management.JMException;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Controls JDK Flight Recorder recordings through the diagnostic command MBean (same as <code>jcmd JFR.start</code>).
+ * This way we don't depend on <code>jdk.jfr</code> API which is not available in all JVMs we run on.
+ * All methods are blocking.
+ */
+public final class FlightRecorder {
+   private static final Logger log = LoggerFactory.getLogger(FlightRecorder.class);
+   private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+   private static final String[] SIGNATURE = { String[].class.getName() };
+
+   private FlightRecorder() {}
+
+   public static boolean isAvailable() {
+      try {
+         for (MBeanOperationInfo operation : server().getMBeanInfo(new ObjectName(DIAGNOSTIC_COMMAND)).getOperations()) {
+            if ("jfrStart".equals(operation.getName())) {
+               return true;
+            }
+         }
+      } catch (JMException | RuntimeException e) {
+         log.debug("Diagnostic commands are not available", e);
+      }
+      return false;
+   }
+
+   /**
+    * @param name Name of the recording; characters not allowed by JFR are replaced.
+    * @return True if the recording was started.
+    */
+   public static boolean start(String name) {
+      return invoke("jfrStart", "name=" + recordingName(name), "settings=profile");
+   }
+
+   /**
+    * @param name Name of the recording passed to {@link #start(String)}.
+    * @param file Destination for the recorded data.
+    * @return True if the recording was stopped and written to the file.
+    */
+   public static boolean stop(String name, Path file) {
+      return invoke("jfrStop", "name=" + recordingName(name), "filename=" + file.toAbsolutePath());
+   }
+
+   /**
+    * @return Description of recordings in this JVM (same as <code>jcmd JFR.check</code>) or <code>null</code>.
+    */
+   public static String recordings() {
+      try {
+         return String.valueOf(server().invoke(new ObjectName(DIAGNOSTIC_COMMAND), "jfrCheck", new Object[]{ new String[0] }, SIGNATURE));
+      } catch (JMException | RuntimeException e) {
+         log.error("Failed to list recordings", e);
+         return null;
+      }
+   }
+
+   private static boolean invoke(String operation, String... args) {
+      try {
+         Object result = server().invoke(new ObjectName(DIAGNOSTIC_COMMAND), operation, new Object[]{ args }, SIGNATURE);
+         log.debug("{} {}: {}", operation, String.join(" ", args), result);
+         return true;
+      } catch (JMException | RuntimeException e) {
+         log.error("Failed to execute {} {}", e, operation, String.join(" ", args));
+         return false;
+      }
+   }
+
+   private static String recordingName(String name) {
+      return name.replaceAll("[^a-zA-Z0-9_.-]", "_");
+   }
+
+   private static MBeanServer server() {
+      return ManagementFactory.getPlatformMBeanServer();
+   }
+}
@@ -0,0 +1,62 @@
+package io.hyperfoil.core.util;
+
+/**
+ * Helpers for the <a href="https://openmetrics.io">OpenMetrics</a> text exposition format.
+ */
+public final class OpenMetrics {
+   public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+   public static final String EOF = "# EOF\n";
+
+   private OpenMetrics() {}
+
+   /**
+    * Renders single label; label sets should be rendered once and reused for all samples.
+    *
+    * @param name Label name.
+    * @param value Label value, escaped as needed.
+    * @return Rendered label.
+    */
+   public static String label(String name, Object value) {
+      String string = String.valueOf(value);
+      StringBuilder sb = new StringBuilder(name.length() + string.length() + 3).append(name).append("=\"");
+      for (int i = 0; i < string.length(); ++i) {
+         char c = string.charAt(i);
+         switch (c) {
+            case '\\':
+               sb.append("\\\\");
+               break;
+            case '"':
+               sb.append("\\\"");
+               break;
+            case '\n':
+               sb.append("\\n");
+               break;
+            default:
+               sb.append(c);
+         }
+      }
+      return sb.append('"').toString();
+   }
+
+   public static StringBuilder family(StringBuilder sb, String name, String type, String help) {
+      sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+      sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+      return sb;
+   }
+
+   public static StringBuilder sample(StringBuilder sb, String name, String labels, long value) {
+      sb.append(name);
+      if (labels != null && !labels.isEmpty()) {
+         sb.append('{').append(labels).append('}');
+      }
+      return sb.append(' ').append(value).append('\n');
+   }
+
+   public static StringBuilder sample(StringBuilder sb, String name, String labels, double value) {
+      sb.append(name);
+      if (labels != null && !labels.isEmpty()) {
+         sb.append('{').append(labels).append('}');
+      }
+      return sb.append(' ').append(value).append('\n');
+   }
+}
@@ -19,6 +19,8 @@
 package io.hyperfoil.core.builder;
 
 import io.hyperfoil.api.config.Benchmark;
+import io.hyperfoil.api.config.ElasticConfig;
+import io.hyperfoil.api.config.HistogramConfig;
 import io.hyperfoil.api.config.Phase;
 import io.hyperfoil.api.config.Sequence;
 import io.hyperfoil.api.config.Step;
@@ -43,6 +45,7 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -193,6 +196,37 @@ public class YamlParserTest {
       assertThat(benchmark.phases().size()).isEqualTo(10 + 1 /* one noop */);
    }
 
+   @Test
+   public void testStatistics() {
+      Benchmark benchmark = buildBenchmark("scenarios/statistics.hf.yaml");
+      HistogramConfig defaultHistogram = benchmark.statistics().histogram();
+      assertThat(defaultHistogram.highestTrackableValue()).isEqualTo(TimeUnit.SECONDS.toNanos(10));
+      assertThat(defaultHistogram.significantDigits()).isEqualTo(3);
+      HistogramConfig slow = benchmark.statistics().histogram("slow");
+      assertThat(slow.highestTrackableValue()).isEqualTo(TimeUnit.MINUTES.toNanos(10));
+      assertThat(slow.significantDigits()).isEqualTo(3);
+      assertThat(benchmark.statistics().histogram("growing").autoResize()).isTrue();
+      assertThat(benchmark.statistics().histogram("other")).isSameAs(defaultHistogram);
+      assertThat(benchmark.statistics().maxSchedulingLag()).isEqualTo(50);
+      assertThat(benchmark.statistics().samplingPeriod()).isEqualTo(100);
+      assertThat(benchmark.statistics().samplesPerCoarsePeriod()).isEqualTo(10);
+      assertThat(benchmark.statistics().fineRetention()).isEqualTo(TimeUnit.MINUTES.toMillis(5));
+   }
+
+   @Test
+   public void testElastic() {
+      Benchmark benchmark = buildBenchmark("scenarios/elastic.hf.yaml");
+      ElasticConfig elastic = benchmark.elastic();
+      assertThat(elastic.isEnabled(benchmark.agents().length)).isTrue();
+      assertThat(elastic.maxAgents()).isEqualTo(4);
+      assertThat(elastic.maxSchedulingLag()).isEqualTo(30);
+      assertThat(elastic.maxBusyRatio()).isEqualTo(0.8);
+      assertThat(elastic.saturatedSamples()).isEqualTo(5);
+      assertThat(elastic.cooldown()).isEqualTo(TimeUnit.SECONDS.toMillis(20));
+      assertThat(elastic.minRemainingDuration()).isEqualTo(TimeUnit.SECONDS.toMillis(10));
+      assertThat(buildBenchmark("scenarios/statistics.hf.yaml").elastic().isEnabled(0)).isFalse();
+   }
+
    private <T extends Step> T next(Class<T> stepClass, Iterator<Step> iterator) {
       while (iterator.hasNext()) {
          Step step = iterator.next();
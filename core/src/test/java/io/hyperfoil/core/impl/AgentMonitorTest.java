@@ -0,0 +1,77 @@
+package io.hyperfoil.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
+
+public class AgentMonitorTest {
+   @Test
+   public void blockedExecutorIsLagging() throws InterruptedException {
+      DefaultEventExecutor executor = new DefaultEventExecutor();
+      AgentMonitor monitor = new AgentMonitor(new EventExecutor[]{ executor });
+      try {
+         monitor.start();
+         // Let the probe run a few times without any lag
+         Thread.sleep(50);
+         monitor.sample();
+
+         CountDownLatch blocked = new CountDownLatch(1);
+         executor.execute(() -> {
+            try {
+               Thread.sleep(200);
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+            blocked.countDown();
+         });
+         assertTrue(blocked.await(10, TimeUnit.SECONDS));
+         // Wait for the probe to run after the blocking task
+         Thread.sleep(50);
+         monitor.recordArrivalLag(30);
+         AgentMetrics metrics = monitor.sample();
+         assertEquals(1, metrics.maxLag.length);
+         assertTrue(String.valueOf(metrics.maxLag[0]), metrics.maxLag[0] >= TimeUnit.MILLISECONDS.toMicros(150));
+         assertTrue(metrics.meanLag[0] <= metrics.maxLag[0]);
+         assertEquals(TimeUnit.MILLISECONDS.toMicros(30), metrics.maxArrivalLag);
+         assertEquals(metrics.maxLag[0], metrics.maxSchedulingLag());
+         assertTrue(metrics.endTime >= metrics.startTime);
+         assertTrue(metrics.busyRatio[0] <= 1.0);
+
+         // Sampling resets the counters
+         AgentMetrics next = monitor.sample();
+         assertEquals(0, next.maxArrivalLag);
+         assertTrue(next.maxLag[0] < TimeUnit.MILLISECONDS.toMicros(150));
+         assertEquals(metrics.endTime, next.startTime);
+      } finally {
+         monitor.stop();
+         executor.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+      }
+   }
+
+   @Test
+   public void merge() {
+      AgentMetrics first = new AgentMetrics(0, 1000, new int[]{ 5 }, new long[]{ 100 }, new long[]{ 1000 },
+            new double[]{ 0.2 }, new long[]{ -1 }, 10, 500);
+      AgentMetrics second = new AgentMetrics(1000, 4000, new int[]{ 2 }, new long[]{ 300 }, new long[]{ 800 },
+            new double[]{ 0.6 }, new long[]{ 2048 }, 20, 100);
+      AgentMetrics merged = first.merge(second);
+      assertEquals(0, merged.startTime);
+      assertEquals(4000, merged.endTime);
+      assertEquals(5, merged.maxPendingTasks[0]);
+      // weighted by duration
+      assertEquals(250, merged.meanLag[0]);
+      assertEquals(1000, merged.maxLag[0]);
+      assertEquals(0.5, merged.busyRatio[0], 0.0001);
+      // unknown in the first period
+      assertEquals(2048, merged.allocationRate[0]);
+      assertEquals(30, merged.gcPauseTime);
+      assertEquals(500, merged.maxArrivalLag);
+   }
+}
@@ -0,0 +1,77 @@
+package io.hyperfoil.core.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class DataFileMapTest {
+   private static final byte[] CONTENT = "foo,bar\n".getBytes(StandardCharsets.UTF_8);
+
+   @Test
+   public void readsContentOnDemand() throws IOException {
+      Path file = Files.createTempFile("data", ".csv");
+      try {
+         DataFileMap files = new DataFileMap(Collections.singletonMap("data.csv", file));
+         assertEquals(Collections.singleton("data.csv"), files.keySet());
+         assertEquals(file, files.path("data.csv"));
+         // The file can change until the content is requested
+         Files.write(file, CONTENT);
+         assertArrayEquals(CONTENT, files.get("data.csv"));
+         assertNull(files.get("other.csv"));
+      } finally {
+         Files.delete(file);
+      }
+   }
+
+   @Test
+   public void relocate() throws IOException {
+      Path upload = Files.createTempFile("upload", ".csv");
+      Path persisted = Files.createTempFile("persisted", ".csv");
+      try {
+         Files.write(persisted, CONTENT);
+         DataFileMap files = new DataFileMap(Collections.singletonMap("data.csv", upload));
+         files.relocate(Collections.singletonMap("data.csv", persisted));
+         // The original file is not needed anymore
+         Files.delete(upload);
+         assertEquals(persisted, files.path("data.csv"));
+         assertArrayEquals(CONTENT, files.get("data.csv"));
+      } finally {
+         Files.deleteIfExists(upload);
+         Files.delete(persisted);
+      }
+   }
+
+   @Test
+   @SuppressWarnings("unchecked")
+   public void deserializedAsPlainMap() throws IOException, ClassNotFoundException {
+      Path file = Files.createTempFile("data", ".csv");
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try {
+         Files.write(file, CONTENT);
+         try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(new DataFileMap(Collections.singletonMap("data.csv", file)));
+         }
+      } finally {
+         Files.delete(file);
+      }
+      try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+         Map<String, byte[]> files = (Map<String, byte[]>) input.readObject();
+         assertFalse(files instanceof DataFileMap);
+         assertArrayEquals(CONTENT, files.get("data.csv"));
+      }
+   }
+}
@@ -0,0 +1,60 @@
+package io.hyperfoil.core.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import io.hyperfoil.api.config.Phase;
+import io.hyperfoil.api.config.Scenario;
+import io.hyperfoil.api.config.Sequence;
+
+public class OpenModelPhaseRateFactorTest {
+   private static final Scenario SCENARIO = new Scenario(new Sequence[0], new Sequence[0], new String[0], new String[0]);
+
+   @Test
+   public void constantRateIsScaledFromRebase() {
+      PhaseInstanceImpl.ConstantPerSec instance = new PhaseInstanceImpl.ConstantPerSec(constantPerSec(100));
+      assertEquals(100, instance.nextSessionMetronome(1000));
+      instance.startedOrThrottledUsers = 100;
+      instance.setRateFactor(0.5);
+      instance.rebase(1000);
+      assertEquals(100, instance.nextSessionMetronome(1000));
+      assertEquals(150, instance.nextSessionMetronome(2000));
+      instance.startedOrThrottledUsers = 150;
+      instance.nextSessionMetronome(2000);
+      // Next user is due after 20 ms (rounded up)
+      assertEquals(2021, instance.nextScheduled, 0.001);
+   }
+
+   @Test
+   public void joiningAgentDoesNotCatchUp() {
+      PhaseInstanceImpl.ConstantPerSec instance = new PhaseInstanceImpl.ConstantPerSec(constantPerSec(100));
+      instance.setRateFactor(0.5);
+      instance.rebase(5000);
+      assertEquals(0, instance.nextSessionMetronome(5000));
+      assertEquals(50, instance.nextSessionMetronome(6000));
+   }
+
+   @Test
+   public void rampRateIsScaledFromRebase() {
+      Phase.RampPerSec def = new Phase.RampPerSec(null, 0, 0, "ramp", SCENARIO, 0,
+            Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), 10000, -1, null,
+            0, 200, false, 0, Phase.SessionLimitPolicy.FAIL);
+      PhaseInstanceImpl.RampPerSec instance = new PhaseInstanceImpl.RampPerSec(def);
+      assertEquals(250, instance.nextSessionMetronome(5000));
+      instance.startedOrThrottledUsers = 250;
+      instance.setRateFactor(0.5);
+      instance.rebase(5000);
+      assertEquals(250, instance.nextSessionMetronome(5000));
+      // Without the factor there would be 1000 users at the end
+      assertEquals(625, instance.nextSessionMetronome(10000));
+   }
+
+   private static Phase.ConstantPerSec constantPerSec(double usersPerSec) {
+      return new Phase.ConstantPerSec(null, 0, 0, "constant", SCENARIO, 0,
+            Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), 10000, -1, null,
+            usersPerSec, false, 0, Phase.SessionLimitPolicy.FAIL);
+   }
+}
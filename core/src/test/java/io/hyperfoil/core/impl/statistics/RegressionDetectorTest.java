@@ -0,0 +1,94 @@
+package io.hyperfoil.core.impl.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+public class RegressionDetectorTest {
+   private static final String METRIC = "main.test.0";
+
+   private final RegressionDetector detector = new RegressionDetector(0.03, 0.95, 200, 50, 99);
+
+   @Test
+   public void sameDistribution() {
+      List<RegressionDetector.Result> results = detector.compare(
+            Arrays.asList(run(1, 1.0), run(2, 1.0), run(3, 1.0)), run(4, 1.0));
+      assertEquals(2, results.size());
+      for (RegressionDetector.Result result : results) {
+         assertEquals(RegressionDetector.Verdict.NO_CHANGE, result.verdict);
+         assertTrue(result.changeLow <= 0 || result.changeHigh >= 0);
+      }
+   }
+
+   @Test
+   public void slowerCandidate() {
+      List<RegressionDetector.Result> results = detector.compare(
+            Arrays.asList(run(1, 1.0), run(2, 1.0), run(3, 1.0)), run(4, 1.1));
+      for (RegressionDetector.Result result : results) {
+         assertEquals(RegressionDetector.Verdict.REGRESSION, result.verdict);
+         assertTrue(result.changeLow > 0);
+         assertTrue(result.pValue < 0.05);
+      }
+   }
+
+   @Test
+   public void fasterCandidate() {
+      List<RegressionDetector.Result> results = detector.compare(Collections.singletonList(run(1, 1.0)), run(2, 0.85));
+      for (RegressionDetector.Result result : results) {
+         assertEquals(RegressionDetector.Verdict.IMPROVEMENT, result.verdict);
+         assertTrue(result.changeHigh < 0);
+      }
+   }
+
+   @Test
+   public void missingAndShortMetrics() {
+      Map<String, List<Histogram>> candidate = run(2, 1.0);
+      candidate.put("other", new ArrayList<>(candidate.get(METRIC).subList(0, 2)));
+      Map<String, List<Histogram>> baseline = run(1, 1.0);
+      baseline.put("other", new ArrayList<>(baseline.get(METRIC)));
+      baseline.put("removed", baseline.get(METRIC));
+      List<RegressionDetector.Result> results = detector.compare(Collections.singletonList(baseline), candidate);
+      assertEquals(6, results.size());
+      assertEquals(RegressionDetector.Verdict.NO_CHANGE, results.get(0).verdict);
+      assertEquals(RegressionDetector.Verdict.INSUFFICIENT_DATA, results.get(2).verdict);
+      assertEquals(RegressionDetector.Verdict.MISSING, results.get(4).verdict);
+   }
+
+   @Test
+   public void mannWhitney() {
+      double[] low = { 1, 2, 3, 4, 5, 6, 7, 8 };
+      double[] high = { 6, 7, 8, 9, 10, 11, 12, 13 };
+      assertTrue(RegressionDetector.mannWhitneyGreater(low, high) < 0.01);
+      assertTrue(RegressionDetector.mannWhitneyGreater(high, low) > 0.99);
+      assertEquals(0.5, RegressionDetector.normalCdf(0), 1e-6);
+      assertEquals(0.975, RegressionDetector.normalCdf(1.96), 1e-3);
+   }
+
+   private static Map<String, List<Histogram>> run(int seed, double factor) {
+      Random random = new Random(seed);
+      List<Histogram> intervals = new ArrayList<>();
+      for (int i = 0; i < 60; ++i) {
+         Histogram histogram = new Histogram(3);
+         histogram.setStartTimeStamp(i * 1000);
+         histogram.setEndTimeStamp((i + 1) * 1000);
+         for (int j = 0; j < 1000; ++j) {
+            // Log-normal response times with median around 1 ms
+            histogram.recordValue((long) (factor * 1_000_000 * Math.exp(0.5 * random.nextGaussian())));
+         }
+         intervals.add(histogram);
+      }
+      Map<String, List<Histogram>> run = new HashMap<>();
+      run.put(METRIC, intervals);
+      return run;
+   }
+}
@@ -0,0 +1,90 @@
+package io.hyperfoil.core.impl.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.hyperfoil.api.config.BenchmarkBuilder;
+import io.hyperfoil.api.config.BenchmarkData;
+import io.hyperfoil.api.config.HistogramConfig;
+import io.hyperfoil.api.config.StatisticsConfig;
+import io.hyperfoil.api.statistics.StatisticsSnapshot;
+import io.hyperfoil.api.statistics.StatisticsSummary;
+
+public class SampledSeriesTest {
+   private static final double[] PERCENTILES = { 0.5, 0.99 };
+
+   @Test
+   public void fineSamplesMergedAfterRetention() {
+      SampledSeries series = newSeries(100, 2000);
+      for (int i = 0; i < 50; ++i) {
+         StatisticsSnapshot snapshot = snapshot(i, 100);
+         StatisticsSummary stored = series.add(i, snapshot, snapshot.summary(PERCENTILES));
+         if (i % 10 == 0 && i > 0) {
+            // First sample of new second completes the previous one
+            assertEquals((i / 10 - 1) * 1000, stored.startTime);
+            assertEquals(i / 10 * 1000, stored.endTime);
+            assertEquals(10, stored.requestCount);
+         } else {
+            assertNull(stored);
+         }
+      }
+      List<StatisticsSummary> summaries = toList(series);
+      // 3 coarse samples and 2 seconds of fine samples
+      assertEquals(23, summaries.size());
+      assertEquals(1000, summaries.get(0).endTime);
+      assertEquals(2000, summaries.get(2).startTime);
+      assertEquals(3000, summaries.get(3).startTime);
+      assertEquals(3100, summaries.get(3).endTime);
+      assertEquals(50, summaries.stream().mapToLong(s -> s.requestCount).sum());
+
+      assertEquals(40, series.coarseRequestCount());
+      assertEquals(4000, series.complete().startTime);
+      assertNull(series.complete());
+      assertEquals(50, series.coarseRequestCount());
+      assertEquals(23, toList(series).size());
+   }
+
+   @Test
+   public void oneSecondSamplingStoresDirectly() {
+      SampledSeries series = newSeries(1000, 2000);
+      for (int i = 0; i < 5; ++i) {
+         StatisticsSnapshot snapshot = snapshot(i, 1000);
+         StatisticsSummary summary = snapshot.summary(PERCENTILES);
+         assertSame(summary, series.add(i, snapshot, summary));
+      }
+      assertNull(series.complete());
+      assertEquals(5, toList(series).size());
+      assertEquals(5, series.coarseRequestCount());
+   }
+
+   private static SampledSeries newSeries(long samplingPeriod, long fineRetention) {
+      StatisticsConfig config = new BenchmarkBuilder("originalSource", BenchmarkData.EMPTY)
+            .name("benchmarkName")
+            .http().host("localhost").endHttp()
+            .statistics().samplingPeriod(samplingPeriod).fineRetention(fineRetention).endStatistics()
+            .build().statistics();
+      return new SampledSeries(SeriesStorage.HEAP.newSeries("test", PERCENTILES), PERCENTILES, HistogramConfig.DEFAULT, config);
+   }
+
+   private static StatisticsSnapshot snapshot(int sequenceId, long samplingPeriod) {
+      StatisticsSnapshot snapshot = new StatisticsSnapshot();
+      snapshot.sequenceId = sequenceId;
+      snapshot.requestCount = 1;
+      snapshot.histogram.setStartTimeStamp(sequenceId * samplingPeriod);
+      snapshot.histogram.setEndTimeStamp((sequenceId + 1) * samplingPeriod);
+      snapshot.histogram.recordValue(1_000_000 + sequenceId);
+      return snapshot;
+   }
+
+   private static List<StatisticsSummary> toList(Iterable<StatisticsSummary> series) {
+      List<StatisticsSummary> list = new ArrayList<>();
+      series.forEach(list::add);
+      return list;
+   }
+}
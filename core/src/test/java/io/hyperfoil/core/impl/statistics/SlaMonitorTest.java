@@ -0,0 +1,159 @@
+package io.hyperfoil.core.impl.statistics;
+
+import static io.hyperfoil.core.builders.StepCatalog.SC;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import io.hyperfoil.api.config.Benchmark;
+import io.hyperfoil.api.config.BenchmarkBuilder;
+import io.hyperfoil.api.config.BenchmarkData;
+import io.hyperfoil.api.config.Phase;
+import io.hyperfoil.api.config.SLA;
+import io.hyperfoil.api.http.HttpMethod;
+import io.hyperfoil.api.statistics.StatisticsSnapshot;
+import io.hyperfoil.core.steps.HttpRequestStep;
+
+public class SlaMonitorTest {
+   @Test
+   public void testAbortAfterFullWindow() {
+      Benchmark benchmark = benchmark(true, 3);
+      Phase phase = benchmark.phases().iterator().next();
+      int stepId = stepId(phase);
+      SlaMonitor monitor = new SlaMonitor(benchmark);
+      assertFalse(monitor.isEmpty());
+
+      assertNull(monitor.record(phase, stepId, "test", snapshot(0, 1, 1_000_000)));
+      assertNull(monitor.record(phase, stepId, "test", snapshot(1, 1, 1_000_000)));
+      // The window is full but the mean is still below the limit
+      assertNull(monitor.record(phase, stepId, "test", snapshot(2, 1, 5_000_000)));
+      SLA.Failure failure = monitor.record(phase, stepId, "test", snapshot(3, 1, 50_000_000));
+      assertNotNull(failure);
+      assertEquals(phase.name(), failure.phase());
+      assertTrue(failure.sla().abortOnFailure());
+      // The failure is reported only once
+      assertNull(monitor.record(phase, stepId, "test", snapshot(4, 1, 50_000_000)));
+   }
+
+   @Test
+   public void testAbortInTheSameTick() {
+      Benchmark benchmark = benchmark(true, 10);
+      Phase phase = benchmark.phases().iterator().next();
+      int stepId = stepId(phase);
+      SlaMonitor monitor = new SlaMonitor(benchmark);
+
+      for (int i = 0; i < 10; ++i) {
+         assertNull(monitor.record(phase, stepId, "test", snapshot(i, 10, 1_000_000)));
+      }
+      // Responses of the previous sample arriving late are fine, too
+      assertNull(monitor.record(phase, stepId, "test", snapshot(9, 1, 1_000_000)));
+      // The first sample that makes the window fail aborts the phase, even with a long window
+      assertNotNull(monitor.record(phase, stepId, "test", snapshot(10, 20, 100_000_000)));
+   }
+
+   @Test
+   public void testSingleSampleDoesNotAbort() {
+      Benchmark benchmark = benchmark(true, 3);
+      Phase phase = benchmark.phases().iterator().next();
+      int stepId = stepId(phase);
+      SlaMonitor monitor = new SlaMonitor(benchmark);
+
+      assertNull(monitor.record(phase, stepId, "test", snapshot(0, 0, 0)));
+      assertNull(monitor.record(phase, stepId, "test", snapshot(1, 0, 0)));
+      // The window is full but only one sample has any requests
+      assertNull(monitor.record(phase, stepId, "test", snapshot(2, 1, 1_000_000_000)));
+      assertNull(monitor.record(phase, stepId, "test", snapshot(2, 1, 1_000_000_000)));
+   }
+
+   @Test
+   public void testMergeFragmentsOutOfOrder() {
+      Benchmark benchmark = benchmark(true, 3);
+      Phase phase = benchmark.phases().iterator().next();
+      int stepId = stepId(phase);
+      SlaMonitor monitor = new SlaMonitor(benchmark);
+
+      // Each sample is reported in two parts, the slow responses come a tick later and samples are not sorted.
+      // Slow fragments alone would violate the SLA but merged samples are fine.
+      for (int i = 0; i < 12; i += 2) {
+         if (i > 0) {
+            assertNull(monitor.record(phase, stepId, "test", snapshot(i - 1, 1, 30_000_000)));
+         }
+         assertNull(monitor.record(phase, stepId, "test", snapshot(i + 1, 9, 1_000_000)));
+         assertNull(monitor.record(phase, stepId, "test", snapshot(i, 9, 1_000_000)));
+         assertNull(monitor.record(phase, stepId, "test", snapshot(i, 1, 30_000_000)));
+      }
+   }
+
+   @Test
+   public void testIgnoreDataOutsideOfWindow() {
+      Benchmark benchmark = benchmark(true, 3);
+      Phase phase = benchmark.phases().iterator().next();
+      int stepId = stepId(phase);
+      SlaMonitor monitor = new SlaMonitor(benchmark);
+
+      for (int i = 0; i < 6; ++i) {
+         assertNull(monitor.record(phase, stepId, "test", snapshot(i, 1, 1_000_000)));
+      }
+      // Samples 0 - 2 are not in the window anymore
+      for (int i = 0; i < 10; ++i) {
+         assertNull(monitor.record(phase, stepId, "test", snapshot(i % 3, 1, 50_000_000)));
+      }
+      for (int i = 6; i < 12; ++i) {
+         assertNull(monitor.record(phase, stepId, "test", snapshot(i, 1, 1_000_000)));
+      }
+   }
+
+   @Test
+   public void testIgnoreSlaWithoutAbort() {
+      assertTrue(new SlaMonitor(benchmark(false, 3)).isEmpty());
+   }
+
+   private static Benchmark benchmark(boolean abortOnFailure, int windowSeconds) {
+      // @formatter:off
+      return new BenchmarkBuilder("originalSource", BenchmarkData.EMPTY)
+            .name("sla")
+            .http().host("localhost").endHttp()
+            .addPhase("test").always(1)
+               .duration(60_000)
+               .scenario().initialSequence("test")
+                  .step(SC).httpRequest(HttpMethod.GET)
+                     .sla().addItem()
+                        .window(windowSeconds, TimeUnit.SECONDS)
+                        .meanResponseTime(10, TimeUnit.MILLISECONDS)
+                        .abortOnFailure(abortOnFailure)
+                     .endSLA().endList()
+                  .endStep()
+               .endSequence().endScenario()
+            .endPhase()
+            .build();
+      // @formatter:on
+   }
+
+   private static int stepId(Phase phase) {
+      return Stream.of(phase.scenario().sequences())
+            .flatMap(s -> Stream.of(s.steps()))
+            .filter(HttpRequestStep.class::isInstance)
+            .map(HttpRequestStep.class::cast)
+            .findAny().get().id();
+   }
+
+   private static StatisticsSnapshot snapshot(int sequenceId, int responses, long responseTime) {
+      StatisticsSnapshot snapshot = new StatisticsSnapshot();
+      snapshot.sequenceId = sequenceId;
+      snapshot.requestCount = responses;
+      snapshot.responseCount = responses;
+      snapshot.histogram.setStartTimeStamp(sequenceId * 1000);
+      snapshot.histogram.setEndTimeStamp(sequenceId * 1000 + 1000);
+      if (responses > 0) {
+         snapshot.histogram.recordValueWithCount(responseTime, responses);
+      }
+      return snapshot;
+   }
+}
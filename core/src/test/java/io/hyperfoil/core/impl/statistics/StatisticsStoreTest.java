@@ -11,19 +11,36 @@ import io.hyperfoil.api.config.BenchmarkData;
 import io.hyperfoil.api.config.ErgonomicsBuilder;
 import io.hyperfoil.api.config.Phase;
 import io.hyperfoil.api.http.HttpMethod;
+import io.hyperfoil.api.statistics.CustomMetrics;
+import io.hyperfoil.api.statistics.LongValue;
 import io.hyperfoil.api.statistics.StatisticsSnapshot;
+import io.hyperfoil.api.statistics.StatisticsSummary;
+import io.hyperfoil.controller.model.CustomStats;
+import io.hyperfoil.controller.model.RequestStats;
+import io.hyperfoil.core.handlers.ResponseSizeRecorder;
+import io.hyperfoil.core.impl.AgentMetrics;
 import io.hyperfoil.core.steps.HttpRequestStep;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 
+import org.HdrHistogram.EncodableHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
@@ -204,6 +221,492 @@ public class StatisticsStoreTest {
       }
    }
 
+   @Test
+   public void customStats() {
+      // @formatter:off
+      Benchmark benchmark = new BenchmarkBuilder("originalSource", BenchmarkData.EMPTY)
+            .name("benchmarkName")
+            .http().host("localhost").endHttp()
+            .addPhase("main").always(1)
+               .duration(60_000)
+               .scenario().initialSequence("test")
+                  .step(SC).httpRequest(HttpMethod.GET)
+                     .handler()
+                        .rawBytes(new ResponseSizeRecorder.Builder().customMetric("bytes"))
+                     .endHandler()
+                  .endStep()
+               .endSequence().endScenario()
+            .endPhase()
+            .build();
+      // @formatter:on
+      Phase phase = benchmark.phases().iterator().next();
+      HttpRequestStep step = (HttpRequestStep) Stream.of(phase.scenario().sequences())
+            .flatMap(s -> Stream.of(s.steps()))
+            .filter(HttpRequestStep.class::isInstance)
+            .findAny().get();
+      int bytes = benchmark.customMetrics().register("bytes", CustomMetrics.Kind.SUM);
+
+      StatisticsStore store = new StatisticsStore(benchmark, failure -> {
+      });
+      StatisticsSnapshot first = makeSnapshot(0, 0, 1000, 1_000);
+      first.addCustom(bytes, 100);
+      StatisticsSnapshot second = makeSnapshot(1, 1000, 2000, 1_000);
+      second.addCustom(bytes, 50);
+      store.record("address1", phase.id(), step.id(), "metric1", first);
+      store.record("address2", phase.id(), step.id(), "metric1", second);
+      store.completePhase("main");
+
+      List<CustomStats> customStats = store.customStats();
+      assertEquals(1, customStats.size());
+      assertEquals("bytes", customStats.get(0).customName);
+      assertEquals("150", customStats.get(0).value);
+   }
+
+   @Test
+   public void fileSeries() throws IOException {
+      Path dir = Files.createTempDirectory("hyperfoil-series");
+      try {
+         SeriesStorage.Series series = new FileSeriesStorage(dir).newSeries("main/metric:1", new double[]{ 0.5, 0.99 });
+         List<StatisticsSummary> expected = new ArrayList<>();
+         // several written batches and some records still buffered
+         for (int i = 0; i < 2500; ++i) {
+            StatisticsSnapshot snapshot = makeSnapshot(i, i * 1000, (i + 1) * 1000, 1_000 + i, 2_000_000 + i);
+            snapshot.status_2xx = i;
+            snapshot.blockedTime = (long) i << 33;
+            StatisticsSummary summary = snapshot.summary(new double[]{ 0.5, 0.99 });
+            series.add(summary);
+            expected.add(summary);
+         }
+         assertEquals(expected.size(), series.size());
+         Iterator<StatisticsSummary> beforeRelease = series.iterator();
+         // Records added after the iterator was created are not visible
+         series.add(expected.get(0));
+         assertSeries(expected, beforeRelease);
+         expected.add(expected.get(0));
+         series.release();
+         assertSeries(expected, series.iterator());
+      } finally {
+         deleteRecursively(dir.toFile());
+      }
+   }
+
+   private static void assertSeries(List<StatisticsSummary> expected, Iterator<StatisticsSummary> it) {
+      for (StatisticsSummary e : expected) {
+         StatisticsSummary actual = it.next();
+         assertEquals(e.startTime, actual.startTime);
+         assertEquals(e.endTime, actual.endTime);
+         assertEquals(e.minResponseTime, actual.minResponseTime);
+         assertEquals(e.maxResponseTime, actual.maxResponseTime);
+         assertEquals(e.requestCount, actual.requestCount);
+         assertEquals(e.status_2xx, actual.status_2xx);
+         assertEquals(e.blockedTime, actual.blockedTime);
+         assertEquals(e.percentileResponseTime, actual.percentileResponseTime);
+      }
+      assertFalse(it.hasNext());
+   }
+
+   @Test
+   public void spilledStoreMatchesHeapStore() throws IOException {
+      // @formatter:off
+      Benchmark benchmark = new BenchmarkBuilder("originalSource", BenchmarkData.EMPTY)
+            .name("benchmarkName")
+            .http().host("localhost").endHttp()
+            .addPhase("main").always(1)
+               .duration(60_000)
+               .scenario().initialSequence("test")
+                  .step(SC).httpRequest(HttpMethod.GET).endStep()
+               .endSequence().endScenario()
+            .endPhase()
+            .build();
+      // @formatter:on
+      Phase phase = benchmark.phases().iterator().next();
+      HttpRequestStep step = (HttpRequestStep) Stream.of(phase.scenario().sequences())
+            .flatMap(s -> Stream.of(s.steps()))
+            .filter(HttpRequestStep.class::isInstance)
+            .findAny().get();
+      Path dir = Files.createTempDirectory("hyperfoil-series");
+      try {
+         StatisticsStore heapStore = new StatisticsStore(benchmark, failure -> {
+         });
+         StatisticsStore spilledStore = new StatisticsStore(benchmark, failure -> {
+         }, new FileSeriesStorage(dir));
+         for (int i = 0; i < 200; ++i) {
+            for (String address : Arrays.asList("address1", "address2")) {
+               heapStore.record(address, phase.id(), step.id(), "metric1", makeSnapshot(i, i * 1000, (i + 1) * 1000, 1_000 + i, 5_000));
+               spilledStore.record(address, phase.id(), step.id(), "metric1", makeSnapshot(i, i * 1000, (i + 1) * 1000, 1_000 + i, 5_000));
+            }
+         }
+         heapStore.completePhase("main");
+         spilledStore.completePhase("main");
+         assertEquals(toJson(heapStore), toJson(spilledStore));
+      } finally {
+         deleteRecursively(dir.toFile());
+      }
+   }
+
+   @Test
+   public void shardedStoreMatchesDirectStore() throws Exception {
+      // @formatter:off
+      Benchmark benchmark = new BenchmarkBuilder("originalSource", BenchmarkData.EMPTY)
+            .name("benchmarkName")
+            .http().host("localhost").endHttp()
+            .addPhase("main").always(1)
+               .duration(60_000)
+               .scenario().initialSequence("test")
+                  .step(SC).httpRequest(HttpMethod.GET).endStep()
+               .endSequence().endScenario()
+            .endPhase()
+            .build();
+      // @formatter:on
+      Phase phase = benchmark.phases().iterator().next();
+      HttpRequestStep step = (HttpRequestStep) Stream.of(phase.scenario().sequences())
+            .flatMap(s -> Stream.of(s.steps()))
+            .filter(HttpRequestStep.class::isInstance)
+            .findAny().get();
+      StatisticsShards shards = new StatisticsShards(3);
+      try {
+         StatisticsStore directStore = new StatisticsStore(benchmark, failure -> {
+         });
+         StatisticsStore shardedStore = new StatisticsStore(benchmark, failure -> {
+         }, SeriesStorage.HEAP, shards);
+         for (int i = 0; i < 200; ++i) {
+            for (String metric : Arrays.asList("metric1", "metric2", "metric3", "metric4")) {
+               for (String address : Arrays.asList("address1", "address2")) {
+                  directStore.record(address, phase.id(), step.id(), metric, makeSnapshot(i, i * 1000, (i + 1) * 1000, 1_000 + i, 5_000));
+                  shardedStore.record(address, phase.id(), step.id(), metric, makeSnapshot(i, i * 1000, (i + 1) * 1000, 1_000 + i, 5_000));
+               }
+            }
+         }
+         directStore.completePhase("main");
+         CountDownLatch latch = new CountDownLatch(1);
+         shardedStore.completePhase("main", latch::countDown);
+         assertTrue(latch.await(10, TimeUnit.SECONDS));
+         assertEquals(toJson(directStore), toJson(shardedStore));
+         List<RequestStats> directTotal = directStore.totalSummary();
+         List<RequestStats> shardedTotal = shardedStore.totalSummary();
+         assertEquals(directTotal.size(), shardedTotal.size());
+         for (int i = 0; i < directTotal.size(); ++i) {
+            assertEquals(directTotal.get(i).metric, shardedTotal.get(i).metric);
+            assertEquals(directTotal.get(i).summary.requestCount, shardedTotal.get(i).summary.requestCount);
+         }
+      } finally {
+         shards.stop();
+      }
+   }
+
+   @Test
+   public void rebuildFromJournal() throws IOException {
+      // @formatter:off
+      Benchmark benchmark = new BenchmarkBuilder("originalSource", BenchmarkData.EMPTY)
+            .name("benchmarkName")
+            .http().host("localhost").endHttp()
+            .addPhase("main").always(1)
+               .duration(60_000)
+               .scenario().initialSequence("test")
+                  .step(SC).httpRequest(HttpMethod.GET).endStep()
+               .endSequence().endScenario()
+            .endPhase()
+            .build();
+      // @formatter:on
+      Phase phase = benchmark.phases().iterator().next();
+      HttpRequestStep step = (HttpRequestStep) Stream.of(phase.scenario().sequences())
+            .flatMap(s -> Stream.of(s.steps()))
+            .filter(HttpRequestStep.class::isInstance)
+            .findAny().get();
+      Path dir = Files.createTempDirectory("hyperfoil-journal");
+      try {
+         Path journal = dir.resolve(StatisticsJournal.FILE_NAME);
+         StatisticsStore store = new StatisticsStore(benchmark, failure -> {
+         });
+         store.setJournal(new StatisticsJournal(journal));
+         for (int i = 0; i < 100; ++i) {
+            store.record("address1", phase.id(), step.id(), "metric1", makeSnapshot(i, i * 1000, (i + 1) * 1000, 1_000 + i, 5_000));
+            store.record("address2", phase.id(), step.id(), "metric1", makeSnapshot(i, i * 1000, (i + 1) * 1000, 2_000 + i));
+            store.recordSessionStats("address1", i * 1000, "main", i, i + 10);
+         }
+         store.completePhase("main");
+         store.closeJournal();
+         // simulate a record torn by crash
+         Files.write(journal, new byte[]{ 0, 0, 1, 0, 42 }, StandardOpenOption.APPEND);
+
+         StatisticsStore rebuilt = StatisticsStore.rebuild(benchmark, journal, failure -> {
+         }, new FileSeriesStorage(dir.resolve("series")));
+         assertEquals(toJson(store), toJson(rebuilt));
+      } finally {
+         deleteRecursively(dir.toFile());
+      }
+   }
+
+   @Test
+   public void phasesArePersistedOnCompletion() throws IOException {
+      // @formatter:off
+      Benchmark benchmark = new BenchmarkBuilder("originalSource", BenchmarkData.EMPTY)
+            .name("benchmarkName")
+            .http().host("localhost").endHttp()
+            .addPhase("main").always(1)
+               .duration(60_000)
+               .scenario().initialSequence("test")
+                  .step(SC).httpRequest(HttpMethod.GET).endStep()
+               .endSequence().endScenario()
+            .endPhase()
+            .build();
+      // @formatter:on
+      Phase phase = benchmark.phases().iterator().next();
+      HttpRequestStep step = (HttpRequestStep) Stream.of(phase.scenario().sequences())
+            .flatMap(s -> Stream.of(s.steps()))
+            .filter(HttpRequestStep.class::isInstance)
+            .findAny().get();
+      Path dir = Files.createTempDirectory("hyperfoil-stats");
+      Path fullDir = Files.createTempDirectory("hyperfoil-stats");
+      try {
+         StatisticsStore store = new StatisticsStore(benchmark, failure -> {
+         });
+         store.setPersistDir(dir);
+         for (int i = 0; i < 100; ++i) {
+            store.record("address1", phase.id(), step.id(), "metric1", makeSnapshot(i, i * 1000, (i + 1) * 1000, 1_000 + i, 5_000));
+            store.record("address2", phase.id(), step.id(), "metric1", makeSnapshot(i, i * 1000, (i + 1) * 1000, 2_000 + i));
+         }
+         store.completePhase("main");
+         String prefix = "main.metric1." + step.id();
+         assertTrue(Files.exists(dir.resolve(prefix + ".series.csv")));
+         assertTrue(Files.exists(dir.resolve(prefix + ".agent.address2.histogram.csv")));
+         assertFalse(Files.exists(dir.resolve("total.csv")));
+
+         store.persist(dir);
+         store.persist(fullDir);
+         String[] files = dir.toFile().list();
+         Arrays.sort(files);
+         String[] fullFiles = fullDir.toFile().list();
+         Arrays.sort(fullFiles);
+         assertArrayEquals(fullFiles, files);
+         for (String file : files) {
+            assertEquals(file, Files.readAllLines(fullDir.resolve(file)), Files.readAllLines(dir.resolve(file)));
+         }
+      } finally {
+         deleteRecursively(dir.toFile());
+         deleteRecursively(fullDir.toFile());
+      }
+   }
+
+   @Test
+   public void cachedSummaries() {
+      // @formatter:off
+      Benchmark benchmark = new BenchmarkBuilder("originalSource", BenchmarkData.EMPTY)
+            .name("benchmarkName")
+            .http().host("localhost").endHttp()
+            .addPhase("main").always(1)
+               .duration(60_000)
+               .scenario().initialSequence("test")
+                  .step(SC).httpRequest(HttpMethod.GET).endStep()
+               .endSequence().endScenario()
+            .endPhase()
+            .build();
+      // @formatter:on
+      Phase phase = benchmark.phases().iterator().next();
+      HttpRequestStep step = (HttpRequestStep) Stream.of(phase.scenario().sequences())
+            .flatMap(s -> Stream.of(s.steps()))
+            .filter(HttpRequestStep.class::isInstance)
+            .findAny().get();
+      StatisticsStore store = new StatisticsStore(benchmark, failure -> {
+      });
+      store.record("address", phase.id(), step.id(), "metric1", makeSnapshot(0, 1000, 2000, 1_000));
+      store.record("address", phase.id(), step.id(), "metric2", makeSnapshot(0, 1000, 2000, 1_000));
+      store.record("address", phase.id(), step.id(), "metric1", makeSnapshot(1, 2000, 3000, 2_000));
+
+      long version = store.version();
+      List<RequestStats> total = store.totalSummary();
+      assertEquals(2, total.size());
+      assertEquals(2, total.stream().filter(rs -> rs.metric.equals("metric1")).findFirst().get().summary.requestCount);
+      assertSameInstance(total, store.totalSummary());
+      assertEquals(1, store.recentSummary(0).size());
+      assertEquals(0, store.recentSummary(1001).size());
+      assertEquals(version, store.version());
+
+      store.record("address", phase.id(), step.id(), "metric1", makeSnapshot(2, 3000, 4000, 3_000));
+      assertNotEquals(version, store.version());
+      List<RequestStats> updated = store.totalSummary();
+      assertEquals(3, updated.stream().filter(rs -> rs.metric.equals("metric1")).findFirst().get().summary.requestCount);
+      assertEquals(2000, store.recentSummary(0).get(0).summary.startTime);
+   }
+
+   @Test
+   public void histogramLogReproducesTotals() throws IOException {
+      // @formatter:off
+      Benchmark benchmark = new BenchmarkBuilder("originalSource", BenchmarkData.EMPTY)
+            .name("benchmarkName")
+            .http().host("localhost").endHttp()
+            .addPhase("main").always(1)
+               .duration(60_000)
+               .scenario().initialSequence("test")
+                  .step(SC).httpRequest(HttpMethod.GET).endStep()
+               .endSequence().endScenario()
+            .endPhase()
+            .build();
+      // @formatter:on
+      Phase phase = benchmark.phases().iterator().next();
+      HttpRequestStep step = (HttpRequestStep) Stream.of(phase.scenario().sequences())
+            .flatMap(s -> Stream.of(s.steps()))
+            .filter(HttpRequestStep.class::isInstance)
+            .findAny().get();
+      Path dir = Files.createTempDirectory("hyperfoil-hlog");
+      try {
+         Path file = dir.resolve(HistogramLog.FILE_NAME);
+         StatisticsStore store = new StatisticsStore(benchmark, failure -> {
+         });
+         store.setHistogramLog(new HistogramLog(file));
+         for (int i = 0; i < 200; ++i) {
+            store.record("address1", phase.id(), step.id(), "metric1", makeSnapshot(i, i * 1000, (i + 1) * 1000, 1_000 + i, 5_000_000 + i * 7));
+            store.record("address2", phase.id(), step.id(), "metric1", makeSnapshot(i, i * 1000, (i + 1) * 1000, 2_000_000_000L + i));
+            store.record("address1", phase.id(), step.id(), "metric with spaces", makeSnapshot(i, i * 1000, (i + 1) * 1000, 3_000 + i));
+         }
+         store.completePhase("main");
+         store.closeHistogramLog();
+
+         Map<String, Histogram> merged = new HashMap<>();
+         HistogramLogReader reader = new HistogramLogReader(file.toFile());
+         for (EncodableHistogram h = reader.nextIntervalHistogram(); h != null; h = reader.nextIntervalHistogram()) {
+            Histogram interval = (Histogram) h;
+            merged.computeIfAbsent(h.getTag(), tag -> new Histogram(interval.getNumberOfSignificantValueDigits())).add(interval);
+         }
+         List<RequestStats> totals = store.totalSummary();
+         assertEquals(totals.size(), merged.size());
+         for (RequestStats stats : totals) {
+            Histogram histogram = merged.get((stats.phase + "." + stats.metric + "." + stats.stepId).replace(' ', '_'));
+            assertNotNull(stats.metric, histogram);
+            assertEquals(stats.summary.requestCount, histogram.getTotalCount());
+            assertEquals(stats.summary.minResponseTime, histogram.getMinValue());
+            assertEquals(stats.summary.maxResponseTime, histogram.getMaxValue());
+            for (Map.Entry<Double, Long> entry : stats.summary.percentileResponseTime.entrySet()) {
+               assertEquals(entry.getValue().longValue(), histogram.getValueAtPercentile(entry.getKey()));
+            }
+         }
+      } finally {
+         deleteRecursively(dir.toFile());
+      }
+   }
+
+   @Test
+   public void openMetrics() {
+      // @formatter:off
+      Benchmark benchmark = new BenchmarkBuilder("originalSource", BenchmarkData.EMPTY)
+            .name("benchmarkName")
+            .http().host("localhost").endHttp()
+            .addPhase("main").always(1)
+               .duration(60_000)
+               .scenario().initialSequence("test")
+                  .step(SC).httpRequest(HttpMethod.GET).endStep()
+               .endSequence().endScenario()
+            .endPhase()
+            .build();
+      // @formatter:on
+      Phase phase = benchmark.phases().iterator().next();
+      HttpRequestStep step = (HttpRequestStep) Stream.of(phase.scenario().sequences())
+            .flatMap(s -> Stream.of(s.steps()))
+            .filter(HttpRequestStep.class::isInstance)
+            .findAny().get();
+      StatisticsStore store = new StatisticsStore(benchmark, failure -> {
+      });
+      StatisticsSnapshot snapshot = makeSnapshot(0, 1000, 2000,
+            TimeUnit.MICROSECONDS.toNanos(500), TimeUnit.MILLISECONDS.toNanos(20), TimeUnit.SECONDS.toNanos(30));
+      snapshot.responseCount = 3;
+      snapshot.status_2xx = 2;
+      snapshot.status_5xx = 1;
+      LongValue keyed = new LongValue();
+      keyed.add(42);
+      snapshot.custom.put("keyed", keyed);
+      int sizes = benchmark.customMetrics().register("sizes", CustomMetrics.Kind.HISTOGRAM);
+      for (int i = 1; i <= 100; ++i) {
+         snapshot.recordCustom(sizes, i);
+      }
+      store.record("address", phase.id(), step.id(), "my \"metric\"", snapshot);
+      store.recordAgentMetrics("address", new AgentMetrics(0, 1000, new int[]{ 3 }, new long[]{ 100 }, new long[]{ 250_000 },
+            new double[]{ 0.5 }, new long[]{ 1024 }, 0, 2000));
+
+      StringBuilder sb = new StringBuilder();
+      store.writeOpenMetrics(sb::append);
+      String output = sb.toString();
+      String labels = "phase=\"main\",metric=\"my \\\"metric\\\"\",step=\"" + step.id() + "\"";
+      assertTrue(output, output.contains("hyperfoil_requests_total{" + labels + "} 3\n"));
+      assertTrue(output, output.contains("hyperfoil_status_total{" + labels + ",status=\"5xx\"} 1\n"));
+      assertTrue(output, output.contains("hyperfoil_response_time_seconds_bucket{" + labels + ",le=\"0.001\"} 1\n"));
+      assertTrue(output, output.contains("hyperfoil_response_time_seconds_bucket{" + labels + ",le=\"0.025\"} 2\n"));
+      assertTrue(output, output.contains("hyperfoil_response_time_seconds_bucket{" + labels + ",le=\"10.0\"} 2\n"));
+      assertTrue(output, output.contains("hyperfoil_response_time_seconds_bucket{" + labels + ",le=\"+Inf\"} 3\n"));
+      assertTrue(output, output.contains("hyperfoil_custom_total{" + labels + ",custom=\"keyed\"} 42\n"));
+      assertTrue(output, output.contains("hyperfoil_custom_histogram{" + labels + ",custom=\"sizes\",quantile=\"0.5\"} 50\n"));
+      assertTrue(output, output.contains("hyperfoil_custom_histogram_count{" + labels + ",custom=\"sizes\"} 100\n"));
+      assertTrue(output, output.contains("hyperfoil_agent_scheduling_lag_seconds{agent=\"address\",executor=\"0\"} 0.25\n"));
+      assertTrue(output, output.contains("hyperfoil_agent_busy_ratio{agent=\"address\",executor=\"0\"} 0.5\n"));
+      assertTrue(output, output.contains("hyperfoil_agent_arrival_lag_seconds{agent=\"address\"} 0.002\n"));
+      assertTrue(output, output.endsWith("# EOF\n"));
+   }
+
+   @Test
+   public void agentMetricsAreDownsampled() {
+      // @formatter:off
+      Benchmark benchmark = new BenchmarkBuilder("originalSource", BenchmarkData.EMPTY)
+            .name("benchmarkName")
+            .http().host("localhost").endHttp()
+            .addPhase("main").always(1)
+               .duration(60_000)
+               .scenario().initialSequence("test")
+                  .step(SC).httpRequest(HttpMethod.GET).endStep()
+               .endSequence().endScenario()
+            .endPhase()
+            .build();
+      // @formatter:on
+      StatisticsStore store = new StatisticsStore(benchmark, failure -> {
+      });
+      int count = StatisticsStore.MAX_AGENT_METRICS + 4;
+      for (int i = 0; i < count; ++i) {
+         store.recordAgentMetrics("address", new AgentMetrics(i * 1000, (i + 1) * 1000, new int[]{ i }, new long[]{ 10 },
+               new long[]{ i }, new double[]{ 0.5 }, new long[]{ 1024 }, 1, 0));
+      }
+      List<AgentMetrics> metrics = store.agentMetrics("address");
+      // Pairs of samples were merged after exceeding the limit, further samples are merged in pairs as well
+      assertEquals(StatisticsStore.MAX_AGENT_METRICS / 2 + 2, metrics.size());
+      assertEquals(0, metrics.get(0).startTime);
+      assertEquals(2000, metrics.get(0).endTime);
+      assertEquals(1, metrics.get(0).maxLag[0]);
+      assertEquals(2, metrics.get(0).gcPauseTime);
+      AgentMetrics last = metrics.get(metrics.size() - 1);
+      assertEquals((count - 2) * 1000, last.startTime);
+      assertEquals(count * 1000, last.endTime);
+      for (int i = 1; i < metrics.size(); ++i) {
+         assertEquals(metrics.get(i - 1).endTime, metrics.get(i).startTime);
+      }
+
+      // OpenMetrics export shows the latest period
+      StringBuilder sb = new StringBuilder();
+      store.writeOpenMetrics(sb::append);
+      double lastLag = (count - 1) / 1_000_000.0;
+      assertTrue(sb.toString(), sb.toString().contains("hyperfoil_agent_scheduling_lag_seconds{agent=\"address\",executor=\"0\"} " + lastLag + "\n"));
+   }
+
+   private String toJson(StatisticsStore store) throws IOException {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream(10_000);
+      JsonFactory jsonFactory = new JsonFactory();
+      jsonFactory.setCodec(new ObjectMapper());
+      try (JsonGenerator jsonGenerator = jsonFactory.createGenerator(baos)) {
+         store.writeJson(jsonGenerator);
+      }
+      return new String(baos.toByteArray());
+   }
+
+   private void deleteRecursively(File file) {
+      File[] children = file.listFiles();
+      if (children != null) {
+         for (File child : children) {
+            deleteRecursively(child);
+         }
+      }
+      file.delete();
+   }
+
+   private static void assertSameInstance(Object expected, Object actual) {
+      org.junit.Assert.assertSame(expected, actual);
+   }
+
    private List<String> getKeys(JsonNode node) {
       List<String> rtrn = new ArrayList<>();
       if (node != null) {
@@ -27,8 +27,10 @@ import io.fabric8.kubernetes.api.model.ConfigMapVolumeSource;
 import io.fabric8.kubernetes.api.model.ContainerBuilder;
 import io.fabric8.kubernetes.api.model.ContainerPort;
 import io.fabric8.kubernetes.api.model.DoneablePod;
+import io.fabric8.kubernetes.api.model.EnvVarBuilder;
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.PodSpecBuilder;
+import io.fabric8.kubernetes.api.model.SecretBuilder;
 import io.fabric8.kubernetes.api.model.VolumeBuilder;
 import io.fabric8.kubernetes.api.model.VolumeMountBuilder;
 import io.fabric8.kubernetes.client.Config;
@@ -75,9 +77,12 @@ public class K8sDeployer implements Deployer {
    private static final String DEFAULT_IMAGE = "quay.io/hyperfoil/hyperfoil:" + Version.VERSION;
    private static final String CONTROLLER_POD_NAME = System.getenv("HOSTNAME");
    private static final String NAMESPACE;
+   private static final String CHANNEL_SECRET_NAME = "hyperfoil-agent-channel";
+   private static final String CHANNEL_SECRET_KEY = "secret";
 
    private final ScheduledExecutorService logReader = Executors.newScheduledThreadPool(1);
    private KubernetesClient client;
+   private boolean channelSecretCreated;
 
    static {
       NAMESPACE = getPropertyOrLoad("io.hyperfoil.deployer.k8s.namespace", "namespace");
@@ -109,6 +114,23 @@ public class K8sDeployer implements Deployer {
       }
    }
 
+   private void ensureChannelSecret() {
+      synchronized (this) {
+         if (!channelSecretCreated) {
+            // @formatter:off
+            client.secrets().inNamespace(NAMESPACE).createOrReplace(new SecretBuilder()
+                  .withNewMetadata()
+                     .withNamespace(NAMESPACE)
+                     .withName(CHANNEL_SECRET_NAME)
+                  .endMetadata()
+                  .addToStringData(CHANNEL_SECRET_KEY, System.getProperty(Properties.CONTROLLER_CHANNEL_SECRET))
+                  .build());
+            // @formatter:on
+            channelSecretCreated = true;
+         }
+      }
+   }
+
    @Override
    public DeployedAgent start(Agent agent, String runId, Consumer<Throwable> exceptionHandler) {
       ensureClient();
@@ -168,6 +190,20 @@ public class K8sDeployer implements Deployer {
       command.add("-D" + Properties.RUN_ID + "=" + runId);
       command.add("-D" + Properties.CONTROLLER_CLUSTER_IP + "=" + System.getProperty(Properties.CONTROLLER_CLUSTER_IP));
       command.add("-D" + Properties.CONTROLLER_CLUSTER_PORT + "=" + System.getProperty(Properties.CONTROLLER_CLUSTER_PORT));
+      String channelPort = System.getProperty(Properties.CONTROLLER_CHANNEL_PORT);
+      if (channelPort != null) {
+         command.add("-D" + Properties.CONTROLLER_CHANNEL_PORT + "=" + channelPort);
+         // The secret would be visible in pod spec if we passed it directly
+         ensureChannelSecret();
+         // @formatter:off
+         containerBuilder.withEnv(new EnvVarBuilder()
+               .withName(Properties.env(Properties.CONTROLLER_CHANNEL_SECRET))
+               .withNewValueFrom()
+                  .withNewSecretKeyRef().withName(CHANNEL_SECRET_NAME).withKey(CHANNEL_SECRET_KEY).endSecretKeyRef()
+               .endValueFrom()
+               .build());
+         // @formatter:on
+      }
       if (agent.properties.containsKey("extras")) {
          command.addAll(Arrays.asList(agent.properties.get("extras").split(" ", 0)));
       }
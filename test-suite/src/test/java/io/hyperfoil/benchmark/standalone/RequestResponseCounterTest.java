@@ -90,7 +90,7 @@ public class RequestResponseCounterTest {
                      .path("/")
                      .timeout("60s")
                      .handler()
-                        .rawBytes(new ResponseSizeRecorder("bytes"))
+                        .rawBytes(new ResponseSizeRecorder.Builder().customMetric("bytes"))
                      .endHandler()
                   .endStep()
                .endSequence();
@@ -0,0 +1,267 @@
+package io.hyperfoil.clustering;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.hyperfoil.clustering.messages.AgentControlMessage;
+import io.hyperfoil.clustering.messages.AgentHello;
+import io.hyperfoil.clustering.messages.PhaseControlMessage;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.spi.cluster.NodeListener;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class AgentChannelTest {
+   private static final String AGENT_ADDRESS = "agent-deployment";
+   private static final String SECRET = "secret";
+
+   private Vertx controllerVertx;
+   private Vertx agentVertx;
+   private AgentChannelServer server;
+   private AgentChannelClient client;
+   private int serverPort;
+   private volatile Handler<String> nodeLeftHandler;
+   // The agent connects through a proxy that can break the connection and hold new ones
+   private NetServer proxy;
+   private final List<NetSocket> proxiedSockets = new CopyOnWriteArrayList<>();
+   private final List<Runnable> heldConnections = new CopyOnWriteArrayList<>();
+   private volatile boolean holdConnections;
+
+   @Before
+   public void before(TestContext ctx) {
+      controllerVertx = Vertx.vertx();
+      agentVertx = Vertx.vertx();
+      Codecs.register(controllerVertx);
+      Codecs.register(agentVertx);
+      controllerVertx.eventBus().consumer(Feeds.CLOCK, message -> message.reply(42L));
+      nodeLeftHandler = nodeId -> ctx.fail("Agent node " + nodeId + " left");
+      server = new AgentChannelServer(controllerVertx, new NodeListener() {
+         @Override
+         public void nodeAdded(String nodeID) {
+         }
+
+         @Override
+         public void nodeLeft(String nodeID) {
+            nodeLeftHandler.handle(nodeID);
+         }
+      }, SECRET);
+      Async async = ctx.async();
+      controllerVertx.runOnContext(nil -> server.start("localhost", 0, ctx.asyncAssertSuccess(port -> {
+         serverPort = port;
+         proxy = controllerVertx.createNetServer().connectHandler(this::proxy).listen(0, "localhost", ctx.asyncAssertSuccess(listening -> {
+            client = new AgentChannelClient(agentVertx, "localhost", listening.actualPort(), "node-1", SECRET);
+            agentVertx.runOnContext(nil2 -> client.start(ctx.asyncAssertSuccess(nil3 -> {
+               client.register(AGENT_ADDRESS);
+               async.complete();
+            })));
+         }));
+      })));
+   }
+
+   @After
+   public void after(TestContext ctx) {
+      agentVertx.runOnContext(nil -> client.close());
+      controllerVertx.runOnContext(nil -> server.stop());
+      agentVertx.close(ctx.asyncAssertSuccess());
+      controllerVertx.close(ctx.asyncAssertSuccess());
+   }
+
+   @Test
+   public void testAgentRequest(TestContext ctx) {
+      agentVertx.eventBus().send(Feeds.CLOCK, "agent", ctx.asyncAssertSuccess(reply -> ctx.assertEquals(42L, reply.body())));
+   }
+
+   @Test
+   public void testControllerMessages(TestContext ctx) {
+      Async received = ctx.async(2);
+      agentVertx.eventBus().consumer(AGENT_ADDRESS, message -> {
+         ctx.assertEquals("ping", message.body());
+         message.reply("pong");
+      });
+      agentVertx.eventBus().consumer(Feeds.CONTROL, message -> {
+         PhaseControlMessage control = (PhaseControlMessage) message.body();
+         ctx.assertEquals(PhaseControlMessage.Command.RUN, control.command());
+         ctx.assertEquals("test", control.phase());
+         received.countDown();
+      });
+      // The reply guarantees that the registration was processed by the server
+      agentVertx.eventBus().send(Feeds.CLOCK, "agent", ctx.asyncAssertSuccess(clock -> {
+         controllerVertx.eventBus().send(AGENT_ADDRESS, "ping", ctx.asyncAssertSuccess(reply -> {
+            ctx.assertEquals("pong", reply.body());
+            received.countDown();
+         }));
+         controllerVertx.eventBus().publish(Feeds.CONTROL, new PhaseControlMessage(PhaseControlMessage.Command.RUN, "test"));
+      }));
+   }
+
+   @Test
+   public void testFailureIsPropagated(TestContext ctx) {
+      agentVertx.eventBus().consumer(AGENT_ADDRESS, message -> message.fail(3, "Rejected"));
+      agentVertx.eventBus().send(Feeds.CLOCK, "agent", ctx.asyncAssertSuccess(clock -> {
+         controllerVertx.eventBus().send(AGENT_ADDRESS, "ping", ctx.asyncAssertFailure(cause -> {
+            ctx.assertEquals("Rejected", cause.getMessage());
+         }));
+      }));
+   }
+
+   @Test
+   public void testReconnect(TestContext ctx) {
+      Async done = ctx.async(3);
+      // Neither side replies to "hold"; the requests are pending when the connection breaks
+      controllerVertx.eventBus().consumer(Feeds.STATS, message -> dropConnections());
+      agentVertx.eventBus().consumer(AGENT_ADDRESS, message -> {
+         if ("hold".equals(message.body())) {
+            agentVertx.eventBus().send(Feeds.STATS, "hold", ctx.asyncAssertFailure(cause -> {
+               ctx.assertEquals("Connection lost", cause.getMessage());
+               done.countDown();
+            }));
+         } else {
+            ctx.assertEquals("queued", message.body());
+            message.reply("delivered");
+         }
+      });
+      agentVertx.eventBus().send(Feeds.CLOCK, "agent", ctx.asyncAssertSuccess(clock -> {
+         controllerVertx.eventBus().send(AGENT_ADDRESS, "hold", ctx.asyncAssertFailure(cause -> {
+            ctx.assertEquals("Connection lost", cause.getMessage());
+            done.countDown();
+            // The agent can't reconnect yet so this message is queued until it does
+            controllerVertx.eventBus().send(AGENT_ADDRESS, "queued", ctx.asyncAssertSuccess(reply -> {
+               ctx.assertEquals("delivered", reply.body());
+               done.countDown();
+            }));
+            controllerVertx.setTimer(200, id -> releaseConnections());
+         }));
+      }));
+   }
+
+   @Test
+   public void testQueueOverflow(TestContext ctx) {
+      Async left = ctx.async();
+      nodeLeftHandler = nodeId -> {
+         ctx.assertEquals("node-1", nodeId);
+         left.complete();
+      };
+      controllerVertx.eventBus().consumer(Feeds.STATS, message -> dropConnections());
+      agentVertx.eventBus().consumer(AGENT_ADDRESS, message -> agentVertx.eventBus().send(Feeds.STATS, "hold"));
+      agentVertx.eventBus().send(Feeds.CLOCK, "agent", ctx.asyncAssertSuccess(clock -> {
+         controllerVertx.eventBus().send(AGENT_ADDRESS, "hold", ctx.asyncAssertFailure(cause -> {
+            byte[] chunk = new byte[1024 * 1024];
+            for (int i = 0; i <= ChannelSession.MAX_QUEUED_BYTES / chunk.length; ++i) {
+               controllerVertx.eventBus().send(AGENT_ADDRESS, chunk);
+            }
+         }));
+      }));
+   }
+
+   @Test
+   public void testInvalidSecretIsRejected(TestContext ctx) {
+      controllerVertx.eventBus().consumer(Feeds.STATS, message -> ctx.fail("Unauthenticated message was delivered"));
+      controllerVertx.createNetClient().connect(serverPort, "localhost", ctx.asyncAssertSuccess(socket -> {
+         Async closed = ctx.async();
+         socket.closeHandler(nil -> closed.complete());
+         socket.write(ChannelFrame.hello("intruder", "wrong"));
+         socket.write(ChannelFrame.send(0, Feeds.STATS, "data"));
+      }));
+   }
+
+   @Test
+   public void testForeignAddressesAreRejected(TestContext ctx) {
+      controllerVertx.eventBus().consumer("controller.internal", message -> ctx.fail("Message to internal address was delivered"));
+      agentVertx.eventBus().consumer(AGENT_ADDRESS, message -> message.reply("pong"));
+      Async replies = ctx.async();
+      List<ChannelFrame> frames = new ArrayList<>();
+      // The reply guarantees that the registration of the agent was processed by the server
+      agentVertx.eventBus().send(Feeds.CLOCK, "agent", ctx.asyncAssertSuccess(clock -> {
+         controllerVertx.createNetClient().connect(serverPort, "localhost", ctx.asyncAssertSuccess(socket -> {
+            ChannelSession.readFrames(socket, type -> true, frame -> {
+               frames.add(frame);
+               if (frames.size() < 3) {
+                  return;
+               }
+               ctx.assertEquals(ChannelFrame.FAILURE, frames.get(0).type);
+               ctx.assertEquals(1L, frames.get(0).id);
+               ctx.assertEquals(ChannelFrame.FAILURE, frames.get(1).type);
+               ctx.assertEquals(2L, frames.get(1).id);
+               ctx.assertEquals(ChannelFrame.REPLY, frames.get(2).type);
+               ctx.assertEquals(42L, frames.get(2).body);
+               // The address still belongs to the first agent
+               controllerVertx.eventBus().send(AGENT_ADDRESS, "ping", ctx.asyncAssertSuccess(reply -> ctx.assertEquals("pong", reply.body())));
+               controllerVertx.eventBus().send(Feeds.CLOCK, "controller", ctx.asyncAssertSuccess(reply -> ctx.assertEquals(42L, reply.body())));
+               replies.complete();
+            });
+            socket.write(ChannelFrame.hello("node-2", SECRET));
+            // Address registered by another node and controller addresses can't be taken over
+            socket.write(ChannelFrame.register(AGENT_ADDRESS));
+            socket.write(ChannelFrame.register(Feeds.CLOCK));
+            socket.write(ChannelFrame.send(1, "controller.internal", "data"));
+            socket.write(ChannelFrame.send(2, Feeds.DISCOVERY, new AgentHello("agent", "node-2", AGENT_ADDRESS, "0000")));
+            socket.write(ChannelFrame.send(3, Feeds.CLOCK, "agent"));
+         }));
+      }));
+   }
+
+   @Test
+   public void testDeserializationAllowList(TestContext ctx) {
+      AgentControlMessage message = new AgentControlMessage(AgentControlMessage.Command.PING, 1, null);
+      ChannelFrame decoded = decode(ChannelFrame.send(1, AGENT_ADDRESS, message));
+      ctx.assertEquals(AgentControlMessage.Command.PING, ((AgentControlMessage) decoded.body).command());
+      try {
+         decode(ChannelFrame.send(1, AGENT_ADDRESS, new File("/tmp")));
+         ctx.fail("Class outside of the allow-list was deserialized");
+      } catch (IllegalStateException e) {
+         ctx.assertTrue(e.getCause().getMessage().contains("not allowed"), e.getCause().getMessage());
+      }
+   }
+
+   private static ChannelFrame decode(Buffer frame) {
+      // Strip the length prefix
+      return ChannelFrame.decode(frame.slice(4, frame.length()));
+   }
+
+   private void proxy(NetSocket agentSocket) {
+      agentSocket.pause();
+      proxiedSockets.add(agentSocket);
+      Runnable connect = () -> controllerVertx.createNetClient().connect(serverPort, "localhost", result -> {
+         if (result.failed()) {
+            agentSocket.close();
+            return;
+         }
+         NetSocket serverSocket = result.result();
+         agentSocket.handler(serverSocket::write);
+         serverSocket.handler(agentSocket::write);
+         agentSocket.closeHandler(nil -> serverSocket.close());
+         serverSocket.closeHandler(nil -> agentSocket.close());
+         agentSocket.resume();
+      });
+      if (holdConnections) {
+         heldConnections.add(connect);
+      } else {
+         connect.run();
+      }
+   }
+
+   private void dropConnections() {
+      holdConnections = true;
+      proxiedSockets.forEach(NetSocket::close);
+      proxiedSockets.clear();
+   }
+
+   private void releaseConnections() {
+      holdConnections = false;
+      heldConnections.forEach(Runnable::run);
+      heldConnections.clear();
+   }
+}
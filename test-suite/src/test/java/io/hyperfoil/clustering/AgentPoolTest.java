@@ -0,0 +1,152 @@
+package io.hyperfoil.clustering;
+
+import static io.hyperfoil.core.builders.StepCatalog.SC;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.hyperfoil.api.config.Benchmark;
+import io.hyperfoil.api.config.BenchmarkBuilder;
+import io.hyperfoil.api.http.HttpMethod;
+import io.hyperfoil.client.RestClient;
+import io.hyperfoil.clustering.messages.AgentControlMessage;
+import io.hyperfoil.controller.Client;
+import io.hyperfoil.internal.Properties;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class AgentPoolTest extends BaseClusteredTest {
+   private static final long HEALTH_CHECK_PERIOD = 200;
+
+   private final TestDeployer deployer = new TestDeployer(this);
+   private HttpServer httpServer;
+
+   @Before
+   public void before(TestContext ctx) {
+      System.setProperty(Properties.CONTROLLER_AGENT_POOL, "true");
+      System.setProperty(Properties.CONTROLLER_AGENT_HEALTH_CHECK_PERIOD, String.valueOf(HEALTH_CHECK_PERIOD));
+
+      Vertx standalone = Vertx.vertx();
+      servers.add(standalone);
+      httpServer = standalone.createHttpServer().requestHandler(req -> req.response().end("test"))
+            .listen(0, "localhost", ctx.asyncAssertSuccess());
+
+      ControllerVerticle controller = new ControllerVerticle();
+      controller.deployer = deployer;
+      initiateClustered(clusteredOptions(), controller, new DeploymentOptions(), ctx, ctx.async());
+   }
+
+   @After
+   public void after() {
+      System.clearProperty(Properties.CONTROLLER_AGENT_POOL);
+      System.clearProperty(Properties.CONTROLLER_AGENT_HEALTH_CHECK_PERIOD);
+   }
+
+   @Test(timeout = 120_000)
+   public void testReusePooledAgent() throws Exception {
+      RestClient client = new RestClient("localhost", 8090);
+      try {
+         io.hyperfoil.controller.model.Run first = runToCompletion(client, benchmark(null));
+         io.hyperfoil.controller.model.Run second = runToCompletion(client, benchmark(null));
+         assertThat(first.errors).isEmpty();
+         assertThat(second.errors).isEmpty();
+         assertThat(deployer.agents).hasSize(1);
+         assertThat(second.agents.get(0).address).isEqualTo(first.agents.get(0).address);
+
+         // Agent with different settings is not reused
+         io.hyperfoil.controller.model.Run third = runToCompletion(client, benchmark("changed"));
+         assertThat(third.errors).isEmpty();
+         assertThat(deployer.agents).hasSize(2);
+         assertThat(third.agents.get(0).address).isNotEqualTo(first.agents.get(0).address);
+         deployer.agents.get(0).stopped.get(10, TimeUnit.SECONDS);
+      } finally {
+         client.close();
+      }
+   }
+
+   @Test(timeout = 120_000)
+   public void testUnhealthyAgentIsRetired() throws Exception {
+      RestClient client = new RestClient("localhost", 8090);
+      try {
+         io.hyperfoil.controller.model.Run first = runToCompletion(client, benchmark(null));
+         TestDeployer.TestDeployedAgent pooled = deployer.agents.get(0);
+         // The node stays in the cluster but the agent does not respond to health checks
+         CompletableFuture<Void> undeployed = new CompletableFuture<>();
+         pooled.vertx.undeploy(first.agents.get(0).address, result -> undeployed.complete(null));
+         undeployed.get(10, TimeUnit.SECONDS);
+         pooled.stopped.get(10 * HEALTH_CHECK_PERIOD, TimeUnit.MILLISECONDS);
+
+         io.hyperfoil.controller.model.Run second = runToCompletion(client, benchmark(null));
+         assertThat(second.errors).isEmpty();
+         assertThat(deployer.agents).hasSize(2);
+         assertThat(second.agents.get(0).address).isNotEqualTo(first.agents.get(0).address);
+      } finally {
+         client.close();
+      }
+   }
+
+   @Test(timeout = 120_000)
+   public void testWatchdogStopsOrphanedAgent() throws Exception {
+      Vertx controllerVertx = servers.get(servers.size() - 1);
+      Vertx agentVertx = startClustered();
+      CompletableFuture<String> deployed = new CompletableFuture<>();
+      JsonObject config = new JsonObject().put("name", "orphan").put("runId", "orphan");
+      agentVertx.deployVerticle(AgentVerticle.class, new DeploymentOptions().setConfig(config), complete(deployed));
+      String deploymentId = deployed.get(10, TimeUnit.SECONDS);
+
+      // Return the agent to the pool the way controller does after a run
+      CompletableFuture<Object> reset = new CompletableFuture<>();
+      controllerVertx.eventBus().send(deploymentId, new AgentControlMessage(AgentControlMessage.Command.RESET, 0, HEALTH_CHECK_PERIOD),
+            result -> complete(reset).handle(result.map(message -> message.body())));
+      assertThat(reset.get(10, TimeUnit.SECONDS)).isEqualTo("OK");
+
+      // Agent stays up as long as it is checked
+      for (int i = 0; i < 10; ++i) {
+         CompletableFuture<Object> ping = new CompletableFuture<>();
+         controllerVertx.eventBus().send(deploymentId, new AgentControlMessage(AgentControlMessage.Command.PING, -1, null),
+               result -> complete(ping).handle(result.map(message -> message.body())));
+         assertThat(ping.get(10, TimeUnit.SECONDS)).isEqualTo("IDLE");
+         Thread.sleep(HEALTH_CHECK_PERIOD);
+      }
+      assertThat(agentVertx.deploymentIDs()).contains(deploymentId);
+
+      // When the controller goes away the agent terminates itself
+      long deadline = System.currentTimeMillis() + 20 * HEALTH_CHECK_PERIOD;
+      while (!agentVertx.deploymentIDs().isEmpty()) {
+         assertThat(System.currentTimeMillis()).isLessThan(deadline);
+         Thread.sleep(50);
+      }
+   }
+
+   private Benchmark benchmark(String inlineConfig) {
+      BenchmarkBuilder builder = BenchmarkBuilder.builder().name("agent-pool")
+            .addAgent("agent", inlineConfig, null);
+      builder.http().host("localhost").port(httpServer.actualPort()).endHttp()
+            .addPhase("test").atOnce(1)
+            .scenario().initialSequence("test")
+            .step(SC).httpRequest(HttpMethod.GET).path("test").endStep()
+            .endSequence().endScenario().endPhase();
+      return builder.build();
+   }
+
+   private io.hyperfoil.controller.model.Run runToCompletion(RestClient client, Benchmark benchmark) throws InterruptedException {
+      Client.RunRef runRef = client.register(benchmark, null).start(null);
+      io.hyperfoil.controller.model.Run run;
+      // The agent returns to the pool when it confirms the reset
+      while ((run = runRef.get()).terminated == null || run.agents.stream().anyMatch(a -> !"STOPPED".equals(a.status))) {
+         Thread.sleep(100);
+      }
+      return run;
+   }
+}
@@ -2,10 +2,15 @@ package io.hyperfoil.clustering;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.junit.After;
 
+import io.vertx.core.AsyncResult;
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
 import io.vertx.core.Verticle;
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
@@ -21,13 +26,21 @@ public class BaseClusteredTest {
    }
 
    protected void initiateClustered(VertxOptions opts, Class<? extends Verticle> verticleClass, DeploymentOptions options, TestContext ctx, Async initAsync) {
+      initiateClustered(opts, (vertx, handler) -> vertx.deployVerticle(verticleClass.getName(), options, handler), ctx, initAsync);
+   }
+
+   protected void initiateClustered(VertxOptions opts, Verticle verticle, DeploymentOptions options, TestContext ctx, Async initAsync) {
+      initiateClustered(opts, (vertx, handler) -> vertx.deployVerticle(verticle, options, handler), ctx, initAsync);
+   }
+
+   private void initiateClustered(VertxOptions opts, BiConsumer<Vertx, Handler<AsyncResult<String>>> deploy, TestContext ctx, Async initAsync) {
       Vertx.clusteredVertx(opts, result -> {
          if (result.succeeded()) {
             Vertx vertx = result.result();
             servers.add(vertx);
             // Codecs can be registered just once per vertx node so we can't register them in verticles
             Codecs.register(vertx);
-            vertx.deployVerticle(verticleClass.getName(), options, v -> {
+            deploy.accept(vertx, v -> {
                if (v.succeeded()) {
                   initAsync.countDown();
                } else {
@@ -39,4 +52,34 @@ public class BaseClusteredTest {
          }
       });
    }
+
+   /**
+    * Starts another node in the cluster; it is closed at the end of the test.
+    */
+   protected Vertx startClustered() throws Exception {
+      CompletableFuture<Vertx> future = new CompletableFuture<>();
+      Vertx.clusteredVertx(clusteredOptions(), complete(future));
+      Vertx vertx = future.get(30, TimeUnit.SECONDS);
+      synchronized (servers) {
+         servers.add(vertx);
+      }
+      Codecs.register(vertx);
+      return vertx;
+   }
+
+   protected static VertxOptions clusteredOptions() {
+      VertxOptions opts = new VertxOptions();
+      opts.getEventBusOptions().setClustered(true);
+      return opts;
+   }
+
+   protected static <T> Handler<AsyncResult<T>> complete(CompletableFuture<T> future) {
+      return result -> {
+         if (result.succeeded()) {
+            future.complete(result.result());
+         } else {
+            future.completeExceptionally(result.cause());
+         }
+      };
+   }
 }
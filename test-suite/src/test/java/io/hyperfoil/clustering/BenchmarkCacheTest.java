@@ -0,0 +1,221 @@
+package io.hyperfoil.clustering;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.hyperfoil.api.config.Benchmark;
+import io.hyperfoil.api.config.BenchmarkBuilder;
+import io.hyperfoil.clustering.messages.BenchmarkReference;
+import io.hyperfoil.clustering.messages.BlobChunkRequest;
+import io.hyperfoil.test.TestBenchmarks;
+import io.vertx.core.Vertx;
+
+public class BenchmarkCacheTest {
+   private static final int CHUNK_SIZE = 64;
+
+   private Vertx vertx;
+   private Path cacheDir;
+   private final BenchmarkBlobs blobs = new BenchmarkBlobs();
+   private final Map<String, BenchmarkBlobs.Blob> registered = new ConcurrentHashMap<>();
+   private final List<BlobChunkRequest> requests = new CopyOnWriteArrayList<>();
+   private volatile long corruptOffset = -1;
+
+   @Before
+   public void before() throws IOException {
+      cacheDir = Files.createTempDirectory("hyperfoil-cache");
+      vertx = Vertx.vertx();
+      Codecs.register(vertx);
+      vertx.eventBus().consumer(Feeds.BLOB, message -> {
+         BlobChunkRequest request = (BlobChunkRequest) message.body();
+         requests.add(request);
+         if (request.offset == corruptOffset) {
+            BenchmarkBlobs.Blob blob = registered.get(request.hash);
+            byte[] chunk = Arrays.copyOfRange(blob.data, (int) request.offset, (int) request.offset + request.length);
+            chunk[0] ^= 1;
+            message.reply(chunk);
+         } else {
+            blobs.handleChunkRequest(message);
+         }
+      });
+   }
+
+   @After
+   public void after() throws Exception {
+      CompletableFuture<Void> closed = new CompletableFuture<>();
+      vertx.close(result -> closed.complete(null));
+      closed.get(10, TimeUnit.SECONDS);
+      deleteRecursively(cacheDir.toFile());
+   }
+
+   @Test
+   public void testChunkedFetch() throws Exception {
+      BenchmarkBlobs.Blob blob = register("chunked");
+      int chunks = (blob.data.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+      // More chunks than parallel requests
+      assertThat(chunks).isGreaterThan(4);
+
+      BenchmarkCache cache = new BenchmarkCache(vertx, cacheDir, CHUNK_SIZE, 16);
+      assertEquals("chunked", load(cache, blob.reference).name());
+      assertEquals(chunks, requests.size());
+      assertThat(requests.stream().mapToLong(r -> r.offset).distinct().count()).isEqualTo(chunks);
+      assertThat(requests.stream().mapToInt(r -> r.length).sum()).isEqualTo(blob.data.length);
+      assertTrue(Files.exists(cacheFile(blob)));
+
+      // Second load is served from the cache
+      requests.clear();
+      assertEquals("chunked", load(cache, blob.reference).name());
+      assertThat(requests).isEmpty();
+   }
+
+   @Test
+   public void testCorruptedChunkIsRejected() throws Exception {
+      BenchmarkBlobs.Blob blob = register("corrupted");
+      corruptOffset = 2 * CHUNK_SIZE;
+      BenchmarkCache cache = new BenchmarkCache(vertx, cacheDir, CHUNK_SIZE, 16);
+      try {
+         load(cache, blob.reference);
+         fail("Corrupted blob was accepted");
+      } catch (ExecutionException e) {
+         assertThat(e.getCause().getMessage()).contains("does not match the hash");
+      }
+      assertFalse(Files.exists(cacheFile(blob)));
+
+      corruptOffset = -1;
+      assertEquals("corrupted", load(cache, blob.reference).name());
+   }
+
+   @Test
+   public void testCorruptedCacheEntryIsFetchedAgain() throws Exception {
+      BenchmarkBlobs.Blob blob = register("recovery");
+      BenchmarkCache cache = new BenchmarkCache(vertx, cacheDir, CHUNK_SIZE, 16);
+      load(cache, blob.reference);
+      Path file = cacheFile(blob);
+      byte[] content = Files.readAllBytes(file);
+      content[content.length / 2] ^= 1;
+      Files.write(file, content);
+
+      requests.clear();
+      assertEquals("recovery", load(cache, blob.reference).name());
+      assertThat(requests).isNotEmpty();
+      assertThat(Files.readAllBytes(file)).isEqualTo(blob.data);
+   }
+
+   @Test
+   public void testEviction() throws Exception {
+      BenchmarkCache cache = new BenchmarkCache(vertx, cacheDir, CHUNK_SIZE, 2);
+      BenchmarkBlobs.Blob first = register("first");
+      BenchmarkBlobs.Blob second = register("second");
+      BenchmarkBlobs.Blob third = register("third");
+      load(cache, first.reference);
+      // File modification times order the entries
+      Thread.sleep(50);
+      load(cache, second.reference);
+      Thread.sleep(50);
+      // Using a cached blob makes it the most recent one
+      load(cache, first.reference);
+      Thread.sleep(50);
+      load(cache, third.reference);
+
+      assertTrue(Files.exists(cacheFile(first)));
+      assertFalse(Files.exists(cacheFile(second)));
+      assertTrue(Files.exists(cacheFile(third)));
+   }
+
+   @Test
+   public void testBlobRegistry() throws Exception {
+      Benchmark benchmark = benchmark("registry");
+      BenchmarkBlobs.Blob blob = BenchmarkBlobs.create(benchmark);
+      assertEquals(BenchmarkBlobs.hash(blob.data), blob.reference.hash());
+      assertEquals(blob.data.length, blob.reference.size());
+      assertEquals("registry", BenchmarkBlobs.decode(blob.data).name());
+
+      // Blobs with the same content are shared
+      BenchmarkBlobs.Blob shared = blobs.acquire(blob);
+      assertThat(blobs.acquire(BenchmarkBlobs.create(benchmark))).isSameAs(shared);
+      blobs.release(shared);
+      assertThat(fetch(new BlobChunkRequest(blob.reference.hash(), 0, blob.data.length))).isEqualTo(blob.data);
+
+      try {
+         fetch(new BlobChunkRequest(blob.reference.hash(), blob.data.length - 1, 2));
+         fail("Out of range request succeeded");
+      } catch (ExecutionException e) {
+         assertThat(e.getCause().getMessage()).contains("Invalid range");
+      }
+
+      blobs.release(shared);
+      try {
+         fetch(new BlobChunkRequest(blob.reference.hash(), 0, 1));
+         fail("Released blob is still available");
+      } catch (ExecutionException e) {
+         assertThat(e.getCause().getMessage()).contains("Unknown blob");
+      }
+   }
+
+   private Benchmark benchmark(String name) {
+      return TestBenchmarks.addTestSimulation(BenchmarkBuilder.builder().name(name), 1, 8080).build();
+   }
+
+   private BenchmarkBlobs.Blob register(String name) throws IOException {
+      BenchmarkBlobs.Blob blob = blobs.acquire(BenchmarkBlobs.create(benchmark(name)));
+      registered.put(blob.reference.hash(), blob);
+      return blob;
+   }
+
+   private Path cacheFile(BenchmarkBlobs.Blob blob) {
+      return cacheDir.resolve(blob.reference.hash() + ".benchmark.gz");
+   }
+
+   private Benchmark load(BenchmarkCache cache, BenchmarkReference reference) throws Exception {
+      CompletableFuture<Benchmark> future = new CompletableFuture<>();
+      cache.load(reference, result -> {
+         if (result.succeeded()) {
+            future.complete(result.result());
+         } else {
+            future.completeExceptionally(result.cause());
+         }
+      });
+      return future.get(10, TimeUnit.SECONDS);
+   }
+
+   private byte[] fetch(BlobChunkRequest request) throws Exception {
+      CompletableFuture<byte[]> future = new CompletableFuture<>();
+      vertx.eventBus().send(Feeds.BLOB, request, reply -> {
+         if (reply.succeeded()) {
+            future.complete((byte[]) reply.result().body());
+         } else {
+            future.completeExceptionally(reply.cause());
+         }
+      });
+      return future.get(10, TimeUnit.SECONDS);
+   }
+
+   private void deleteRecursively(File file) {
+      File[] children = file.listFiles();
+      if (children != null) {
+         for (File child : children) {
+            deleteRecursively(child);
+         }
+      }
+      file.delete();
+   }
+}
@@ -0,0 +1,54 @@
+package io.hyperfoil.clustering;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class ClockSyncTest {
+   // Controller clock is ahead of the agent
+   private static final long SKEW = 10_000;
+
+   private Vertx vertx;
+
+   @Before
+   public void before() {
+      vertx = Vertx.vertx();
+   }
+
+   @After
+   public void after(TestContext ctx) {
+      vertx.close(ctx.asyncAssertSuccess());
+   }
+
+   @Test
+   public void testSkewedClock(TestContext ctx) {
+      AtomicInteger requests = new AtomicInteger();
+      vertx.eventBus().consumer(Feeds.CLOCK, message -> {
+         long controllerTime = System.currentTimeMillis() + SKEW;
+         if (requests.incrementAndGet() <= 4) {
+            // The delay after taking the timestamp makes these samples inaccurate by 100 ms
+            vertx.setTimer(200, id -> message.reply(controllerTime));
+         } else {
+            message.reply(controllerTime);
+         }
+      });
+      ClockSync.estimate(vertx.eventBus(), "agent", ctx.asyncAssertSuccess(offset -> {
+         ctx.assertTrue(requests.get() > 4);
+         // The estimate comes from the sample with the shortest round-trip
+         ctx.assertTrue(Math.abs(offset - SKEW) < 20, "Estimated offset is " + offset);
+      }));
+   }
+
+   @Test
+   public void testNoController(TestContext ctx) {
+      ClockSync.estimate(vertx.eventBus(), "agent", ctx.asyncAssertFailure());
+   }
+}
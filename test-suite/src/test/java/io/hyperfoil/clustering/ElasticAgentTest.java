@@ -0,0 +1,205 @@
+package io.hyperfoil.clustering;
+
+import static io.hyperfoil.core.builders.StepCatalog.SC;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.hyperfoil.api.config.Benchmark;
+import io.hyperfoil.api.config.BenchmarkBuilder;
+import io.hyperfoil.api.http.HttpMethod;
+import io.hyperfoil.api.statistics.StatisticsSnapshot;
+import io.hyperfoil.client.RestClient;
+import io.hyperfoil.clustering.messages.AgentControlMessage;
+import io.hyperfoil.clustering.messages.AgentMetricsMessage;
+import io.hyperfoil.clustering.messages.PhaseControlMessage;
+import io.hyperfoil.clustering.messages.RequestStatsBatchMessage;
+import io.hyperfoil.controller.Client;
+import io.hyperfoil.core.impl.AgentMetrics;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Runs the controller with an in-VM deployer; saturation is reported by injecting agent metrics
+ * and the event bus interceptors on the controller node observe (and delay) the elastic protocol.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ElasticAgentTest extends BaseClusteredTest {
+   private static final long FIRST_DURATION = 8000;
+   private static final long SATURATED_LAG = TimeUnit.SECONDS.toMicros(1);
+   private static final long STATISTICS_PERIOD = 1000;
+
+   private final TestDeployer deployer = new TestDeployer(this);
+   private HttpServer httpServer;
+
+   @Before
+   public void before(TestContext ctx) {
+      Vertx standalone = Vertx.vertx();
+      servers.add(standalone);
+      httpServer = standalone.createHttpServer().requestHandler(req -> req.response().end("test"))
+            .listen(0, "localhost", ctx.asyncAssertSuccess());
+
+      ControllerVerticle controller = new ControllerVerticle();
+      controller.deployer = deployer;
+      initiateClustered(clusteredOptions(), controller, new DeploymentOptions(), ctx, ctx.async());
+   }
+
+   @Test(timeout = 120_000)
+   public void testElasticAgentJoinsRun() throws Exception {
+      Vertx controllerVertx = servers.get(servers.size() - 1);
+      AtomicBoolean joinHeld = new AtomicBoolean();
+      AtomicLong firstEnd = new AtomicLong(Long.MAX_VALUE);
+      AtomicLong joinReleased = new AtomicLong(Long.MAX_VALUE);
+      AtomicLong firstFinished = new AtomicLong(-1);
+      List<Double> scaleFactors = new CopyOnWriteArrayList<>();
+      List<Sample> samples = new CopyOnWriteArrayList<>();
+
+      controllerVertx.eventBus().addOutboundInterceptor(dc -> {
+         Object body = dc.message().body();
+         if (body instanceof AgentControlMessage) {
+            AgentControlMessage controlMessage = (AgentControlMessage) body;
+            if (controlMessage.command() == AgentControlMessage.Command.SCALE) {
+               scaleFactors.add(controlMessage.elasticScale().rateFactor());
+            } else if (controlMessage.command() == AgentControlMessage.Command.JOIN && joinHeld.compareAndSet(false, true)) {
+               // Keep the new agent joining past the planned end of the first phase
+               long delay = Math.max(1, firstEnd.get() + 1000 - System.currentTimeMillis());
+               controllerVertx.setTimer(delay, id -> {
+                  joinReleased.set(System.currentTimeMillis());
+                  dc.next();
+               });
+               return;
+            }
+         } else if (body instanceof PhaseControlMessage) {
+            PhaseControlMessage phaseControl = (PhaseControlMessage) body;
+            if (phaseControl.command() == PhaseControlMessage.Command.FINISH && "first".equals(phaseControl.phase())) {
+               firstFinished.set(System.currentTimeMillis());
+            }
+         }
+         dc.next();
+      });
+      controllerVertx.eventBus().addInboundInterceptor(dc -> {
+         Object body = dc.message().body();
+         if (body instanceof AgentMetricsMessage && ((AgentMetricsMessage) body).metrics.maxSchedulingLag() < SATURATED_LAG) {
+            // Real metrics would break the sequence of saturated samples
+            return;
+         } else if (body instanceof RequestStatsBatchMessage) {
+            RequestStatsBatchMessage batch = (RequestStatsBatchMessage) body;
+            for (RequestStatsBatchMessage.Entry entry : batch.entries) {
+               samples.add(new Sample(batch.address, entry.metric, entry.statistics));
+            }
+         }
+         dc.next();
+      });
+
+      RestClient client = new RestClient("localhost", 8090);
+      try {
+         Client.RunRef runRef = client.register(benchmark(), null).start(null);
+         io.hyperfoil.controller.model.Run run;
+         while (!isRunning(run = runRef.get(), "first")) {
+            Thread.sleep(100);
+         }
+         firstEnd.set(System.currentTimeMillis() + FIRST_DURATION);
+         String declaredAddress = run.agents.get(0).address;
+         assertThat(declaredAddress).isNotNull();
+         for (int i = 0; i < 2; ++i) {
+            AgentMetrics metrics = new AgentMetrics(System.currentTimeMillis() - STATISTICS_PERIOD, System.currentTimeMillis(),
+                  new int[]{ 0 }, new long[]{ SATURATED_LAG }, new long[]{ SATURATED_LAG }, new double[]{ -1 }, new long[]{ -1 }, 0, 0);
+            controllerVertx.eventBus().send(Feeds.STATS, new AgentMetricsMessage(declaredAddress, runRef.id(), metrics));
+         }
+
+         while ((run = runRef.get()).terminated == null) {
+            Thread.sleep(100);
+         }
+         assertThat(run.errors).isEmpty();
+         assertThat(deployer.agents).hasSize(2);
+         assertThat(deployer.agents.get(1).name).isEqualTo("agent-elastic-0");
+         assertThat(run.agents).hasSize(2);
+         String elasticAddress = run.agents.stream().filter(a -> "agent-elastic-0".equals(a.name))
+               .findFirst().orElseThrow(AssertionError::new).address;
+
+         // The declared agent generates half of the rate once the elastic agent joined
+         assertThat(scaleFactors).isNotEmpty().allMatch(factor -> factor == 0.5);
+         // FINISH is not sent while an agent is joining the phase
+         assertThat(joinHeld.get()).isTrue();
+         assertThat(firstFinished.get()).isGreaterThanOrEqualTo(joinReleased.get());
+
+         // Both agents executed the second phase and their samples share the same sequence of periods
+         Map<Integer, Long> declaredSamples = new HashMap<>();
+         Map<Integer, Long> elasticSamples = new HashMap<>();
+         int reportedRequests = 0;
+         for (Sample sample : samples) {
+            if (!"second".equals(sample.metric)) {
+               continue;
+            }
+            reportedRequests += sample.statistics.requestCount;
+            if (sample.statistics.isEmpty()) {
+               continue;
+            }
+            Map<Integer, Long> target = declaredAddress.equals(sample.address) ? declaredSamples : elasticSamples;
+            target.put(sample.statistics.sequenceId, sample.statistics.histogram.getStartTimeStamp());
+         }
+         assertThat(declaredSamples).isNotEmpty();
+         assertThat(elasticSamples).isNotEmpty();
+         assertThat(samples).anyMatch(sample -> elasticAddress.equals(sample.address));
+         for (Map.Entry<Integer, Long> entry : elasticSamples.entrySet()) {
+            Long declaredStart = declaredSamples.get(entry.getKey());
+            if (declaredStart != null) {
+               assertThat(Math.abs(entry.getValue() - declaredStart)).isLessThan(STATISTICS_PERIOD);
+            }
+         }
+
+         // Total statistics merge the samples from both agents
+         int totalRequests = runRef.statsTotal().statistics.stream()
+               .filter(rs -> "second".equals(rs.metric))
+               .mapToInt(rs -> rs.summary.requestCount).sum();
+         assertThat(totalRequests).isEqualTo(reportedRequests).isGreaterThan(0);
+      } finally {
+         client.close();
+      }
+   }
+
+   private Benchmark benchmark() {
+      BenchmarkBuilder builder = BenchmarkBuilder.builder().name("elastic")
+            .addAgent("agent", null, null)
+            .elastic().maxAgents(2).saturatedSamples(2).maxBusyRatio(-1).cooldown(0).minRemainingDuration(1000).endElastic();
+      builder.http().host("localhost").port(httpServer.actualPort()).sharedConnections(10).endHttp();
+      builder.addPhase("first").constantPerSec(20).duration(FIRST_DURATION)
+            .scenario().initialSequence("first")
+            .step(SC).httpRequest(HttpMethod.GET).path("test").metric("first").endStep()
+            .endSequence().endScenario().endPhase();
+      builder.addPhase("second").constantPerSec(20).duration(3000).startAfter("first")
+            .scenario().initialSequence("second")
+            .step(SC).httpRequest(HttpMethod.GET).path("test").metric("second").endStep()
+            .endSequence().endScenario().endPhase();
+      return builder.build();
+   }
+
+   private static boolean isRunning(io.hyperfoil.controller.model.Run run, String phase) {
+      return run.phases != null && run.phases.stream().anyMatch(p -> phase.equals(p.name) && "RUNNING".equals(p.status));
+   }
+
+   private static class Sample {
+      final String address;
+      final String metric;
+      final StatisticsSnapshot statistics;
+
+      Sample(String address, String metric, StatisticsSnapshot statistics) {
+         this.address = address;
+         this.metric = metric;
+         this.statistics = statistics;
+      }
+   }
+}
@@ -0,0 +1,109 @@
+package io.hyperfoil.clustering;
+
+import static io.hyperfoil.core.builders.StepCatalog.SC;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+import io.hyperfoil.api.config.BenchmarkBuilder;
+import io.hyperfoil.api.http.HttpMethod;
+import io.hyperfoil.client.RestClient;
+import io.hyperfoil.controller.Client;
+import io.hyperfoil.core.util.FlightRecorder;
+import io.hyperfoil.test.Benchmark;
+import io.hyperfoil.test.TestBenchmarks;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class ProfilingTest {
+   private Vertx vertx;
+   private HttpServer httpServer;
+
+   @Before
+   public void before(TestContext ctx) {
+      vertx = Vertx.vertx();
+      Codecs.register(vertx);
+      httpServer = vertx.createHttpServer().requestHandler(req -> req.response().end("test"))
+            .listen(0, "localhost", ctx.asyncAssertSuccess(server -> {
+               // Without agents in the benchmark the controller runs the benchmark in-vm
+               vertx.deployVerticle(ControllerVerticle.class.getName(), ctx.asyncAssertSuccess());
+            }));
+   }
+
+   @After
+   public void after(TestContext ctx) {
+      vertx.close(ctx.asyncAssertSuccess());
+   }
+
+   @Category(Benchmark.class)
+   @Test(timeout = 60_000)
+   public void testProfiledPhase() throws IOException, InterruptedException {
+      assumeTrue("JDK Flight Recorder is not available", FlightRecorder.isAvailable());
+      RestClient client = new RestClient("localhost", 8090);
+      try {
+         BenchmarkBuilder builder = BenchmarkBuilder.builder().name("profiled");
+         io.hyperfoil.api.config.Benchmark benchmark = TestBenchmarks.addTestSimulation(builder, 1, httpServer.actualPort()).build();
+         Client.RunRef runRef = client.register(benchmark, null).start(null, Collections.singletonList("test"));
+         while (runRef.get().terminated == null) {
+            Thread.sleep(500);
+         }
+         // The recordings are transferred after the phase terminates
+         Collection<String> profiles = runRef.profiles();
+         while (!profiles.contains("in-vm.test.jfr") || !profiles.contains("controller.test.jfr")) {
+            Thread.sleep(500);
+            profiles = runRef.profiles();
+         }
+         assertThat(profiles).doesNotContain("in-vm.test.jfr.part");
+
+         File file = File.createTempFile("profile", ".jfr");
+         file.deleteOnExit();
+         runRef.downloadProfile("in-vm.test.jfr", file.toString());
+         assertThat(Files.size(file.toPath())).isGreaterThan(0);
+      } finally {
+         client.close();
+      }
+   }
+
+   @Test(timeout = 60_000)
+   public void testShortPhaseRecordingIsStopped() throws InterruptedException {
+      assumeTrue("JDK Flight Recorder is not available", FlightRecorder.isAvailable());
+      RestClient client = new RestClient("localhost", 8090);
+      try {
+         // The phase completes right after starting, likely before the recordings start
+         BenchmarkBuilder builder = BenchmarkBuilder.builder().name("short-profiled");
+         builder.http().host("localhost").port(httpServer.actualPort()).endHttp()
+               .addPhase("short").atOnce(1)
+               .scenario().initialSequence("test")
+               .step(SC).httpRequest(HttpMethod.GET).path("test").endStep()
+               .endSequence().endScenario().endPhase();
+         Client.RunRef runRef = client.register(builder.build(), null).start(null, Collections.singletonList("short"));
+         while (runRef.get().terminated == null) {
+            Thread.sleep(100);
+         }
+         Collection<String> profiles = runRef.profiles();
+         while (!profiles.contains("in-vm.short.jfr") || !profiles.contains("controller.short.jfr")) {
+            Thread.sleep(100);
+            profiles = runRef.profiles();
+         }
+         // Both recordings must be stopped, not just written
+         String recordings = FlightRecorder.recordings();
+         assertThat(recordings).isNotNull().doesNotContain("-" + runRef.id() + "-short");
+      } finally {
+         client.close();
+      }
+   }
+}
@@ -0,0 +1,211 @@
+package io.hyperfoil.clustering;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.hyperfoil.api.statistics.IntValue;
+import io.hyperfoil.api.statistics.LongValue;
+import io.hyperfoil.api.statistics.StatisticsSnapshot;
+import io.hyperfoil.clustering.messages.AgentMetricsMessage;
+import io.hyperfoil.clustering.messages.ObjectCodec;
+import io.hyperfoil.clustering.messages.RequestStatsBatchMessage;
+import io.hyperfoil.clustering.messages.RequestStatsMessage;
+import io.hyperfoil.clustering.messages.SessionStatsMessage;
+import io.hyperfoil.core.impl.AgentMetrics;
+import io.vertx.core.buffer.Buffer;
+
+public class RequestStatsMessageCodecTest {
+   private final RequestStatsMessage.Codec codec = new RequestStatsMessage.Codec();
+
+   @Test
+   public void testRoundTrip() {
+      StatisticsSnapshot snapshot = randomSnapshot(1000);
+      IntValue headers = new IntValue();
+      headers.add(42);
+      snapshot.custom.put("x-foo", headers);
+      LongValue bytes = new LongValue();
+      bytes.add(1L << 40);
+      snapshot.custom.put("bytes", bytes);
+      snapshot.addCustom(2, 12345);
+      snapshot.recordCustom(3, 100);
+      snapshot.histogramOverflows = 3;
+      RequestStatsMessage message = new RequestStatsMessage("agent-address", "0001", 3, true, 7, "my-metric", snapshot);
+
+      Buffer buffer = Buffer.buffer();
+      // some garbage before the message, as the message is usually preceded by headers
+      buffer.appendString("header");
+      codec.encodeToWire(buffer, message);
+      RequestStatsMessage decoded = codec.decodeFromWire(6, buffer);
+
+      assertThat(decoded.address).isEqualTo(message.address);
+      assertThat(decoded.runId).isEqualTo(message.runId);
+      assertThat(decoded.phaseId).isEqualTo(message.phaseId);
+      assertThat(decoded.isPhaseComplete).isEqualTo(message.isPhaseComplete);
+      assertThat(decoded.stepId).isEqualTo(message.stepId);
+      assertThat(decoded.metric).isEqualTo(message.metric);
+
+      StatisticsSnapshot copy = decoded.statistics;
+      assertThat(copy.sequenceId).isEqualTo(snapshot.sequenceId);
+      assertThat(copy.histogram).isEqualTo(snapshot.histogram);
+      assertThat(copy.histogram.getStartTimeStamp()).isEqualTo(snapshot.histogram.getStartTimeStamp());
+      assertThat(copy.histogram.getEndTimeStamp()).isEqualTo(snapshot.histogram.getEndTimeStamp());
+      assertThat(copy.totalSendTime).isEqualTo(snapshot.totalSendTime);
+      assertThat(copy.requestCount).isEqualTo(snapshot.requestCount);
+      assertThat(copy.responseCount).isEqualTo(snapshot.responseCount);
+      assertThat(copy.statuses()).isEqualTo(snapshot.statuses());
+      assertThat(copy.blockedTime).isEqualTo(snapshot.blockedTime);
+      assertThat(copy.histogramOverflows).isEqualTo(3);
+      assertThat(((IntValue) copy.custom.get("x-foo")).value()).isEqualTo(42);
+      assertThat(((LongValue) copy.custom.get("bytes")).value()).isEqualTo(1L << 40);
+      assertThat(copy.customValue(2)).isEqualTo(12345);
+      assertThat(copy.customHistograms[3].getTotalCount()).isEqualTo(1);
+   }
+
+   @Test
+   public void testEmptySnapshot() {
+      StatisticsSnapshot snapshot = new StatisticsSnapshot();
+      RequestStatsMessage message = new RequestStatsMessage("a", "r", 0, false, 0, "m", snapshot);
+      Buffer buffer = Buffer.buffer();
+      codec.encodeToWire(buffer, message);
+      RequestStatsMessage decoded = codec.decodeFromWire(0, buffer);
+      assertThat(decoded.statistics.isEmpty()).isTrue();
+      assertThat(decoded.statistics.sequenceId).isEqualTo(-1);
+   }
+
+   @Test
+   public void testBatchRoundTrip() {
+      List<RequestStatsBatchMessage.Entry> entries = new ArrayList<>();
+      for (int i = 0; i < 10; ++i) {
+         StatisticsSnapshot snapshot = randomSnapshot(100);
+         snapshot.sequenceId = i;
+         entries.add(new RequestStatsBatchMessage.Entry(i / 5, i % 5, "metric-" + (i % 3), snapshot));
+      }
+      RequestStatsBatchMessage message = new RequestStatsBatchMessage("agent-address", "0001", true, entries);
+      RequestStatsBatchMessage.Codec batchCodec = new RequestStatsBatchMessage.Codec();
+
+      Buffer buffer = Buffer.buffer();
+      buffer.appendString("header");
+      batchCodec.encodeToWire(buffer, message);
+      RequestStatsBatchMessage decoded = batchCodec.decodeFromWire(6, buffer);
+
+      assertThat(decoded.address).isEqualTo(message.address);
+      assertThat(decoded.runId).isEqualTo(message.runId);
+      assertThat(decoded.isPhaseComplete).isTrue();
+      assertThat(decoded.entries).hasSize(entries.size());
+      for (int i = 0; i < entries.size(); ++i) {
+         RequestStatsBatchMessage.Entry original = entries.get(i);
+         RequestStatsBatchMessage.Entry copy = decoded.entries.get(i);
+         assertThat(copy.phaseId).isEqualTo(original.phaseId);
+         assertThat(copy.stepId).isEqualTo(original.stepId);
+         assertThat(copy.metric).isEqualTo(original.metric);
+         assertThat(copy.statistics.sequenceId).isEqualTo(i);
+         assertThat(copy.statistics.histogram).isEqualTo(original.statistics.histogram);
+         assertThat(copy.statistics.requestCount).isEqualTo(original.statistics.requestCount);
+         assertThat(copy.statistics.totalSendTime).isEqualTo(original.statistics.totalSendTime);
+      }
+   }
+
+   @Test
+   public void testRepeatedNamesAreWrittenOnce() {
+      List<RequestStatsBatchMessage.Entry> entries = new ArrayList<>();
+      for (int i = 0; i < 10; ++i) {
+         StatisticsSnapshot snapshot = randomSnapshot(10);
+         IntValue value = new IntValue();
+         value.add(i);
+         snapshot.custom.put("custom-key", value);
+         entries.add(new RequestStatsBatchMessage.Entry(0, i, "repeated-metric", snapshot));
+      }
+      RequestStatsBatchMessage.Codec batchCodec = new RequestStatsBatchMessage.Codec();
+      Buffer buffer = Buffer.buffer();
+      batchCodec.encodeToWire(buffer, new RequestStatsBatchMessage("agent-address", "0001", false, entries));
+      String encoded = buffer.toString(StandardCharsets.ISO_8859_1.name());
+      assertThat(encoded.split("repeated-metric", -1)).hasSize(2);
+      assertThat(encoded.split("custom-key", -1)).hasSize(2);
+
+      RequestStatsBatchMessage decoded = batchCodec.decodeFromWire(0, buffer);
+      for (int i = 0; i < entries.size(); ++i) {
+         assertThat(decoded.entries.get(i).metric).isEqualTo("repeated-metric");
+         assertThat(((IntValue) decoded.entries.get(i).statistics.custom.get("custom-key")).value()).isEqualTo(i);
+      }
+   }
+
+   @Test
+   public void testSessionStatsRoundTrip() {
+      Map<String, SessionStatsMessage.MinMax> stats = new HashMap<>();
+      stats.put("rampUp", new SessionStatsMessage.MinMax(1, 10));
+      stats.put("steadyState", new SessionStatsMessage.MinMax(10, 20));
+      SessionStatsMessage.Codec sessionCodec = new SessionStatsMessage.Codec();
+      Buffer buffer = Buffer.buffer();
+      sessionCodec.encodeToWire(buffer, new SessionStatsMessage("agent-address", "0001", 123456789L, stats));
+      SessionStatsMessage decoded = sessionCodec.decodeFromWire(0, buffer);
+      assertThat(decoded.address).isEqualTo("agent-address");
+      assertThat(decoded.runId).isEqualTo("0001");
+      assertThat(decoded.timestamp).isEqualTo(123456789L);
+      assertThat(decoded.sessionStats).hasSize(2);
+      assertThat(decoded.sessionStats.get("steadyState").min).isEqualTo(10);
+      assertThat(decoded.sessionStats.get("steadyState").max).isEqualTo(20);
+   }
+
+   @Test
+   public void testAgentMetricsRoundTrip() {
+      AgentMetrics metrics = new AgentMetrics(1000, 2000, new int[]{ 3, 0 }, new long[]{ 100, 5 }, new long[]{ 250_000, 10 },
+            new double[]{ 0.5, -1 }, new long[]{ 1024, -1 }, 7, 2000);
+      AgentMetricsMessage.Codec metricsCodec = new AgentMetricsMessage.Codec();
+      Buffer buffer = Buffer.buffer();
+      metricsCodec.encodeToWire(buffer, new AgentMetricsMessage("agent-address", "0001", metrics));
+      assertThat(buffer.length()).isLessThan(64);
+      AgentMetrics decoded = metricsCodec.decodeFromWire(0, buffer).metrics;
+      assertThat(decoded.startTime).isEqualTo(1000);
+      assertThat(decoded.endTime).isEqualTo(2000);
+      assertThat(decoded.maxPendingTasks).containsExactly(3, 0);
+      assertThat(decoded.meanLag).containsExactly(100, 5);
+      assertThat(decoded.maxLag).containsExactly(250_000, 10);
+      assertThat(decoded.busyRatio).containsExactly(0.5, -1);
+      assertThat(decoded.allocationRate).containsExactly(1024, -1);
+      assertThat(decoded.gcPauseTime).isEqualTo(7);
+      assertThat(decoded.maxArrivalLag).isEqualTo(2000);
+   }
+
+   @Test
+   public void testSmallerThanSerialized() {
+      ObjectCodec<RequestStatsMessage> objectCodec = new ObjectCodec<>();
+      RequestStatsMessage message = new RequestStatsMessage("agent-address", "0001", 3, false, 7, "my-metric", randomSnapshot(10_000));
+      Buffer binary = Buffer.buffer();
+      codec.encodeToWire(binary, message);
+      Buffer serialized = Buffer.buffer();
+      objectCodec.encodeToWire(serialized, message);
+      assertThat(binary.length()).isLessThan(serialized.length());
+      assertThat(codec.decodeFromWire(0, binary).statistics.histogram)
+            .isEqualTo(objectCodec.decodeFromWire(0, serialized).statistics.histogram);
+   }
+
+   private StatisticsSnapshot randomSnapshot(int values) {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      StatisticsSnapshot snapshot = new StatisticsSnapshot();
+      snapshot.sequenceId = 17;
+      snapshot.histogram.setStartTimeStamp(System.currentTimeMillis());
+      snapshot.histogram.setEndTimeStamp(System.currentTimeMillis() + 1000);
+      for (int i = 0; i < values; ++i) {
+         long responseTime = (long) Math.abs(random.nextGaussian() * TimeUnit.MILLISECONDS.toNanos(10));
+         snapshot.histogram.recordValue(Math.min(responseTime, snapshot.histogram.getHighestTrackableValue()));
+         snapshot.totalSendTime += random.nextInt(10_000);
+      }
+      snapshot.requestCount = values;
+      snapshot.responseCount = values;
+      snapshot.status_2xx = values - 10;
+      snapshot.status_4xx = 7;
+      snapshot.status_5xx = 3;
+      snapshot.blockedCount = 5;
+      snapshot.blockedTime = 123_456_789L;
+      return snapshot;
+   }
+}
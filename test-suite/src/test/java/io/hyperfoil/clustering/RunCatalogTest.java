@@ -0,0 +1,92 @@
+package io.hyperfoil.clustering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.json.JsonObject;
+
+public class RunCatalogTest {
+   private Path runDir;
+
+   @Before
+   public void before() throws IOException {
+      runDir = Files.createTempDirectory("hyperfoil-runs");
+   }
+
+   @After
+   public void after() {
+      deleteRecursively(runDir.toFile());
+   }
+
+   @Test
+   public void testRebuildFromDirectories() throws IOException {
+      Files.createDirectory(runDir.resolve("0000"));
+      Files.createDirectory(runDir.resolve("0001"));
+      Files.createDirectory(runDir.resolve("not-a-run"));
+      AtomicInteger reads = new AtomicInteger();
+      RunCatalog catalog = new RunCatalog(runDir);
+      catalog.load(dir -> {
+         reads.incrementAndGet();
+         return new JsonObject().put("benchmark", "test");
+      });
+      assertEquals(2, reads.get());
+      assertEquals(2, catalog.entries().size());
+      assertEquals("0001", catalog.lastRunId());
+      assertEquals("test", catalog.get("0000").getString("benchmark"));
+
+      // Runs already in the catalog are not read again
+      RunCatalog reloaded = new RunCatalog(runDir);
+      reloaded.load(dir -> {
+         throw new AssertionError(dir.toString());
+      });
+      assertEquals(2, reloaded.entries().size());
+   }
+
+   @Test
+   public void testUpdateAndCompaction() throws IOException {
+      Files.createDirectory(runDir.resolve("0000"));
+      Files.createDirectory(runDir.resolve("0001"));
+      RunCatalog catalog = new RunCatalog(runDir);
+      catalog.load(dir -> new JsonObject());
+      catalog.update(new JsonObject().put("id", "0000").put("description", "first"));
+      catalog.update(new JsonObject().put("id", "0000").put("description", "second"));
+      catalog.update(new JsonObject().put("id", "0000").put("description", "third"));
+      Path file = runDir.resolve(RunCatalog.FILE_NAME);
+      // Simulate partially written line
+      Files.write(file, "{\"id\":\"00".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+      Files.delete(runDir.resolve("0001"));
+
+      RunCatalog reloaded = new RunCatalog(runDir);
+      reloaded.load(dir -> {
+         throw new AssertionError(dir.toString());
+      });
+      assertEquals(1, reloaded.entries().size());
+      assertEquals("third", reloaded.get("0000").getString("description"));
+      assertNull(reloaded.get("0001"));
+      assertEquals(1, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+      assertNotNull(reloaded.lastRunId());
+   }
+
+   private void deleteRecursively(File file) {
+      File[] children = file.listFiles();
+      if (children != null) {
+         for (File child : children) {
+            deleteRecursively(child);
+         }
+      }
+      file.delete();
+   }
+}
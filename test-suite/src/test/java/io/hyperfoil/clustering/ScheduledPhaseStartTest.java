@@ -0,0 +1,156 @@
+package io.hyperfoil.clustering;
+
+import static io.hyperfoil.core.builders.StepCatalog.SC;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.hyperfoil.api.config.Benchmark;
+import io.hyperfoil.api.config.BenchmarkBuilder;
+import io.hyperfoil.api.http.HttpMethod;
+import io.hyperfoil.api.session.PhaseInstance;
+import io.hyperfoil.clustering.messages.AgentControlMessage;
+import io.hyperfoil.clustering.messages.PhaseChangeMessage;
+import io.hyperfoil.clustering.messages.PhaseControlMessage;
+import io.hyperfoil.clustering.messages.RequestStatsBatchMessage;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Drives an agent through the event bus in place of the controller, with controller clock ahead of the agent.
+ */
+public class ScheduledPhaseStartTest {
+   private static final long SKEW = 10_000;
+   private static final String RUN_ID = "0000";
+
+   private Vertx vertx;
+   private HttpServer httpServer;
+   private String deploymentId;
+   private final List<PhaseChangeMessage> phaseChanges = new CopyOnWriteArrayList<>();
+   private final List<Long> phaseChangeTimes = new CopyOnWriteArrayList<>();
+   private final List<RequestStatsBatchMessage.Entry> stats = new CopyOnWriteArrayList<>();
+
+   @Before
+   public void before() throws Exception {
+      vertx = Vertx.vertx();
+      Codecs.register(vertx);
+      CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+      vertx.createHttpServer().requestHandler(req -> req.response().end("test")).listen(0, "localhost", result -> {
+         if (result.succeeded()) {
+            listening.complete(result.result());
+         } else {
+            listening.completeExceptionally(result.cause());
+         }
+      });
+      httpServer = listening.get(10, TimeUnit.SECONDS);
+
+      vertx.eventBus().consumer(Feeds.DISCOVERY, message -> message.reply("Registered"));
+      vertx.eventBus().consumer(Feeds.CLOCK, message -> message.reply(System.currentTimeMillis() + SKEW));
+      vertx.eventBus().consumer(Feeds.RESPONSE, message -> {
+         phaseChangeTimes.add(System.currentTimeMillis());
+         phaseChanges.add((PhaseChangeMessage) message.body());
+      });
+      vertx.eventBus().consumer(Feeds.STATS, message -> {
+         if (message.body() instanceof RequestStatsBatchMessage) {
+            stats.addAll(((RequestStatsBatchMessage) message.body()).entries);
+         }
+         message.reply("OK");
+      });
+
+      // Remote agent estimates its clock offset to the controller
+      JsonObject config = new JsonObject().put("name", "agent").put("runId", RUN_ID).put("remote", true);
+      CompletableFuture<String> deployed = new CompletableFuture<>();
+      vertx.deployVerticle(AgentVerticle.class, new DeploymentOptions().setConfig(config), result -> {
+         if (result.succeeded()) {
+            deployed.complete(result.result());
+         } else {
+            deployed.completeExceptionally(result.cause());
+         }
+      });
+      deploymentId = deployed.get(10, TimeUnit.SECONDS);
+
+      CompletableFuture<Object> initialized = new CompletableFuture<>();
+      vertx.eventBus().send(deploymentId, new AgentControlMessage(AgentControlMessage.Command.INITIALIZE, 0, benchmark(), RUN_ID), reply -> {
+         if (reply.succeeded()) {
+            initialized.complete(reply.result().body());
+         } else {
+            initialized.completeExceptionally(reply.cause());
+         }
+      });
+      assertThat(initialized.get(10, TimeUnit.SECONDS)).isEqualTo("OK");
+   }
+
+   @After
+   public void after() throws Exception {
+      CompletableFuture<Void> closed = new CompletableFuture<>();
+      vertx.close(result -> closed.complete(null));
+      closed.get(10, TimeUnit.SECONDS);
+   }
+
+   @Test(timeout = 30_000)
+   public void testPhaseStartsAtAgreedTime() throws Exception {
+      long localNow = System.currentTimeMillis();
+      long startTime = localNow + SKEW + 500;
+      vertx.eventBus().publish(Feeds.CONTROL, new PhaseControlMessage(PhaseControlMessage.Command.RUN, "test", false, startTime));
+
+      // The phase is held until the start time in controller clock
+      Thread.sleep(200);
+      assertThat(phaseChanges).noneMatch(change -> change.status() == PhaseInstance.Status.RUNNING);
+      int running = awaitStatus(PhaseInstance.Status.RUNNING);
+      assertThat(phaseChangeTimes.get(running) - localNow).isBetween(400L, 5000L);
+
+      vertx.eventBus().publish(Feeds.CONTROL, new PhaseControlMessage(PhaseControlMessage.Command.TERMINATE, "test"));
+      awaitStatus(PhaseInstance.Status.TERMINATED);
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (stats.isEmpty()) {
+         assertThat(System.currentTimeMillis()).isLessThan(deadline);
+         Thread.sleep(50);
+      }
+      // Samples are reported in controller time, starting when the phase started
+      long firstSample = stats.stream().mapToLong(entry -> entry.statistics.histogram.getStartTimeStamp()).min().getAsLong();
+      assertThat(firstSample).isBetween(startTime - 50, startTime + 1000);
+   }
+
+   @Test(timeout = 30_000)
+   public void testTerminateStartsPendingPhase() throws Exception {
+      long startTime = System.currentTimeMillis() + SKEW + TimeUnit.MINUTES.toMillis(1);
+      vertx.eventBus().publish(Feeds.CONTROL, new PhaseControlMessage(PhaseControlMessage.Command.RUN, "test", false, startTime));
+      // Commands for a pending phase do not overtake its start
+      vertx.eventBus().publish(Feeds.CONTROL, new PhaseControlMessage(PhaseControlMessage.Command.TERMINATE, "test"));
+      int terminated = awaitStatus(PhaseInstance.Status.TERMINATED);
+      int running = awaitStatus(PhaseInstance.Status.RUNNING);
+      assertThat(running).isLessThan(terminated);
+   }
+
+   private Benchmark benchmark() {
+      BenchmarkBuilder builder = BenchmarkBuilder.builder().name("scheduled-start");
+      builder.http().host("localhost").port(httpServer.actualPort()).endHttp()
+            .addPhase("test").atOnce(1)
+            .scenario().initialSequence("test")
+            .step(SC).httpRequest(HttpMethod.GET).path("test").endStep()
+            .endSequence().endScenario().endPhase();
+      return builder.build();
+   }
+
+   private int awaitStatus(PhaseInstance.Status status) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + 10_000;
+      for (;;) {
+         for (int i = 0; i < phaseChanges.size(); ++i) {
+            if (phaseChanges.get(i).status() == status) {
+               return i;
+            }
+         }
+         assertThat(System.currentTimeMillis()).isLessThan(deadline);
+         Thread.sleep(20);
+      }
+   }
+}
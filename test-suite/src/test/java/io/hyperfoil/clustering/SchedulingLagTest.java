@@ -0,0 +1,99 @@
+package io.hyperfoil.clustering;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.hyperfoil.api.config.BenchmarkBuilder;
+import io.hyperfoil.client.RestClient;
+import io.hyperfoil.clustering.messages.AgentMetricsMessage;
+import io.hyperfoil.controller.Client;
+import io.hyperfoil.core.impl.AgentMetrics;
+import io.hyperfoil.test.TestBenchmarks;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class SchedulingLagTest {
+   private static final String FAKE_AGENT = "fake-agent";
+
+   private Vertx vertx;
+   private HttpServer httpServer;
+
+   @Before
+   public void before(TestContext ctx) {
+      vertx = Vertx.vertx();
+      Codecs.register(vertx);
+      httpServer = vertx.createHttpServer().requestHandler(req -> req.response().end("test"))
+            .listen(0, "localhost", ctx.asyncAssertSuccess(server -> {
+               // Without agents in the benchmark the controller runs the benchmark in-vm
+               vertx.deployVerticle(ControllerVerticle.class.getName(), ctx.asyncAssertSuccess());
+            }));
+   }
+
+   @After
+   public void after(TestContext ctx) {
+      vertx.close(ctx.asyncAssertSuccess());
+   }
+
+   @Test(timeout = 60_000)
+   public void testSaturatedAgentFailsPhase() throws Exception {
+      RestClient client = new RestClient("localhost", 8090);
+      try {
+         BenchmarkBuilder builder = BenchmarkBuilder.builder().name("scheduling-lag")
+               .statistics().maxSchedulingLag(1000).endStatistics();
+         io.hyperfoil.api.config.Benchmark benchmark = TestBenchmarks.addTestSimulation(builder, 1, httpServer.actualPort()).build();
+         Client.RunRef runRef = client.register(benchmark, null).start(null);
+         // The lag is checked only in running phases
+         while (!isRunning(runRef.get())) {
+            Thread.sleep(100);
+         }
+
+         // Lag below the limit is fine, and the agent is reported only once per phase
+         sendMetrics(runRef.id(), TimeUnit.MILLISECONDS.toMicros(500));
+         sendMetrics(runRef.id(), TimeUnit.MILLISECONDS.toMicros(2000));
+         sendMetrics(runRef.id(), TimeUnit.MILLISECONDS.toMicros(3000));
+
+         runRef.kill();
+         while (runRef.get().terminated == null) {
+            Thread.sleep(100);
+         }
+         List<String> failures = runRef.statsTotal().statistics.stream()
+               .filter(rs -> "test".equals(rs.phase))
+               .flatMap(rs -> rs.failedSLAs.stream())
+               .filter(msg -> msg.contains(FAKE_AGENT)).collect(Collectors.toList());
+         assertThat(failures).hasSize(1);
+         assertThat(failures.get(0)).contains("scheduling lag 2000 ms exceeds 1000 ms");
+      } finally {
+         client.close();
+      }
+   }
+
+   private boolean isRunning(io.hyperfoil.controller.model.Run run) {
+      return run.phases != null && run.phases.stream().anyMatch(p -> "RUNNING".equals(p.status));
+   }
+
+   private void sendMetrics(String runId, long maxLag) throws Exception {
+      AgentMetrics metrics = new AgentMetrics(System.currentTimeMillis() - 1000, System.currentTimeMillis(), new int[]{ 0 },
+            new long[]{ maxLag / 2 }, new long[]{ maxLag }, new double[]{ 0.5 }, new long[]{ -1 }, 0, 0);
+      CompletableFuture<Object> reply = new CompletableFuture<>();
+      vertx.eventBus().send(Feeds.STATS, new AgentMetricsMessage(FAKE_AGENT, runId, metrics), result -> {
+         if (result.succeeded()) {
+            reply.complete(result.result().body());
+         } else {
+            reply.completeExceptionally(result.cause());
+         }
+      });
+      reply.get(10, TimeUnit.SECONDS);
+   }
+}
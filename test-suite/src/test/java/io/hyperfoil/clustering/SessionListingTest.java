@@ -0,0 +1,266 @@
+package io.hyperfoil.clustering;
+
+import static io.hyperfoil.core.builders.StepCatalog.SC;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.hyperfoil.api.config.BenchmarkBuilder;
+import io.hyperfoil.api.config.Scenario;
+import io.hyperfoil.api.config.Sequence;
+import io.hyperfoil.api.http.HttpMethod;
+import io.hyperfoil.api.session.Session;
+import io.hyperfoil.clustering.messages.AgentControlMessage;
+import io.hyperfoil.clustering.messages.SessionListing;
+import io.hyperfoil.clustering.messages.SessionQuery;
+import io.hyperfoil.clustering.messages.SessionSummary;
+import io.hyperfoil.core.api.SimulationRunner;
+import io.hyperfoil.core.session.SessionFactory;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Pages through sessions of agents that are simulated by event bus consumers, using the same listing as real agents.
+ */
+@RunWith(VertxUnitRunner.class)
+public class SessionListingTest {
+   private Vertx vertx;
+   private ControllerVerticle controller;
+   private Run run;
+
+   @Before
+   public void before(TestContext ctx) {
+      vertx = Vertx.vertx();
+      Codecs.register(vertx);
+      controller = new ControllerVerticle();
+      vertx.deployVerticle(controller, ctx.asyncAssertSuccess());
+      BenchmarkBuilder builder = BenchmarkBuilder.builder().name("sessions");
+      builder.http().host("localhost").endHttp()
+            .addPhase("test").atOnce(1)
+            .scenario().initialSequence("test")
+            .step(SC).httpRequest(HttpMethod.GET).path("test").endStep()
+            .endSequence().endScenario().endPhase();
+      // The run directory is not used when listing sessions
+      run = new Run("0000", null, builder.build());
+      addAgent("agent-a", 0, 5);
+      addAgent("agent-b", 1, 7);
+   }
+
+   @After
+   public void after(TestContext ctx) {
+      vertx.close(ctx.asyncAssertSuccess());
+   }
+
+   @Test
+   public void testListPage() {
+      SimulationRunner runner = new TestRunner(2500);
+      SessionListing first = AgentVerticle.listSessions(runner, new SessionQuery(true, 0, 1000, 1));
+      assertEquals(1000, first.sessions.size());
+      assertEquals(1000, first.next);
+      // The page spans two chunks of sessions
+      SessionListing second = AgentVerticle.listSessions(runner, new SessionQuery(true, 500, 1000, 1));
+      assertEquals("#500", id(second.sessions.get(0)));
+      assertEquals(1500, second.next);
+      SessionListing last = AgentVerticle.listSessions(runner, new SessionQuery(true, 2000, 1000, 1));
+      assertEquals(500, last.sessions.size());
+      assertEquals(-1, last.next);
+      // These sessions are not running
+      SessionListing active = AgentVerticle.listSessions(runner, new SessionQuery(false, 0, 1000, 1));
+      assertEquals(0, active.sessions.size());
+      assertEquals(-1, active.next);
+   }
+
+   @Test
+   public void testListSample() {
+      SessionListing listing = AgentVerticle.listSessions(new TestRunner(2500), new SessionQuery(true, 0, 10, 3));
+      assertEquals(10, listing.sessions.size());
+      for (int i = 0; i < listing.sessions.size(); ++i) {
+         assertEquals("#" + (i * 3), id(listing.sessions.get(i)));
+      }
+      assertEquals(30, listing.next);
+   }
+
+   @Test
+   public void testPagingAcrossAgents(TestContext ctx) {
+      List<String> sessions = new ArrayList<>();
+      Async done = ctx.async();
+      listSessions(null, 4, 1, sessions, ctx.asyncAssertSuccess(cursor1 -> {
+         ctx.assertEquals("0:4", cursor1);
+         ctx.assertEquals(4, sessions.size());
+         listSessions(cursor1, 4, 1, sessions, ctx.asyncAssertSuccess(cursor2 -> {
+            // The page ends on the second agent
+            ctx.assertEquals("1:3", cursor2);
+            ctx.assertEquals("agent-a: #4", sessions.get(4));
+            ctx.assertEquals("agent-b: #0", sessions.get(5));
+            listSessions(cursor2, 4, 1, sessions, ctx.asyncAssertSuccess(cursor3 -> {
+               ctx.assertNull(cursor3);
+               ctx.assertEquals(12, sessions.size());
+               ctx.assertEquals("agent-b: #6", sessions.get(11));
+               done.complete();
+            }));
+         }));
+      }));
+   }
+
+   @Test
+   public void testSampleAcrossAgents(TestContext ctx) {
+      List<String> sessions = new ArrayList<>();
+      listSessions(null, 100, 2, sessions, ctx.asyncAssertSuccess(cursor -> {
+         ctx.assertNull(cursor);
+         List<String> expected = new ArrayList<>();
+         for (int i = 0; i < 5; i += 2) {
+            expected.add("agent-a: #" + i);
+         }
+         for (int i = 0; i < 7; i += 2) {
+            expected.add("agent-b: #" + i);
+         }
+         ctx.assertEquals(expected, sessions);
+      }));
+   }
+
+   @Test
+   public void testInvalidCursor(TestContext ctx) {
+      for (String cursor : new String[]{ "1", "a:1", "1:b" }) {
+         listSessions(cursor, 10, 1, new ArrayList<>(), ctx.asyncAssertFailure(cause -> {
+            ctx.assertTrue(cause instanceof IllegalArgumentException, cause.toString());
+         }));
+      }
+      // Cursor pointing after the last agent does not list anything
+      List<String> sessions = new ArrayList<>();
+      listSessions("2:0", 10, 1, sessions, ctx.asyncAssertSuccess(cursor -> {
+         ctx.assertNull(cursor);
+         ctx.assertTrue(sessions.isEmpty());
+      }));
+   }
+
+   @Test
+   public void testSummaryMerge() {
+      Map<String, SessionSummary> summaries = new LinkedHashMap<>();
+      summaries.put("agent-a", new SessionSummary(list(group("test", "seq", 1, false, 3), group("test", "seq", 1, true, 2))));
+      summaries.put("agent-b", new SessionSummary(list(group("test", "seq", 1, false, 4), group("test", null, -1, false, 1))));
+      JsonArray groups = ControllerServer.mergeSessionSummaries(summaries);
+      assertEquals(3, groups.size());
+      JsonObject largest = groups.getJsonObject(0);
+      assertEquals("seq", largest.getString("sequence"));
+      assertEquals(1, (int) largest.getInteger("step"));
+      assertEquals(Boolean.FALSE, largest.getBoolean("blocked"));
+      assertEquals(7, (int) largest.getInteger("count"));
+      assertEquals(new JsonObject().put("agent-a", 3).put("agent-b", 4), largest.getJsonObject("agents"));
+      assertEquals(Boolean.TRUE, groups.getJsonObject(1).getBoolean("blocked"));
+      assertEquals(2, (int) groups.getJsonObject(1).getInteger("count"));
+      assertEquals(new JsonObject().put("agent-b", 1), groups.getJsonObject(2).getJsonObject("agents"));
+   }
+
+   @Test
+   public void testSummarizeInactiveSessions() {
+      SimulationRunner runner = new TestRunner(2500);
+      SessionSummary summary = AgentVerticle.summarizeSessions(runner, true);
+      // Sessions without phase and running sequences make a single group
+      assertEquals(1, summary.groups.size());
+      assertEquals(2500, summary.groups.get(0).count);
+      assertNull(summary.groups.get(0).sequence);
+      assertEquals(0, AgentVerticle.summarizeSessions(runner, false).groups.size());
+   }
+
+   private void addAgent(String name, int id, int sessions) {
+      AgentInfo agent = new AgentInfo(name, id);
+      agent.deploymentId = name;
+      run.agents.add(agent);
+      SimulationRunner runner = new TestRunner(sessions);
+      vertx.eventBus().consumer(name, message -> {
+         AgentControlMessage controlMessage = (AgentControlMessage) message.body();
+         message.reply(AgentVerticle.listSessions(runner, controlMessage.sessionQuery()));
+      });
+   }
+
+   private void listSessions(String cursor, int limit, int sample, List<String> sessions, Handler<AsyncResult<String>> handler) {
+      controller.listSessions(run, true, cursor, limit, sample, (agent, session) -> sessions.add(agent.name + ": " + id(session)), handler);
+   }
+
+   private static String id(String session) {
+      return session.substring(0, session.indexOf(' '));
+   }
+
+   private static SessionSummary.Group group(String phase, String sequence, int step, boolean blocked, int count) {
+      SessionSummary.Group group = new SessionSummary.Group();
+      group.phase = phase;
+      group.sequence = sequence;
+      group.step = step;
+      group.blocked = blocked;
+      group.count = count;
+      return group;
+   }
+
+   private static List<SessionSummary.Group> list(SessionSummary.Group... groups) {
+      List<SessionSummary.Group> list = new ArrayList<>();
+      for (SessionSummary.Group group : groups) {
+         list.add(group);
+      }
+      return list;
+   }
+
+   private static class TestRunner implements SimulationRunner {
+      private final List<Session> sessions = new ArrayList<>();
+
+      TestRunner(int numSessions) {
+         Scenario scenario = new Scenario(new Sequence[0], new Sequence[0], new String[0], new String[0]);
+         for (int i = 0; i < numSessions; ++i) {
+            sessions.add(SessionFactory.create(scenario, 0, 0, i));
+         }
+      }
+
+      @Override
+      public void init(Handler<AsyncResult<Void>> handler) {
+      }
+
+      @Override
+      public void visitSessions(Consumer<Session> consumer) {
+         sessions.forEach(consumer);
+      }
+
+      @Override
+      public int visitSessions(int from, int max, Consumer<Session> consumer) {
+         int end = Math.min(sessions.size(), from + max);
+         for (int i = from; i < end; ++i) {
+            consumer.accept(sessions.get(i));
+         }
+         return end < sessions.size() ? end : -1;
+      }
+
+      @Override
+      public void startPhase(String phase) {
+      }
+
+      @Override
+      public void finishPhase(String phase) {
+      }
+
+      @Override
+      public void tryTerminatePhase(String phase) {
+      }
+
+      @Override
+      public void terminatePhase(String phase) {
+      }
+
+      @Override
+      public void shutdown() {
+      }
+   }
+}
@@ -0,0 +1,77 @@
+package io.hyperfoil.clustering;
+
+import static io.hyperfoil.core.builders.StepCatalog.SC;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.hyperfoil.api.config.BenchmarkBuilder;
+import io.hyperfoil.api.http.HttpMethod;
+import io.hyperfoil.client.RestClient;
+import io.hyperfoil.controller.Client;
+import io.hyperfoil.controller.model.Phase;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class SlaProgressionTest {
+   private Vertx vertx;
+   private HttpServer httpServer;
+
+   @Before
+   public void before(TestContext ctx) {
+      vertx = Vertx.vertx();
+      Codecs.register(vertx);
+      // Slow responses make the SLA fail
+      httpServer = vertx.createHttpServer().requestHandler(req -> vertx.setTimer(20, id -> req.response().end("test")))
+            .listen(0, "localhost", ctx.asyncAssertSuccess(server -> {
+               // Without agents in the benchmark the controller runs the benchmark in-vm
+               vertx.deployVerticle(ControllerVerticle.class.getName(), ctx.asyncAssertSuccess());
+            }));
+   }
+
+   @After
+   public void after(TestContext ctx) {
+      vertx.close(ctx.asyncAssertSuccess());
+   }
+
+   @Test(timeout = 60_000)
+   public void testFailedSlaCancelsDependentPhase() throws InterruptedException {
+      RestClient client = new RestClient("localhost", 8090);
+      try {
+         BenchmarkBuilder builder = BenchmarkBuilder.builder().name("sla-progression");
+         builder.http().host("localhost").port(httpServer.actualPort()).endHttp()
+               .addPhase("first").atOnce(1)
+               .scenario().initialSequence("test")
+               .step(SC).httpRequest(HttpMethod.GET).path("test")
+               .sla().addItem().meanResponseTime(1, TimeUnit.MILLISECONDS).endSLA().endList()
+               .endStep()
+               .endSequence().endScenario().endPhase()
+               .addPhase("second").atOnce(1).startAfterStrict("first")
+               .scenario().initialSequence("test")
+               .step(SC).httpRequest(HttpMethod.GET).path("test").endStep()
+               .endSequence().endScenario().endPhase();
+         Client.RunRef runRef = client.register(builder.build(), null).start(null);
+         io.hyperfoil.controller.model.Run run;
+         while ((run = runRef.get()).terminated == null) {
+            Thread.sleep(100);
+         }
+         Map<String, Phase> phases = run.phases.stream().collect(Collectors.toMap(p -> p.name, Function.identity()));
+         assertThat(phases.get("first").failed).isTrue();
+         // SLA of the first phase is validated before the phase terminates
+         assertThat(phases.get("second").status).isEqualTo("CANCELLED");
+      } finally {
+         client.close();
+      }
+   }
+}
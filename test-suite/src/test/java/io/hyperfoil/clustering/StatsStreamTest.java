@@ -0,0 +1,135 @@
+package io.hyperfoil.clustering;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.hyperfoil.api.config.BenchmarkBuilder;
+import io.hyperfoil.client.RestClient;
+import io.hyperfoil.controller.Client;
+import io.hyperfoil.controller.model.RequestStatisticsResponse;
+import io.hyperfoil.test.TestBenchmarks;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class StatsStreamTest {
+   private Vertx vertx;
+   private HttpServer httpServer;
+   private ControllerVerticle controller;
+
+   @Before
+   public void before(TestContext ctx) {
+      vertx = Vertx.vertx();
+      Codecs.register(vertx);
+      controller = new ControllerVerticle();
+      httpServer = vertx.createHttpServer().requestHandler(req -> req.response().end("test"))
+            .listen(0, "localhost", ctx.asyncAssertSuccess(server -> {
+               // Without agents in the benchmark the controller runs the benchmark in-vm
+               vertx.deployVerticle(controller, ctx.asyncAssertSuccess());
+            }));
+   }
+
+   @After
+   public void after(TestContext ctx) {
+      vertx.close(ctx.asyncAssertSuccess());
+   }
+
+   @Test(timeout = 60_000)
+   public void testDeltas() throws Exception {
+      RestClient client = new RestClient("localhost", 8090);
+      HttpClient httpClient = vertx.createHttpClient();
+      try {
+         Client.RunRef runRef = start(client, "stream-deltas");
+         List<String> events = Collections.synchronizedList(new ArrayList<>());
+         List<JsonObject> deltas = Collections.synchronizedList(new ArrayList<>());
+         CompletableFuture<Void> ended = new CompletableFuture<>();
+         StringBuilder event = new StringBuilder();
+         httpClient.getNow(8090, "localhost", "/run/" + runRef.id() + "/stats/stream", response -> {
+            response.handler(RecordParser.newDelimited("\n", buffer -> {
+               String line = buffer.toString(StandardCharsets.UTF_8);
+               if (line.startsWith("event:")) {
+                  event.setLength(0);
+                  event.append(line.substring(6).trim());
+                  events.add(event.toString());
+               } else if (line.startsWith("data:") && "stats-delta".equals(event.toString())) {
+                  deltas.add(new JsonObject(line.substring(5).trim()));
+               }
+            }));
+            response.endHandler(nil -> ended.complete(null));
+            response.exceptionHandler(ended::completeExceptionally);
+         });
+
+         // The client merges the deltas into full state
+         RequestStatisticsResponse last = null;
+         try (Client.StatsStream stream = runRef.statsStream()) {
+            RequestStatisticsResponse stats;
+            while ((stats = stream.next()) != null) {
+               last = stats;
+            }
+         }
+         assertThat(last).isNotNull();
+         assertThat(last.statistics).isNotEmpty().allMatch(rs -> rs.summary != null && "test".equals(rs.phase));
+
+         ended.get(10, TimeUnit.SECONDS);
+         assertThat(events.get(events.size() - 1)).isEqualTo("end");
+         // Client that keeps up with the stream receives full stats just once, and then only the changes
+         assertThat(events.stream().filter("stats"::equals).count()).isEqualTo(1);
+         assertThat(deltas).isNotEmpty();
+         assertThat(events.indexOf("stats")).isLessThan(events.indexOf("stats-delta"));
+         // There's just single metric in this benchmark
+         assertThat(deltas).allMatch(delta -> delta.getJsonArray("statistics").size() <= 1);
+
+         awaitNoSubscribers();
+      } finally {
+         httpClient.close();
+         client.close();
+      }
+   }
+
+   @Test(timeout = 60_000)
+   public void testUnsubscribeOnClose() throws Exception {
+      RestClient client = new RestClient("localhost", 8090);
+      try {
+         Client.RunRef runRef = start(client, "stream-close");
+         try (Client.StatsStream stream = runRef.statsStream()) {
+            assertThat(stream.next()).isNotNull();
+            assertThat(controller.server.statsPublisher.hasSubscribers()).isTrue();
+         }
+         awaitNoSubscribers();
+         runRef.kill();
+      } finally {
+         client.close();
+      }
+   }
+
+   private Client.RunRef start(RestClient client, String name) {
+      BenchmarkBuilder builder = BenchmarkBuilder.builder().name(name);
+      io.hyperfoil.api.config.Benchmark benchmark = TestBenchmarks.addTestSimulation(builder, 1, httpServer.actualPort()).build();
+      return client.register(benchmark, null).start(null);
+   }
+
+   private void awaitNoSubscribers() throws InterruptedException {
+      // The subscription is removed when the controller notices closed connection
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (controller.server.statsPublisher.hasSubscribers()) {
+         assertThat(System.currentTimeMillis()).isLessThan(deadline);
+         Thread.sleep(100);
+      }
+   }
+}
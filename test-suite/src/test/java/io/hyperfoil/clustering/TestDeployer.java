@@ -0,0 +1,81 @@
+package io.hyperfoil.clustering;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import io.hyperfoil.api.config.Agent;
+import io.hyperfoil.api.deployment.DeployedAgent;
+import io.hyperfoil.api.deployment.Deployer;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Starts each agent in its own clustered Vert.x instance within this JVM.
+ */
+class TestDeployer implements Deployer {
+   final List<TestDeployedAgent> agents = new CopyOnWriteArrayList<>();
+   private final BaseClusteredTest test;
+
+   TestDeployer(BaseClusteredTest test) {
+      this.test = test;
+   }
+
+   @Override
+   public DeployedAgent start(Agent agent, String runId, Consumer<Throwable> exceptionHandler) {
+      try {
+         Vertx vertx = test.startClustered();
+         JsonObject config = new JsonObject().put("name", agent.name).put("runId", runId);
+         vertx.deployVerticle(AgentVerticle.class, new DeploymentOptions().setConfig(config), result -> {
+            if (result.failed()) {
+               exceptionHandler.accept(result.cause());
+            }
+         });
+         TestDeployedAgent deployedAgent = new TestDeployedAgent(agent.name, vertx);
+         agents.add(deployedAgent);
+         return deployedAgent;
+      } catch (Exception e) {
+         exceptionHandler.accept(e);
+         return null;
+      }
+   }
+
+   @Override
+   public boolean hasControllerLog() {
+      return false;
+   }
+
+   @Override
+   public void downloadControllerLog(long offset, String destinationFile, Handler<AsyncResult<Void>> handler) {
+      throw new UnsupportedOperationException();
+   }
+
+   @Override
+   public void downloadAgentLog(DeployedAgent deployedAgent, long offset, String destinationFile, Handler<AsyncResult<Void>> handler) {
+      throw new UnsupportedOperationException();
+   }
+
+   @Override
+   public void close() {
+   }
+
+   static class TestDeployedAgent implements DeployedAgent {
+      final String name;
+      final Vertx vertx;
+      final CompletableFuture<Void> stopped = new CompletableFuture<>();
+
+      TestDeployedAgent(String name, Vertx vertx) {
+         this.name = name;
+         this.vertx = vertx;
+      }
+
+      @Override
+      public void stop() {
+         vertx.close(result -> stopped.complete(null));
+      }
+   }
+}
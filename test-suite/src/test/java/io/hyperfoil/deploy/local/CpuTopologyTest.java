@@ -0,0 +1,75 @@
+package io.hyperfoil.deploy.local;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class CpuTopologyTest {
+   @Test
+   public void testCpuList() {
+      int[] cpus = CpuTopology.parseCpuList("0-3,8,10-11\n");
+      assertArrayEquals(new int[]{ 0, 1, 2, 3, 8, 10, 11 }, cpus);
+      assertEquals("0-3,8,10-11", CpuTopology.formatCpuList(cpus));
+      assertEquals("", CpuTopology.formatCpuList(CpuTopology.parseCpuList("")));
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testInvalidCpuList() {
+      CpuTopology.parseCpuList("3-1");
+   }
+
+   @Test
+   public void testRead() throws IOException {
+      Path dir = Files.createTempDirectory("nodes");
+      try {
+         writeCpuList(dir, "node0", "0-1");
+         writeCpuList(dir, "node1", "2-3");
+         writeCpuList(dir, "node10", "4,6");
+         // memory-only node
+         writeCpuList(dir, "node2", "");
+         Files.createDirectories(dir.resolve("power"));
+
+         CpuTopology topology = CpuTopology.read(dir);
+         assertEquals(3, topology.nodes());
+         assertArrayEquals(new int[]{ 0, 1 }, topology.cpus(0));
+         assertArrayEquals(new int[]{ 4, 6 }, topology.cpus(10));
+         assertNull(topology.cpus(2));
+      } finally {
+         try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+         }
+      }
+   }
+
+   @Test
+   public void testReadMissing() {
+      CpuTopology topology = CpuTopology.read(Paths.get("/does/not/exist"));
+      assertEquals(1, topology.nodes());
+      assertEquals(Runtime.getRuntime().availableProcessors(), topology.cpus(0).length);
+   }
+
+   @Test
+   public void testAllocate() {
+      CpuTopology topology = new CpuTopology(new int[]{ 0, 1 }, new int[][]{ { 0, 1 }, { 2, 3 } });
+      topology.allocate(0);
+      assertEquals(1, topology.allocate());
+      assertEquals(0, topology.allocate());
+      topology.release(1);
+      assertEquals(1, topology.allocate());
+   }
+
+   private static void writeCpuList(Path dir, String node, String cpus) throws IOException {
+      Path nodeDir = Files.createDirectories(dir.resolve(node));
+      Files.write(nodeDir.resolve("cpulist"), (cpus + "\n").getBytes(StandardCharsets.UTF_8));
+   }
+}